@@ -25,15 +25,16 @@
 package org.savapage.ext.print;
 
 import java.awt.Color;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
@@ -71,7 +72,9 @@ import com.lowagie.text.pdf.PdfName;
 import com.lowagie.text.pdf.PdfNumber;
 import com.lowagie.text.pdf.PdfReader;
 import com.lowagie.text.pdf.PdfStamper;
+import com.lowagie.text.pdf.PdfTemplate;
 import com.lowagie.text.pdf.PdfWriter;
+import com.lowagie.text.pdf.RandomAccessFileOrArray;
 
 /**
  *
@@ -80,12 +83,62 @@ import com.lowagie.text.pdf.PdfWriter;
  */
 public final class IppRoutingPlugin implements ServerPlugin {
 
+    /**
+     * Factory of {@link RestClient} objects with a connect and read timeout.
+     * Used by the plug-in when its {@link ServerPluginContext} implements it.
+     */
+    public interface RestClientFactory {
+
+        /**
+         * @param uri
+         *            Target URI.
+         * @param timeoutMsec
+         *            Connect and read timeout (msec). If zero, no timeout is
+         *            set.
+         * @return A new {@link RestClient}.
+         */
+        RestClient createRestClient(URI uri, long timeoutMsec);
+
+        /**
+         * @param uri
+         *            Target URI.
+         * @param username
+         *            Basic Auth user.
+         * @param password
+         *            Basic Auth password.
+         * @param timeoutMsec
+         *            Connect and read timeout (msec). If zero, no timeout is
+         *            set.
+         * @return A new {@link RestClient}.
+         */
+        RestClient createRestClient(URI uri, String username, String password,
+                long timeoutMsec);
+    }
+
     /**
      * The {@link Logger}.
      */
     private static final Logger LOGGER =
             LoggerFactory.getLogger(IppRoutingPlugin.class);
 
+    /**
+     * Max number of cached QR-code images.
+     */
+    private static final int QRCODE_IMAGE_CACHE_SIZE = 64;
+
+    /**
+     * Least recently used QR-code images (value) by size and content (key).
+     * A static routing id gives the same image for each job.
+     */
+    private static final Map<String, Image> QRCODE_IMAGE_CACHE =
+            createImageCache();
+
+    /**
+     * Least recently used QR-code Quiet Zone images (value) by size (key).
+     */
+    private static final Map<String, Image> QRCODE_IMAGE_BG_CACHE =
+            createImageCache();
+
     /**
      *
      */
@@ -395,6 +448,34 @@ public final class IppRoutingPlugin implements ServerPlugin {
     private static final String PROP_KEY_ROUTING_REST_PW =
             PROP_KEY_PFX_ROUTING_REST + "password";
 
+    /** */
+    private static final String PROP_KEY_ROUTING_REST_TIMEOUT =
+            PROP_KEY_PFX_ROUTING_REST + "timeout-msec";
+    /** */
+    private static final String PROP_KEY_ROUTING_REST_RETRIES =
+            PROP_KEY_PFX_ROUTING_REST + "retries";
+    /** */
+    private static final String PROP_KEY_ROUTING_REST_RETRY_DELAY =
+            PROP_KEY_PFX_ROUTING_REST + "retry-delay-msec";
+    /** */
+    private static final String PROP_KEY_ROUTING_REST_THREADS =
+            PROP_KEY_PFX_ROUTING_REST + "threads";
+    /** */
+    private static final String PROP_KEY_ROUTING_REST_QUEUE =
+            PROP_KEY_PFX_ROUTING_REST + "queue";
+    /** */
+    private static final String PROP_KEY_ROUTING_REST_BREAKER_FAILURES =
+            PROP_KEY_PFX_ROUTING_REST + "breaker.failures";
+    /** */
+    private static final String PROP_KEY_ROUTING_REST_BREAKER_OPEN =
+            PROP_KEY_PFX_ROUTING_REST + "breaker.open-msec";
+    /**
+     * If {@code true}, the local routing UUID is used as routing id when the
+     * REST call fails. If {@code false}, routing fails.
+     */
+    private static final String PROP_KEY_ROUTING_REST_FALLBACK =
+            PROP_KEY_PFX_ROUTING_REST + "fallback";
+
     /** */
     private static final String PROP_KEY_PFX_PDF_QRCODE_REST_POST =
             PROP_KEY_PFX_ROUTING_REST + "post.";
@@ -535,6 +616,12 @@ public final class IppRoutingPlugin implements ServerPlugin {
     /** */
     private RestClient routingRestClient;
 
+    /** */
+    private RoutingRestInvoker routingRestInvoker;
+
+    /** */
+    private boolean routingRestFallback;
+
     /** */
     private String routingRestReqEntity;
 
@@ -564,6 +651,30 @@ public final class IppRoutingPlugin implements ServerPlugin {
 
     @Override
     public void onStop() throws ServerPluginException {
+        if (this.routingRestInvoker != null) {
+            LOGGER.info("{} routing REST: {}", this.id,
+                    this.routingRestInvoker.asLoggingInfo());
+            this.routingRestInvoker.shutdown();
+        }
+    }
+
+    /**
+     * @param props
+     *            Configuration properties.
+     * @return Timeout (msec) of a routing REST call attempt, also used as
+     *         connect and read timeout of the REST client.
+     */
+    private static long getRoutingRestTimeout(final Properties props) {
+        return Long.parseLong(
+                props.getProperty(PROP_KEY_ROUTING_REST_TIMEOUT, "5000"));
+    }
+
+    /**
+     * @return The routing REST invoker, or {@code null} when routing REST is
+     *         not configured.
+     */
+    public RoutingRestInvoker getRoutingRestInvoker() {
+        return this.routingRestInvoker;
     }
 
     @Override
@@ -641,12 +752,32 @@ public final class IppRoutingPlugin implements ServerPlugin {
         }
 
         final String restUser = props.getProperty(PROP_KEY_ROUTING_REST_USER);
+        final String restPw = props.getProperty(PROP_KEY_ROUTING_REST_PW, "");
+
+        if (ctx instanceof RestClientFactory) {
+
+            final RestClientFactory factory = (RestClientFactory) ctx;
+            final long timeoutMsec;
+
+            try {
+                timeoutMsec = getRoutingRestTimeout(props);
+            } catch (NumberFormatException e) {
+                throw new ServerPluginException(e.getMessage());
+            }
 
-        if (restUser == null) {
+            if (restUser == null) {
+                this.routingRestClient =
+                        factory.createRestClient(uri, timeoutMsec);
+            } else {
+                this.routingRestClient = factory.createRestClient(uri,
+                        restUser, restPw, timeoutMsec);
+            }
+
+        } else if (restUser == null) {
             this.routingRestClient = ctx.createRestClient(uri);
         } else {
-            this.routingRestClient = ctx.createRestClient(uri, restUser,
-                    props.getProperty(PROP_KEY_ROUTING_REST_PW, ""));
+            this.routingRestClient =
+                    ctx.createRestClient(uri, restUser, restPw);
         }
 
         this.routingRestReqEntity =
@@ -665,6 +796,30 @@ public final class IppRoutingPlugin implements ServerPlugin {
                     String.format("One or more %s properties are missing.",
                             PROP_KEY_PFX_PDF_QRCODE_REST_POST));
         }
+
+        this.routingRestFallback = Boolean.parseBoolean(
+                props.getProperty(PROP_KEY_ROUTING_REST_FALLBACK, "false"));
+
+        try {
+            this.routingRestInvoker = new RoutingRestInvoker(
+                    String.format("routing-rest-%s", this.id),
+                    Integer.parseInt(props
+                            .getProperty(PROP_KEY_ROUTING_REST_THREADS, "4")),
+                    Integer.parseInt(props
+                            .getProperty(PROP_KEY_ROUTING_REST_QUEUE, "32")),
+                    getRoutingRestTimeout(props),
+                    Integer.parseInt(props
+                            .getProperty(PROP_KEY_ROUTING_REST_RETRIES, "1")),
+                    Long.parseLong(props.getProperty(
+                            PROP_KEY_ROUTING_REST_RETRY_DELAY, "200")),
+                    Integer.parseInt(props.getProperty(
+                            PROP_KEY_ROUTING_REST_BREAKER_FAILURES, "5")),
+                    Long.parseLong(props.getProperty(
+                            PROP_KEY_ROUTING_REST_BREAKER_OPEN, "30000")));
+        } catch (IllegalArgumentException e) {
+            throw new ServerPluginException(String.format("%s properties: %s",
+                    PROP_KEY_PFX_ROUTING_REST, e.getMessage()));
+        }
     }
 
     /**
@@ -888,15 +1043,20 @@ public final class IppRoutingPlugin implements ServerPlugin {
         PdfStamper stamper = null;
         boolean processed = false;
 
-        try (InputStream pdfIn = new FileInputStream(fileIn);
-                OutputStream pdfSigned = new FileOutputStream(fileOut);) {
+        try (OutputStream pdfSigned = new BufferedOutputStream(
+                new FileOutputStream(fileOut));) {
 
-            reader = new PdfReader(pdfIn);
+            // Partial read: pages are loaded on demand, not all in memory.
+            reader = new PdfReader(
+                    new RandomAccessFileOrArray(fileIn.getAbsolutePath()),
+                    null);
             stamper = new PdfStamper(reader, pdfSigned);
 
             // First thing to do.
             onRoutingPdfPermissions(stamper);
 
+            final Map<String, PdfTemplate> templates = new HashMap<>();
+
             final int nPages = reader.getNumberOfPages();
             for (int nPage = 1; nPage <= nPages; nPage++) {
 
@@ -920,35 +1080,23 @@ public final class IppRoutingPlugin implements ServerPlugin {
                     rect = pageSize;
                 }
 
-                if (data.pdfQrCodeImage != null) {
-                    positionQrCodeImagesOnPdfPage(rect, data.pdfQrCodeImage,
-                            data.pdfQrCodeImageBg, data);
-                    if (data.pdfQrCodeImageBg != null) {
-                        content.addImage(data.pdfQrCodeImageBg);
-                    }
-                    content.addImage(data.pdfQrCodeImage);
-                }
-
-                if (phraseHeader != null || phraseFooter != null) {
-
-                    final float xHeaderFooter =
-                            (rect.getRight() - rect.getLeft()) / 2;
-                    final float yHeader =
-                            rect.getHeight() - data.pdfHeaderMarginTopPt;
-
-                    if (phraseHeader != null) {
-                        ColumnText.showTextAligned(content,
-                                Element.ALIGN_CENTER, phraseHeader,
-                                xHeaderFooter, yHeader, 0);
-                    }
-
-                    if (phraseFooter != null) {
-                        final float yFooter = data.pdfFooterMarginBottomPt;
-                        ColumnText.showTextAligned(content,
-                                Element.ALIGN_CENTER, phraseFooter,
-                                xHeaderFooter, yFooter, 0);
-                    }
+                /*
+                 * QR-code, header and footer are drawn once per page geometry
+                 * in a shared template (Form XObject), that is referenced by
+                 * each page.
+                 */
+                final String templateKey = String.format("%f %f %f %f",
+                        rect.getLeft(), rect.getBottom(), rect.getRight(),
+                        rect.getTop());
+
+                PdfTemplate template = templates.get(templateKey);
+
+                if (template == null) {
+                    template = createOverlayTemplate(content, rect, data,
+                            phraseHeader, phraseFooter);
+                    templates.put(templateKey, template);
                 }
+                content.addTemplate(template, 0, 0);
             } // end-for
 
             onRoutingPdfInfo(stamper, data);
@@ -1034,11 +1182,20 @@ public final class IppRoutingPlugin implements ServerPlugin {
                     placeholderValue[1]);
         }
 
+        final String entityWrk = entity;
+
         if (MediaType.APPLICATION_JSON.equals(this.routingRestRspMediaType)) {
 
-            final IppRoutingDto rsp = this.routingRestClient.post(entity,
-                    this.routingRestReqMediaType, this.routingRestRspMediaType,
-                    IppRoutingDto.class);
+            final IppRoutingDto rsp = this.routingRestInvoker
+                    .invoke(() -> this.routingRestClient.post(entityWrk,
+                            this.routingRestReqMediaType,
+                            this.routingRestRspMediaType,
+                            IppRoutingDto.class));
+
+            if (rsp == null) {
+                this.onRoutingRESTFailure(data);
+                return;
+            }
 
             data.update(rsp);
 
@@ -1050,9 +1207,15 @@ public final class IppRoutingPlugin implements ServerPlugin {
             }
 
         } else {
-            final String routingIdWrk = this.routingRestClient.post(entity,
-                    this.routingRestReqMediaType, this.routingRestRspMediaType,
-                    String.class);
+            final String routingIdWrk = this.routingRestInvoker
+                    .invoke(() -> this.routingRestClient.post(entityWrk,
+                            this.routingRestReqMediaType,
+                            this.routingRestRspMediaType, String.class));
+
+            if (routingIdWrk == null) {
+                this.onRoutingRESTFailure(data);
+                return;
+            }
 
             data.routingId = routingIdWrk;
 
@@ -1060,6 +1223,27 @@ public final class IppRoutingPlugin implements ServerPlugin {
         }
     }
 
+    /**
+     * Handles a failed, timed out or short-circuited routing REST call.
+     *
+     * @param data
+     *            The routing data.
+     */
+    private void onRoutingRESTFailure(final RoutingData data) {
+
+        if (!this.routingRestFallback) {
+            throw new SpException(String.format(
+                    "%s: routing REST call failed [%s]", this.id,
+                    this.routingRestInvoker.getBreakerState()));
+        }
+
+        data.routingId = data.routingUUID.toString();
+
+        LOGGER.warn("{}: routing REST call failed [{}]: fallback to [{}]",
+                this.id, this.routingRestInvoker.getBreakerState(),
+                data.routingId);
+    }
+
     /**
      * Creates PDF QR-code and Quiet Zone background images.
      *
@@ -1079,31 +1263,114 @@ public final class IppRoutingPlugin implements ServerPlugin {
                 data.pdfQrCodeContent,
                 PDF_QRCODE_CONTENT_PLACEHOLDER_ROUTING_ID, data.routingId);
 
-        data.pdfQrCodeImage = QRCodeHelper.createPdfImage(codeQRContentWrk,
-                data.pdfQrCodeSizeMM);
+        final String imageKey = String.format("%d %s", data.pdfQrCodeSizeMM,
+                codeQRContentWrk);
+
+        Image image = QRCODE_IMAGE_CACHE.get(imageKey);
+
+        if (image == null) {
+            image = QRCodeHelper.createPdfImage(codeQRContentWrk,
+                    data.pdfQrCodeSizeMM);
+            QRCODE_IMAGE_CACHE.put(imageKey, image);
+        }
+        data.pdfQrCodeImage = image;
 
         //
         if (data.pdfQrCodeQzMM == 0) {
             return;
         }
-        data.pdfQrCodeImageBg = QRCodeHelper.createPdfImageBackground(
-                data.pdfQrCodeSizeMM + 2 * data.pdfQrCodeQzMM, Color.WHITE);
+
+        final int sizeBgMM = data.pdfQrCodeSizeMM + 2 * data.pdfQrCodeQzMM;
+        final String imageBgKey = String.format("%d", sizeBgMM);
+
+        Image imageBg = QRCODE_IMAGE_BG_CACHE.get(imageBgKey);
+
+        if (imageBg == null) {
+            imageBg = QRCodeHelper.createPdfImageBackground(sizeBgMM,
+                    Color.WHITE);
+            QRCODE_IMAGE_BG_CACHE.put(imageBgKey, imageBg);
+        }
+        data.pdfQrCodeImageBg = imageBg;
     }
 
     /**
-     * Sets the absolute position of (background) image(s) on the PDF page.
+     * Creates a template (Form XObject) with the QR-code, header and footer
+     * for a page geometry.
      *
+     * @param content
+     *            The page over content.
+     * @param rect
+     *            Page rectangle to position the items on.
+     * @param data
+     *            Routing data.
+     * @param phraseHeader
+     *            Header, or {@code null}.
+     * @param phraseFooter
+     *            Footer, or {@code null}.
+     * @return The template.
+     * @throws DocumentException
+     *             If image error.
+     */
+    private static PdfTemplate createOverlayTemplate(
+            final PdfContentByte content, final Rectangle rect,
+            final RoutingData data, final Phrase phraseHeader,
+            final Phrase phraseFooter) throws DocumentException {
+
+        final PdfTemplate template =
+                content.createTemplate(rect.getWidth(), rect.getHeight());
+
+        // Items are positioned in page coordinates: cover them all.
+        template.setBoundingBox(new Rectangle(Math.min(0f, rect.getLeft()),
+                Math.min(0f, rect.getBottom()),
+                Math.max(rect.getWidth(), rect.getRight()),
+                Math.max(rect.getHeight(), rect.getTop())));
+
+        if (data.pdfQrCodeImage != null) {
+            addQrCodeImages(template, rect, data);
+        }
+
+        if (phraseHeader != null || phraseFooter != null) {
+
+            final float xHeaderFooter = (rect.getRight() - rect.getLeft()) / 2;
+            final float yHeader = rect.getHeight() - data.pdfHeaderMarginTopPt;
+
+            if (phraseHeader != null) {
+                ColumnText.showTextAligned(template, Element.ALIGN_CENTER,
+                        phraseHeader, xHeaderFooter, yHeader, 0);
+            }
+
+            if (phraseFooter != null) {
+                final float yFooter = data.pdfFooterMarginBottomPt;
+                ColumnText.showTextAligned(template, Element.ALIGN_CENTER,
+                        phraseFooter, xHeaderFooter, yFooter, 0);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Adds the QR-code image, and its Quiet Zone background image if present,
+     * to the content.
+     * <p>
+     * Note: the (cached) images are shared, so their absolute position is not
+     * set.
+     * </p>
+     *
+     * @param content
+     *            The content to add the images to.
      * @param pageRect
      *            Page rectangle.
-     * @param image
-     *            The QR image.
-     * @param imageBg
-     *            Background image (Quiet Zone). Can be {@code null}.
      * @param data
      *            Routing data.
+     * @throws DocumentException
+     *             If image error.
      */
-    private static void positionQrCodeImagesOnPdfPage(final Rectangle pageRect,
-            final Image image, final Image imageBg, final RoutingData data) {
+    private static void addQrCodeImages(final PdfContentByte content,
+            final Rectangle pageRect, final RoutingData data)
+            throws DocumentException {
+
+        final Image image = data.pdfQrCodeImage;
+        final Image imageBg = data.pdfQrCodeImageBg;
 
         final float imgPointsHeight = image.getScaledHeight();
         final float imgPointsWidth = image.getScaledWidth();
@@ -1149,10 +1416,28 @@ public final class IppRoutingPlugin implements ServerPlugin {
         }
 
         if (imageBg != null) {
-            imageBg.setAbsolutePosition(xImage - codeQRQuiteZonePoints,
+            content.addImage(imageBg, imageBg.getScaledWidth(), 0, 0,
+                    imageBg.getScaledHeight(), xImage - codeQRQuiteZonePoints,
                     yImage - codeQRQuiteZonePoints);
         }
-        image.setAbsolutePosition(xImage, yImage);
+        content.addImage(image, imgPointsWidth, 0, 0, imgPointsHeight, xImage,
+                yImage);
+    }
+
+    /**
+     * @return A thread-safe LRU image cache.
+     */
+    private static Map<String, Image> createImageCache() {
+        return Collections.synchronizedMap(
+                new LinkedHashMap<String, Image>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(
+                            final Map.Entry<String, Image> eldest) {
+                        return this.size() > QRCODE_IMAGE_CACHE_SIZE;
+                    }
+                });
     }
 
     /**
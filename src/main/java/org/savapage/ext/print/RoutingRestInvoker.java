@@ -0,0 +1,394 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.ext.print;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Invokes routing REST calls on a bounded worker pool, with a timeout per
+ * attempt, retries and a circuit breaker, so a slow or failing routing
+ * endpoint does not hold IPP print ingest threads.
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class RoutingRestInvoker {
+
+    /**
+     * Circuit breaker state.
+     */
+    public enum BreakerState {
+        /** Calls pass. */
+        CLOSED,
+        /** Calls are short-circuited. */
+        OPEN,
+        /** One trial call passes. */
+        HALF_OPEN
+    }
+
+    /**
+     * Upper bounds (msec) of the latency histogram buckets. The last bucket
+     * holds the higher latencies.
+     */
+    private static final long[] LATENCY_BUCKETS_MSEC =
+            { 50, 100, 250, 500, 1000, 2500, 5000 };
+
+    /** */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(RoutingRestInvoker.class);
+
+    /** */
+    private final ThreadPoolExecutor executor;
+
+    /** */
+    private final long timeoutMsec;
+
+    /** */
+    private final int retries;
+
+    /** */
+    private final long retryDelayMsec;
+
+    /** */
+    private final int breakerFailureThreshold;
+
+    /** */
+    private final long breakerOpenMsec;
+
+    /** */
+    private final Object breakerMutex = new Object();
+
+    /** */
+    private BreakerState breakerState = BreakerState.CLOSED;
+
+    /** */
+    private int breakerFailures;
+
+    /** */
+    private long breakerOpenedTime;
+
+    /** */
+    private final AtomicLongArray latencyHistogram =
+            new AtomicLongArray(LATENCY_BUCKETS_MSEC.length + 1);
+
+    /** */
+    private final AtomicLong successCount = new AtomicLong();
+
+    /** */
+    private final AtomicLong errorCount = new AtomicLong();
+
+    /** */
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    /** */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /** */
+    private final AtomicLong shortCircuitCount = new AtomicLong();
+
+    /**
+     * @param name
+     *            Name used for worker threads.
+     * @param threads
+     *            Max worker threads.
+     * @param queueCapacity
+     *            Max pending calls.
+     * @param timeout
+     *            Timeout (msec) of a call attempt.
+     * @param nRetries
+     *            Number of retries after a failed attempt.
+     * @param retryDelay
+     *            Delay (msec) before a retry.
+     * @param breakerFailures
+     *            Number of consecutive failed calls that opens the circuit.
+     * @param breakerOpen
+     *            Time (msec) the circuit stays open.
+     */
+    public RoutingRestInvoker(final String name, final int threads,
+            final int queueCapacity, final long timeout, final int nRetries,
+            final long retryDelay, final int breakerFailures,
+            final long breakerOpen) {
+
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    final Thread thread = new Thread(r, String.format("%s-%d",
+                            name, threadCount.incrementAndGet()));
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.timeoutMsec = timeout;
+        this.retries = nRetries;
+        this.retryDelayMsec = retryDelay;
+        this.breakerFailureThreshold = breakerFailures;
+        this.breakerOpenMsec = breakerOpen;
+    }
+
+    /**
+     * Invokes a call.
+     *
+     * @param <T>
+     *            Result type.
+     * @param call
+     *            The call.
+     * @return The result, or {@code null} when the call failed, timed out,
+     *         was rejected, or the circuit is open.
+     */
+    public <T> T invoke(final Callable<T> call) {
+
+        if (!this.allowCall()) {
+            this.shortCircuitCount.incrementAndGet();
+            return null;
+        }
+
+        for (int attempt = 0; attempt <= this.retries; attempt++) {
+
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(this.retryDelayMsec);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            final long start = System.currentTimeMillis();
+            final Future<T> future;
+
+            try {
+                future = this.executor.submit(call);
+            } catch (RejectedExecutionException e) {
+                // Pool and queue are full: do not pile up with a retry.
+                this.rejectedCount.incrementAndGet();
+                break;
+            }
+
+            try {
+                final T result =
+                        future.get(this.timeoutMsec, TimeUnit.MILLISECONDS);
+                this.onSuccess(System.currentTimeMillis() - start);
+                return result;
+
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                this.timeoutCount.incrementAndGet();
+                LOGGER.warn("Routing REST call timed out after {} msec.",
+                        this.timeoutMsec);
+
+            } catch (ExecutionException e) {
+                this.errorCount.incrementAndGet();
+                LOGGER.warn("Routing REST call failed: {}",
+                        e.getCause().getMessage());
+
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        this.onFailure();
+        return null;
+    }
+
+    /**
+     * @return {@code true} if the circuit breaker lets a call pass.
+     */
+    private boolean allowCall() {
+        synchronized (this.breakerMutex) {
+            switch (this.breakerState) {
+            case OPEN:
+                if (System.currentTimeMillis()
+                        - this.breakerOpenedTime < this.breakerOpenMsec) {
+                    return false;
+                }
+                this.breakerState = BreakerState.HALF_OPEN;
+                return true;
+            case HALF_OPEN:
+                // Trial call is pending.
+                return false;
+            case CLOSED:
+            default:
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param latencyMsec
+     *            Latency of the call.
+     */
+    private void onSuccess(final long latencyMsec) {
+
+        this.successCount.incrementAndGet();
+
+        int i = 0;
+        while (i < LATENCY_BUCKETS_MSEC.length
+                && latencyMsec > LATENCY_BUCKETS_MSEC[i]) {
+            i++;
+        }
+        this.latencyHistogram.incrementAndGet(i);
+
+        synchronized (this.breakerMutex) {
+            this.breakerFailures = 0;
+            if (this.breakerState != BreakerState.CLOSED) {
+                LOGGER.info("Routing REST circuit closed.");
+            }
+            this.breakerState = BreakerState.CLOSED;
+        }
+    }
+
+    /** */
+    private void onFailure() {
+        synchronized (this.breakerMutex) {
+            this.breakerFailures++;
+            if (this.breakerState == BreakerState.HALF_OPEN
+                    || this.breakerFailures >= this.breakerFailureThreshold) {
+                if (this.breakerState != BreakerState.OPEN) {
+                    LOGGER.warn("Routing REST circuit opened for {} msec.",
+                            this.breakerOpenMsec);
+                }
+                this.breakerState = BreakerState.OPEN;
+                this.breakerOpenedTime = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Stops the worker pool.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @return Circuit breaker state.
+     */
+    public BreakerState getBreakerState() {
+        synchronized (this.breakerMutex) {
+            return this.breakerState;
+        }
+    }
+
+    /**
+     * @return Number of successful calls.
+     */
+    public long getSuccessCount() {
+        return this.successCount.get();
+    }
+
+    /**
+     * @return Number of failed call attempts.
+     */
+    public long getErrorCount() {
+        return this.errorCount.get();
+    }
+
+    /**
+     * @return Number of timed out call attempts.
+     */
+    public long getTimeoutCount() {
+        return this.timeoutCount.get();
+    }
+
+    /**
+     * @return Number of calls rejected by a full worker pool.
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    /**
+     * @return Number of calls short-circuited by an open circuit.
+     */
+    public long getShortCircuitCount() {
+        return this.shortCircuitCount.get();
+    }
+
+    /**
+     * @return Latency histogram of successful calls: the count per bucket of
+     *         {@link #getLatencyBucketsMsec()}, plus a last count of higher
+     *         latencies.
+     */
+    public long[] getLatencyHistogram() {
+        final long[] histogram = new long[this.latencyHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = this.latencyHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    /**
+     * @return Upper bounds (msec) of the latency histogram buckets.
+     */
+    public static long[] getLatencyBucketsMsec() {
+        return LATENCY_BUCKETS_MSEC.clone();
+    }
+
+    /**
+     * @return String for logging the statistics.
+     */
+    public String asLoggingInfo() {
+
+        final StringBuilder builder = new StringBuilder();
+
+        builder.append(String.format(
+                "Circuit [%s] Success [%d] Error [%d] Timeout [%d] "
+                        + "Rejected [%d] Short-circuit [%d] Latency",
+                this.getBreakerState(), this.getSuccessCount(),
+                this.getErrorCount(), this.getTimeoutCount(),
+                this.getRejectedCount(), this.getShortCircuitCount()));
+
+        final long[] histogram = this.getLatencyHistogram();
+
+        for (int i = 0; i < histogram.length; i++) {
+            if (i < LATENCY_BUCKETS_MSEC.length) {
+                builder.append(String.format(" [<=%d: %d]",
+                        LATENCY_BUCKETS_MSEC[i], histogram[i]));
+            } else {
+                builder.append(String.format(" [>%d: %d]",
+                        LATENCY_BUCKETS_MSEC[i - 1], histogram[i]));
+            }
+        }
+        return builder.toString();
+    }
+}
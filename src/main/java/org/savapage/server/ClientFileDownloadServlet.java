@@ -29,10 +29,21 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -50,6 +61,12 @@ import org.savapage.core.config.ConfigManager;
 /**
  * Delivers public client files for downloading. Single files are delivered as
  * such. Directory are delivered as zip file.
+ * <p>
+ * The zip file of a directory is built once, and rebuilt only when the
+ * directory content changes. A replaced zip file is deleted when the last
+ * request using it is done. Files are sent from a {@link FileChannel}, with
+ * support for ETag validation and single byte ranges.
+ * </p>
  *
  * @author Rijk Ravestein
  *
@@ -76,7 +93,106 @@ public final class ClientFileDownloadServlet extends HttpServlet {
     /**
      * .
      */
-    private static final int BUFFER_SIZE = 1014;
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Prefix of a byte range header value.
+     */
+    private static final String RANGE_BYTES_PFX = "bytes=";
+
+    /**
+     * Zip bundles by canonical directory path.
+     */
+    private static final ConcurrentMap<String, ZipBundle> ZIP_BUNDLES =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Build locks by canonical directory path, so concurrent requests for the
+     * same directory wait for a single build.
+     */
+    private static final ConcurrentMap<String, Object> ZIP_BUILD_LOCKS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * A zip file with the content of a directory.
+     */
+    private static final class ZipBundle {
+
+        /**
+         * Fingerprint of the directory content.
+         */
+        private final String fingerprint;
+
+        /**
+         * The zip file.
+         */
+        private final File file;
+
+        /**
+         * Number of requests using the zip file.
+         */
+        private int refCount;
+
+        /**
+         * {@code true} when replaced by a newer bundle.
+         */
+        private boolean retired;
+
+        /**
+         * @param fp
+         *            Fingerprint of the directory content.
+         * @param zipFile
+         *            The zip file.
+         */
+        ZipBundle(final String fp, final File zipFile) {
+            this.fingerprint = fp;
+            this.file = zipFile;
+        }
+
+        /**
+         * @param fp
+         *            Fingerprint of the directory content.
+         * @return {@code true} if zip file is present and up-to-date.
+         */
+        boolean isValid(final String fp) {
+            return this.fingerprint.equals(fp) && this.file.exists();
+        }
+
+        /**
+         * Acquires the zip file for a request.
+         *
+         * @return {@code false} if the bundle is retired.
+         */
+        synchronized boolean acquire() {
+            if (this.retired) {
+                return false;
+            }
+            this.refCount++;
+            return true;
+        }
+
+        /**
+         * Releases the zip file after a request. The file of a retired bundle
+         * is deleted when no request uses it anymore.
+         */
+        synchronized void release() {
+            this.refCount--;
+            if (this.retired && this.refCount == 0) {
+                this.file.delete();
+            }
+        }
+
+        /**
+         * Retires the bundle. Its file is deleted now, or when the last
+         * request using it is released.
+         */
+        synchronized void retire() {
+            this.retired = true;
+            if (this.refCount == 0) {
+                this.file.delete();
+            }
+        }
+    }
 
     @Override
     protected void doGet(final HttpServletRequest req,
@@ -95,18 +211,11 @@ public final class ClientFileDownloadServlet extends HttpServlet {
 
         } else if (file.isDirectory()) {
 
-            File tmpFile = null;
+            onDownloadZippedDir(file, req, resp);
 
-            try {
-                tmpFile = onDownloadZippedDir(file, resp);
-            } finally {
-                if (tmpFile != null) {
-                    tmpFile.delete();
-                    tmpFile = null;
-                }
-            }
         } else {
-            onDownloadFile(file, resp, file.getName());
+            onDownloadFile(file, req, resp, file.getName(),
+                    getContentType(file), fingerprint(file));
         }
     }
 
@@ -121,75 +230,199 @@ public final class ClientFileDownloadServlet extends HttpServlet {
     }
 
     /**
-     * Handles download request of a single file by streaming {@link File} to
+     * Handles download request of a single file by sending {@link File} to
      * {@link HttpServletResponse#getOutputStream()}.
      *
      * @param file
      *            The {@link File}.
+     * @param req
+     *            The {@link HttpServletRequest}.
      * @param resp
      *            The {@link HttpServletResponse}.
      * @param attachmentFilename
      *            The file attachment name.
+     * @param contentType
+     *            The content type.
+     * @param fingerprint
+     *            Fingerprint of the file content, used as ETag.
      * @throws IOException
      *             When IO error.
      */
     private static void onDownloadFile(final File file,
-            final HttpServletResponse resp, final String attachmentFilename)
-            throws IOException {
+            final HttpServletRequest req, final HttpServletResponse resp,
+            final String attachmentFilename, final String contentType,
+            final String fingerprint) throws IOException {
+
+        final String etag = String.format("\"%s\"", fingerprint);
+
+        resp.setHeader("ETag", etag);
+        resp.setHeader("Accept-Ranges", "bytes");
+        resp.setDateHeader("Last-Modified", file.lastModified());
+
+        if (etag.equals(req.getHeader("If-None-Match"))) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        final long fileLength = file.length();
+
+        /*
+         * A range is honored if the If-Range validator (if any) matches.
+         */
+        final String ifRange = req.getHeader("If-Range");
+
+        final long[] range;
+
+        if (ifRange == null || ifRange.equals(etag)) {
+            range = parseRange(req.getHeader("Range"), fileLength);
+        } else {
+            range = null;
+        }
+
+        if (range != null && range.length == 0) {
+            resp.setHeader("Content-Range",
+                    String.format("bytes */%d", fileLength));
+            resp.setStatus(
+                    HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        final long position;
+        final long count;
+
+        if (range == null) {
+            position = 0;
+            count = fileLength;
+            resp.setStatus(HttpServletResponse.SC_OK);
+        } else {
+            position = range[0];
+            count = range[1] - range[0] + 1;
+            resp.setHeader("Content-Range", String.format("bytes %d-%d/%d",
+                    range[0], range[1], fileLength));
+            resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        }
 
         /*
-         * Before streaming content, set content characteristics.
+         * Before sending content, set content characteristics.
          */
         resp.setHeader("Content-Disposition", String
                 .format("attachment; filename=\"%s\"", attachmentFilename));
 
-        resp.setContentType(getContentType(file));
-        resp.setContentLength((int) file.length());
+        resp.setContentType(contentType);
+        resp.setContentLengthLong(count);
 
-        //
-        try (InputStream istr = new FileInputStream(file);) {
+        if (count == 0) {
+            return;
+        }
 
-            final OutputStream ostr = resp.getOutputStream();
+        try (FileChannel channel =
+                FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
 
-            final byte[] aByte = new byte[BUFFER_SIZE];
+            final WritableByteChannel target =
+                    Channels.newChannel(resp.getOutputStream());
 
-            int nBytes = istr.read(aByte);
+            long offset = position;
+            long remaining = count;
 
-            while (-1 < nBytes) {
-                ostr.write(aByte, 0, nBytes);
-                nBytes = istr.read(aByte);
+            while (remaining > 0) {
+                final long nBytes =
+                        channel.transferTo(offset, remaining, target);
+                if (nBytes <= 0) {
+                    // File was truncated.
+                    break;
+                }
+                offset += nBytes;
+                remaining -= nBytes;
             }
+        }
+    }
 
-            resp.setStatus(HttpServletResponse.SC_OK);
+    /**
+     * Parses a single byte range.
+     *
+     * @param rangeHeader
+     *            The Range header value, can be {@code null}.
+     * @param length
+     *            The content length.
+     * @return {@code null} when the whole content must be sent, an empty
+     *         array when the range is not satisfiable, or the first and last
+     *         byte position.
+     */
+    private static long[] parseRange(final String rangeHeader,
+            final long length) {
+
+        if (rangeHeader == null || !rangeHeader.startsWith(RANGE_BYTES_PFX)) {
+            return null;
+        }
+
+        final String spec =
+                rangeHeader.substring(RANGE_BYTES_PFX.length()).trim();
+
+        // Multiple ranges are not supported: send whole content.
+        if (spec.contains(",")) {
+            return null;
         }
+
+        final int iDash = spec.indexOf('-');
+
+        if (iDash < 0) {
+            return null;
+        }
+
+        final String first = spec.substring(0, iDash).trim();
+        final String last = spec.substring(iDash + 1).trim();
+
+        final long start;
+        final long end;
+
+        try {
+            if (first.isEmpty()) {
+                // Suffix range: last n bytes.
+                final long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                if (last.isEmpty()) {
+                    end = length - 1;
+                } else {
+                    end = Math.min(Long.parseLong(last), length - 1);
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (start >= length || start > end) {
+            return new long[0];
+        }
+        return new long[] { start, end };
     }
 
     /**
-     * Handles download request of a directory by streaming zip {@link File}
-     * with directory content to {@link HttpServletResponse#getOutputStream()}.
+     * Handles download request of a directory by sending the zip
+     * {@link File} with directory content to
+     * {@link HttpServletResponse#getOutputStream()}.
      *
      * @param dir
      *            The directory {@link File} to download as zip file.
+     * @param req
+     *            The {@link HttpServletRequest}.
      * @param resp
      *            The {@link HttpServletResponse}.
-     * @return The zip {@link File}, fully streamed to the
-     *         {@link HttpServletResponse#getOutputStream()}.
      * @throws IOException
      *             When IO error.
      */
-    private static File onDownloadZippedDir(final File dir,
-            final HttpServletResponse resp) throws IOException {
-
-        final File zipFile =
-                FileSystems.getDefault().getPath(ConfigManager.getAppTmpDir(),
-                        UUID.randomUUID().toString()).toFile();
+    private static void onDownloadZippedDir(final File dir,
+            final HttpServletRequest req, final HttpServletResponse resp)
+            throws IOException {
 
         final File clientDir = new File(ConfigManager.getClientHome());
 
-        try (ZipOutputStream zostr =
-                new ZipOutputStream(new FileOutputStream(zipFile));) {
-            addDir(clientDir, dir, zostr);
-        }
+        final ZipBundle bundle = acquireZipBundle(clientDir, dir);
 
         final StringBuilder attachmentFilename = new StringBuilder();
 
@@ -203,9 +436,157 @@ public final class ClientFileDownloadServlet extends HttpServlet {
 
         attachmentFilename.append(".zip");
 
-        onDownloadFile(zipFile, resp, attachmentFilename.toString());
+        try {
+            onDownloadFile(bundle.file, req, resp,
+                    attachmentFilename.toString(), WebApplication.get()
+                            .getMimeType(attachmentFilename.toString()),
+                    bundle.fingerprint);
+        } finally {
+            bundle.release();
+        }
+    }
+
+    /**
+     * Acquires the up-to-date zip bundle of a directory, building it when
+     * absent or when the directory content changed. The caller must
+     * {@link ZipBundle#release()} the bundle when done.
+     *
+     * @param clientDir
+     *            The client directory.
+     * @param dir
+     *            The directory.
+     * @return The acquired {@link ZipBundle}.
+     * @throws IOException
+     *             When IO error.
+     */
+    private static ZipBundle acquireZipBundle(final File clientDir,
+            final File dir) throws IOException {
+
+        final String key = dir.getCanonicalPath();
+        final String fingerprint = fingerprint(dir);
+
+        ZipBundle bundle = ZIP_BUNDLES.get(key);
+
+        if (bundle != null && bundle.isValid(fingerprint)
+                && bundle.acquire()) {
+            return bundle;
+        }
+
+        synchronized (ZIP_BUILD_LOCKS.computeIfAbsent(key, k -> new Object())) {
+
+            bundle = ZIP_BUNDLES.get(key);
+
+            if (bundle != null && bundle.isValid(fingerprint)
+                    && bundle.acquire()) {
+                return bundle;
+            }
+
+            final ZipBundle built = new ZipBundle(fingerprint,
+                    createZip(clientDir, dir, fingerprint));
+            built.acquire();
+
+            final ZipBundle replaced = ZIP_BUNDLES.put(key, built);
+
+            if (replaced != null) {
+                replaced.retire();
+            }
+            return built;
+        }
+    }
+
+    /**
+     * Creates the zip file of a directory.
+     *
+     * @param clientDir
+     *            The client directory.
+     * @param dir
+     *            The directory.
+     * @param fingerprint
+     *            Fingerprint of the directory content.
+     * @return The zip file.
+     * @throws IOException
+     *             When IO error.
+     */
+    private static File createZip(final File clientDir, final File dir,
+            final String fingerprint) throws IOException {
+
+        /*
+         * A unique name, so a retired zip file with the same fingerprint is
+         * never overwritten while still in use.
+         */
+        final Path zipPath = FileSystems.getDefault().getPath(
+                ConfigManager.getAppTmpDir(), String.format("client-%s-%s.zip",
+                        fingerprint, UUID.randomUUID().toString()));
+
+        boolean isCreated = false;
+
+        try {
+            try (ZipOutputStream zostr = new ZipOutputStream(
+                    new FileOutputStream(zipPath.toFile()));) {
+                addDir(clientDir, dir, zostr);
+            }
+            isCreated = true;
+        } finally {
+            if (!isCreated) {
+                Files.deleteIfExists(zipPath);
+            }
+        }
+
+        return zipPath.toFile();
+    }
+
+    /**
+     * Creates a fingerprint of a file or directory tree from the path, size
+     * and last modification time of its files.
+     *
+     * @param file
+     *            The file or directory.
+     * @return The fingerprint as hex string.
+     * @throws IOException
+     *             When IO error.
+     */
+    private static String fingerprint(final File file) throws IOException {
+
+        final MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        addFingerprint(digest, file);
+
+        return String.format("%040x", new BigInteger(1, digest.digest()));
+    }
+
+    /**
+     * Adds a file or directory tree to a fingerprint digest.
+     *
+     * @param digest
+     *            The digest.
+     * @param file
+     *            The file or directory.
+     */
+    private static void addFingerprint(final MessageDigest digest,
+            final File file) {
+
+        if (file.isDirectory()) {
+
+            final File[] files = file.listFiles();
+
+            if (files != null) {
+                Arrays.sort(files);
+                for (final File child : files) {
+                    addFingerprint(digest, child);
+                }
+            }
+            return;
+        }
 
-        return zipFile;
+        digest.update(String.format("%s|%d|%d\n", file.getAbsolutePath(),
+                file.length(), file.lastModified())
+                .getBytes(StandardCharsets.UTF_8));
     }
 
     /**
@@ -24,12 +24,20 @@
  */
 package org.savapage.server;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
 import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.GZIPOutputStream;
 
-import javax.net.ssl.SSLContext;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -37,15 +45,18 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.EnumUtils;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.wicket.protocol.http.WebApplication;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.request.resource.IResource;
+import org.apache.wicket.request.resource.ResourceReference;
+import org.apache.wicket.request.resource.caching.IStaticCacheableResource;
+import org.apache.wicket.request.resource.caching.ResourceUrl;
+import org.apache.wicket.util.resource.IResourceStream;
+import org.apache.wicket.util.resource.ResourceStreamNotFoundException;
 import org.savapage.core.config.ConfigManager;
 import org.savapage.core.config.ServerBasePath;
 import org.savapage.core.util.IOHelper;
-import org.savapage.core.util.InetUtils;
 import org.savapage.server.pages.LibreJsHelper;
 import org.savapage.server.pages.LibreJsLicenseEnum;
 import org.slf4j.Logger;
@@ -53,6 +64,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Adds GNU LibreJS license tags to external (thirdparty) Javascript files.
+ * <p>
+ * Wicket JavaScript resources are read in-process from the Wicket resource
+ * reference registry. Wrapped content is cached in memory per resource,
+ * license and application build, together with its gzip variant. Each variant
+ * has its own strong ETag.
+ * </p>
  *
  * @author Rijk Ravestein
  *
@@ -68,13 +85,21 @@ public final class LibreJsLicenseServlet extends HttpServlet {
     private static final Logger LOGGER =
             LoggerFactory.getLogger(LibreJsLicenseServlet.class);
 
-    /** */
-    private static final SSLContext SSLCONTEXT_TRUST_SELFSIGNED =
-            InetUtils.createSslContextTrustSelfSigned();
     /**
      * .
      */
-    private static final int BUFFER_SIZE = 1014;
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Max bytes of cached content (plain and gzip).
+     */
+    private static final long CACHE_MAX_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Path of Wicket resources (with leading and trailing '/').
+     */
+    private static final String WICKET_RESOURCE_PATH =
+            WebApp.WICKET_PATH_FULL_SLASHES + "resource/";
 
     /**
      * Base path of the files (without leading or trailing '/').
@@ -96,6 +121,91 @@ public final class LibreJsLicenseServlet extends HttpServlet {
      */
     public static final String CONTENT_HOME = ConfigManager.getServerHome();
 
+    /**
+     * GNU LibreJS wrapped content.
+     */
+    private static final class WrappedContent {
+
+        /** */
+        private final byte[] plain;
+
+        /**
+         * Gzip compressed content, or {@code null} when compression does not
+         * pay off.
+         */
+        private final byte[] gzip;
+
+        /**
+         * Strong ETag of the plain content.
+         */
+        private final String etag;
+
+        /**
+         * Strong ETag of the gzip content, or {@code null} when there is no
+         * gzip content.
+         */
+        private final String etagGzip;
+
+        /**
+         * @param content
+         *            Wrapped content.
+         * @throws IOException
+         *             If IO error.
+         */
+        WrappedContent(final byte[] content) throws IOException {
+
+            this.plain = content;
+
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzos = new GZIPOutputStream(bos)) {
+                gzos.write(content);
+            }
+            if (bos.size() < content.length) {
+                this.gzip = bos.toByteArray();
+            } else {
+                this.gzip = null;
+            }
+
+            final String digest;
+            try {
+                digest = String.format("%040x", new BigInteger(1,
+                        MessageDigest.getInstance("SHA-1").digest(content)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+
+            this.etag = String.format("\"%s\"", digest);
+
+            if (this.gzip == null) {
+                this.etagGzip = null;
+            } else {
+                this.etagGzip = String.format("\"%s-gz\"", digest);
+            }
+        }
+
+        /**
+         * @return Number of cached bytes.
+         */
+        long size() {
+            if (this.gzip == null) {
+                return this.plain.length;
+            }
+            return this.plain.length + this.gzip.length;
+        }
+    }
+
+    /**
+     * Wrapped content by cache key, in access order. Guarded by
+     * {@code CACHE}.
+     */
+    private static final LinkedHashMap<String, WrappedContent> CACHE =
+            new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * Total bytes in {@link #CACHE}. Guarded by {@code CACHE}.
+     */
+    private static long cacheBytes;
+
     @Override
     protected void doGet(final HttpServletRequest req,
             final HttpServletResponse resp)
@@ -114,138 +224,293 @@ public final class LibreJsLicenseServlet extends HttpServlet {
                     String.format("%s : GNU LibreJS license missing.", reqURL));
         }
 
-        final byte[] licenceStart =
-                LibreJsHelper.getJsLicenseStartTag(libreLicense).getBytes();
-        final byte[] licenceEnd = LibreJsHelper.getJsLicenseEndTag().getBytes();
+        final String unwrappedPath =
+                new URL(unwrappedURL.toString()).getPath();
 
-        resp.setContentType(WebApplication.get().getMimeType(reqURL));
+        final String cacheKey = String.format("%s|%s|%s", libreLicense,
+                ConfigManager.getAppVersionBuild(), unwrappedPath);
+
+        WrappedContent content = getCached(cacheKey);
 
-        final URL urlUnwrapped = new URL(unwrappedURL.toString());
+        if (content == null) {
 
-        final OutputStream ostr = resp.getOutputStream();
+            final byte[] unwrapped;
 
-        if (this.isWrappedWicketJs(req)) {
+            if (this.isWrappedWicketJs(req)) {
+                unwrapped = getWicketResource(unwrappedPath);
+            } else {
+                unwrapped = getServletResource(unwrappedPath);
+            }
+
+            if (unwrapped == null) {
+                resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            content = new WrappedContent(wrap(unwrapped, libreLicense));
+            putCached(cacheKey, content);
+        }
 
-            this.writeFromLocalHost(resp, urlUnwrapped.getPath(), ostr,
-                    licenceStart, licenceEnd);
+        final boolean useGzip = content.gzip != null && StringUtils
+                .contains(req.getHeader("Accept-Encoding"), "gzip");
 
+        final String etag;
+        if (useGzip) {
+            etag = content.etagGzip;
         } else {
-            final InputStream istr = this.getServletContext()
-                    .getResourceAsStream(urlUnwrapped.getPath());
-            this.write(istr, ostr, licenceStart, licenceEnd);
-            /*
-             * Do not set contentlength. Rely on close of OutputStream. When no
-             * Content-Length is received, the client keeps reading until the
-             * server closes the connection.
-             */
+            etag = content.etag;
+        }
+
+        resp.setContentType(WebApplication.get().getMimeType(reqURL));
+        resp.setHeader("ETag", etag);
+        resp.setHeader("Vary", "Accept-Encoding");
+
+        if (etag.equals(req.getHeader("If-None-Match"))) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        final byte[] body;
+
+        if (useGzip) {
+            resp.setHeader("Content-Encoding", "gzip");
+            body = content.gzip;
+        } else {
+            body = content.plain;
         }
 
         resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentLength(body.length);
+        resp.getOutputStream().write(body);
     }
 
     /**
-     * Writes GNU LibreJS wrapped JavaScript from input to output stream.
+     * @param key
+     *            Cache key.
+     * @return Cached content, or {@code null} when not found.
+     */
+    private static WrappedContent getCached(final String key) {
+        synchronized (CACHE) {
+            return CACHE.get(key);
+        }
+    }
+
+    /**
+     * Caches content, evicting least recently used content when cache is
+     * full.
+     *
+     * @param key
+     *            Cache key.
+     * @param content
+     *            Content.
+     */
+    private static void putCached(final String key,
+            final WrappedContent content) {
+
+        if (content.size() > CACHE_MAX_BYTES) {
+            return;
+        }
+
+        synchronized (CACHE) {
+
+            final WrappedContent prev = CACHE.put(key, content);
+
+            if (prev != null) {
+                cacheBytes -= prev.size();
+            }
+            cacheBytes += content.size();
+
+            final Iterator<WrappedContent> iter = CACHE.values().iterator();
+
+            while (cacheBytes > CACHE_MAX_BYTES && iter.hasNext()) {
+                final WrappedContent eldest = iter.next();
+                if (eldest != content) {
+                    cacheBytes -= eldest.size();
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Wraps JavaScript in GNU LibreJS license tags.
+     *
+     * @param unwrapped
+     *            Unwrapped JavaScript.
+     * @param license
+     *            License.
+     * @return GNU LibreJS wrapped JavaScript.
+     */
+    private static byte[] wrap(final byte[] unwrapped,
+            final LibreJsLicenseEnum license) {
+
+        final byte[] licenceStart =
+                LibreJsHelper.getJsLicenseStartTag(license).getBytes();
+        final byte[] licenceEnd = LibreJsHelper.getJsLicenseEndTag().getBytes();
+
+        final byte[] wrapped = new byte[licenceStart.length + unwrapped.length
+                + licenceEnd.length];
+
+        System.arraycopy(licenceStart, 0, wrapped, 0, licenceStart.length);
+        System.arraycopy(unwrapped, 0, wrapped, licenceStart.length,
+                unwrapped.length);
+        System.arraycopy(licenceEnd, 0, wrapped,
+                licenceStart.length + unwrapped.length, licenceEnd.length);
+
+        return wrapped;
+    }
+
+    /**
+     * Reads input stream and closes it.
      *
      * @param istr
      *            Input stream.
-     * @param ostr
-     *            Output stream.
-     * @param licenceStart
-     *            GNU LibreJS License start tag.
-     * @param licenceEnd
-     *            GNU LibreJS License end tag.
+     * @return The bytes read.
      * @throws IOException
      *             If IO error.
      */
-    private void write(final InputStream istr, final OutputStream ostr,
-            final byte[] licenceStart, final byte[] licenceEnd)
-            throws IOException {
+    private static byte[] read(final InputStream istr) throws IOException {
 
         try {
-            ostr.write(licenceStart);
-
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
             final byte[] aByte = new byte[BUFFER_SIZE];
 
             int nBytes = istr.read(aByte);
             while (-1 < nBytes) {
-                ostr.write(aByte, 0, nBytes);
+                bos.write(aByte, 0, nBytes);
                 nBytes = istr.read(aByte);
             }
-
-            ostr.write(licenceEnd);
+            return bos.toByteArray();
         } finally {
             IOHelper.closeQuietly(istr);
         }
     }
 
     /**
-     * @param req
-     *            Servlet request.
-     * @return {@code true} if this is a GNU LibreJS wrapped Wicket JavaScript
-     *         resource.
+     * @param path
+     *            Path of web application file.
+     * @return File content, or {@code null} when not found.
+     * @throws IOException
+     *             If IO error.
      */
-    private boolean isWrappedWicketJs(final HttpServletRequest req) {
-        return req.getRequestURI().contains(WebApp.WICKET_PATH_FULL_SLASHES);
+    private byte[] getServletResource(final String path) throws IOException {
+
+        final InputStream istr =
+                this.getServletContext().getResourceAsStream(path);
+
+        if (istr == null) {
+            return null;
+        }
+        return read(istr);
     }
 
     /**
-     * Writes unwrapped GNU LibreJS JavaScript from localhost URL to output
-     * stream.
+     * Gets the content of a Wicket package resource from the
+     * {@link org.apache.wicket.request.resource.ResourceReferenceRegistry}.
      *
-     * @param resp
-     *            HTTP response.
      * @param unwrappedPath
-     *            Unwrapped Path.
-     * @param ostr
-     *            Output stream.
-     * @param licenceStart
-     *            GNU LibreJS License start tag.
-     * @param licenceEnd
-     *            GNU LibreJS License end tag.
+     *            Unwrapped path, like
+     *            {@code /wicket/resource/<scope>/<name-ver-nnn>.js}.
+     * @return Resource content, or {@code null} when not found.
      * @throws IOException
      *             If IO error.
      */
-    private void writeFromLocalHost(final HttpServletResponse resp,
-            final String unwrappedPath, final OutputStream ostr,
-            final byte[] licenceStart, final byte[] licenceEnd)
+    private static byte[] getWicketResource(final String unwrappedPath)
             throws IOException {
 
-        final HttpClientBuilder builder = HttpClientBuilder.create();
-        final URL localhostURL;
+        final int iPath = unwrappedPath.indexOf(WICKET_RESOURCE_PATH);
+
+        if (iPath < 0) {
+            return null;
+        }
 
-        if (WebServer.isSSLRedirect()) {
-            // Shortcut to SSL and set trust precautions.
-            localhostURL = new URL("https", InetUtils.LOCAL_HOST,
-                    Integer.parseInt(ConfigManager.getServerSslPort()),
-                    unwrappedPath);
+        final String[] segments = StringUtils.split(unwrappedPath
+                .substring(iPath + WICKET_RESOURCE_PATH.length()), '/');
 
-            builder.setSSLContext(SSLCONTEXT_TRUST_SELFSIGNED)
-                    .setSSLHostnameVerifier(
-                            InetUtils.getHostnameVerifierTrustAll());
-        } else {
-            localhostURL = new URL("http", InetUtils.LOCAL_HOST,
-                    Integer.parseInt(ConfigManager.getServerPort()),
-                    unwrappedPath);
+        if (segments.length < 2) {
+            return null;
         }
 
-        try (CloseableHttpClient client = builder.build();) {
+        final WebApplication app = WebApplication.get();
 
-            final HttpGet request = new HttpGet(localhostURL.toString());
+        /*
+         * Remove version from file name, as decorated by the resource caching
+         * strategy.
+         */
+        final ResourceUrl resourceUrl = new ResourceUrl(
+                decode(segments[segments.length - 1]), new PageParameters());
 
-            try {
-                final HttpResponse response = client.execute(request);
-                final InputStream istr = response.getEntity().getContent();
-                this.write(istr, ostr, licenceStart, licenceEnd);
-
-            } finally {
-                // Mantis #487: release the connection.
-                if (request != null) {
-                    request.reset();
-                }
-            }
+        app.getResourceSettings().getCachingStrategy()
+                .undecorateUrl(resourceUrl);
+
+        final StringBuilder name = new StringBuilder();
+
+        for (int i = 1; i < segments.length - 1; i++) {
+            name.append(decode(segments[i])).append('/');
+        }
+        name.append(resourceUrl.getFileName());
+
+        final Class<?> scope;
+
+        try {
+            scope = app.getApplicationSettings().getClassResolver()
+                    .resolveClass(decode(segments[0]));
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+
+        final ResourceReference ref =
+                app.getResourceReferenceRegistry().getResourceReference(scope,
+                        name.toString(), null, null, null, false, true);
+
+        if (ref == null) {
+            return null;
+        }
+
+        final IResource resource = ref.getResource();
+
+        if (!(resource instanceof IStaticCacheableResource)) {
+            return null;
+        }
+
+        final IResourceStream stream =
+                ((IStaticCacheableResource) resource).getResourceStream();
+
+        if (stream == null) {
+            return null;
+        }
+
+        try {
+            return read(stream.getInputStream());
+        } catch (ResourceStreamNotFoundException e) {
+            return null;
+        } finally {
+            stream.close();
         }
     }
 
+    /**
+     * @param segment
+     *            URL path segment.
+     * @return Decoded segment.
+     * @throws UnsupportedEncodingException
+     *             If encoding is not supported.
+     */
+    private static String decode(final String segment)
+            throws UnsupportedEncodingException {
+        return URLDecoder.decode(segment, StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * @param req
+     *            Servlet request.
+     * @return {@code true} if this is a GNU LibreJS wrapped Wicket JavaScript
+     *         resource.
+     */
+    private boolean isWrappedWicketJs(final HttpServletRequest req) {
+        return req.getRequestURI().contains(WebApp.WICKET_PATH_FULL_SLASHES);
+    }
+
     /**
      * Unwraps original URL path into GNU LibreJS license path.
      *
@@ -0,0 +1,124 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletSecurityElement;
+import javax.servlet.annotation.ServletSecurity;
+import javax.servlet.annotation.WebInitParam;
+import javax.servlet.annotation.WebServlet;
+
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.webapp.WebAppContext;
+import org.savapage.server.callback.CallbackServlet;
+import org.savapage.server.ext.papercut.ExtPaperCutSyncServlet;
+import org.savapage.server.feed.AtomFeedServlet;
+import org.savapage.server.jsonrpc.JsonRpcServlet;
+import org.savapage.server.xmlrpc.SpXmlRpcServlet;
+
+/**
+ * Index of the {@link WebServlet} and {@code WebListener} annotated classes
+ * of this Web App, as alternative for classpath scanning by Jetty
+ * {@code AnnotationConfiguration}.
+ * <p>
+ * <b>Note</b>: a class annotated with {@link WebServlet} must be added to
+ * {@link #SERVLETS}.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+final class ServletAnnotationIndex {
+
+    /**
+     * The {@link WebServlet} annotated classes.
+     */
+    private static final List<Class<? extends Servlet>> SERVLETS =
+            Collections.unmodifiableList(Arrays.asList(
+                    //
+                    AtomFeedServlet.class, //
+                    CallbackServlet.class, //
+                    ClientFileDownloadServlet.class, //
+                    CustomWebServlet.class, //
+                    DocumentationServlet.class, //
+                    ExtPaperCutSyncServlet.class, //
+                    JsonRpcServlet.class, //
+                    LibreJsLicenseServlet.class, //
+                    SpXmlRpcServlet.class));
+
+    /** */
+    private ServletAnnotationIndex() {
+    }
+
+    /**
+     * Registers the indexed servlets and listeners, applying their
+     * annotations.
+     *
+     * @param context
+     *            The Web App context.
+     */
+    static void apply(final WebAppContext context) {
+
+        for (final Class<? extends Servlet> clazz : SERVLETS) {
+
+            final WebServlet webServlet =
+                    clazz.getAnnotation(WebServlet.class);
+
+            final ServletHolder holder =
+                    new ServletHolder(webServlet.name(), clazz);
+
+            for (final WebInitParam parm : webServlet.initParams()) {
+                holder.setInitParameter(parm.name(), parm.value());
+            }
+            holder.setInitOrder(webServlet.loadOnStartup());
+            holder.setAsyncSupported(webServlet.asyncSupported());
+
+            final String[] urlPatterns;
+            if (webServlet.urlPatterns().length > 0) {
+                urlPatterns = webServlet.urlPatterns();
+            } else {
+                urlPatterns = webServlet.value();
+            }
+
+            for (final String urlPattern : urlPatterns) {
+                context.addServlet(holder, urlPattern);
+            }
+
+            final ServletSecurity security =
+                    clazz.getAnnotation(ServletSecurity.class);
+
+            if (security != null) {
+                context.setServletSecurity(holder.getRegistration(),
+                        new ServletSecurityElement(security));
+            }
+        }
+
+        context.addEventListener(new SpContextListener());
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.savapage.core.ipp.operation.IppOperationContext;
+import org.savapage.server.jsonrpc.JsonRpcServlet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bulkhead for the shared Jetty thread pool: limits the number of threads a
+ * traffic class may occupy, so a flood of print jobs can not starve the Web
+ * App UI and vice versa.
+ * <p>
+ * A request that exceeds the limit of its class is rejected with HTTP 503 and
+ * a {@code Retry-After} header. IPP clients (like CUPS) retry such a request.
+ * </p>
+ * <p>
+ * Note: threads are counted while the request is handled. A suspended
+ * (asynchronous) request, like a CometD long-poll, does not occupy a thread
+ * and is not counted.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class TrafficClassHandler extends HandlerWrapper {
+
+    /**
+     * Traffic classes.
+     */
+    public enum TrafficClassEnum {
+        /** IPP print jobs and Web Print uploads. */
+        IPP("ipp"),
+        /** CometD. */
+        COMETD("cometd"),
+        /** JSON API and JSON-RPC. */
+        API("api"),
+        /** Other Web App traffic. */
+        WEB("web");
+
+        /** */
+        private final String id;
+
+        /**
+         * @param id
+         *            Identifier used in properties and logging.
+         */
+        TrafficClassEnum(final String id) {
+            this.id = id;
+        }
+
+        /**
+         * @return Identifier used in properties and logging.
+         */
+        public String getId() {
+            return id;
+        }
+    }
+
+    /**
+     * Saturation metrics of a traffic class.
+     */
+    public static final class Stats {
+
+        /**
+         * Max concurrent threads. Zero (0) is unlimited.
+         */
+        private final int limit;
+
+        /** */
+        private final AtomicInteger active = new AtomicInteger();
+
+        /** */
+        private final AtomicInteger peak = new AtomicInteger();
+
+        /** */
+        private final AtomicLong total = new AtomicLong();
+
+        /** */
+        private final AtomicLong rejected = new AtomicLong();
+
+        /**
+         * @param max
+         *            Max concurrent threads. Zero (0) is unlimited.
+         */
+        private Stats(final int max) {
+            this.limit = max;
+        }
+
+        /**
+         * @return {@code true} when acquired, {@code false} when limit is
+         *         reached.
+         */
+        private boolean acquire() {
+            final int count = this.active.incrementAndGet();
+            if (this.limit > 0 && count > this.limit) {
+                this.active.decrementAndGet();
+                this.rejected.incrementAndGet();
+                return false;
+            }
+            this.total.incrementAndGet();
+            this.peak.accumulateAndGet(count, Math::max);
+            return true;
+        }
+
+        /** */
+        private void release() {
+            this.active.decrementAndGet();
+        }
+
+        /**
+         * @return Max concurrent threads. Zero (0) is unlimited.
+         */
+        public int getLimit() {
+            return limit;
+        }
+
+        /**
+         * @return Number of threads handling a request.
+         */
+        public int getActive() {
+            return active.get();
+        }
+
+        /**
+         * @return Peak number of threads handling a request.
+         */
+        public int getPeak() {
+            return peak.get();
+        }
+
+        /**
+         * @return Total number of handled requests.
+         */
+        public long getTotal() {
+            return total.get();
+        }
+
+        /**
+         * @return Number of rejected requests.
+         */
+        public long getRejected() {
+            return rejected.get();
+        }
+    }
+
+    /** */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(TrafficClassHandler.class);
+
+    /**
+     * Seconds a rejected client is asked to wait.
+     */
+    private static final String RETRY_AFTER_SECS = "5";
+
+    /**
+     * Metrics of the active handler.
+     */
+    private static volatile Map<TrafficClassEnum, Stats> theStats =
+            new EnumMap<>(TrafficClassEnum.class);
+
+    /** */
+    private final Map<TrafficClassEnum, Stats> stats;
+
+    /**
+     * @param limits
+     *            Max concurrent threads per traffic class. Zero (0), or
+     *            absent, is unlimited.
+     */
+    public TrafficClassHandler(final Map<TrafficClassEnum, Integer> limits) {
+        this.stats = new EnumMap<>(TrafficClassEnum.class);
+        for (final TrafficClassEnum tc : TrafficClassEnum.values()) {
+            this.stats.put(tc,
+                    new Stats(limits.getOrDefault(tc, 0).intValue()));
+        }
+        theStats = this.stats;
+    }
+
+    /**
+     * @param tc
+     *            Traffic class.
+     * @return The metrics, or {@code null} when handler is not active.
+     */
+    public static Stats getStats(final TrafficClassEnum tc) {
+        return theStats.get(tc);
+    }
+
+    /**
+     * @param request
+     *            The request.
+     * @return The traffic class.
+     */
+    private static TrafficClassEnum
+            classify(final HttpServletRequest request) {
+
+        final String contentType = request.getContentType();
+
+        if (contentType != null && contentType
+                .equalsIgnoreCase(IppOperationContext.CONTENT_TYPE_IPP)) {
+            return TrafficClassEnum.IPP;
+        }
+
+        final String uri = request.getRequestURI();
+
+        if (uri.startsWith(WebApp.MOUNT_PATH_COMETD)) {
+            return TrafficClassEnum.COMETD;
+        }
+        if (uri.startsWith(WebApp.MOUNT_PATH_API)
+                || uri.startsWith(JsonRpcServlet.URL_PATTERN_BASE)) {
+            return TrafficClassEnum.API;
+        }
+        if (uri.startsWith(WebApp.MOUNT_PATH_UPLOAD_WEBPRINT)) {
+            return TrafficClassEnum.IPP;
+        }
+        return TrafficClassEnum.WEB;
+    }
+
+    @Override
+    public void handle(final String target, final Request baseRequest,
+            final HttpServletRequest request,
+            final HttpServletResponse response)
+            throws IOException, ServletException {
+
+        final TrafficClassEnum tc = classify(request);
+        final Stats tcStats = this.stats.get(tc);
+
+        if (!tcStats.acquire()) {
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("[{}] limit [{}] reached: [{}] rejected.",
+                        tc.getId(), tcStats.getLimit(),
+                        request.getRequestURI());
+            }
+
+            baseRequest.setHandled(true);
+            response.setHeader(HttpHeader.RETRY_AFTER.asString(),
+                    RETRY_AFTER_SECS);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        try {
+            super.handle(target, baseRequest, request, response);
+        } finally {
+            tcStats.release();
+        }
+    }
+}
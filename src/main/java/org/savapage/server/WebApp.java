@@ -27,18 +27,19 @@ package org.savapage.server;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.wicket.Session;
 import org.apache.wicket.core.request.mapper.MountedMapper;
 import org.apache.wicket.markup.head.CssHeaderItem;
@@ -75,7 +76,6 @@ import org.savapage.core.services.helpers.ThirdPartyEnum;
 import org.savapage.core.services.helpers.UserAuth;
 import org.savapage.core.services.helpers.UserAuthModeEnum;
 import org.savapage.core.util.AppLogHelper;
-import org.savapage.core.util.DateUtil;
 import org.savapage.core.util.LocaleHelper;
 import org.savapage.core.util.Messages;
 import org.savapage.ext.oauth.OAuthProviderEnum;
@@ -85,9 +85,15 @@ import org.savapage.ext.payment.PaymentMethodEnum;
 import org.savapage.ext.payment.bitcoin.BitcoinGateway;
 import org.savapage.lib.pgp.pdf.PdfPgpVerifyUrl;
 import org.savapage.server.api.JsonApiServer;
+import org.savapage.server.auth.WebAppUserAuthManager;
+import org.savapage.server.cluster.ClusterStateManager;
 import org.savapage.server.cometd.AbstractEventService;
+import org.savapage.server.cometd.ProxyPrintEventService;
+import org.savapage.server.cometd.RfidEventBus;
+import org.savapage.server.cometd.UserHomeWatcher;
 import org.savapage.server.dropzone.PdfPgpDropZoneResourceReference;
 import org.savapage.server.dropzone.WebPrintDropZoneResourceReference;
+import org.savapage.server.dropzone.WebPrintUploadManager;
 import org.savapage.server.ext.ServerPluginManager;
 import org.savapage.server.img.ImageServer;
 import org.savapage.server.ios.WebClipServer;
@@ -99,7 +105,9 @@ import org.savapage.server.pages.MarkupHelper;
 import org.savapage.server.pages.admin.AbstractAdminPage;
 import org.savapage.server.pages.printsite.AbstractPrintSitePage;
 import org.savapage.server.pages.user.AbstractUserPage;
+import org.savapage.server.raw.RawPrintEngineEnum;
 import org.savapage.server.raw.RawPrintServer;
+import org.savapage.server.session.AuthSessionRegistry;
 import org.savapage.server.session.SpSession;
 import org.savapage.server.webapp.CustomStringResourceLoader;
 import org.savapage.server.webapp.OAuthRedirectPage;
@@ -233,9 +241,10 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
     private static final String MOUNT_PATH_WEBAPP_PRINTSITE = "/printsite";
 
     /**
-     * Used in this class to set mountPage().
+     * Used in this class to set mountPage(), and by
+     * {@link TrafficClassHandler}.
      */
-    private static final String MOUNT_PATH_API = "/api";
+    public static final String MOUNT_PATH_API = "/api";
 
     /**
      * Mount path for WebPrint drop zone.
@@ -279,79 +288,35 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
      */
     public static final String FILENAME_WEB_PROPERTIES = "web.properties";
 
-    /** */
-    private static Properties theServerProps = new Properties();
-
-    /** */
-    private static Properties theWebProps = new Properties();
-
-    /** */
-    private static final Logger LOGGER = LoggerFactory.getLogger(WebApp.class);
-
-    /** */
-    private static final Object MUTEX_DICT = new Object();
-
-    /**
-     * Map of IP-address (key) with the most recent User (value) of an active
-     * authenticated WebApp Session.
-     */
-    private static Map<String, String> theMapIpAddr2RecentUser =
-            new HashMap<>();
-
-    /**
-     * Map of IP-address (key) and active authenticated WebApp Sessions (value).
-     */
-    private static Map<String, Set<String>> theMapIpAddr2Sessions =
-            new HashMap<>();
-
-    /**
-     * Map of SessionId (key) with IP-address (value) of an active authenticated
-     * WebApp Session.
-     */
-    private static Map<String, String> theMapSession2IpAddr = new HashMap<>();
-
     /**
-     * Map of SessionId (key) with User (value) of an active authenticated User
-     * WebApp Session.
+     * Server property key for the {@link RawPrintEngineEnum} of the IP Print
+     * Server.
      */
-    private static Map<String, WebAppTypeEnum> theMapSession2WebAppType =
-            new HashMap<>();
+    private static final String SERVER_PROP_PRINTER_RAW_ENGINE =
+            "printer.raw.engine";
 
     /**
-     * Map of SessionId (key) with User (value) of an active authenticated User
-     * WebApp Session.
+     * Server property key for the maximum queue length of incoming IP Print
+     * connection requests.
      */
-    private static Map<String, String> theMapSession2User4WebApp =
-            new HashMap<>();
+    private static final String SERVER_PROP_PRINTER_RAW_BACKLOG =
+            "printer.raw.backlog";
 
     /**
-     * Map of active authenticated User (key) Web App session count (value).
+     * Server property key for the maximum number of IP Print connections
+     * handled concurrently.
      */
-    private static Map<String, Integer> theMapUsers2WebAppUserCount =
-            new HashMap<>();
+    private static final String SERVER_PROP_PRINTER_RAW_MAX_CONNECTIONS =
+            "printer.raw.max-connections";
 
-    /**
-     * Map of active authenticated User (key) Mail Tickets Web App session count
-     * (value).
-     */
-    private static Map<String, Integer> theMapUsers2WebAppMailTicketsCount =
-            new HashMap<>();
-
-    /**
-     * Map of active authenticated User (key) Payment Web App session count
-     * (value).
-     */
-    private static Map<String, Integer> theMapUsers2WebAppPaymentCount =
-            new HashMap<>();
+    /** */
+    private static Properties theServerProps = new Properties();
 
-    /**
-     * Last time the session dictionaries were pruned.
-     */
-    private static long theDictLastPruneTime;
+    /** */
+    private static Properties theWebProps = new Properties();
 
-    /** 30 minutes. */
-    private static final long DICT_LAST_PRUNE_TIME_PERIOD =
-            30 * DateUtil.DURATION_MSEC_MINUTE;
+    /** */
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebApp.class);
 
     /**
      * The RAW Print Server.
@@ -494,67 +459,7 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
      * @return {@code null} when user is NOT found.
      */
     public static String getAuthUserByIpAddr(final String ipAddr) {
-        synchronized (MUTEX_DICT) {
-            return theMapIpAddr2RecentUser.get(ipAddr);
-        }
-    }
-
-    /**
-     * Removes IP addresses from the cache that have no authenticated session.
-     * <p>
-     * When DHCP lease expires <i>before</i> the HTTP session expires, the cache
-     * may contain IP addresses with orphaned Session ID, as exemplified in the
-     * following use-case:
-     * <ul>
-     * <li>User does not explicitly logout of the Web App</li>
-     * <li>After device reboot or wake-up from hibernation, a different IP
-     * address is acquired from the renewed DHCP lease.</li>
-     * <li>User open Web App again, and the client side auth token give him an
-     * automatic login, with the newly acquired IP address.</li>
-     * <li>As a result, the session and user related to the old IP address are
-     * orphaned.</li>
-     * </ul>
-     * </p>
-     *
-     * @return Number of IP addresses removed from cache.
-     */
-    private static int pruneOrphanedAuthIpAddr() {
-
-        synchronized (MUTEX_DICT) {
-
-            int removed = 0;
-
-            final Iterator<Entry<String, Set<String>>> iter =
-                    theMapIpAddr2Sessions.entrySet().iterator();
-
-            while (iter.hasNext()) {
-
-                final Entry<String, Set<String>> entry = iter.next();
-                final String ipAddr = entry.getKey();
-
-                final Iterator<String> iterSession =
-                        entry.getValue().iterator();
-
-                int nSessions = entry.getValue().size();
-
-                while (iterSession.hasNext()) {
-                    final String session = iterSession.next();
-                    final String ipAddrSession =
-                            theMapSession2IpAddr.get(session);
-                    if (ipAddrSession == null
-                            || !ipAddrSession.equals(ipAddr)) {
-                        iterSession.remove();
-                        nSessions--;
-                    }
-                }
-                if (nSessions == 0) {
-                    theMapIpAddr2RecentUser.remove(ipAddr);
-                    iter.remove();
-                    removed++;
-                }
-            }
-            return removed;
-        }
+        return AuthSessionRegistry.instance().getAuthUserByIpAddr(ipAddr);
     }
 
     /**
@@ -575,8 +480,7 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
      * @return the number of sessions.
      */
     public static int getAuthSessionCount() {
-        // no synchronized needed
-        return theMapSession2WebAppType.size();
+        return AuthSessionRegistry.instance().getAuthSessionCount();
     }
 
     /**
@@ -585,8 +489,7 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
      * @return the number of sessions.
      */
     public static int getAuthIpAddrCount() {
-        // no synchronized needed
-        return theMapIpAddr2Sessions.size();
+        return AuthSessionRegistry.instance().getAuthIpAddrCount();
     }
 
     /**
@@ -595,13 +498,7 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
      * @return Number of authenticated User Web App sessions.
      */
     public static int getWebAppUserSessions(final String userid) {
-        synchronized (MUTEX_DICT) {
-            final Integer count = theMapUsers2WebAppUserCount.get(userid);
-            if (count == null) {
-                return 0;
-            }
-            return count.intValue();
-        }
+        return AuthSessionRegistry.instance().getWebAppUserSessions(userid);
     }
 
     /**
@@ -610,14 +507,8 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
      * @return Number of authenticated Mail Tickets Web App sessions.
      */
     public static int getWebAppMailTicketsSessions(final String userid) {
-        synchronized (MUTEX_DICT) {
-            final Integer count =
-                    theMapUsers2WebAppMailTicketsCount.get(userid);
-            if (count == null) {
-                return 0;
-            }
-            return count.intValue();
-        }
+        return AuthSessionRegistry.instance()
+                .getWebAppMailTicketsSessions(userid);
     }
 
     /**
@@ -640,67 +531,8 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
             final UserAuthModeEnum authMode, final String sessionId,
             final String ipAddr, final String user) {
 
-        synchronized (MUTEX_DICT) {
-
-            final boolean newIP =
-                    theMapIpAddr2RecentUser.put(ipAddr, user) == null;
-
-            if (newIP && LOGGER.isDebugEnabled()) {
-
-                LOGGER.debug(
-                        "IP Recent User [{}] [{}] [{}] added." + " Total [{}]",
-                        ipAddr, user, sessionId,
-                        theMapIpAddr2RecentUser.size());
-            }
-
-            theMapSession2IpAddr.put(sessionId, ipAddr);
-
-            // Add session to IP addr sessions.
-            final Set<String> ipAddrSessions;
-            if (theMapIpAddr2Sessions.containsKey(ipAddr)) {
-                ipAddrSessions = theMapIpAddr2Sessions.get(ipAddr);
-            } else {
-                ipAddrSessions = new HashSet<>();
-            }
-            ipAddrSessions.add(sessionId);
-            theMapIpAddr2Sessions.put(ipAddr, ipAddrSessions);
-
-            //
-            final long now = System.currentTimeMillis();
-            if (now - theDictLastPruneTime > DICT_LAST_PRUNE_TIME_PERIOD) {
-                final int pruned = pruneOrphanedAuthIpAddr();
-                if (pruned > 0) {
-                    SpInfo.instance().log(String.format(
-                            "Removed [%s] orphaned HTTP sessions.", pruned));
-                }
-                theDictLastPruneTime = now;
-            }
-
-            //
-            theMapSession2WebAppType.put(sessionId, webAppType);
-
-            if (webAppType.isUserTypeOrVariant()) {
-
-                theMapSession2User4WebApp.put(sessionId, user);
-
-                // Increment user session count.
-                final Map<String, Integer> mapWrk;
-                if (webAppType == WebAppTypeEnum.MAILTICKETS) {
-                    mapWrk = theMapUsers2WebAppMailTicketsCount;
-                } else if (webAppType == WebAppTypeEnum.PAYMENT) {
-                    mapWrk = theMapUsers2WebAppPaymentCount;
-                } else {
-                    mapWrk = theMapUsers2WebAppUserCount;
-                }
-                final int countUpd;
-                if (mapWrk.containsKey(user)) {
-                    countUpd = mapWrk.get(user).intValue() + 1;
-                } else {
-                    countUpd = 1;
-                }
-                mapWrk.put(user, Integer.valueOf(countUpd));
-            }
-        }
+        AuthSessionRegistry.instance().onAuthenticatedUser(webAppType,
+                sessionId, ipAddr, user);
 
         AdminPublisher.instance().publish(PubTopicEnum.USER, PubLevelEnum.INFO,
                 localize("pub-user-login-success", webAppType.getUiText(),
@@ -872,6 +704,11 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
      */
     private static boolean theIsInitialized = false;
 
+    /**
+     * Number of threads for independent startup phases.
+     */
+    private static final int STARTUP_THREADS = 2;
+
     /**
      * {@code true} if {@link WebApp} encountered a fatal error at
      * initialization.
@@ -896,14 +733,19 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
      * handled by <savapage-docs> servletname, see web.xml and
      * {@link DocumentationServlet}.
      * </p>
+     *
+     * @param startupExecutor
+     *            Executor for independent startup phases.
+     * @param i18nPhase
+     *            The pending i18n phase.
      */
-    private void myInitialize() {
-
-        theDictLastPruneTime = System.currentTimeMillis();
+    private void myInitialize(final ExecutorService startupExecutor,
+            final Future<Void> i18nPhase) {
 
         java.io.FileInputStream fis = null;
 
         try {
+            long nanoPhase = System.nanoTime();
 
             /*
              * Configure so the wicket application maps requests for /webjars
@@ -973,12 +815,21 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
             mountPackage("/pages/user", AbstractUserPage.class);
             mountPackage("/pages/printsite", AbstractPrintSitePage.class);
 
+            WebServer.logStartupPhase("mount", nanoPhase);
+
+            // Messages are needed from here on.
+            awaitStartupPhase(i18nPhase);
+
             /*
              * Initialize the ConfigManager (use empty properties for now).
              */
+            nanoPhase = System.nanoTime();
+
             ConfigManager.instance().init(RunModeEnum.SERVER,
                     DatabaseTypeEnum.Internal);
 
+            WebServer.logStartupPhase("config", nanoPhase);
+
             AppLogHelper.logInfo(getClass(), "WebApp.starting",
                     ConfigManager.getAppVersionBuild());
 
@@ -1020,6 +871,7 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
                     .log(WebServer.ThreadPoolInfo.logIdleTimeoutMsec());
 
             SpInfo.instance().log(WebServer.logSessionScavengeInterval());
+            SpInfo.instance().log(WebServer.logPerformanceProfile());
 
             //
             final SslCertInfo sslCert = ConfigManager.getSslCertInfo();
@@ -1070,27 +922,40 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
             /*
              *
              */
+            nanoPhase = System.nanoTime();
             ConfigManager.instance().initScheduler();
+            WebServer.logStartupPhase("scheduler", nanoPhase);
 
             if (WebServer.isWebAppCustomI18n()) {
                 SpInfo.instance().log("Web App Custom i18n enabled.");
             }
 
             /*
-             * Server plug-in manager.
+             * Server plug-in manager is started in parallel with the IPP
+             * Print Server init.
              */
-            this.pluginManager = ServerPluginManager
-                    .create(ConfigManager.getServerExtHome());
-
-            this.pluginManager.start();
-
-            SpInfo.instance().log(this.pluginManager.asLoggingInfo());
+            final Future<ServerPluginManager> pluginPhase =
+                    startupExecutor.submit(startupPhase("plugins", () -> {
+                        try {
+                            final ServerPluginManager manager =
+                                    ServerPluginManager.create(
+                                            ConfigManager.getServerExtHome());
+                            manager.start();
+                            return manager;
+                        } finally {
+                            ServiceContext.close();
+                        }
+                    }));
 
             /*
              * IPP Print Server.
              */
             IppPrintServer.init();
 
+            this.pluginManager = awaitStartupPhase(pluginPhase);
+
+            SpInfo.instance().log(this.pluginManager.asLoggingInfo());
+
             /*
              * IP Print Server (RAW)
              */
@@ -1101,7 +966,17 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
             if (iRawPrintPort == 0) {
                 SpInfo.instance().log("IP Print Server disabled.");
             } else {
-                this.rawPrintServer = new RawPrintServer(iRawPrintPort);
+                this.rawPrintServer = new RawPrintServer(iRawPrintPort,
+                        RawPrintEngineEnum.valueOf(
+                                theServerProps.getProperty(
+                                        SERVER_PROP_PRINTER_RAW_ENGINE),
+                                RawPrintEngineEnum.THREAD),
+                        getServerPropPositiveInt(
+                                SERVER_PROP_PRINTER_RAW_BACKLOG,
+                                RawPrintServer.DEFAULT_BACKLOG),
+                        getServerPropPositiveInt(
+                                SERVER_PROP_PRINTER_RAW_MAX_CONNECTIONS,
+                                RawPrintServer.DEFAULT_MAX_CONNECTIONS));
                 this.rawPrintServer.start();
             }
 
@@ -1123,6 +998,99 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
         }
     }
 
+    /**
+     * @return Executor for independent startup phases.
+     */
+    private static ExecutorService createStartupExecutor() {
+
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(STARTUP_THREADS, r -> {
+            final Thread thread = new Thread(r,
+                    "startup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Wraps a startup phase, logging its duration.
+     *
+     * @param <T>
+     *            Result type.
+     * @param phase
+     *            Phase name.
+     * @param callable
+     *            The phase.
+     * @return The wrapped phase.
+     */
+    private static <T> Callable<T> startupPhase(final String phase,
+            final Callable<T> callable) {
+        return () -> {
+            final long nanoStart = System.nanoTime();
+            try {
+                return callable.call();
+            } finally {
+                WebServer.logStartupPhase(phase, nanoStart);
+            }
+        };
+    }
+
+    /**
+     * Gets a server property that must be a positive integer.
+     *
+     * @param key
+     *            The property key.
+     * @param defaultValue
+     *            The value when the property is absent.
+     * @return The value.
+     * @throws SpException
+     *             When value is not a positive integer.
+     */
+    private static int getServerPropPositiveInt(final String key,
+            final int defaultValue) {
+
+        final String value = theServerProps.getProperty(key);
+
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+
+        final int intValue = NumberUtils.toInt(value.trim(), 0);
+
+        if (intValue <= 0) {
+            throw new SpException(String.format(
+                    "Server property [%s] value [%s] is invalid: "
+                            + "a number greater than zero is required.",
+                    key, value));
+        }
+        return intValue;
+    }
+
+    /**
+     * Waits for a startup phase to complete.
+     *
+     * @param <T>
+     *            Result type.
+     * @param future
+     *            The phase.
+     * @return The phase result.
+     * @throws Exception
+     *             When phase failed or waiting was interrupted.
+     */
+    private static <T> T awaitStartupPhase(final Future<T> future)
+            throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new SpException(cause.getMessage(), cause);
+        }
+    }
+
     /**
      * Yes, we make {@link IppPrintServerHomePage} the home page. See Mantis
      * #154.
@@ -1352,10 +1320,20 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
     @Override
     public void init() {
 
+        final long nanoStart = System.nanoTime();
+
         super.init();
 
         final boolean useCustomI18n = WebServer.isWebAppCustomI18n();
-        Messages.init(useCustomI18n);
+
+        final ExecutorService startupExecutor = createStartupExecutor();
+
+        // Messages are independent of Wicket settings and mounts.
+        final Future<Void> i18nPhase =
+                startupExecutor.submit(startupPhase("i18n", () -> {
+                    Messages.init(useCustomI18n);
+                    return null;
+                }));
 
         if (useCustomI18n) {
             addCustomStringResourceLoader();
@@ -1381,17 +1359,23 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
          * that initialization is done once.
          */
         synchronized (this) {
-            if (!theIsInitialized) {
-                theIsInitialized = true;
-                try {
-                    myInitialize();
-                } catch (Exception e) {
-                    System.err.println(e.getMessage());
-                    LOGGER.error(e.getMessage(), e);
-                    initializeError = true;
+            try {
+                if (theIsInitialized) {
+                    awaitStartupPhase(i18nPhase);
+                } else {
+                    theIsInitialized = true;
+                    myInitialize(startupExecutor, i18nPhase);
                 }
+            } catch (Exception e) {
+                System.err.println(e.getMessage());
+                LOGGER.error(e.getMessage(), e);
+                initializeError = true;
+            } finally {
+                startupExecutor.shutdown();
             }
         }
+
+        WebServer.logStartupPhase("webapp", nanoStart);
     }
 
     @Override
@@ -1464,7 +1448,8 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
 
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("{} [{}]. Sessions [{}]", debugMsg,
-                        session.getId(), theMapIpAddr2RecentUser.size());
+                        session.getId(),
+                        AuthSessionRegistry.instance().getRecentUserCount());
             }
         }
         return session;
@@ -1477,91 +1462,27 @@ public final class WebApp extends WebApplication implements ServiceEntryPoint {
 
         sessionCount.decrementAndGet();
 
-        synchronized (MUTEX_DICT) {
-
-            final WebAppTypeEnum webAppType =
-                    theMapSession2WebAppType.remove(sessionId);
-
-            if (webAppType != null && webAppType.isUserTypeOrVariant()) {
-
-                final String userId =
-                        theMapSession2User4WebApp.remove(sessionId);
-
-                // Decrement/delete user session count.
-                final Map<String, Integer> mapWrk;
-
-                if (webAppType == WebAppTypeEnum.MAILTICKETS) {
-                    mapWrk = theMapUsers2WebAppMailTicketsCount;
-                } else if (webAppType == WebAppTypeEnum.PAYMENT) {
-                    mapWrk = theMapUsers2WebAppPaymentCount;
-                } else {
-                    mapWrk = theMapUsers2WebAppUserCount;
-                }
-                final int countUpd = mapWrk.get(userId).intValue() - 1;
-                if (countUpd == 0) {
-                    mapWrk.remove(userId);
-                } else {
-                    mapWrk.put(userId, Integer.valueOf(countUpd));
-                }
-            }
-
-            final String ipAddr = theMapSession2IpAddr.remove(sessionId);
-
-            if (ipAddr == null) {
-
-                if (webAppType != null) {
-                    LOGGER.warn(
-                            "IP User Session [?.?.?.?] [{}] unbound. "
-                                    + "Sessions [{}]",
-                            sessionId, theMapIpAddr2RecentUser.size());
-                }
-
-            } else {
-
-                if (theMapIpAddr2Sessions.containsKey(ipAddr)) {
-
-                    final Set<String> sessions =
-                            theMapIpAddr2Sessions.get(ipAddr);
-
-                    final boolean found = sessions.remove(sessionId);
-
-                    if (!found) {
-                        LOGGER.warn(
-                                "{}: Inconsistent IP sessions cache "
-                                        + "[{}]->[{}]",
-                                "sessionUnbound", sessionId, ipAddr);
-                    }
-                    if (sessions.isEmpty()) {
-                        theMapIpAddr2Sessions.remove(ipAddr);
-                    }
-                } else {
-                    LOGGER.error("Inconsistent IP sessions cache: "
-                            + "no sessions found for [{}]", ipAddr);
-                }
-
-                final String user = theMapIpAddr2RecentUser.remove(ipAddr);
+        final AuthSessionRegistry.UnboundSession unbound =
+                AuthSessionRegistry.instance().onSessionUnbound(sessionId);
 
-                if (user == null) {
-                    LOGGER.error("Inconsistent IP User Session cache: "
-                            + "no user found for [{}]", ipAddr);
-                } else {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug(
-                                "IP User Session [{}] [{}] [{}] removed."
-                                        + " Sessions [{}]",
-                                ipAddr, user, sessionId,
-                                theMapIpAddr2RecentUser.size());
-                    }
-                    AdminPublisher.instance().publish(PubTopicEnum.USER,
-                            PubLevelEnum.INFO, localize("pub-user-logout",
-                                    webAppType.getUiText(), user, ipAddr));
-                }
-            }
+        if (unbound != null && unbound.getRecentUser() != null) {
+            AdminPublisher.instance().publish(PubTopicEnum.USER,
+                    PubLevelEnum.INFO,
+                    localize("pub-user-logout",
+                            unbound.getWebAppType().getUiText(),
+                            unbound.getRecentUser(), unbound.getIpAddr()));
         }
     }
 
     @Override
     protected void onDestroy() {
+        UserHomeWatcher.instance().shutdown();
+        AuthSessionRegistry.instance().shutdown();
+        WebPrintUploadManager.instance().shutdown();
+        RfidEventBus.instance().shutdown();
+        ProxyPrintEventService.shutdown();
+        WebAppUserAuthManager.instance().shutdown();
+        ClusterStateManager.shutdown();
         if (this.pluginManager != null) {
             this.pluginManager.stop();
         }
@@ -29,14 +29,19 @@ import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.Enumeration;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.naming.InvalidNameException;
 import javax.naming.ldap.LdapName;
@@ -47,7 +52,13 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
 import org.eclipse.jetty.security.LoginService;
 import org.eclipse.jetty.server.ForwardedRequestCustomizer;
 import org.eclipse.jetty.server.Handler;
@@ -58,7 +69,12 @@ import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.eclipse.jetty.server.handler.SecuredRedirectHandler;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.server.session.DefaultSessionCacheFactory;
+import org.eclipse.jetty.server.session.DefaultSessionIdManager;
+import org.eclipse.jetty.server.session.FileSessionDataStoreFactory;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
@@ -67,12 +83,15 @@ import org.eclipse.jetty.webapp.WebAppContext;
 import org.savapage.common.ConfigDefaults;
 import org.savapage.common.SystemPropertyEnum;
 import org.savapage.core.SpException;
+import org.savapage.core.VersionInfo;
 import org.savapage.core.community.CommunityDictEnum;
 import org.savapage.core.config.ConfigManager;
 import org.savapage.core.config.SslCertInfo;
 import org.savapage.core.ipp.operation.IppOperationContext;
 import org.savapage.core.util.DeadlockedThreadsDetector;
 import org.savapage.core.util.InetUtils;
+import org.savapage.server.TrafficClassHandler.TrafficClassEnum;
+import org.savapage.server.cluster.ClusterStateManager;
 import org.savapage.server.ext.papercut.ExtPaperCutSyncServlet;
 import org.savapage.server.feed.AtomFeedServlet;
 import org.savapage.server.restful.RestApplication;
@@ -137,6 +156,61 @@ public final class WebServer {
         }
     }
 
+    /**
+     * Sets immutable cache headers on static Web App files that are
+     * fingerprinted with the build version as URL query string. See
+     * {@code AbstractWebAppPage#getNoCacheUrlParm()}.
+     */
+    private static class MyStaticCacheHandler extends HandlerWrapper {
+
+        /** */
+        private static final String CACHE_CONTROL =
+                "public, max-age=31536000, immutable";
+
+        /** */
+        private static final String[] FILE_EXTENSIONS = { ".css", ".js",
+                ".png", ".gif", ".svg", ".ico", ".woff", ".woff2" };
+
+        /** */
+        private final String fingerprint =
+                String.valueOf(VersionInfo.BUILD_EPOCH_SECS);
+
+        /**
+         * @param request
+         *            The request.
+         * @return {@code true} if request is for a fingerprinted static file.
+         */
+        private boolean isFingerprinted(final HttpServletRequest request) {
+
+            if (!HttpMethod.GET.is(request.getMethod())
+                    || !this.fingerprint.equals(request.getQueryString())) {
+                return false;
+            }
+
+            final String uri = request.getRequestURI();
+
+            // Custom files are not part of the build.
+            if (uri.startsWith("/" + CustomWebServlet.PATH_BASE)) {
+                return false;
+            }
+            return StringUtils.endsWithAny(uri, FILE_EXTENSIONS);
+        }
+
+        @Override
+        public void handle(final String target,
+                final org.eclipse.jetty.server.Request baseRequest,
+                final HttpServletRequest request,
+                final HttpServletResponse response)
+                throws IOException, ServletException {
+
+            if (this.isFingerprinted(request)) {
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(),
+                        CACHE_CONTROL);
+            }
+            super.handle(target, baseRequest, request, response);
+        }
+    }
+
     /**
      * The logger.
      */
@@ -167,6 +241,166 @@ public final class WebServer {
     private static final String PROP_KEY_WEBAPP_CUSTOM_I18N =
             "webapp.custom.i18n";
 
+    /**
+     * Max number of requests in a JSON-RPC batch.
+     */
+    private static final String PROP_KEY_JSONRPC_BATCH_MAX_SIZE =
+            "jsonrpc.batch.max-size";
+
+    /**
+     * Number of JSON-RPC batch requests per database commit.
+     */
+    private static final String PROP_KEY_JSONRPC_BATCH_COMMIT_INTERVAL =
+            "jsonrpc.batch.commit-interval";
+
+    /** */
+    private static final String JSONRPC_BATCH_MAX_SIZE_DEFAULT = "1000";
+
+    /** */
+    private static final String JSONRPC_BATCH_COMMIT_INTERVAL_DEFAULT = "100";
+
+    /**
+     * Chunk size in bytes of resumable Web Print uploads (0 disables chunked
+     * uploads).
+     */
+    private static final String PROP_KEY_WEBPRINT_UPLOAD_CHUNK_BYTES =
+            "webprint.upload.chunk-bytes";
+
+    /**
+     * Number of threads converting uploaded Web Print files. Files of one
+     * user are converted one after another, in upload order.
+     */
+    private static final String PROP_KEY_WEBPRINT_CONVERT_THREADS =
+            "webprint.convert.threads";
+
+    /**
+     * Max number of uploaded Web Print files waiting for conversion.
+     */
+    private static final String PROP_KEY_WEBPRINT_CONVERT_QUEUE =
+            "webprint.convert.queue";
+
+    /**
+     * Minutes after which an idle resumable Web Print upload is discarded.
+     */
+    private static final String PROP_KEY_WEBPRINT_UPLOAD_EXPIRY_MINS =
+            "webprint.upload.expiry-mins";
+
+    /**
+     * Max number of Web Print uploads of a user that are received or
+     * converted at the same time.
+     */
+    private static final String PROP_KEY_WEBPRINT_UPLOAD_MAX_PER_USER =
+            "webprint.upload.max-per-user";
+
+    /** */
+    private static final String WEBPRINT_UPLOAD_CHUNK_BYTES_DEFAULT =
+            "5000000";
+
+    /** */
+    private static final String WEBPRINT_CONVERT_THREADS_DEFAULT = "4";
+
+    /** */
+    private static final String WEBPRINT_CONVERT_QUEUE_DEFAULT = "100";
+
+    /** */
+    private static final String WEBPRINT_UPLOAD_EXPIRY_MINS_DEFAULT = "30";
+
+    /** */
+    private static final String WEBPRINT_UPLOAD_MAX_PER_USER_DEFAULT = "100";
+
+    /**
+     * Hours after which an unused WebApp authentication token is removed (0
+     * means never).
+     */
+    private static final String PROP_KEY_WEBAPP_AUTH_TOKEN_IDLE_TTL_HOURS =
+            "webapp.auth-token.idle-ttl-hours";
+
+    /** */
+    private static final String WEBAPP_AUTH_TOKEN_IDLE_TTL_HOURS_DEFAULT =
+            "168";
+
+    /**
+     * Seconds a password verified by the external user source is cached (0
+     * disables the cache).
+     */
+    private static final String PROP_KEY_LOGIN_CREDENTIAL_CACHE_TTL_SECS =
+            "login.credential-cache.ttl-secs";
+
+    /**
+     * Max number of cached verified passwords.
+     */
+    private static final String PROP_KEY_LOGIN_CREDENTIAL_CACHE_MAX_SIZE =
+            "login.credential-cache.max-size";
+
+    /** */
+    private static final String LOGIN_CREDENTIAL_CACHE_TTL_SECS_DEFAULT = "0";
+
+    /** */
+    private static final String LOGIN_CREDENTIAL_CACHE_MAX_SIZE_DEFAULT =
+            "10000";
+
+    /**
+     * Directory (absolute or relative to server home) shared by the server
+     * nodes of a cluster on one host. If not set, the server is not
+     * clustered.
+     */
+    private static final String PROP_KEY_CLUSTER_STATE_DIR =
+            "cluster.state.dir";
+
+    /**
+     * Unique alphanumeric name of this server node, appended to the session
+     * ID. Default: "node" followed by the server port.
+     */
+    private static final String PROP_KEY_CLUSTER_NODE_ID = "cluster.node-id";
+
+    /**
+     * Seconds of inactivity after which a session is evicted from the session
+     * cache of a cluster node (-1 is never, 0 is after each request).
+     */
+    private static final String PROP_KEY_CLUSTER_SESSION_EVICT_SECS =
+            "cluster.session.evict-secs";
+
+    /** */
+    private static final String CLUSTER_SESSION_EVICT_SECS_DEFAULT = "-1";
+
+    /** */
+    private static final String CLUSTER_SUBDIR_SESSIONS = "sessions";
+
+    /**
+     * If {@code true}, the unfiltered document log count is estimated.
+     */
+    private static final String PROP_KEY_WEBAPP_DOCLOG_COUNT_ESTIMATE =
+            "webapp.doclog.count-estimate";
+
+    /**
+     * Enables HTTP/2: h2 (ALPN) on the SSL connector and h2c on the plain
+     * connector.
+     */
+    private static final String PROP_KEY_SERVER_HTTP2 = "server.http2";
+
+    /**
+     * Enables gzip compression of text and JSON responses.
+     */
+    private static final String PROP_KEY_SERVER_GZIP = "server.gzip";
+
+    /**
+     * Enables immutable browser caching of fingerprinted static files.
+     */
+    private static final String PROP_KEY_SERVER_STATIC_CACHE =
+            "server.static.cache";
+
+    /**
+     * If {@code false}, Jetty annotation scanning is replaced by
+     * {@link ServletAnnotationIndex}.
+     */
+    private static final String PROP_KEY_SERVER_STARTUP_ANNOTATION_SCAN =
+            "server.startup.annotation-scan";
+
+    /**
+     * Responses smaller than this number of bytes are not compressed.
+     */
+    private static final int GZIP_MIN_SIZE = 1024;
+
     /** */
     private static final String PROP_KEY_SERVER_THREADPOOL_QUEUE_CAPACITY =
             "server.threadpool.queue.capacity";
@@ -181,10 +415,24 @@ public final class WebServer {
     private static final String PROP_KEY_SERVER_THREADPOOL_IDLE_TIMEOUT_MSEC =
             "server.threadpool.idle-timeout-msec";
 
+    /**
+     * Format of the max concurrent threads of a {@link TrafficClassEnum}, for
+     * example {@code server.traffic.ipp.maxthreads=100}. The traffic class ids
+     * are {@code ipp}, {@code cometd}, {@code api} and {@code web}. A request
+     * above the limit is answered with HTTP 503. Default {@code 0}: no limit.
+     */
+    private static final String PROP_KEY_SERVER_TRAFFIC_MAX_THREADS_FORMAT =
+            "server.traffic.%s.maxthreads";
+
     /** */
     private static final String PROP_KEY_SERVER_SESSION_SCAVENGE_INTERVAL_SEC =
             "server.session.scavenge.interval-sec";
 
+    /**
+     * No limit.
+     */
+    private static final String SERVER_TRAFFIC_MAX_THREADS_DEFAULT = "0";
+
     /** */
     private static final String SERVER_THREADPOOL_MIN_THREADS_DEFAULT = "20";
 
@@ -274,6 +522,33 @@ public final class WebServer {
          */
         private static int idleTimeoutMsec;
 
+        /**
+         * The live pool.
+         */
+        private static QueuedThreadPool threadPool;
+
+        /**
+         * @return Number of threads busy in the {@link QueuedThreadPool}, or
+         *         -1 when pool is not available.
+         */
+        public static int getBusyThreads() {
+            if (threadPool == null) {
+                return -1;
+            }
+            return threadPool.getBusyThreads();
+        }
+
+        /**
+         * @return Number of jobs queued in the {@link QueuedThreadPool}, or -1
+         *         when pool is not available.
+         */
+        public static int getQueueSize() {
+            if (threadPool == null) {
+                return -1;
+            }
+            return threadPool.getQueueSize();
+        }
+
         /**
          * @return Max threads in the {@link QueuedThreadPool}.
          */
@@ -346,9 +621,51 @@ public final class WebServer {
     /** */
     private static boolean webAppCustomI18n;
 
+    /** */
+    private static boolean webAppDocLogCountEstimate;
+
+    /** */
+    private static int jsonRpcBatchMaxSize;
+
+    /** */
+    private static int jsonRpcBatchCommitInterval;
+
+    /** */
+    private static int webPrintUploadChunkBytes;
+
+    /** */
+    private static int webPrintConvertThreads;
+
+    /** */
+    private static int webPrintConvertQueue;
+
+    /** */
+    private static int webPrintUploadExpiryMins;
+
+    /** */
+    private static int webPrintUploadMaxPerUser;
+
+    /** */
+    private static int webAppAuthTokenIdleTtlHours;
+
+    /** */
+    private static int loginCredentialCacheTtlSecs;
+
+    /** */
+    private static int loginCredentialCacheMaxSize;
+
     /** */
     private static int sessionScavengeInterval;
 
+    /** */
+    private static boolean serverHttp2;
+
+    /** */
+    private static boolean serverGzip;
+
+    /** */
+    private static boolean serverStaticCache;
+
     /** */
     private WebServer() {
     }
@@ -360,6 +677,89 @@ public final class WebServer {
         return webAppCustomI18n;
     }
 
+    /**
+     * @return Max number of requests in a JSON-RPC batch.
+     */
+    public static int getJsonRpcBatchMaxSize() {
+        return jsonRpcBatchMaxSize;
+    }
+
+    /**
+     * @return Number of JSON-RPC batch requests per database commit.
+     */
+    public static int getJsonRpcBatchCommitInterval() {
+        return jsonRpcBatchCommitInterval;
+    }
+
+    /**
+     * @return Chunk size in bytes of resumable Web Print uploads. If zero,
+     *         files are uploaded in one request.
+     */
+    public static int getWebPrintUploadChunkBytes() {
+        return webPrintUploadChunkBytes;
+    }
+
+    /**
+     * @return Number of threads converting uploaded Web Print files.
+     */
+    public static int getWebPrintConvertThreads() {
+        return webPrintConvertThreads;
+    }
+
+    /**
+     * @return Max number of uploaded Web Print files waiting for conversion.
+     */
+    public static int getWebPrintConvertQueue() {
+        return webPrintConvertQueue;
+    }
+
+    /**
+     * @return Minutes after which an idle resumable Web Print upload is
+     *         discarded.
+     */
+    public static int getWebPrintUploadExpiryMins() {
+        return webPrintUploadExpiryMins;
+    }
+
+    /**
+     * @return Max number of Web Print uploads of a user that are received or
+     *         converted at the same time.
+     */
+    public static int getWebPrintUploadMaxPerUser() {
+        return webPrintUploadMaxPerUser;
+    }
+
+    /**
+     * @return Hours after which an unused WebApp authentication token is
+     *         removed. If zero, tokens are not removed.
+     */
+    public static int getWebAppAuthTokenIdleTtlHours() {
+        return webAppAuthTokenIdleTtlHours;
+    }
+
+    /**
+     * @return Seconds a password verified by the external user source is
+     *         cached. If zero, the cache is disabled.
+     */
+    public static int getLoginCredentialCacheTtlSecs() {
+        return loginCredentialCacheTtlSecs;
+    }
+
+    /**
+     * @return Max number of cached verified passwords.
+     */
+    public static int getLoginCredentialCacheMaxSize() {
+        return loginCredentialCacheMaxSize;
+    }
+
+    /**
+     * @return {@code true} when the unfiltered document log count may be
+     *         estimated.
+     */
+    public static boolean isWebAppDocLogCountEstimate() {
+        return webAppDocLogCountEstimate;
+    }
+
     /**
      * @return The server port.
      */
@@ -383,6 +783,32 @@ public final class WebServer {
                 sessionScavengeInterval);
     }
 
+    /**
+     * Logs the duration of a startup phase.
+     *
+     * @param phase
+     *            Phase name.
+     * @param nanoStart
+     *            Start of phase as {@link System#nanoTime()}.
+     */
+    public static void logStartupPhase(final String phase,
+            final long nanoStart) {
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Startup phase [{}] {} msec", phase,
+                    TimeUnit.NANOSECONDS
+                            .toMillis(System.nanoTime() - nanoStart));
+        }
+    }
+
+    /**
+     * @return Log message with HTTP/2, gzip and static cache settings.
+     */
+    public static String logPerformanceProfile() {
+        return String.format("%s [%s] %s [%s] %s [%s]", PROP_KEY_SERVER_HTTP2,
+                serverHttp2, PROP_KEY_SERVER_GZIP, serverGzip,
+                PROP_KEY_SERVER_STATIC_CACHE, serverStaticCache);
+    }
+
     /**
      * @return Number of server acceptor threads.
      */
@@ -598,6 +1024,8 @@ public final class WebServer {
      */
     public static void main(final String[] args) throws Exception {
 
+        final long nanoStart = System.nanoTime();
+
         ConfigManager.initJavaUtilLogging();
 
         if (!checkJava8()) {
@@ -659,6 +1087,63 @@ public final class WebServer {
                         propsServer.getProperty(PROP_KEY_WEBAPP_CUSTOM_I18N)),
                 false);
 
+        webAppDocLogCountEstimate = BooleanUtils.toBoolean(propsServer
+                .getProperty(PROP_KEY_WEBAPP_DOCLOG_COUNT_ESTIMATE));
+
+        jsonRpcBatchMaxSize = Integer.parseInt(propsServer.getProperty(
+                PROP_KEY_JSONRPC_BATCH_MAX_SIZE,
+                JSONRPC_BATCH_MAX_SIZE_DEFAULT));
+
+        jsonRpcBatchCommitInterval = Integer.parseInt(propsServer.getProperty(
+                PROP_KEY_JSONRPC_BATCH_COMMIT_INTERVAL,
+                JSONRPC_BATCH_COMMIT_INTERVAL_DEFAULT));
+
+        webPrintUploadChunkBytes = Integer.parseInt(propsServer.getProperty(
+                PROP_KEY_WEBPRINT_UPLOAD_CHUNK_BYTES,
+                WEBPRINT_UPLOAD_CHUNK_BYTES_DEFAULT));
+
+        webPrintConvertThreads = Integer.parseInt(propsServer.getProperty(
+                PROP_KEY_WEBPRINT_CONVERT_THREADS,
+                WEBPRINT_CONVERT_THREADS_DEFAULT));
+
+        webPrintConvertQueue = Integer.parseInt(propsServer.getProperty(
+                PROP_KEY_WEBPRINT_CONVERT_QUEUE,
+                WEBPRINT_CONVERT_QUEUE_DEFAULT));
+
+        webPrintUploadExpiryMins = Integer.parseInt(propsServer.getProperty(
+                PROP_KEY_WEBPRINT_UPLOAD_EXPIRY_MINS,
+                WEBPRINT_UPLOAD_EXPIRY_MINS_DEFAULT));
+
+        webPrintUploadMaxPerUser = Integer.parseInt(propsServer.getProperty(
+                PROP_KEY_WEBPRINT_UPLOAD_MAX_PER_USER,
+                WEBPRINT_UPLOAD_MAX_PER_USER_DEFAULT));
+
+        webAppAuthTokenIdleTtlHours = Integer.parseInt(propsServer
+                .getProperty(PROP_KEY_WEBAPP_AUTH_TOKEN_IDLE_TTL_HOURS,
+                        WEBAPP_AUTH_TOKEN_IDLE_TTL_HOURS_DEFAULT));
+
+        loginCredentialCacheTtlSecs = Integer.parseInt(propsServer
+                .getProperty(PROP_KEY_LOGIN_CREDENTIAL_CACHE_TTL_SECS,
+                        LOGIN_CREDENTIAL_CACHE_TTL_SECS_DEFAULT));
+
+        loginCredentialCacheMaxSize = Integer.parseInt(propsServer
+                .getProperty(PROP_KEY_LOGIN_CREDENTIAL_CACHE_MAX_SIZE,
+                        LOGIN_CREDENTIAL_CACHE_MAX_SIZE_DEFAULT));
+
+        serverHttp2 = BooleanUtils.toBoolean(
+                propsServer.getProperty(PROP_KEY_SERVER_HTTP2));
+
+        serverGzip = BooleanUtils
+                .toBoolean(propsServer.getProperty(PROP_KEY_SERVER_GZIP));
+
+        serverStaticCache = BooleanUtils.toBoolean(
+                propsServer.getProperty(PROP_KEY_SERVER_STATIC_CACHE));
+
+        final boolean annotationScan = BooleanUtils.toBooleanDefaultIfNull(
+                BooleanUtils.toBooleanObject(propsServer
+                        .getProperty(PROP_KEY_SERVER_STARTUP_ANNOTATION_SCAN)),
+                true);
+
         sessionScavengeInterval = Integer.parseInt(propsServer.getProperty(
                 PROP_KEY_SERVER_SESSION_SCAVENGE_INTERVAL_SEC,
                 SERVER_SESSION_SCAVENGE_INTERVAL_SEC_DEFAULT));
@@ -709,19 +1194,25 @@ public final class WebServer {
         }
 
         threadPool.setName("jetty-threadpool");
+        ThreadPoolInfo.threadPool = threadPool;
 
         final Server server = new Server(threadPool);
         // First thing to do.
         Runtime.getRuntime().addShutdownHook(new WebServerShutdownHook(server));
 
         /*
-         * This is needed to enable the Jetty annotations.
+         * This is needed to enable the Jetty annotations. When scanning is
+         * disabled, annotated classes are registered from
+         * ServletAnnotationIndex.
          */
-        org.eclipse.jetty.webapp.Configuration.ClassList classlist =
-                org.eclipse.jetty.webapp.Configuration.ClassList
-                        .setServerDefault(server);
-        classlist.addBefore("org.eclipse.jetty.webapp.JettyWebXmlConfiguration",
-                "org.eclipse.jetty.annotations.AnnotationConfiguration");
+        if (annotationScan) {
+            org.eclipse.jetty.webapp.Configuration.ClassList classlist =
+                    org.eclipse.jetty.webapp.Configuration.ClassList
+                            .setServerDefault(server);
+            classlist.addBefore(
+                    "org.eclipse.jetty.webapp.JettyWebXmlConfiguration",
+                    "org.eclipse.jetty.annotations.AnnotationConfiguration");
+        }
 
         /*
          * HttpConfiguration is a collection of configuration information
@@ -750,8 +1241,16 @@ public final class WebServer {
              * like the output buffer size, etc. We also set the port and
              * configure an idle timeout.
              */
-            final ServerConnector http = new ServerConnector(server,
-                    new HttpConnectionFactory(httpConfig));
+            final ServerConnector http;
+
+            if (serverHttp2) {
+                http = new ServerConnector(server,
+                        new HttpConnectionFactory(httpConfig),
+                        new HTTP2CServerConnectionFactory(httpConfig));
+            } else {
+                http = new ServerConnector(server,
+                        new HttpConnectionFactory(httpConfig));
+            }
 
             http.setPort(serverPort);
             http.setIdleTimeout(ThreadPoolInfo.idleTimeoutMsec);
@@ -875,10 +1374,34 @@ public final class WebServer {
          * we just made along with the previously created ssl context factory.
          * Next we set the port and a longer idle timeout.
          */
-        final ServerConnector https = new ServerConnector(server,
-                new SslConnectionFactory(sslContextFactory,
-                        HttpVersion.HTTP_1_1.asString()),
-                new HttpConnectionFactory(httpsConfig));
+        final HttpConnectionFactory httpsFactory =
+                new HttpConnectionFactory(httpsConfig);
+
+        final ServerConnector https;
+
+        if (serverHttp2) {
+            /*
+             * ALPN negotiates h2, with HTTP/1.1 as fallback. HTTP/2 requires
+             * its own cipher suite ordering.
+             */
+            final ALPNServerConnectionFactory alpn =
+                    new ALPNServerConnectionFactory();
+            alpn.setDefaultProtocol(httpsFactory.getProtocol());
+
+            sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+            sslContextFactory.setUseCipherSuitesOrder(true);
+
+            https = new ServerConnector(server,
+                    new SslConnectionFactory(sslContextFactory,
+                            alpn.getProtocol()),
+                    alpn, new HTTP2ServerConnectionFactory(httpsConfig),
+                    httpsFactory);
+        } else {
+            https = new ServerConnector(server,
+                    new SslConnectionFactory(sslContextFactory,
+                            HttpVersion.HTTP_1_1.asString()),
+                    httpsFactory);
+        }
 
         https.setPort(serverPortSsl);
         https.setIdleTimeout(ThreadPoolInfo.idleTimeoutMsec);
@@ -913,9 +1436,13 @@ public final class WebServer {
          * "/classes/.*" scan is needed when running in development (Eclipse).
          * The "/savapage-server-*.jar$" scan in needed for production.
          */
-        webAppContext.setAttribute(
-                "org.eclipse.jetty.server.webapp.ContainerIncludeJarPattern",
-                ".*/savapage-server-[^/]*\\.jar$|.*/classes/.*");
+        if (annotationScan) {
+            webAppContext.setAttribute(
+                    "org.eclipse.jetty.server.webapp.ContainerIncludeJarPattern",
+                    ".*/savapage-server-[^/]*\\.jar$|.*/classes/.*");
+        } else {
+            ServletAnnotationIndex.apply(webAppContext);
+        }
 
         /*
          * Redirect to SSL?
@@ -939,13 +1466,107 @@ public final class WebServer {
         webAppContext.getSessionHandler()
                 .setSessionCookie(SERVER_SESSION_COOKIE);
 
+        /*
+         * Cluster: share state with the other server nodes on this host.
+         * Sessions are persisted in the shared directory by Jetty, and cached
+         * in memory on each node. A load balancer must use sticky sessions,
+         * since Wicket pages are stored per node.
+         */
+        final String clusterStateDir =
+                propsServer.getProperty(PROP_KEY_CLUSTER_STATE_DIR);
+
+        if (StringUtils.isNotBlank(clusterStateDir)) {
+
+            final Path clusterPath =
+                    Paths.get(serverHome).resolve(clusterStateDir.trim());
+
+            final int nodePort;
+            if (serverPort > 0) {
+                nodePort = serverPort;
+            } else {
+                nodePort = serverPortSsl;
+            }
+
+            final String nodeId = propsServer
+                    .getProperty(PROP_KEY_CLUSTER_NODE_ID, "node" + nodePort);
+
+            ClusterStateManager.initFileStore(clusterPath, nodeId);
+
+            final DefaultSessionIdManager sessionIdManager =
+                    new DefaultSessionIdManager(server);
+            sessionIdManager.setWorkerName(nodeId);
+            server.setSessionIdManager(sessionIdManager);
+
+            final FileSessionDataStoreFactory sessionStoreFactory =
+                    new FileSessionDataStoreFactory();
+            sessionStoreFactory.setStoreDir(
+                    clusterPath.resolve(CLUSTER_SUBDIR_SESSIONS).toFile());
+            sessionStoreFactory.setDeleteUnrestorableFiles(true);
+            server.addBean(sessionStoreFactory);
+
+            final DefaultSessionCacheFactory sessionCacheFactory =
+                    new DefaultSessionCacheFactory();
+            sessionCacheFactory.setEvictionPolicy(Integer.parseInt(
+                    propsServer.getProperty(PROP_KEY_CLUSTER_SESSION_EVICT_SECS,
+                            CLUSTER_SESSION_EVICT_SECS_DEFAULT)));
+            sessionCacheFactory.setSaveOnInactiveEvict(true);
+            sessionCacheFactory.setRemoveUnloadableSessions(true);
+            server.addBean(sessionCacheFactory);
+
+            LOGGER.info("Cluster node [{}] state in [{}]",
+                    sessionIdManager.getWorkerName(), clusterPath);
+        }
+
         /*
          * Set the handler(s).
          */
         final HandlerList handlerList = new HandlerList();
         handlerList.setHandlers(handlerArray);
 
-        server.setHandler(handlerList);
+        /*
+         * Per traffic class thread limits, opt-in: by default no class is
+         * limited.
+         */
+        final Map<TrafficClassEnum, Integer> trafficLimits =
+                new EnumMap<>(TrafficClassEnum.class);
+
+        for (final TrafficClassEnum tc : TrafficClassEnum.values()) {
+            trafficLimits.put(tc,
+                    Integer.valueOf(propsServer.getProperty(String.format(
+                            PROP_KEY_SERVER_TRAFFIC_MAX_THREADS_FORMAT,
+                            tc.getId()), SERVER_TRAFFIC_MAX_THREADS_DEFAULT)));
+        }
+
+        final HandlerWrapper trafficHandler =
+                new TrafficClassHandler(trafficLimits);
+        trafficHandler.setHandler(handlerList);
+
+        Handler handler = trafficHandler;
+
+        if (serverStaticCache) {
+            final HandlerWrapper cacheHandler = new MyStaticCacheHandler();
+            cacheHandler.setHandler(handler);
+            handler = cacheHandler;
+        }
+
+        if (serverGzip) {
+            /*
+             * Images, PDF and IPP payloads are not included: they are either
+             * compressed already or binary.
+             */
+            final GzipHandler gzipHandler = new GzipHandler();
+            gzipHandler.setIncludedMimeTypes("text/html", "text/css",
+                    "text/plain", "text/xml", "text/javascript",
+                    "application/javascript", "application/json",
+                    "image/svg+xml");
+            gzipHandler.setIncludedMethods(HttpMethod.GET.asString(),
+                    HttpMethod.POST.asString());
+            gzipHandler.setMinGzipSize(GZIP_MIN_SIZE);
+            gzipHandler.setHandler(handler);
+            handler = gzipHandler;
+        }
+
+        server.setHandler(handler);
 
         /*
          * BASIC Authentication for Atom Feed and PaperCut User Syn/Auth
@@ -990,11 +1611,18 @@ public final class WebServer {
 
             writer.flush();
 
+            logStartupPhase("configure", nanoStart);
+
             /*
              * Start the server: WebApp is initialized.
              */
+            final long nanoServerStart = System.nanoTime();
+
             server.start();
 
+            logStartupPhase("start", nanoServerStart);
+            logStartupPhase("total", nanoStart);
+
             // ... after start() !
             server.getSessionIdManager().getSessionHouseKeeper()
                     .setIntervalSec(sessionScavengeInterval);
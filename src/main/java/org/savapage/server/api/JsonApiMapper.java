@@ -0,0 +1,177 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectReader;
+import org.codehaus.jackson.map.ObjectWriter;
+
+/**
+ * Shared JSON (de)serialization for the JSON API.
+ * <p>
+ * An {@link ObjectMapper} is costly to create, and each new instance starts
+ * with a cold serializer cache. Since a configured mapper, and the
+ * {@link ObjectWriter} and {@link ObjectReader} instances derived from it, are
+ * thread-safe, a single mapper is shared, and writers and readers are cached
+ * per type.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class JsonApiMapper {
+
+    /**
+     * The shared mapper. Note: it must not be reconfigured after
+     * initialization. The target of {@link #writeValue(OutputStream, Object)}
+     * is owned by the caller, and therefore not closed.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    /** */
+    private static final ObjectWriter WRITER = MAPPER.writer();
+
+    /** */
+    private static final ObjectReader TREE_READER = MAPPER.reader();
+
+    /** */
+    private static final Map<Class<?>, ObjectWriter> TYPE_WRITERS =
+            new ConcurrentHashMap<>();
+
+    /** */
+    private static final Map<Class<?>, ObjectReader> TYPE_READERS =
+            new ConcurrentHashMap<>();
+
+    /** */
+    private JsonApiMapper() {
+    }
+
+    /**
+     * @return The generic writer.
+     */
+    public static ObjectWriter writer() {
+        return WRITER;
+    }
+
+    /**
+     * @param type
+     *            The root type to serialize.
+     * @return The cached writer for the type.
+     */
+    public static ObjectWriter writer(final Class<?> type) {
+        return TYPE_WRITERS.computeIfAbsent(type, MAPPER::writerWithType);
+    }
+
+    /**
+     * @param type
+     *            The type to deserialize.
+     * @return The cached reader for the type.
+     */
+    public static ObjectReader reader(final Class<?> type) {
+        return TYPE_READERS.computeIfAbsent(type, MAPPER::reader);
+    }
+
+    /**
+     * Serializes an object to a JSON string.
+     *
+     * @param value
+     *            The object.
+     * @return The JSON string.
+     * @throws IOException
+     *             When serialization fails.
+     */
+    public static String writeValueAsString(final Object value)
+            throws IOException {
+        return WRITER.writeValueAsString(value);
+    }
+
+    /**
+     * Serializes an object to UTF-8 JSON bytes.
+     *
+     * @param value
+     *            The object.
+     * @return The JSON bytes.
+     * @throws IOException
+     *             When serialization fails.
+     */
+    public static byte[] writeValueAsBytes(final Object value)
+            throws IOException {
+        return WRITER.writeValueAsBytes(value);
+    }
+
+    /**
+     * Serializes an object as UTF-8 JSON to an output stream.
+     *
+     * @param ostr
+     *            The output stream.
+     * @param value
+     *            The object.
+     * @throws IOException
+     *             When serialization fails.
+     */
+    public static void writeValue(final OutputStream ostr, final Object value)
+            throws IOException {
+        WRITER.writeValue(ostr, value);
+    }
+
+    /**
+     * Deserializes JSON content to a tree.
+     *
+     * @param json
+     *            The JSON string.
+     * @return The root node.
+     * @throws IOException
+     *             When JSON is invalid.
+     */
+    public static JsonNode readTree(final String json) throws IOException {
+        return TREE_READER.readTree(json);
+    }
+
+    /**
+     * Deserializes JSON content to an object of a type.
+     *
+     * @param <T>
+     *            The type.
+     * @param json
+     *            The JSON string.
+     * @param type
+     *            The type class.
+     * @return The object.
+     * @throws IOException
+     *             When JSON is invalid.
+     */
+    public static <T> T readValue(final String json, final Class<T> type)
+            throws IOException {
+        return reader(type).readValue(json);
+    }
+}
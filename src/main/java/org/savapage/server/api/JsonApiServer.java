@@ -28,6 +28,7 @@ import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -59,7 +60,6 @@ import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.request.resource.ContentDisposition;
 import org.apache.wicket.util.time.Duration;
 import org.codehaus.jackson.JsonNode;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.hibernate.exception.LockAcquisitionException;
 import org.savapage.core.LetterheadNotFoundException;
 import org.savapage.core.PerformanceLogger;
@@ -127,7 +127,6 @@ import org.savapage.core.json.JsonPrinterDetail;
 import org.savapage.core.json.PdfProperties;
 import org.savapage.core.json.rpc.AbstractJsonRpcMethodResponse;
 import org.savapage.core.json.rpc.ErrorDataBasic;
-import org.savapage.core.json.rpc.JsonRpcConfig;
 import org.savapage.core.json.rpc.JsonRpcError;
 import org.savapage.core.json.rpc.ResultDataBasic;
 import org.savapage.core.json.rpc.impl.ResultPosDeposit;
@@ -173,6 +172,7 @@ import org.savapage.lib.pgp.PGPBaseException;
 import org.savapage.lib.pgp.pdf.PdfPgpVerifyUrl;
 import org.savapage.server.WebApp;
 import org.savapage.server.WebAppParmEnum;
+import org.savapage.server.WebServer;
 import org.savapage.server.api.request.ApiRequestHandler;
 import org.savapage.server.api.request.ApiRequestHelper;
 import org.savapage.server.api.request.ApiRequestMixin;
@@ -183,6 +183,7 @@ import org.savapage.server.api.request.export.ReqExportPrinterOpt;
 import org.savapage.server.api.request.export.ReqExportPrinterPpd;
 import org.savapage.server.api.request.export.ReqExportPrinterPpdExt;
 import org.savapage.server.api.request.export.ReqExportUserDataHistory;
+import org.savapage.server.auth.LoginCredentialCache;
 import org.savapage.server.cometd.AbstractEventService;
 import org.savapage.server.dropzone.PdfPgpDropZoneFileResource;
 import org.savapage.server.dropzone.PdfPgpUploadHelper;
@@ -192,6 +193,7 @@ import org.savapage.server.dto.MoneyTransferDto;
 import org.savapage.server.ext.ServerPluginManager;
 import org.savapage.server.helpers.HtmlButtonEnum;
 import org.savapage.server.helpers.SparklineHtml;
+import org.savapage.server.img.PageImageCache;
 import org.savapage.server.pages.AbstractPage;
 import org.savapage.server.pages.StatsPageTotalPanel;
 import org.savapage.server.session.SpSession;
@@ -325,7 +327,15 @@ public final class JsonApiServer extends AbstractPage {
         /*
          *
          */
-        String jsonArray = null;
+        /*
+         * The object to serialize as JSON response.
+         */
+        Object jsonResponse = null;
+        /*
+         * The serialized JSON response: serialization is done while the
+         * ServiceContext is open, so errors are handled as API errors.
+         */
+        byte[] jsonBytes = null;
         User lockedUser = null;
         boolean commitDbTransaction = false;
 
@@ -503,10 +513,10 @@ public final class JsonApiServer extends AbstractPage {
                 }
             }
 
-            if (returnData == null) {
-                jsonArray = null;
-            } else if (jsonArray == null) {
-                jsonArray = new ObjectMapper().writeValueAsString(returnData);
+            jsonResponse = returnData;
+
+            if (jsonResponse != null) {
+                jsonBytes = JsonApiMapper.writeValueAsBytes(jsonResponse);
             }
 
         } catch (Exception t) {
@@ -532,7 +542,7 @@ public final class JsonApiServer extends AbstractPage {
                     apiRes = handleException(requestId, requestingUser, t);
                 }
 
-                jsonArray = new ObjectMapper().writeValueAsString(apiRes);
+                jsonResponse = apiRes;
 
             } catch (Exception e1) {
                 LOGGER.error(e1.getMessage());
@@ -557,8 +567,9 @@ public final class JsonApiServer extends AbstractPage {
 
             } catch (Exception ex) {
                 try {
-                    jsonArray = new ObjectMapper().writeValueAsString(
-                            handleException(requestId, requestingUser, ex));
+                    jsonResponse =
+                            handleException(requestId, requestingUser, ex);
+                    jsonBytes = null;
                 } catch (Exception e1) {
                     LOGGER.error(e1.getMessage());
                 }
@@ -580,15 +591,25 @@ public final class JsonApiServer extends AbstractPage {
         /*
          *
          */
-        if (jsonArray != null) {
+        if (jsonResponse != null && jsonBytes == null) {
+            /*
+             * Error result map (plain values).
+             */
+            try {
+                jsonBytes = JsonApiMapper.writeValueAsBytes(jsonResponse);
+            } catch (IOException e) {
+                LOGGER.error("JSON response failed: {}", e.getMessage());
+            }
+        }
+
+        if (jsonBytes != null) {
 
             if (LOGGER.isTraceEnabled()) {
-                LOGGER.trace(jsonArray);
+                LOGGER.trace(new String(jsonBytes, StandardCharsets.UTF_8));
             }
 
             requestCycle.scheduleRequestHandlerAfterCurrent(
-                    new TextRequestHandler(JsonRpcConfig.INTERNET_MEDIA_TYPE,
-                            JsonRpcConfig.CHAR_ENCODING, jsonArray));
+                    new JsonResponseRequestHandler(jsonBytes));
         }
 
         PerformanceLogger.log(this.getClass(), "constructor", perfStartTime,
@@ -1445,6 +1466,7 @@ public final class JsonApiServer extends AbstractPage {
                     getParmValue(parameters, isGetAction, "id"),
                     Boolean.parseBoolean(
                             getParmValue(parameters, isGetAction, "pub")));
+            PageImageCache.instance().invalidateUser(requestingUser);
             return createApiResultOK();
 
         case JsonApiDict.REQ_LETTERHEAD_DELETE:
@@ -1457,6 +1479,7 @@ public final class JsonApiServer extends AbstractPage {
         case JsonApiDict.REQ_LETTERHEAD_DETACH:
 
             INBOX_SERVICE.detachLetterhead(requestingUser);
+            PageImageCache.instance().invalidateUser(requestingUser);
             return createApiResultOK();
 
         case JsonApiDict.REQ_LETTERHEAD_NEW:
@@ -2519,7 +2542,7 @@ public final class JsonApiServer extends AbstractPage {
 
         final Map<String, Object> userData = new HashMap<String, Object>();
 
-        final JsonNode list = new ObjectMapper().readTree(jsonScope);
+        final JsonNode list = JsonApiMapper.readTree(jsonScope);
 
         final Iterator<JsonNode> iter = list.getElements();
 
@@ -2894,6 +2917,8 @@ public final class JsonApiServer extends AbstractPage {
         USER_SERVICE.setUserAttrValue(jpaUser, UserAttrEnum.INTERNAL_PASSWORD,
                 encryptedPw);
 
+        LoginCredentialCache.instance().invalidate(iuser);
+
         jpaUser.setModifiedBy(requestingUser);
         jpaUser.setModifiedDate(new Date());
 
@@ -3035,7 +3060,7 @@ public final class JsonApiServer extends AbstractPage {
         final JsonNode list;
 
         try {
-            list = new ObjectMapper().readTree(jsonRename);
+            list = JsonApiMapper.readTree(jsonRename);
         } catch (IOException e) {
             throw new SpException(e.getMessage(), e);
         }
@@ -3810,7 +3835,7 @@ public final class JsonApiServer extends AbstractPage {
         final JsonNode list;
 
         try {
-            list = new ObjectMapper().readTree(jsonData);
+            list = JsonApiMapper.readTree(jsonData);
         } catch (IOException e) {
             throw new SpException(e.getMessage(), e);
         }
@@ -3821,6 +3846,9 @@ public final class JsonApiServer extends AbstractPage {
                 list.get("pub").getBooleanValue(),
                 list.get("pub-new").getBooleanValue());
 
+        // Letterhead (foreground) may be attached to the inbox of any user.
+        PageImageCache.instance().invalidateAll();
+
         final Map<String, Object> userData = new HashMap<String, Object>();
 
         return setApiResult(userData, ApiResultCodeEnum.OK,
@@ -3838,6 +3866,8 @@ public final class JsonApiServer extends AbstractPage {
             final String letterheadId, final boolean isPublic) {
 
         INBOX_SERVICE.deleteLetterhead(user, letterheadId, isPublic);
+        // Letterhead may be attached to the inbox of any user.
+        PageImageCache.instance().invalidateAll();
         return createApiResultOK();
     }
 
@@ -3851,7 +3881,7 @@ public final class JsonApiServer extends AbstractPage {
         final JsonNode list;
 
         try {
-            list = new ObjectMapper().readTree(jsonData);
+            list = JsonApiMapper.readTree(jsonData);
         } catch (IOException e) {
             throw new SpException(e.getMessage(), e);
         }
@@ -4123,6 +4153,8 @@ public final class JsonApiServer extends AbstractPage {
                     WebPrintDropZoneFileResource.UPLOAD_PARAM_NAME_FILE);
             userData.put("webPrintUploadFontParm",
                     WebPrintDropZoneFileResource.UPLOAD_PARAM_NAME_FONT);
+            userData.put("webPrintUploadChunkBytes",
+                    WebServer.getWebPrintUploadChunkBytes());
             userData.put("webPrintFileExt",
                     WebPrintHelper.getSupportedFileExtensions(true));
         }
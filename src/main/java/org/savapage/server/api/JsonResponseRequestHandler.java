@@ -0,0 +1,74 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.api;
+
+import org.apache.wicket.request.IRequestCycle;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.http.WebResponse;
+import org.savapage.core.json.rpc.JsonRpcConfig;
+
+/**
+ * Writes a JSON API response, serialized beforehand, to the response output
+ * stream without an intermediate {@link String}.
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class JsonResponseRequestHandler implements IRequestHandler {
+
+    /** */
+    private static final String CONTENT_TYPE = JsonRpcConfig.INTERNET_MEDIA_TYPE
+            + "; charset=" + JsonRpcConfig.CHAR_ENCODING;
+
+    /**
+     * The UTF-8 JSON bytes.
+     */
+    private final byte[] json;
+
+    /**
+     * @param jsonBytes
+     *            The UTF-8 JSON bytes, as serialized with
+     *            {@link JsonApiMapper#writeValueAsBytes(Object)}.
+     */
+    public JsonResponseRequestHandler(final byte[] jsonBytes) {
+        this.json = jsonBytes;
+    }
+
+    @Override
+    public void respond(final IRequestCycle requestCycle) {
+
+        final WebResponse response = (WebResponse) requestCycle.getResponse();
+
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(this.json.length);
+        response.write(this.json);
+    }
+
+    @Override
+    public void detach(final IRequestCycle requestCycle) {
+        // no code intended
+    }
+
+}
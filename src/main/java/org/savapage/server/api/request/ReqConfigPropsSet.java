@@ -30,7 +30,6 @@ import java.util.Iterator;
 
 import org.apache.commons.lang3.StringUtils;
 import org.codehaus.jackson.JsonNode;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.savapage.core.SpException;
 import org.savapage.core.cometd.AdminPublisher;
 import org.savapage.core.cometd.PubLevelEnum;
@@ -56,6 +55,7 @@ import org.savapage.core.services.helpers.PosSalesLabelCache;
 import org.savapage.core.services.helpers.SOfficeConfigProps;
 import org.savapage.core.util.BigDecimalUtil;
 import org.savapage.ext.papercut.services.PaperCutService;
+import org.savapage.server.api.JsonApiMapper;
 import org.savapage.server.dropzone.WebPrintHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -99,7 +99,7 @@ public final class ReqConfigPropsSet extends ApiRequestMixin {
         final JsonNode list;
 
         try {
-            list = new ObjectMapper().readTree(this.getParmValueDto());
+            list = JsonApiMapper.readTree(this.getParmValueDto());
         } catch (IOException e) {
             throw new SpException(e.getMessage(), e);
         }
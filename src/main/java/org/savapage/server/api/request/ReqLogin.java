@@ -86,6 +86,7 @@ import org.savapage.core.util.Messages;
 import org.savapage.server.WebApp;
 import org.savapage.server.api.UserAgentHelper;
 import org.savapage.server.auth.ClientAppUserAuthManager;
+import org.savapage.server.auth.LoginCredentialCache;
 import org.savapage.server.auth.UserAuthToken;
 import org.savapage.server.auth.WebAppUserAuthManager;
 import org.savapage.server.cometd.UserEventService;
@@ -112,9 +113,22 @@ public final class ReqLogin extends ApiRequestMixin {
             LoggerFactory.getLogger(ReqLogin.class);
 
     /**
-     * <b>Static</b> lock object for synchronization of lazy user creation.
+     * Number of {@link #LAZY_CREATE_USER_LOCKS}.
      */
-    private static final Object LAZY_CREATE_USER_LOCK = new Object();
+    private static final int LAZY_CREATE_USER_LOCK_STRIPES = 64;
+
+    /**
+     * <b>Static</b> lock objects for synchronization of lazy user creation,
+     * striped by user id.
+     */
+    private static final Object[] LAZY_CREATE_USER_LOCKS =
+            new Object[LAZY_CREATE_USER_LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < LAZY_CREATE_USER_LOCKS.length; i++) {
+            LAZY_CREATE_USER_LOCKS[i] = new Object();
+        }
+    }
 
     /**
      * .
@@ -1006,12 +1020,28 @@ public final class ReqLogin extends ApiRequestMixin {
 
                     final User userAuth;
 
+                    final LoginCredentialCache credentialCache =
+                            LoginCredentialCache.instance();
+
                     if (allowInternalUsersOnly) {
                         userAuth = null;
                         isAuthenticated = false;
+                    } else if (userDb != null
+                            && credentialCache.isVerified(uid, authPw)) {
+                        // Recently verified by user source.
+                        userAuth = null;
+                        isAuthenticated = true;
                     } else {
                         userAuth = userAuthenticator.authenticate(uid, authPw);
                         isAuthenticated = (userAuth != null);
+
+                        if (userDb != null) {
+                            if (isAuthenticated) {
+                                credentialCache.onVerified(uid, authPw);
+                            } else {
+                                credentialCache.invalidate(uid);
+                            }
+                        }
                     }
 
                     if (!isAuthenticated) {
@@ -1677,9 +1707,13 @@ public final class ReqLogin extends ApiRequestMixin {
         /*
          * Since the user does not exist in the database (yet) we cannot use SQL
          * row locking to protect concurrent user creation: therefore we use the
-         * cruder synchronized block.
+         * cruder synchronized block, on the lock stripe of the user id.
          */
-        synchronized (LAZY_CREATE_USER_LOCK) {
+        final int stripe = (userAuth.getUserId().toLowerCase(Locale.ROOT)
+                .hashCode() & Integer.MAX_VALUE)
+                % LAZY_CREATE_USER_LOCKS.length;
+
+        synchronized (LAZY_CREATE_USER_LOCKS[stripe]) {
 
             final User userDb = userDao.findActiveUserByUserIdInsert(userAuth,
                     new Date(), Entity.ACTOR_SYSTEM);
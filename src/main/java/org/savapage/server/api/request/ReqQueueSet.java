@@ -40,6 +40,7 @@ import org.savapage.core.jpa.User;
 import org.savapage.core.services.ServiceContext;
 import org.savapage.core.util.InetUtils;
 import org.savapage.core.util.JsonHelper;
+import org.savapage.server.ipp.IppQueueCache;
 
 /**
  * Edits or creates a Queue.
@@ -203,6 +204,19 @@ public final class ReqQueueSet extends ApiRequestMixin {
             }
         }
 
+        /*
+         * IMPORTANT: ad-hoc commit + begin transaction, so the queue cache is
+         * invalidated after the changes are visible to IPP requests.
+         */
+        ServiceContext.getDaoContext().commit();
+        ServiceContext.getDaoContext().beginTransaction();
+
+        /*
+         * URL path, IP access and (logical) deletion may have changed: a new
+         * queue may also hide a cached "does not exist" descriptor.
+         */
+        IppQueueCache.instance().invalidateAll();
+
         setApiResult(ApiResultCodeEnum.OK, keyOK);
     }
 
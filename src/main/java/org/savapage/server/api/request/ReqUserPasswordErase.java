@@ -30,6 +30,7 @@ import org.savapage.core.dao.enums.UserAttrEnum;
 import org.savapage.core.dto.AbstractDto;
 import org.savapage.core.jpa.User;
 import org.savapage.core.services.ServiceContext;
+import org.savapage.server.auth.LoginCredentialCache;
 
 /**
  *
@@ -95,6 +96,8 @@ public final class ReqUserPasswordErase extends ApiRequestMixin {
 
         USER_SERVICE.removeUserAttr(user, UserAttrEnum.INTERNAL_PASSWORD);
 
+        LoginCredentialCache.instance().invalidate(user.getUserId());
+
         setApiResult(ApiResultCodeEnum.OK, "msg-user-password-erased-ok");
     }
 }
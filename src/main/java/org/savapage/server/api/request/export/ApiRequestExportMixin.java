@@ -24,15 +24,10 @@
  */
 package org.savapage.server.api.request.export;
 
-import java.io.File;
-import java.nio.file.Paths;
-import java.util.UUID;
-
 import org.apache.wicket.request.IRequestHandler;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.handler.TextRequestHandler;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
-import org.savapage.core.config.ConfigManager;
 import org.savapage.core.config.WebAppTypeEnum;
 import org.savapage.core.jpa.User;
 import org.savapage.core.services.JobTicketService;
@@ -74,16 +69,13 @@ public abstract class ApiRequestExportMixin implements ApiRequestExportHandler {
      *            The {@link PageParameters}.
      * @param isGetAction
      *            {@code true} when this is an HTML GET request.
-     * @param tempExportFile
-     *            The unique temporary file.
      * @return The request handler.
      * @throws Exception
      *             When error.
      */
     protected abstract IRequestHandler onExport(WebAppTypeEnum webAppType,
             String requestingUser, RequestCycle requestCycle,
-            PageParameters parameters, boolean isGetAction, File tempExportFile)
-            throws Exception;
+            PageParameters parameters, boolean isGetAction) throws Exception;
 
     /**
      *
@@ -135,26 +127,17 @@ public abstract class ApiRequestExportMixin implements ApiRequestExportHandler {
             final boolean isGetAction, final String requestingUser,
             final User lockedUser) throws Exception {
 
-        final File tempExportFile = Paths
-                .get(ConfigManager.getAppTmpDir(), String
-                        .format("export-%s.tmp", UUID.randomUUID().toString()))
-                .toFile();
-
         IRequestHandler requestHandler = null;
 
         try {
 
             requestHandler = onExport(webAppType, requestingUser, requestCycle,
-                    parameters, isGetAction, tempExportFile);
+                    parameters, isGetAction);
 
         } catch (Exception e) {
 
             LOGGER.error(e.getMessage(), e);
 
-            if (tempExportFile != null && tempExportFile.exists()) {
-                tempExportFile.delete();
-            }
-
             requestHandler = new TextRequestHandler("text/html", "UTF-8",
                     "<h2 style='color: red;'>" + e.getClass().getSimpleName()
                             + "</h2><p>" + e.getMessage() + "</p>");
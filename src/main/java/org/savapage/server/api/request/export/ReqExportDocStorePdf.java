@@ -68,10 +68,7 @@ public class ReqExportDocStorePdf extends ApiRequestExportMixin {
     @Override
     protected final IRequestHandler onExport(final WebAppTypeEnum webAppType,
             final String requestingUser, final RequestCycle requestCycle,
-            final PageParameters parameters, final boolean isGetAction,
-            final File tempExportFile) {
-
-        // tempExportFile is NOT applicable.
+            final PageParameters parameters, final boolean isGetAction) {
 
         try {
             final String reqParm = this.getParmValue(requestCycle, parameters,
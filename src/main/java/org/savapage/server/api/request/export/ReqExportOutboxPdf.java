@@ -66,10 +66,7 @@ public class ReqExportOutboxPdf extends ApiRequestExportMixin {
     @Override
     protected final IRequestHandler onExport(final WebAppTypeEnum webAppType,
             final String requestingUser, final RequestCycle requestCycle,
-            final PageParameters parameters, final boolean isGetAction,
-            final File tempExportFile) {
-
-        // tempExportFile is NOT applicable.
+            final PageParameters parameters, final boolean isGetAction) {
 
         final String userid;
 
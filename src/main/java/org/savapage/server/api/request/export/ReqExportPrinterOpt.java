@@ -24,7 +24,6 @@
  */
 package org.savapage.server.api.request.export;
 
-import java.io.File;
 
 import org.apache.wicket.request.IRequestHandler;
 import org.apache.wicket.request.cycle.RequestCycle;
@@ -63,10 +62,7 @@ public class ReqExportPrinterOpt extends ApiRequestExportMixin {
     @Override
     protected final IRequestHandler onExport(final WebAppTypeEnum webAppType,
             final String requestingUser, final RequestCycle requestCycle,
-            final PageParameters parameters, final boolean isGetAction,
-            final File tempExportFile) {
-
-        // tempExportFile is NOT applicable.
+            final PageParameters parameters, final boolean isGetAction) {
 
         final PrinterDao printerDao =
                 ServiceContext.getDaoContext().getPrinterDao();
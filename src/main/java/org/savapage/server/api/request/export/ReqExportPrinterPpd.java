@@ -24,7 +24,6 @@
  */
 package org.savapage.server.api.request.export;
 
-import java.io.File;
 
 import org.apache.wicket.core.util.resource.UrlResourceStream;
 import org.apache.wicket.request.IRequestHandler;
@@ -61,10 +60,7 @@ public class ReqExportPrinterPpd extends ApiRequestExportMixin {
     @Override
     protected final IRequestHandler onExport(final WebAppTypeEnum webAppType,
             final String requestingUser, final RequestCycle requestCycle,
-            final PageParameters parameters, final boolean isGetAction,
-            final File tempExportFile) {
-
-        // tempExportFile is NOT applicable.
+            final PageParameters parameters, final boolean isGetAction) {
 
         final PrinterDao printerDao =
                 ServiceContext.getDaoContext().getPrinterDao();
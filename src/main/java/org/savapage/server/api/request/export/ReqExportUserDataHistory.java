@@ -24,18 +24,19 @@
  */
 package org.savapage.server.api.request.export;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.Function;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 
 import org.apache.commons.lang3.StringUtils;
@@ -44,8 +45,10 @@ import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.handler.resource.ResourceStreamRequestHandler;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.request.resource.ContentDisposition;
-import org.apache.wicket.util.resource.FileResourceStream;
+import org.apache.wicket.util.resource.AbstractResourceStreamWriter;
 import org.apache.wicket.util.time.Duration;
+import org.savapage.core.concurrent.ReadLockObtainFailedException;
+import org.savapage.core.concurrent.ReadWriteLockEnum;
 import org.savapage.core.config.ConfigManager;
 import org.savapage.core.config.IConfigProp.Key;
 import org.savapage.core.config.WebAppTypeEnum;
@@ -53,6 +56,7 @@ import org.savapage.core.dao.UserAccountDao;
 import org.savapage.core.dao.UserAttrDao;
 import org.savapage.core.dao.UserNumberDao;
 import org.savapage.core.dao.enums.UserAttrEnum;
+import org.savapage.core.dao.impl.DaoContextImpl;
 import org.savapage.core.ipp.IppJobStateEnum;
 import org.savapage.core.jpa.Account;
 import org.savapage.core.jpa.AccountTrx;
@@ -74,12 +78,20 @@ import org.savapage.core.jpa.UserNumber;
 import org.savapage.core.services.ServiceContext;
 import org.savapage.core.util.NumberUtil;
 import org.savapage.server.api.JsonApiDict;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import au.com.bytecode.opencsv.CSVWriter;
 
 /**
- * Creates ZIP file with CSV exports of document and transaction log for
+ * Streams a ZIP file with CSV exports of document and transaction log for
  * requesting user.
+ * <p>
+ * Rows are read in chunks by ascending primary key (keyset iteration), and
+ * the persistence context is cleared after each chunk, so memory use does
+ * not grow with the size of the history. The database read lock is held
+ * while a chunk is read, and released while it is written to the client.
+ * </p>
  *
  * @author Rijk Ravestein
  *
@@ -96,6 +108,131 @@ public class ReqExportUserDataHistory extends ApiRequestExportMixin {
     /** */
     private static final String SECRET_VALUE = "*****";
 
+    /** */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(ReqExportUserDataHistory.class);
+
+    /** */
+    private static final String QPARM_USER_ID = "userId";
+
+    /** */
+    private static final String QPARM_ACCOUNT_IDS = "accountIds";
+
+    /** */
+    private static final String QPARM_LAST_ID = "lastId";
+
+    /**
+     * Writes the ZIP straight into the response stream. The export runs
+     * after the API request is done, so it opens its own service context,
+     * and takes the database read lock for each chunk of rows it reads.
+     */
+    private final class ExportStreamWriter
+            extends AbstractResourceStreamWriter {
+
+        /** */
+        private static final long serialVersionUID = 1L;
+
+        /** */
+        private final Long userDbKey;
+
+        /** */
+        private final String uid;
+
+        /** */
+        private final String fileNameDateTimePart;
+
+        /**
+         * @param dbKey
+         *            Primary database key of the user.
+         * @param userId
+         *            User ID.
+         * @param dateTimePart
+         *            Date/time part of ZIP entry names.
+         */
+        ExportStreamWriter(final Long dbKey, final String userId,
+                final String dateTimePart) {
+            this.userDbKey = dbKey;
+            this.uid = userId;
+            this.fileNameDateTimePart = dateTimePart;
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/zip";
+        }
+
+        @Override
+        public void write(final OutputStream output) throws IOException {
+
+            final String lockContextId = String.format("%s:%s",
+                    JsonApiDict.REQ_USER_EXPORT_DATA_HISTORY, this.uid);
+
+            ServiceContext.open();
+
+            try {
+                this.writeZip(output, lockContextId);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("User [{}] data export: {}", this.uid,
+                        e.getMessage());
+                throw e;
+            } finally {
+                ServiceContext.close();
+            }
+        }
+
+        /**
+         * @param output
+         *            The response stream.
+         * @param lockContextId
+         *            Context ID of the database read lock.
+         * @throws IOException
+         *             When IO error.
+         */
+        private void writeZip(final OutputStream output,
+                final String lockContextId) throws IOException {
+
+            final List<String[]> userLines;
+
+            lockDatabaseRead(lockContextId);
+            try {
+                userLines = getUserDetails(ServiceContext.getDaoContext()
+                        .getUserDao().findById(this.userDbKey));
+                DaoContextImpl.peekEntityManager().clear();
+            } finally {
+                unlockDatabaseRead();
+            }
+
+            final ZipOutputStream zout = new ZipOutputStream(output);
+
+            final int level = 9; // highest level
+            zout.setLevel(level);
+
+            final OutputStreamWriter writer = new OutputStreamWriter(zout);
+            final CSVWriter csvWriter = new CSVWriter(writer);
+
+            // #1
+            zout.putNextEntry(new ZipEntry(String.format("%s-%s-user.csv",
+                    this.uid, this.fileNameDateTimePart)));
+            csvWriter.writeAll(userLines);
+            csvWriter.flush();
+
+            // #2
+            zout.putNextEntry(new ZipEntry(String.format("%s-%s-documents.csv",
+                    this.uid, this.fileNameDateTimePart)));
+            exportDocumentLog(csvWriter, this.userDbKey, lockContextId);
+
+            // #3
+            zout.putNextEntry(new ZipEntry(
+                    String.format("%s-%s-transactions.csv", this.uid,
+                            this.fileNameDateTimePart)));
+            exportTransactionLog(csvWriter, this.userDbKey, lockContextId);
+
+            csvWriter.flush();
+            zout.finish();
+            output.flush();
+        }
+    }
+
     /** */
     private final int maxExportResults;
 
@@ -114,11 +251,35 @@ public class ReqExportUserDataHistory extends ApiRequestExportMixin {
         this.dateFormat = new SimpleDateFormat(DATE_FORMAT_PATTERN, locale);
     }
 
+    /**
+     * Obtains the database read lock.
+     *
+     * @param lockContextId
+     *            Context ID of the lock.
+     * @throws IOException
+     *             When lock could not be obtained.
+     */
+    private static void lockDatabaseRead(final String lockContextId)
+            throws IOException {
+        try {
+            ReadWriteLockEnum.DATABASE_READONLY.tryReadLock(lockContextId);
+        } catch (ReadLockObtainFailedException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Releases the database read lock.
+     */
+    private static void unlockDatabaseRead() {
+        ReadWriteLockEnum.DATABASE_READONLY.setReadLock(false);
+    }
+
     @Override
     protected final IRequestHandler onExport(final WebAppTypeEnum webAppType,
             final String requestingUser, final RequestCycle requestCycle,
-            final PageParameters parameters, final boolean isGetAction,
-            final File tempExportFile) throws Exception {
+            final PageParameters parameters, final boolean isGetAction)
+            throws Exception {
 
         final String uid;
         final User user;
@@ -144,40 +305,10 @@ public class ReqExportUserDataHistory extends ApiRequestExportMixin {
         final String handlerFileName = String.format("%s-data-export-%s.zip",
                 uid, fileNameDateTimePart);
 
-        final FileOutputStream fout = new FileOutputStream(tempExportFile);
-        final ZipOutputStream zout = new ZipOutputStream(fout);
-
-        final int level = 9; // highest level
-        zout.setLevel(level);
-
-        final OutputStreamWriter writer = new OutputStreamWriter(zout);
-        final CSVWriter csvWriter = new CSVWriter(writer);
-
-        try {
-            // #1
-            zout.putNextEntry(new ZipEntry(String.format("%s-%s-user.csv", uid,
-                    fileNameDateTimePart)));
-            this.exportUserDetails(csvWriter, user);
-
-            // #2
-            zout.putNextEntry(new ZipEntry(String.format("%s-%s-documents.csv",
-                    uid, fileNameDateTimePart)));
-            this.exportDocumentLog(csvWriter, user);
-
-            // #3
-            zout.putNextEntry(new ZipEntry(String.format(
-                    "%s-%s-transactions.csv", uid, fileNameDateTimePart)));
-            this.exportTransactionLog(csvWriter, user);
-
-        } finally {
-            csvWriter.flush();
-            csvWriter.close();
-        }
-
         /* */
         final ResourceStreamRequestHandler handler =
-                new ResourceStreamRequestHandler(
-                        new FileResourceStream(tempExportFile));
+                new ResourceStreamRequestHandler(new ExportStreamWriter(
+                        user.getId(), uid, fileNameDateTimePart));
 
         handler.setContentDisposition(ContentDisposition.ATTACHMENT);
         handler.setFileName(handlerFileName);
@@ -187,17 +318,13 @@ public class ReqExportUserDataHistory extends ApiRequestExportMixin {
     }
 
     /**
-     * Writes CSV for Transactions.
+     * Gets the CSV lines of the user details.
      *
-     * @param writer
-     *            The CVS writer
      * @param user
      *            The user.
-     * @throws IOException
-     *             When IO error.
+     * @return The CSV lines.
      */
-    private void exportUserDetails(final CSVWriter writer, final User user)
-            throws IOException {
+    private List<String[]> getUserDetails(final User user) {
 
         final UserAttrDao dao = ServiceContext.getDaoContext().getUserAttrDao();
 
@@ -314,8 +441,68 @@ public class ReqExportUserDataHistory extends ApiRequestExportMixin {
             }
         }
         //
-        writer.writeAll(lines);
-        writer.flush();
+        return lines;
+    }
+
+    /**
+     * Writes CSV rows of a keyset query in chunks. The query must select
+     * rows with primary key greater than the {@link #QPARM_LAST_ID}
+     * parameter, ordered by primary key. Each chunk is read under the
+     * database read lock, and written after the lock is released and the
+     * persistence context is cleared.
+     *
+     * @param <T>
+     *            Entity type.
+     * @param writer
+     *            The CVS writer
+     * @param query
+     *            The query.
+     * @param idOf
+     *            Gets the primary key of an entity.
+     * @param rowOf
+     *            Gets the CSV row of an entity.
+     * @param lockContextId
+     *            Context ID of the database read lock.
+     * @throws IOException
+     *             When IO error.
+     */
+    private <T> void exportChunks(final CSVWriter writer,
+            final TypedQuery<T> query, final Function<T, Long> idOf,
+            final Function<T, String[]> rowOf, final String lockContextId)
+            throws IOException {
+
+        final EntityManager em = DaoContextImpl.peekEntityManager();
+
+        query.setMaxResults(this.maxExportResults);
+
+        Long lastId = Long.valueOf(0L);
+
+        while (true) {
+
+            final List<String[]> rows = new ArrayList<>();
+            final int chunkSize;
+
+            lockDatabaseRead(lockContextId);
+            try {
+                query.setParameter(QPARM_LAST_ID, lastId);
+                final List<T> list = query.getResultList();
+                for (final T obj : list) {
+                    rows.add(rowOf.apply(obj));
+                    lastId = idOf.apply(obj);
+                }
+                chunkSize = list.size();
+                em.clear();
+            } finally {
+                unlockDatabaseRead();
+            }
+
+            writer.writeAll(rows);
+            writer.flush();
+
+            if (chunkSize < this.maxExportResults) {
+                break;
+            }
+        }
     }
 
     /**
@@ -323,12 +510,15 @@ public class ReqExportUserDataHistory extends ApiRequestExportMixin {
      *
      * @param writer
      *            The CVS writer
-     * @param user
-     *            The user.
+     * @param userDbKey
+     *            The primary database key of the user.
+     * @param lockContextId
+     *            Context ID of the database read lock.
      * @throws IOException
      *             When IO error.
      */
-    private void exportDocumentLog(final CSVWriter writer, final User user)
+    private void exportDocumentLog(final CSVWriter writer,
+            final Long userDbKey, final String lockContextId)
             throws IOException {
 
         // Header
@@ -340,25 +530,16 @@ public class ReqExportUserDataHistory extends ApiRequestExportMixin {
                 "Signature", "Author", "Subject", "Keywords", "Encrypted",
                 "OwnerPw", "UserPw", "Comment", "Details" });
 
-        final TypedQuery<DocLog> query = ServiceContext.getDaoContext()
-                .getDocLogDao().getExportQuery(user);
+        final TypedQuery<DocLog> query = DaoContextImpl.peekEntityManager()
+                .createQuery("SELECT D FROM DocLog D"
+                        + " WHERE D.user.id = :" + QPARM_USER_ID
+                        + " AND D.id > :" + QPARM_LAST_ID + " ORDER BY D.id",
+                        DocLog.class);
 
-        query.setMaxResults(this.maxExportResults);
-
-        int startPosition = 0;
+        query.setParameter(QPARM_USER_ID, userDbKey);
 
-        while (true) {
-            query.setFirstResult(startPosition);
-            final List<DocLog> list = query.getResultList();
-            for (final DocLog docLog : list) {
-                writer.writeNext(getRow(docLog));
-            }
-            writer.flush();
-            if (list.size() < this.maxExportResults) {
-                break;
-            }
-            startPosition += this.maxExportResults;
-        }
+        this.exportChunks(writer, query, DocLog::getId, this::getRow,
+                lockContextId);
     }
 
     /**
@@ -534,12 +715,15 @@ public class ReqExportUserDataHistory extends ApiRequestExportMixin {
      *
      * @param writer
      *            The CVS writer
-     * @param user
-     *            The user.
+     * @param userDbKey
+     *            The primary database key of the user.
+     * @param lockContextId
+     *            Context ID of the database read lock.
      * @throws IOException
      *             When IO error.
      */
-    private void exportTransactionLog(final CSVWriter writer, final User user)
+    private void exportTransactionLog(final CSVWriter writer,
+            final Long userDbKey, final String lockContextId)
             throws IOException {
 
         // Header
@@ -548,25 +732,32 @@ public class ReqExportUserDataHistory extends ApiRequestExportMixin {
                 "Sheets", "Receipt", "Method", "Payment", "Reason",
                 "Comment" });
 
-        final TypedQuery<AccountTrx> query = ServiceContext.getDaoContext()
-                .getAccountTrxDao().getExportQuery(user);
-
-        query.setMaxResults(this.maxExportResults);
-
-        int startPosition = 0;
+        final List<Long> accountIds = new ArrayList<>();
 
-        while (true) {
-            query.setFirstResult(startPosition);
-            final List<AccountTrx> list = query.getResultList();
-            for (final AccountTrx trx : list) {
-                writer.writeNext(getRow(trx));
-            }
-            writer.flush();
-            if (list.size() < this.maxExportResults) {
-                break;
+        lockDatabaseRead(lockContextId);
+        try {
+            for (final UserAccount userAcc : ServiceContext.getDaoContext()
+                    .getUserAccountDao().findByUserId(userDbKey)) {
+                accountIds.add(userAcc.getAccount().getId());
             }
-            startPosition += this.maxExportResults;
+        } finally {
+            unlockDatabaseRead();
+        }
+
+        if (accountIds.isEmpty()) {
+            return;
         }
+
+        final TypedQuery<AccountTrx> query = DaoContextImpl.peekEntityManager()
+                .createQuery("SELECT T FROM AccountTrx T"
+                        + " WHERE T.account.id IN :" + QPARM_ACCOUNT_IDS
+                        + " AND T.id > :" + QPARM_LAST_ID + " ORDER BY T.id",
+                        AccountTrx.class);
+
+        query.setParameter(QPARM_ACCOUNT_IDS, accountIds);
+
+        this.exportChunks(writer, query, AccountTrx::getId, this::getRow,
+                lockContextId);
     }
 
     /**
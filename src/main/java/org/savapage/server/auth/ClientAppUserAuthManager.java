@@ -27,8 +27,17 @@ package org.savapage.server.auth;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import org.savapage.server.cluster.ClusterRegionEnum;
+import org.savapage.server.cluster.ClusterStateManager;
+import org.savapage.server.cluster.ClusterStateStore;
+
 /**
  * Singleton manager of Client App User IP Address Authentications Tokens.
+ * <p>
+ * When clustered, tokens are written through to the
+ * {@link ClusterStateStore}, and tokens changed by other server nodes are
+ * evicted from the local dictionary.
+ * </p>
  *
  * @author Rijk Ravestein
  *
@@ -42,11 +51,29 @@ public final class ClientAppUserAuthManager {
     private final ConcurrentMap<String, UserAuthToken> authTokenByIpAddr =
             new ConcurrentHashMap<>();
 
+    /**
+     * The cluster store, or {@code null} when not clustered.
+     */
+    private final ClusterStateStore clusterStore;
+
     /**
      *
      */
     private ClientAppUserAuthManager() {
 
+        this.clusterStore = ClusterStateManager.getStore();
+
+        if (this.clusterStore != null) {
+            this.clusterStore.addListener((region, key) -> {
+                if (region == ClusterRegionEnum.CLIENTAPP_AUTH_TOKEN) {
+                    if (key == null) {
+                        this.authTokenByIpAddr.clear();
+                    } else {
+                        this.authTokenByIpAddr.remove(key);
+                    }
+                }
+            });
+        }
     }
 
     /**
@@ -75,7 +102,43 @@ public final class ClientAppUserAuthManager {
      * @return {@code null} when token is NOT found.
      */
     public static UserAuthToken getIpAuthToken(final String ipAddress) {
-        return instance().authTokenByIpAddr.get(ipAddress);
+
+        final ClientAppUserAuthManager manager = instance();
+
+        if (manager.clusterStore == null) {
+            return manager.authTokenByIpAddr.get(ipAddress);
+        }
+
+        return manager.authTokenByIpAddr.computeIfAbsent(ipAddress, ip -> {
+            final String encoded = manager.clusterStore
+                    .get(ClusterRegionEnum.CLIENTAPP_AUTH_TOKEN, ip);
+            if (encoded == null) {
+                return null;
+            }
+            return UserAuthToken.decode(encoded);
+        });
+    }
+
+    /**
+     * Writes a token through to the cluster store, if clustered.
+     *
+     * @param ipAddress
+     *            The IP address.
+     * @param token
+     *            The {@link UserAuthToken}, or {@code null} to remove.
+     */
+    private void writeThrough(final String ipAddress,
+            final UserAuthToken token) {
+        if (this.clusterStore == null) {
+            return;
+        }
+        if (token == null) {
+            this.clusterStore.remove(ClusterRegionEnum.CLIENTAPP_AUTH_TOKEN,
+                    ipAddress);
+        } else {
+            this.clusterStore.put(ClusterRegionEnum.CLIENTAPP_AUTH_TOKEN,
+                    ipAddress, token.encode());
+        }
     }
 
     /**
@@ -90,7 +153,11 @@ public final class ClientAppUserAuthManager {
      */
     public static UserAuthToken putIpAuthToken(final String ipAddress,
             final UserAuthToken token) {
-        return instance().authTokenByIpAddr.put(ipAddress, token);
+        final ClientAppUserAuthManager manager = instance();
+        final UserAuthToken oldToken =
+                manager.authTokenByIpAddr.put(ipAddress, token);
+        manager.writeThrough(ipAddress, token);
+        return oldToken;
     }
 
     /**
@@ -105,7 +172,16 @@ public final class ClientAppUserAuthManager {
      */
     public static UserAuthToken replaceIpAuthToken(final String ipAddress,
             final UserAuthToken token) {
-        return instance().authTokenByIpAddr.replace(ipAddress, token);
+        if (getIpAuthToken(ipAddress) == null) {
+            return null;
+        }
+        final ClientAppUserAuthManager manager = instance();
+        final UserAuthToken oldToken =
+                manager.authTokenByIpAddr.replace(ipAddress, token);
+        if (oldToken != null) {
+            manager.writeThrough(ipAddress, token);
+        }
+        return oldToken;
     }
 
     /**
@@ -116,7 +192,11 @@ public final class ClientAppUserAuthManager {
      * @return the removed token or {@code null} when not found.
      */
     public static UserAuthToken removeUserAuthToken(final String ipAddress) {
-        return instance().authTokenByIpAddr.remove(ipAddress);
+        final ClientAppUserAuthManager manager = instance();
+        final UserAuthToken oldToken =
+                manager.authTokenByIpAddr.remove(ipAddress);
+        manager.writeThrough(ipAddress, null);
+        return oldToken;
     }
 
 }
@@ -0,0 +1,236 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.savapage.core.SpException;
+import org.savapage.server.WebServer;
+
+/**
+ * Short-lived cache of user credentials verified by the external user source
+ * (LDAP, Active Directory), to save round trips in login storms.
+ * <p>
+ * Only a keyed hash (HMAC-SHA256 with a random key per JVM) of user id and
+ * password is kept, one for each user. An entry is invalidated when a login
+ * with another password fails, or when the password is changed or erased.
+ * The cache is disabled when its time-to-live is zero.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class LoginCredentialCache {
+
+    /** */
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    /** */
+    private static final int HMAC_KEY_BYTES = 32;
+
+    /**
+     * A verified credential.
+     */
+    private static final class Entry {
+
+        /** */
+        private final byte[] digest;
+
+        /** */
+        private final long expiryTime;
+
+        /**
+         * @param hash
+         *            The keyed hash of the credential.
+         * @param expiry
+         *            The expiry time.
+         */
+        Entry(final byte[] hash, final long expiry) {
+            this.digest = hash;
+            this.expiryTime = expiry;
+        }
+    }
+
+    /** */
+    private final SecretKeySpec hmacKey;
+
+    /** */
+    private final long ttlMsec;
+
+    /** */
+    private final int maxSize;
+
+    /**
+     * Verified credentials by user id.
+     */
+    private final ConcurrentHashMap<String, Entry> entries =
+            new ConcurrentHashMap<>();
+
+    /**
+     * @param ttlSecs
+     *            Seconds a verified credential is cached. If zero, the cache
+     *            is disabled.
+     * @param maxEntries
+     *            Max number of cached credentials.
+     */
+    LoginCredentialCache(final int ttlSecs, final int maxEntries) {
+
+        final byte[] key = new byte[HMAC_KEY_BYTES];
+        new SecureRandom().nextBytes(key);
+
+        this.hmacKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+        this.ttlMsec = TimeUnit.SECONDS.toMillis(ttlSecs);
+        this.maxSize = maxEntries;
+    }
+
+    /**
+     * The SingletonHolder.
+     */
+    private static class SingletonHolder {
+        /**
+         * The singleton.
+         */
+        public static final LoginCredentialCache INSTANCE =
+                new LoginCredentialCache(
+                        WebServer.getLoginCredentialCacheTtlSecs(),
+                        WebServer.getLoginCredentialCacheMaxSize());
+    }
+
+    /**
+     * @return The singleton instance.
+     */
+    public static LoginCredentialCache instance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * @return {@code true} when the cache is enabled.
+     */
+    public boolean isEnabled() {
+        return this.ttlMsec > 0 && this.maxSize > 0;
+    }
+
+    /**
+     * @param userId
+     *            The user id.
+     * @param password
+     *            The password.
+     * @return The keyed hash.
+     */
+    private byte[] digest(final String userId, final String password) {
+        try {
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(this.hmacKey);
+            mac.update(userId.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new SpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Checks if a credential was recently verified.
+     *
+     * @param userId
+     *            The user id.
+     * @param password
+     *            The password.
+     * @return {@code true} when the credential is in the cache.
+     */
+    public boolean isVerified(final String userId, final String password) {
+
+        if (!this.isEnabled() || userId == null || password == null) {
+            return false;
+        }
+
+        final Entry entry = this.entries.get(userId);
+
+        if (entry == null) {
+            return false;
+        }
+
+        if (entry.expiryTime < System.currentTimeMillis()) {
+            this.entries.remove(userId, entry);
+            return false;
+        }
+        return MessageDigest.isEqual(entry.digest,
+                this.digest(userId, password));
+    }
+
+    /**
+     * Caches a credential verified by the external user source, replacing the
+     * credential of the same user.
+     *
+     * @param userId
+     *            The user id.
+     * @param password
+     *            The password.
+     */
+    public void onVerified(final String userId, final String password) {
+
+        if (!this.isEnabled() || userId == null || password == null) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+
+        if (this.entries.size() >= this.maxSize) {
+            this.entries.values().removeIf(entry -> entry.expiryTime < now);
+            if (this.entries.size() >= this.maxSize) {
+                return;
+            }
+        }
+        this.entries.put(userId,
+                new Entry(this.digest(userId, password), now + this.ttlMsec));
+    }
+
+    /**
+     * Removes the credential of a user.
+     *
+     * @param userId
+     *            The user id.
+     */
+    public void invalidate(final String userId) {
+        if (userId != null) {
+            this.entries.remove(userId);
+        }
+    }
+
+    /**
+     * @return Number of cached credentials.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+}
@@ -36,6 +36,11 @@ import org.savapage.core.config.WebAppTypeEnum;
  */
 public final class UserAuthToken {
 
+    /**
+     * Separator of fields in the encoded token.
+     */
+    private static final char ENCODE_SEPARATOR = '\n';
+
     private final String user;
     private final String token;
     private final WebAppTypeEnum webAppType;
@@ -74,6 +79,58 @@ public final class UserAuthToken {
         this.createTime = System.currentTimeMillis();
     }
 
+    /**
+     * Creates an {@link UserAuthToken} from its fields.
+     *
+     * @param user
+     *            The user id.
+     * @param token
+     *            The token.
+     * @param webAppType
+     *            The {@link WebAppTypeEnum}.
+     * @param createTime
+     *            The time of creation.
+     */
+    private UserAuthToken(final String user, final String token,
+            final WebAppTypeEnum webAppType, final long createTime) {
+        this.user = user;
+        this.webAppType = webAppType;
+        this.token = token;
+        this.createTime = createTime;
+    }
+
+    /**
+     * @return The token encoded as string.
+     * @see #decode(String)
+     */
+    String encode() {
+        return new StringBuilder().append(this.token).append(ENCODE_SEPARATOR)
+                .append(this.user).append(ENCODE_SEPARATOR)
+                .append(this.webAppType.toString()).append(ENCODE_SEPARATOR)
+                .append(this.createTime).toString();
+    }
+
+    /**
+     * @param encoded
+     *            The token encoded with {@link #encode()}.
+     * @return The token, or {@code null} when encoding is invalid.
+     */
+    static UserAuthToken decode(final String encoded) {
+
+        final String[] fields = encoded.split(String.valueOf(ENCODE_SEPARATOR));
+
+        if (fields.length != 4) {
+            return null;
+        }
+        try {
+            return new UserAuthToken(fields[1], fields[0],
+                    WebAppTypeEnum.valueOf(fields[2]),
+                    Long.parseLong(fields[3]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     public String getToken() {
         return token;
     }
@@ -24,17 +24,38 @@
  */
 package org.savapage.server.auth;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.savapage.core.config.WebAppTypeEnum;
+import org.savapage.core.util.DateUtil;
+import org.savapage.server.WebServer;
+import org.savapage.server.cluster.ClusterRegionEnum;
+import org.savapage.server.cluster.ClusterStateManager;
+import org.savapage.server.cluster.ClusterStateStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Singleton manager of WebApp User Authentications Tokens.
  * <p>
- * A separate cache dictionary for each Web App context is maintained (User,
- * Admin, POS, JobTicket, MailTicket, PrintSite).
+ * A separate concurrent token registry for each Web App context is maintained
+ * (User, Admin, POS, JobTicket, MailTicket, Payment, PrintSite). Lookups are
+ * lock-free. A token that is not used for
+ * {@link WebServer#getWebAppAuthTokenIdleTtlHours()} hours is removed by a
+ * background sweeper.
+ * </p>
+ * <p>
+ * When clustered, tokens are written through to the
+ * {@link ClusterStateStore}, so a token created on one server node is valid on
+ * all nodes. The access time of a token is written through at most once per
+ * sweep period, and a token is only removed by the sweeper when it is idle on
+ * all nodes.
  * </p>
  *
  * @author Rijk Ravestein
@@ -42,51 +63,143 @@ import org.savapage.core.config.WebAppTypeEnum;
  */
 public final class WebAppUserAuthManager {
 
+    /** */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(WebAppUserAuthManager.class);
+
+    /** 10 minutes. */
+    private static final long SWEEP_PERIOD_MSEC =
+            10 * DateUtil.DURATION_MSEC_MINUTE;
+
     /**
-     * Number of indexes.
+     * A registered token.
      */
-    private static final int IDX_CONTEXT_COUNT = 7;
+    private static final class Entry {
 
-    /** */
-    private static final int IDX_CONTEXT_USER = IDX_CONTEXT_COUNT - 7;
-    /** */
-    private static final int IDX_CONTEXT_ADMIN = IDX_CONTEXT_COUNT - 6;
-    /** */
-    private static final int IDX_CONTEXT_POS = IDX_CONTEXT_COUNT - 5;
-    /** */
-    private static final int IDX_CONTEXT_JOBTICKET = IDX_CONTEXT_COUNT - 4;
-    /** */
-    private static final int IDX_CONTEXT_MAILTICKET = IDX_CONTEXT_COUNT - 3;
-    /** */
-    private static final int IDX_CONTEXT_PAYMENT = IDX_CONTEXT_COUNT - 2;
-    /** */
-    private static final int IDX_CONTEXT_PRINTSITE = IDX_CONTEXT_COUNT - 1;
+        /** */
+        private final UserAuthToken token;
 
-    /** */
-    private final Object mutexDict = new Object();
+        /** */
+        private volatile long lastAccessTime;
+
+        /**
+         * Access time last written to the cluster store.
+         */
+        private volatile long lastSharedAccessTime;
+
+        /**
+         * @param authToken
+         *            The token.
+         */
+        Entry(final UserAuthToken authToken) {
+            this.token = authToken;
+            this.lastAccessTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * The token registry of a Web App context.
+     */
+    private static final class Partition {
+
+        /**
+         * Entries by token string.
+         */
+        private final Map<String, Entry> byToken = new ConcurrentHashMap<>();
+
+        /**
+         * Entries by user id. Updates of a user are done in
+         * {@link ConcurrentHashMap#compute}, which also guards the entry in
+         * {@link #byToken}.
+         */
+        private final ConcurrentHashMap<String, Entry> byUser =
+                new ConcurrentHashMap<>();
+
+        /**
+         * Registers a token, replacing the token of the same user.
+         *
+         * @param entry
+         *            The entry.
+         * @return The replaced entry, or {@code null} when not present.
+         */
+        Entry register(final Entry entry) {
+
+            final Entry[] oldEntry = new Entry[1];
+
+            this.byUser.compute(entry.token.getUser(), (user, old) -> {
+                if (old != null) {
+                    this.byToken.remove(old.token.getToken(), old);
+                    oldEntry[0] = old;
+                }
+                this.byToken.put(entry.token.getToken(), entry);
+                return entry;
+            });
+            return oldEntry[0];
+        }
+
+        /**
+         * Removes an entry, if still registered.
+         *
+         * @param entry
+         *            The entry.
+         * @return {@code true} if removed.
+         */
+        boolean remove(final Entry entry) {
+            if (this.byToken.remove(entry.token.getToken(), entry)) {
+                this.byUser.remove(entry.token.getUser(), entry);
+                return true;
+            }
+            return false;
+        }
+    }
 
     /**
-     * WebApp User/Admin Context Dictionary of {@link UserAuthToken} objects
-     * with 'token' key.
+     * Token registries by Web App type.
      */
-    private final ArrayList<Map<String, UserAuthToken>> dictTokenAuthToken =
-            new ArrayList<Map<String, UserAuthToken>>(IDX_CONTEXT_COUNT);
+    private final Map<WebAppTypeEnum, Partition> partitions =
+            new EnumMap<>(WebAppTypeEnum.class);
 
     /**
-     * WebApp User Context Dictionary of {@link UserAuthToken} objects with
-     * 'user' key.
+     * Number of tokens removed by the sweeper.
      */
-    private final ArrayList<Map<String, UserAuthToken>> dictUserAuthToken =
-            new ArrayList<Map<String, UserAuthToken>>(IDX_CONTEXT_COUNT);
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    /**
+     * Background sweeping.
+     */
+    private final ScheduledExecutorService sweepExecutor;
+
+    /**
+     * The cluster store, or {@code null} when not clustered.
+     */
+    private final ClusterStateStore clusterStore;
 
     /**
      *
      */
     private WebAppUserAuthManager() {
 
-        for (int i = 0; i < IDX_CONTEXT_COUNT; i++) {
-            dictTokenAuthToken.add(i, new HashMap<String, UserAuthToken>());
-            dictUserAuthToken.add(i, new HashMap<String, UserAuthToken>());
+        for (final WebAppTypeEnum type : new WebAppTypeEnum[] {
+                WebAppTypeEnum.USER, WebAppTypeEnum.ADMIN, WebAppTypeEnum.POS,
+                WebAppTypeEnum.JOBTICKETS, WebAppTypeEnum.MAILTICKETS,
+                WebAppTypeEnum.PAYMENT, WebAppTypeEnum.PRINTSITE }) {
+            this.partitions.put(type, new Partition());
+        }
+
+        this.sweepExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r,
+                    WebAppUserAuthManager.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.sweepExecutor.scheduleWithFixedDelay(this::onSweep,
+                SWEEP_PERIOD_MSEC, SWEEP_PERIOD_MSEC, TimeUnit.MILLISECONDS);
+
+        this.clusterStore = ClusterStateManager.getStore();
+
+        if (this.clusterStore != null) {
+            this.clusterStore.addListener(this::onClusterInvalidate);
         }
     }
 
@@ -114,34 +227,104 @@ public final class WebAppUserAuthManager {
         return SingletonHolder.INSTANCE;
     }
 
+    /**
+     * Stops background sweeping.
+     */
+    public void shutdown() {
+        this.sweepExecutor.shutdownNow();
+    }
+
     /**
      * @param webAppType
      *            Web App Type.
-     * @return
+     * @return The token registry.
      */
-    private int getDictIndex(final WebAppTypeEnum webAppType) {
-
-        switch (webAppType) {
-        case ADMIN:
-            return IDX_CONTEXT_ADMIN;
-        case PRINTSITE:
-            return IDX_CONTEXT_PRINTSITE;
-        case JOBTICKETS:
-            return IDX_CONTEXT_JOBTICKET;
-        case MAILTICKETS:
-            return IDX_CONTEXT_MAILTICKET;
-        case PAYMENT:
-            return IDX_CONTEXT_PAYMENT;
-        case POS:
-            return IDX_CONTEXT_POS;
-        case USER:
-            return IDX_CONTEXT_USER;
-        default:
+    private Partition getPartition(final WebAppTypeEnum webAppType) {
+
+        final Partition partition = this.partitions.get(webAppType);
+
+        if (partition == null) {
             throw new IllegalArgumentException(
                     String.format("%s.%s is NOT supported.",
                             WebAppTypeEnum.class.getSimpleName(),
                             webAppType.toString()));
         }
+        return partition;
+    }
+
+    /**
+     * @param webAppType
+     *            Web App Type.
+     * @param token
+     *            The token string.
+     * @return The key in the cluster store.
+     */
+    private static String getClusterKey(final WebAppTypeEnum webAppType,
+            final String token) {
+        return String.format("%s:%s", webAppType.toString(), token);
+    }
+
+    /**
+     * Registers the access of a token. When clustered, the access time is
+     * written through when the previous write is older than the sweep period.
+     *
+     * @param entry
+     *            The entry.
+     * @return The token.
+     */
+    private UserAuthToken touch(final Entry entry) {
+
+        final long now = System.currentTimeMillis();
+
+        entry.lastAccessTime = now;
+
+        if (this.clusterStore != null
+                && now - entry.lastSharedAccessTime >= SWEEP_PERIOD_MSEC) {
+            entry.lastSharedAccessTime = now;
+            this.clusterStore.put(ClusterRegionEnum.WEBAPP_AUTH_TOKEN_ACCESS,
+                    getClusterKey(entry.token.getWebAppType(),
+                            entry.token.getToken()),
+                    String.valueOf(now));
+        }
+        return entry.token;
+    }
+
+    /**
+     * @param entry
+     *            The entry.
+     * @return The most recent access time of the token on any server node, or
+     *         zero when unknown.
+     */
+    private long getSharedAccessTime(final Entry entry) {
+
+        final String value = this.clusterStore.get(
+                ClusterRegionEnum.WEBAPP_AUTH_TOKEN_ACCESS,
+                getClusterKey(entry.token.getWebAppType(),
+                        entry.token.getToken()));
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Removes a token and its access time from the cluster store.
+     *
+     * @param webAppType
+     *            Web App Type.
+     * @param token
+     *            The token string.
+     */
+    private void removeClusterToken(final WebAppTypeEnum webAppType,
+            final String token) {
+        final String key = getClusterKey(webAppType, token);
+        this.clusterStore.remove(ClusterRegionEnum.WEBAPP_AUTH_TOKEN, key);
+        this.clusterStore.remove(ClusterRegionEnum.WEBAPP_AUTH_TOKEN_ACCESS,
+                key);
     }
 
     /**
@@ -155,12 +338,39 @@ public final class WebAppUserAuthManager {
      */
     public UserAuthToken getUserAuthToken(final String token,
             final WebAppTypeEnum webAppType) {
-        if (webAppType == WebAppTypeEnum.UNDEFINED) {
+        if (webAppType == WebAppTypeEnum.UNDEFINED || token == null) {
+            return null;
+        }
+        final Partition partition = getPartition(webAppType);
+        final Entry entry = partition.byToken.get(token);
+
+        if (entry != null) {
+            return this.touch(entry);
+        }
+
+        if (this.clusterStore == null) {
+            return null;
+        }
+
+        // Token of another server node?
+        final String encoded = this.clusterStore.get(
+                ClusterRegionEnum.WEBAPP_AUTH_TOKEN,
+                getClusterKey(webAppType, token));
+
+        if (encoded == null) {
             return null;
         }
-        synchronized (this.mutexDict) {
-            return dictTokenAuthToken.get(getDictIndex(webAppType)).get(token);
+
+        final UserAuthToken authToken = UserAuthToken.decode(encoded);
+
+        if (authToken == null) {
+            return null;
         }
+
+        final Entry newEntry = new Entry(authToken);
+        partition.register(newEntry);
+
+        return this.touch(newEntry);
     }
 
     /**
@@ -175,12 +385,14 @@ public final class WebAppUserAuthManager {
     public UserAuthToken getAuthTokenOfUser(final String user,
             final WebAppTypeEnum webAppType) {
 
-        if (webAppType == WebAppTypeEnum.UNDEFINED) {
+        if (webAppType == WebAppTypeEnum.UNDEFINED || user == null) {
             return null;
         }
-        synchronized (this.mutexDict) {
-            return dictUserAuthToken.get(getDictIndex(webAppType)).get(user);
+        final Entry entry = getPartition(webAppType).byUser.get(user);
+        if (entry == null) {
+            return null;
         }
+        return this.touch(entry);
     }
 
     /**
@@ -196,23 +408,24 @@ public final class WebAppUserAuthManager {
     public UserAuthToken putUserAuthToken(final UserAuthToken token,
             final WebAppTypeEnum webAppType) {
 
-        final int i = getDictIndex(webAppType);
-
-        synchronized (this.mutexDict) {
-
-            final UserAuthToken oldToken =
-                    dictUserAuthToken.get(i).get(token.getUser());
+        final Entry newEntry = new Entry(token);
+        final Entry oldEntry = getPartition(webAppType).register(newEntry);
 
-            if (oldToken != null) {
-                dictTokenAuthToken.get(i).remove(oldToken.getToken());
-                dictUserAuthToken.get(i).remove(oldToken.getUser());
+        if (this.clusterStore != null) {
+            this.clusterStore.put(ClusterRegionEnum.WEBAPP_AUTH_TOKEN,
+                    getClusterKey(webAppType, token.getToken()),
+                    token.encode());
+            this.touch(newEntry);
+            if (oldEntry != null) {
+                this.removeClusterToken(webAppType,
+                        oldEntry.token.getToken());
             }
+        }
 
-            dictTokenAuthToken.get(i).put(token.getToken(), token);
-            dictUserAuthToken.get(i).put(token.getUser(), token);
-
-            return oldToken;
+        if (oldEntry == null) {
+            return null;
         }
+        return oldEntry.token;
     }
 
     /**
@@ -227,22 +440,160 @@ public final class WebAppUserAuthManager {
     public UserAuthToken removeUserAuthToken(final String token,
             final WebAppTypeEnum webAppType) {
 
-        if (webAppType == WebAppTypeEnum.UNDEFINED) {
+        if (webAppType == WebAppTypeEnum.UNDEFINED || token == null) {
             return null;
         }
 
-        synchronized (this.mutexDict) {
-            final int i = getDictIndex(webAppType);
+        final Partition partition = getPartition(webAppType);
+
+        final Entry entry = partition.byToken.get(token);
+
+        if (this.clusterStore != null) {
+            this.removeClusterToken(webAppType, token);
+        }
+
+        if (entry != null && partition.remove(entry)) {
+            return entry.token;
+        }
+        return null;
+    }
+
+    /**
+     * @param webAppType
+     *            The {@link WebAppTypeEnum}.
+     * @return The number of live tokens.
+     */
+    public int getTokenCount(final WebAppTypeEnum webAppType) {
+        final Partition partition = this.partitions.get(webAppType);
+        if (partition == null) {
+            return 0;
+        }
+        return partition.byToken.size();
+    }
+
+    /**
+     * @return The number of tokens removed because of idle time.
+     */
+    public long getExpiredTokenCount() {
+        return this.expiredCount.get();
+    }
 
-            final UserAuthToken oldToken =
-                    dictTokenAuthToken.get(i).remove(token);
+    /**
+     * Removes tokens that are idle for more than the configured time. When
+     * clustered, a token that is idle on this node but accessed on another
+     * node is kept.
+     */
+    private void onSweep() {
 
-            if (oldToken != null) {
-                dictTokenAuthToken.get(i).remove(oldToken.getToken());
-                dictUserAuthToken.get(i).remove(oldToken.getUser());
+        final int ttlHours = WebServer.getWebAppAuthTokenIdleTtlHours();
+
+        if (ttlHours <= 0) {
+            return;
+        }
+
+        final long expiry = System.currentTimeMillis()
+                - TimeUnit.HOURS.toMillis(ttlHours);
+
+        int nRemoved = 0;
+
+        for (final Partition partition : this.partitions.values()) {
+            for (final Entry entry : partition.byToken.values()) {
+
+                if (entry.lastAccessTime >= expiry) {
+                    continue;
+                }
+
+                if (this.clusterStore != null) {
+                    final long sharedAccessTime =
+                            this.getSharedAccessTime(entry);
+                    if (sharedAccessTime >= expiry) {
+                        entry.lastAccessTime = sharedAccessTime;
+                        continue;
+                    }
+                }
+
+                if (partition.remove(entry)) {
+                    nRemoved++;
+                    if (this.clusterStore != null) {
+                        this.removeClusterToken(entry.token.getWebAppType(),
+                                entry.token.getToken());
+                    }
+                }
             }
+        }
+
+        if (nRemoved > 0) {
+            this.expiredCount.addAndGet(nRemoved);
+            LOGGER.debug("Removed [{}] idle WebApp auth tokens.", nRemoved);
+        }
+    }
+
+    /**
+     * Removes a token that is no longer present in the cluster store, i.e.
+     * removed by another server node.
+     *
+     * @param webAppType
+     *            The {@link WebAppTypeEnum}.
+     * @param partition
+     *            The token registry.
+     * @param token
+     *            The token string.
+     */
+    private void reconcile(final WebAppTypeEnum webAppType,
+            final Partition partition, final String token) {
+
+        final Entry entry = partition.byToken.get(token);
+
+        if (entry != null && this.clusterStore.get(
+                ClusterRegionEnum.WEBAPP_AUTH_TOKEN,
+                getClusterKey(webAppType, token)) == null) {
+            partition.remove(entry);
+        }
+    }
+
+    /**
+     * Handles a {@link ClusterStateStore.Listener} notification.
+     *
+     * @param region
+     *            The region.
+     * @param key
+     *            The key, or {@code null} when any key may be changed.
+     */
+    private void onClusterInvalidate(final ClusterRegionEnum region,
+            final String key) {
+
+        if (region != ClusterRegionEnum.WEBAPP_AUTH_TOKEN) {
+            return;
+        }
+
+        if (key == null) {
+            this.partitions.forEach((webAppType, partition) -> {
+                for (final String token : partition.byToken.keySet()) {
+                    this.reconcile(webAppType, partition, token);
+                }
+            });
+            return;
+        }
+
+        final int iSeparator = key.indexOf(':');
+
+        if (iSeparator < 0) {
+            return;
+        }
+
+        final WebAppTypeEnum webAppType;
+
+        try {
+            webAppType = WebAppTypeEnum.valueOf(key.substring(0, iSeparator));
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+
+        final Partition partition = this.partitions.get(webAppType);
 
-            return oldToken;
+        if (partition != null) {
+            this.reconcile(webAppType, partition,
+                    key.substring(iSeparator + 1));
         }
     }
 
@@ -0,0 +1,97 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.cluster;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Holder of the {@link ClusterStateStore} of this server node.
+ * <p>
+ * When no store is initialized, the server runs as a single node and all
+ * state is kept in the JVM.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class ClusterStateManager {
+
+    /**
+     * The store, or {@code null} when not clustered.
+     */
+    private static volatile ClusterStateStore store;
+
+    /**
+     * The unique id of this server node, or {@code null} when not clustered.
+     */
+    private static volatile String nodeId;
+
+    /** */
+    private ClusterStateManager() {
+    }
+
+    /**
+     * Initializes a {@link FileClusterStateStore}. This must be done before
+     * the Web App is started.
+     *
+     * @param dir
+     *            The directory shared by the server nodes.
+     * @param node
+     *            The unique id of this server node.
+     * @throws IOException
+     *             When the store cannot be created.
+     */
+    public static void initFileStore(final Path dir, final String node)
+            throws IOException {
+        nodeId = node;
+        store = new FileClusterStateStore(dir);
+    }
+
+    /**
+     * @return The unique id of this server node, or {@code null} when not
+     *         clustered.
+     */
+    public static String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return The store, or {@code null} when not clustered.
+     */
+    public static ClusterStateStore getStore() {
+        return store;
+    }
+
+    /**
+     * Shuts down the store, if present.
+     */
+    public static void shutdown() {
+        final ClusterStateStore current = store;
+        if (current != null) {
+            current.shutdown();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.cluster;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Key-value state shared by the server nodes of a cluster.
+ * <p>
+ * Implementations keep a near-cache of the shared state and notify
+ * {@link Listener} objects when an entry is changed by any node.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public interface ClusterStateStore {
+
+    /**
+     * Listener of invalidated entries.
+     */
+    interface Listener {
+
+        /**
+         * Notifies that an entry is changed or removed. The current value can
+         * be retrieved with {@link ClusterStateStore#get(ClusterRegionEnum,
+         * String)}.
+         *
+         * @param region
+         *            The region.
+         * @param key
+         *            The key, or {@code null} when any entry of the region may
+         *            be changed.
+         */
+        void onInvalidate(ClusterRegionEnum region, String key);
+    }
+
+    /**
+     * @param region
+     *            The region.
+     * @param key
+     *            The key.
+     * @return The value, or {@code null} when not found.
+     */
+    String get(ClusterRegionEnum region, String key);
+
+    /**
+     * Puts an entry, replacing any existing value.
+     *
+     * @param region
+     *            The region.
+     * @param key
+     *            The key.
+     * @param value
+     *            The value.
+     */
+    void put(ClusterRegionEnum region, String key, String value);
+
+    /**
+     * Removes an entry.
+     *
+     * @param region
+     *            The region.
+     * @param key
+     *            The key.
+     */
+    void remove(ClusterRegionEnum region, String key);
+
+    /**
+     * Atomically computes the value of an entry, as one operation across all
+     * server nodes.
+     *
+     * @param region
+     *            The region.
+     * @param key
+     *            The key.
+     * @param function
+     *            Function of the current value ({@code null} when not found)
+     *            that returns the new value, or {@code null} to remove the
+     *            entry.
+     * @return The new value, or {@code null} when removed.
+     */
+    String compute(ClusterRegionEnum region, String key,
+            UnaryOperator<String> function);
+
+    /**
+     * @param listener
+     *            The listener to add.
+     */
+    void addListener(Listener listener);
+
+    /**
+     * Stops notification of listeners.
+     */
+    void shutdown();
+}
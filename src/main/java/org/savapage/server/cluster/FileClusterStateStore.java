@@ -0,0 +1,384 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.cluster;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ClusterStateStore} in a directory shared by the server nodes on a
+ * host.
+ * <p>
+ * Each entry is a file in the subdirectory of its region, named after the
+ * (URL-safe Base64 encoded) key, and replaced atomically on update. Values
+ * read are kept in a near-cache, also when not found. File changes by any
+ * node are picked up by a {@link WatchService}, which evicts the near-cache
+ * entry and notifies the listeners.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class FileClusterStateStore implements ClusterStateStore {
+
+    /** */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(FileClusterStateStore.class);
+
+    /**
+     * Prefix of temporary files, which are ignored as entry.
+     */
+    private static final String TEMP_FILE_PREFIX = ".";
+
+    /**
+     * Name of the lock file of a region, see
+     * {@link #compute(ClusterRegionEnum, String, UnaryOperator)}.
+     */
+    private static final String LOCK_FILE_NAME = TEMP_FILE_PREFIX + "lock";
+
+    /**
+     * Max number of near-cache entries of a region: when exceeded the region
+     * cache is cleared.
+     */
+    private static final int NEAR_CACHE_MAX_SIZE = 10000;
+
+    /**
+     * A region.
+     */
+    private static final class Region {
+
+        /** */
+        private final Path dir;
+
+        /** */
+        private final Path lockFile;
+
+        /**
+         * Near-cache. An empty {@link Optional} is a cached miss.
+         */
+        private final Map<String, Optional<String>> cache =
+                new ConcurrentHashMap<>();
+
+        /**
+         * @param regionDir
+         *            The directory.
+         */
+        Region(final Path regionDir) {
+            this.dir = regionDir;
+            this.lockFile = regionDir.resolve(LOCK_FILE_NAME);
+        }
+    }
+
+    /** */
+    private final Map<ClusterRegionEnum, Region> regions =
+            new EnumMap<>(ClusterRegionEnum.class);
+
+    /** */
+    private final Map<WatchKey, ClusterRegionEnum> watchKeys =
+            new ConcurrentHashMap<>();
+
+    /** */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /** */
+    private final WatchService watchService;
+
+    /** */
+    private final Thread watchThread;
+
+    /**
+     * @param dir
+     *            The shared directory.
+     * @throws IOException
+     *             When directory cannot be created or watched.
+     */
+    public FileClusterStateStore(final Path dir) throws IOException {
+
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        for (final ClusterRegionEnum region : ClusterRegionEnum.values()) {
+
+            final Path regionDir = Files.createDirectories(
+                    dir.resolve(region.toString().toLowerCase()));
+
+            this.regions.put(region, new Region(regionDir));
+
+            this.watchKeys.put(regionDir.register(this.watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY), region);
+        }
+
+        this.watchThread =
+                new Thread(this::onWatch, this.getClass().getSimpleName());
+        this.watchThread.setDaemon(true);
+        this.watchThread.start();
+    }
+
+    /**
+     * @param key
+     *            The key.
+     * @return The file name.
+     */
+    private static String toFileName(final String key) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param fileName
+     *            The file name.
+     * @return The key.
+     */
+    private static String toKey(final String fileName) {
+        return new String(Base64.getUrlDecoder().decode(fileName),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param region
+     *            The region.
+     * @param key
+     *            The key.
+     * @return The entry file.
+     */
+    private Path getFile(final ClusterRegionEnum region, final String key) {
+        return this.regions.get(region).dir.resolve(toFileName(key));
+    }
+
+    /**
+     * Reads the value of an entry from its file.
+     *
+     * @param region
+     *            The region.
+     * @param key
+     *            The key.
+     * @return The value, or {@code null} when not found.
+     */
+    private String read(final ClusterRegionEnum region, final String key) {
+        try {
+            return new String(Files.readAllBytes(getFile(region, key)),
+                    StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.warn("{} [{}]: {}", region, key, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public String get(final ClusterRegionEnum region, final String key) {
+
+        final Map<String, Optional<String>> cache =
+                this.regions.get(region).cache;
+
+        if (cache.size() > NEAR_CACHE_MAX_SIZE) {
+            cache.clear();
+        }
+        return cache
+                .computeIfAbsent(key, k -> Optional.ofNullable(read(region, k)))
+                .orElse(null);
+    }
+
+    @Override
+    public void put(final ClusterRegionEnum region, final String key,
+            final String value) {
+
+        final Path regionDir = this.regions.get(region).dir;
+
+        try {
+            final Path temp =
+                    Files.createTempFile(regionDir, TEMP_FILE_PREFIX, null);
+            try {
+                Files.write(temp, value.getBytes(StandardCharsets.UTF_8));
+                Files.move(temp, getFile(region, key),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            LOGGER.error("{} [{}]: {}", region, key, e.getMessage());
+        }
+        this.regions.get(region).cache.put(key, Optional.of(value));
+    }
+
+    @Override
+    public void remove(final ClusterRegionEnum region, final String key) {
+        try {
+            Files.deleteIfExists(getFile(region, key));
+        } catch (IOException e) {
+            LOGGER.error("{} [{}]: {}", region, key, e.getMessage());
+        }
+        this.regions.get(region).cache.put(key, Optional.empty());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The region is locked with a {@link FileLock}, which excludes the other
+     * server nodes on the host, and by a monitor, which excludes the other
+     * threads of this node.
+     * </p>
+     */
+    @Override
+    public String compute(final ClusterRegionEnum region, final String key,
+            final UnaryOperator<String> function) {
+
+        final Region reg = this.regions.get(region);
+
+        synchronized (reg) {
+
+            try (FileChannel channel = FileChannel.open(reg.lockFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    FileLock lock = channel.lock()) {
+
+                final String oldValue = this.read(region, key);
+                final String newValue = function.apply(oldValue);
+
+                if (newValue == null) {
+                    if (oldValue != null) {
+                        this.remove(region, key);
+                    }
+                } else if (!newValue.equals(oldValue)) {
+                    this.put(region, key, newValue);
+                }
+                return newValue;
+
+            } catch (IOException e) {
+                LOGGER.error("{} [{}]: {}", region, key, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void addListener(final Listener listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            this.watchService.close();
+        } catch (IOException e) {
+            LOGGER.warn(e.getMessage());
+        }
+    }
+
+    /**
+     * Evicts a near-cache entry and notifies the listeners.
+     *
+     * @param region
+     *            The region.
+     * @param key
+     *            The key, or {@code null} for all entries.
+     */
+    private void invalidate(final ClusterRegionEnum region, final String key) {
+
+        if (key == null) {
+            this.regions.get(region).cache.clear();
+        } else {
+            this.regions.get(region).cache.remove(key);
+        }
+
+        for (final Listener listener : this.listeners) {
+            try {
+                listener.onInvalidate(region, key);
+            } catch (Exception e) {
+                LOGGER.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Watches the region directories till the {@link WatchService} is closed.
+     */
+    private void onWatch() {
+
+        while (true) {
+
+            final WatchKey watchKey;
+
+            try {
+                watchKey = this.watchService.take();
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                break;
+            }
+
+            final ClusterRegionEnum region = this.watchKeys.get(watchKey);
+
+            for (final WatchEvent<?> event : watchKey.pollEvents()) {
+
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    this.invalidate(region, null);
+                    continue;
+                }
+
+                final String fileName = event.context().toString();
+
+                if (fileName.startsWith(TEMP_FILE_PREFIX)) {
+                    continue;
+                }
+
+                try {
+                    this.invalidate(region, toKey(fileName));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.warn("{}: unknown file [{}]", region, fileName);
+                }
+            }
+
+            if (!watchKey.reset()) {
+                LOGGER.error("{}: directory is no longer watched.", region);
+                this.watchKeys.remove(watchKey);
+            }
+        }
+    }
+}
@@ -26,9 +26,7 @@ package org.savapage.server.cometd;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
-import org.codehaus.jackson.map.ObjectMapper;
 import org.cometd.bayeux.Promise;
 import org.cometd.bayeux.server.BayeuxServer;
 import org.cometd.bayeux.server.ServerMessage;
@@ -41,9 +39,9 @@ import org.savapage.core.dao.enums.DeviceTypeEnum;
 import org.savapage.core.jpa.Device;
 import org.savapage.core.rfid.RfidEvent;
 import org.savapage.core.rfid.RfidNumberFormat;
-import org.savapage.core.rfid.RfidReaderManager;
 import org.savapage.core.services.DeviceService.DeviceAttrLookup;
 import org.savapage.core.services.ServiceContext;
+import org.savapage.server.api.JsonApiMapper;
 import org.savapage.server.webapp.WebAppHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -111,7 +109,9 @@ public final class DeviceEventService extends AbstractEventService {
     }
 
     /**
-     * Monitors any event that should be notified to a device.
+     * Monitors any event that should be notified to a device. The reply is
+     * deferred till the linked card reader reports an event, or the max
+     * monitor time has elapsed: no thread is held while waiting.
      *
      * @param remote
      * @param message
@@ -121,8 +121,6 @@ public final class DeviceEventService extends AbstractEventService {
 
         final String clientIpAddress = WebAppHelper.getClientIP(message);
 
-        Map<String, Object> eventData = null;
-
         ServiceContext.open();
 
         final DaoContext daoContext = ServiceContext.getDaoContext();
@@ -168,6 +166,16 @@ public final class DeviceEventService extends AbstractEventService {
                         + "]");
             }
 
+            /*
+             * Deferred reply on card swipe (or timeout).
+             */
+            final RfidEventBus.Subscription subscription =
+                    RfidEventBus.instance().subscribe(readerIpAddress, null,
+                            theMaxMonitorMsec,
+                            event -> this.onReaderEvent(remote,
+                                    clientIpAddress, readerIpAddress,
+                                    rfidNumberFormat, event));
+
             /*
              * Mantis #328
              */
@@ -176,60 +184,19 @@ public final class DeviceEventService extends AbstractEventService {
                 public void removed(final ServerSession session,
                         final ServerMessage message, final boolean timeout) {
 
-                    if (!timeout) {
-                        return;
-                    }
-
-                    if (LOGGER.isDebugEnabled()) {
+                    if (timeout && subscription.cancel()
+                            && LOGGER.isDebugEnabled()) {
                         LOGGER.debug("Listener removed (timeout) "
                                 + "for reader [" + readerIpAddress
                                 + "] event monitoring for device ["
                                 + clientIpAddress + "]");
                     }
-
-                    try {
-
-                        RfidReaderManager.reportEvent(readerIpAddress,
-                                new RfidEvent(RfidEvent.EventEnum.VOID));
-
-                    } catch (InterruptedException e) {
-                        if (LOGGER.isInfoEnabled()) {
-                            LOGGER.info("Listener removed (timeout) "
-                                    + "for reader [" + readerIpAddress
-                                    + "] event for device [" + clientIpAddress
-                                    + "]. RfidReaderManager reportEvent(VOID) "
-                                    + "failed because interrupted: "
-                                    + e.getMessage());
-                        }
-                    }
                 }
             });
 
-            /*
-             * Blocking till event (or timeout)
-             */
-            eventData = watchCardReaderEvent(readerDevice.getHostname(),
-                    rfidNumberFormat);
-
-            if (eventData == null) {
-                eventData = new HashMap<String, Object>();
-                eventData.put("event", "");
-            }
-
-            if (LOGGER.isTraceEnabled()) {
-                LOGGER.trace("STOP reader [" + readerIpAddress
-                        + "] event monitoring for device [" + clientIpAddress
-                        + "]");
-            }
-
-        } catch (InterruptedException e) {
-
-            eventData = new HashMap<String, Object>();
-            eventData.put("event", "");
-
         } catch (Exception e) {
 
-            eventData = new HashMap<String, Object>();
+            final Map<String, Object> eventData = new HashMap<>();
 
             if (ConfigManager.isShutdownInProgress()) {
 
@@ -243,17 +210,60 @@ public final class DeviceEventService extends AbstractEventService {
                 eventData.put("error", e.getMessage());
             }
 
+            this.deliverEvent(remote, clientIpAddress, eventData);
+
         } finally {
 
             daoContext.rollback();
             ServiceContext.close();
         }
+    }
+
+    /**
+     * Handles a reader device event by delivering it to the client.
+     *
+     * @param remote
+     *            The client session.
+     * @param clientIpAddress
+     *            The client IP address.
+     * @param readerIpAddress
+     *            The IP-address of the Reader Device.
+     * @param rfidNumberFormat
+     *            The format of the RFID number.
+     * @param event
+     *            The event, or {@code null} when the max wait time has
+     *            elapsed.
+     */
+    private void onReaderEvent(final ServerSession remote,
+            final String clientIpAddress, final String readerIpAddress,
+            final RfidNumberFormat rfidNumberFormat, final RfidEvent event) {
+
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("STOP reader [" + readerIpAddress
+                    + "] event monitoring for device [" + clientIpAddress
+                    + "]");
+        }
+
+        this.deliverEvent(remote, clientIpAddress,
+                createEventData(event, rfidNumberFormat));
+    }
+
+    /**
+     * Delivers event to the client.
+     *
+     * @param remote
+     *            The client session.
+     * @param clientIpAddress
+     *            The client IP address.
+     * @param eventData
+     *            The event data.
+     */
+    private void deliverEvent(final ServerSession remote,
+            final String clientIpAddress,
+            final Map<String, Object> eventData) {
 
-        /*
-         *
-         */
         try {
-            String jsonEvent = new ObjectMapper().writeValueAsString(eventData);
+            String jsonEvent = JsonApiMapper.writeValueAsString(eventData);
 
             /*
              * The JavaScript client subscribes to CHANNEL_PUBLISH like this:
@@ -279,32 +289,28 @@ public final class DeviceEventService extends AbstractEventService {
     }
 
     /**
-     * Waits for a reader device event.
+     * Creates the event data of a reader device event.
      *
-     * @param readerIpAddress
-     *            The IP-address of the Reader Device.
+     * @param event
+     *            The event, or {@code null} when the max wait time has
+     *            elapsed.
      * @param rfidNumberFormat
      *            The format of the RFID number.
-     * @return <code>null</code>when the max wait time has elapsed, or a object
-     *         map with information about the event.
-     * @throws InterruptedException
+     * @return The object map with information about the event.
      */
-    private Map<String, Object> watchCardReaderEvent(
-            final String readerIpAddress, RfidNumberFormat rfidNumberFormat)
-            throws InterruptedException {
+    private static Map<String, Object> createEventData(
+            final RfidEvent event, final RfidNumberFormat rfidNumberFormat) {
 
-        Map<String, Object> eventData = null;
-
-        final RfidEvent event = RfidReaderManager.waitForEvent(readerIpAddress,
-                rfidNumberFormat, theMaxMonitorMsec, TimeUnit.MILLISECONDS);
+        final Map<String, Object> eventData = new HashMap<String, Object>();
 
         if (event != null
                 && event.getEvent() == RfidEvent.EventEnum.CARD_SWIPE) {
-            eventData = new HashMap<String, Object>();
             eventData.put("event", "card-swipe");
-            eventData.put("cardNumber", event.getCardNumber());
+            eventData.put("cardNumber", rfidNumberFormat
+                    .getNormalizedNumber(event.getCardNumber()));
+        } else {
+            eventData.put("event", "");
         }
-
         return eventData;
     }
 }
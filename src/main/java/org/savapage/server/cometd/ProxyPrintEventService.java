@@ -27,9 +27,12 @@ package org.savapage.server.cometd;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.codehaus.jackson.map.ObjectMapper;
 import org.cometd.bayeux.Promise;
 import org.cometd.bayeux.server.BayeuxServer;
 import org.cometd.bayeux.server.ServerMessage;
@@ -44,11 +47,13 @@ import org.savapage.core.jpa.User;
 import org.savapage.core.msg.JsonUserMsgNotification;
 import org.savapage.core.print.proxy.ProxyPrintAuthManager;
 import org.savapage.core.print.proxy.ProxyPrintInboxReq;
+import org.savapage.core.rfid.RfidEvent;
 import org.savapage.core.rfid.RfidNumberFormat;
 import org.savapage.core.services.DeviceService.DeviceAttrLookup;
 import org.savapage.core.services.ProxyPrintService;
 import org.savapage.core.services.ServiceContext;
 import org.savapage.core.services.UserService;
+import org.savapage.server.api.JsonApiMapper;
 import org.savapage.server.api.JsonApiServer;
 import org.savapage.server.api.request.ApiRequestHelper;
 import org.savapage.server.api.request.ReqPrinterPrint;
@@ -73,6 +78,36 @@ public final class ProxyPrintEventService extends AbstractEventService {
     private static final String EVENT_PRINTED = "printed";
     private static final String EVENT_ERROR = "error";
 
+    /**
+     * Max seconds to wait for the authentication of a card swipe that was
+     * published on the {@link RfidEventBus}.
+     */
+    private static final long AUTH_EVENT_WAIT_SECONDS = 5;
+
+    /**
+     * Number of threads handling card swipe authentication and printing.
+     */
+    private static final int AUTH_EVENT_THREADS = 4;
+
+    /** */
+    private static final AtomicInteger AUTH_EVENT_THREAD_COUNT =
+            new AtomicInteger();
+
+    /**
+     * Handles card swipe authentication and printing, so the
+     * {@link RfidEventBus} notify threads never block on the database lock
+     * or on the authentication wait.
+     */
+    private static final ExecutorService AUTH_EVENT_EXECUTOR =
+            Executors.newFixedThreadPool(AUTH_EVENT_THREADS, r -> {
+                final Thread thread = new Thread(r,
+                        String.format("%s-%d",
+                                ProxyPrintEventService.class.getSimpleName(),
+                                AUTH_EVENT_THREAD_COUNT.incrementAndGet()));
+                thread.setDaemon(true);
+                return thread;
+            });
+
     /** */
     private static final ProxyPrintService PROXY_PRINT_SERVICE =
             ServiceContext.getServiceFactory().getProxyPrintService();
@@ -137,7 +172,9 @@ public final class ProxyPrintEventService extends AbstractEventService {
     }
 
     /**
-     * Monitors any event that should be notified to a user.
+     * Monitors any event that should be notified to a user. The reply is
+     * deferred till the user swipes a card on the reader, or the print request
+     * expires: no thread is held while waiting.
      *
      * @param remote
      * @param message
@@ -154,8 +191,6 @@ public final class ProxyPrintEventService extends AbstractEventService {
 
         final String clientIpAddress = WebAppHelper.getClientIP(message);
 
-        Map<String, Object> eventData = null;
-
         ReadWriteLockEnum.DATABASE_READONLY.setReadLock(true);
 
         ServiceContext.open();
@@ -179,6 +214,20 @@ public final class ProxyPrintEventService extends AbstractEventService {
                         + "] event monitoring for client [" + clientIpAddress
                         + "] user [" + idUser + "]");
             }
+
+            /*
+             * Deferred reply on card swipe of the user (or timeout).
+             */
+            final AuthWatch watch = new AuthWatch(remote, clientIpAddress,
+                    idUser, printerName, readerIpAddress, rfidNumberFormat,
+                    locale);
+
+            final RfidEventBus.Subscription subscription =
+                    RfidEventBus.instance().subscribe(readerIpAddress, idUser,
+                            TimeUnit.SECONDS.toMillis(ProxyPrintAuthManager
+                                    .getMaxRequestAgeSeconds()),
+                            event -> this.submitAuthEvent(watch, event));
+
             /*
              * Mantis #328
              */
@@ -187,7 +236,7 @@ public final class ProxyPrintEventService extends AbstractEventService {
                 public void removed(final ServerSession session,
                         final ServerMessage message, final boolean timeout) {
 
-                    if (!timeout) {
+                    if (!timeout || !subscription.cancel()) {
                         return;
                     }
 
@@ -219,16 +268,157 @@ public final class ProxyPrintEventService extends AbstractEventService {
                 }
             });
 
-            /*
-             * Blocking till event (or timeout).
-             */
-            eventData = watchAuthEvent(idUser, printerName, readerIpAddress,
-                    rfidNumberFormat);
+        } catch (Exception e) {
+
+            if (!ConfigManager.isShutdownInProgress()) {
+                LOGGER.error(e.getMessage(), e);
+            }
+            final Map<String, Object> eventData = new HashMap<>();
+            eventData.put(KEY_EVENT, EVENT_ERROR);
+            eventData.put(KEY_ERROR, e.getMessage());
+
+            this.deliverEvent(remote, clientIpAddress, eventData);
+
+        } finally {
+
+            daoContext.rollback();
+            ServiceContext.close();
+
+            ReadWriteLockEnum.DATABASE_READONLY.setReadLock(false);
+
+        }
+    }
+
+    /**
+     * A pending Proxy Print Job authentication.
+     */
+    private static final class AuthWatch {
+
+        /** */
+        private final ServerSession remote;
+
+        /** */
+        private final String clientIpAddress;
+
+        /** */
+        private final Long idUser;
+
+        /** */
+        private final String printerName;
+
+        /** */
+        private final String readerIpAddress;
+
+        /** */
+        private final RfidNumberFormat rfidNumberFormat;
+
+        /** */
+        private final Locale locale;
+
+        /**
+         * @param session
+         *            The client session.
+         * @param clientIp
+         *            The client IP address.
+         * @param userKey
+         *            Database key of the user.
+         * @param printer
+         *            The printer name.
+         * @param readerIp
+         *            The IP-address of the Reader Device.
+         * @param numberFormat
+         *            The format of the RFID number.
+         * @param loc
+         *            The user locale.
+         */
+        AuthWatch(final ServerSession session, final String clientIp,
+                final Long userKey, final String printer,
+                final String readerIp, final RfidNumberFormat numberFormat,
+                final Locale loc) {
+            this.remote = session;
+            this.clientIpAddress = clientIp;
+            this.idUser = userKey;
+            this.printerName = printer;
+            this.readerIpAddress = readerIp;
+            this.rfidNumberFormat = numberFormat;
+            this.locale = loc;
+        }
+    }
+
+    /**
+     * Stops handling card swipes. Pending authentications are not handled.
+     */
+    public static void shutdown() {
+        AUTH_EVENT_EXECUTOR.shutdownNow();
+    }
+
+    /**
+     * Hands the card swipe (or timeout) of a pending Proxy Print Job
+     * authentication to the {@link #AUTH_EVENT_EXECUTOR}.
+     *
+     * @param watch
+     *            The pending authentication.
+     * @param event
+     *            The card swipe event, or {@code null} when the request
+     *            timed out.
+     */
+    private void submitAuthEvent(final AuthWatch watch,
+            final RfidEvent event) {
+        try {
+            AUTH_EVENT_EXECUTOR.execute(() -> this.onAuthEvent(watch, event));
+        } catch (RejectedExecutionException e) {
+            final Map<String, Object> eventData = new HashMap<>();
+            eventData.put(KEY_EVENT, EVENT_ERROR);
+            eventData.put(KEY_ERROR, "Service is shutting down.");
+            this.deliverEvent(watch.remote, watch.clientIpAddress, eventData);
+        }
+    }
+
+    /**
+     * Handles the card swipe (or timeout) of a pending Proxy Print Job
+     * authentication, and delivers the result to the client.
+     *
+     * @param watch
+     *            The pending authentication.
+     * @param event
+     *            The card swipe event, or {@code null} when the request
+     *            timed out.
+     */
+    private void onAuthEvent(final AuthWatch watch, final RfidEvent event) {
+
+        /*
+         * A card swipe is reported to the RfidReaderManager before it is
+         * published on the bus, so the wait below returns without delay.
+         */
+        final long waitSeconds;
+
+        if (event == null) {
+            waitSeconds = 0;
+        } else {
+            waitSeconds = AUTH_EVENT_WAIT_SECONDS;
+        }
+
+        Map<String, Object> eventData;
+
+        ReadWriteLockEnum.DATABASE_READONLY.setReadLock(true);
+
+        ServiceContext.open();
+        ServiceContext.setLocale(watch.locale);
+
+        final DaoContext daoContext = ServiceContext.getDaoContext();
+
+        try {
+
+            eventData = watchAuthEvent(watch.idUser, watch.printerName,
+                    watch.readerIpAddress, watch.rfidNumberFormat,
+                    waitSeconds);
 
             if (LOGGER.isTraceEnabled()) {
-                LOGGER.trace("STOP Proxy Printer [" + printerName + "] reader ["
-                        + readerIpAddress + "] event monitoring for client ["
-                        + clientIpAddress + "] user [" + idUser + "]");
+                LOGGER.trace("STOP Proxy Printer [" + watch.printerName
+                        + "] reader [" + watch.readerIpAddress
+                        + "] event monitoring for client ["
+                        + watch.clientIpAddress + "] user [" + watch.idUser
+                        + "]");
             }
 
         } catch (InterruptedException e) {
@@ -252,14 +442,27 @@ public final class ProxyPrintEventService extends AbstractEventService {
             ServiceContext.close();
 
             ReadWriteLockEnum.DATABASE_READONLY.setReadLock(false);
-
         }
 
-        /*
-         *
-         */
+        this.deliverEvent(watch.remote, watch.clientIpAddress, eventData);
+    }
+
+    /**
+     * Delivers event to the client.
+     *
+     * @param remote
+     *            The client session.
+     * @param clientIpAddress
+     *            The client IP address.
+     * @param eventData
+     *            The event data.
+     */
+    private void deliverEvent(final ServerSession remote,
+            final String clientIpAddress,
+            final Map<String, Object> eventData) {
+
         try {
-            String jsonEvent = new ObjectMapper().writeValueAsString(eventData);
+            String jsonEvent = JsonApiMapper.writeValueAsString(eventData);
 
             /*
              * The JavaScript client subscribes to CHANNEL_PUBLISH like this:
@@ -337,12 +540,15 @@ public final class ProxyPrintEventService extends AbstractEventService {
      *            The IP-address of the Reader Device.
      * @param rfidNumberFormat
      *            The format of the RFID number.
+     * @param timeout
+     *            Max seconds to wait for the authentication.
      * @return When the max wait time has elapsed, or an event is encountered.
      * @throws Exception
      */
     private Map<String, Object> watchAuthEvent(final Long idUser,
             final String printerName, final String readerIpAddress,
-            RfidNumberFormat rfidNumberFormat) throws Exception {
+            RfidNumberFormat rfidNumberFormat, final long timeout)
+            throws Exception {
 
         final Map<String, Object> eventData = new HashMap<String, Object>();
 
@@ -351,16 +557,13 @@ public final class ProxyPrintEventService extends AbstractEventService {
          */
         eventData.put(KEY_EVENT, EVENT_ERROR);
 
-        final long timeout = ProxyPrintAuthManager.getMaxRequestAgeSeconds();
-
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("Waiting [" + timeout + "] seconds for card swipe...");
         }
 
         final ProxyPrintInboxReq request = ProxyPrintAuthManager.waitForAuth(
                 idUser, printerName, readerIpAddress, rfidNumberFormat,
-                ProxyPrintAuthManager.getMaxRequestAgeSeconds(),
-                TimeUnit.SECONDS);
+                timeout, TimeUnit.SECONDS);
 
         if (request == null) {
 
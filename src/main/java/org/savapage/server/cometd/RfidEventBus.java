@@ -0,0 +1,452 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.cometd;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.savapage.core.rfid.RfidEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Event bus of RFID card swipes on network card readers.
+ * <p>
+ * A CometD service subscribes a single-shot {@link Listener} for a reader,
+ * instead of blocking a thread till a card is swiped. A subscription ends when
+ * a matching event is published, when it times out, or when it is cancelled.
+ * Listeners are notified on a small shared pool, so hundreds of waiting
+ * terminals and print requests do not hold a thread each.
+ * </p>
+ * <p>
+ * An event that is published while no subscription matches, for example
+ * between a timeout and the re-subscription of the client, is kept for
+ * {@link #PENDING_EVENT_TTL_MSEC} and handed to the next matching
+ * subscription of the reader. Only the last event of a reader is kept.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class RfidEventBus {
+
+    /**
+     * Listener of a card reader event.
+     */
+    public interface Listener {
+
+        /**
+         * Notifies a card reader event, or a timeout.
+         *
+         * @param event
+         *            The event, or {@code null} when the subscription timed
+         *            out.
+         */
+        void onEvent(RfidEvent event);
+    }
+
+    /** */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(RfidEventBus.class);
+
+    /**
+     * Number of threads notifying listeners.
+     */
+    private static final int NOTIFY_THREADS = 4;
+
+    /**
+     * Max milliseconds an unmatched event is kept for the next subscription.
+     */
+    private static final long PENDING_EVENT_TTL_MSEC = 10000L;
+
+    /**
+     * An event that did not match any subscription.
+     */
+    private static final class PendingEvent {
+
+        /** */
+        private final RfidEvent event;
+
+        /**
+         * Database key of the user of the card, or {@code null} when unknown.
+         */
+        private final Long idUser;
+
+        /** */
+        private final long publishTime;
+
+        /**
+         * @param rfidEvent
+         *            The event.
+         * @param userKey
+         *            Database key of the user of the card, or {@code null}
+         *            when unknown.
+         */
+        PendingEvent(final RfidEvent rfidEvent, final Long userKey) {
+            this.event = rfidEvent;
+            this.idUser = userKey;
+            this.publishTime = System.currentTimeMillis();
+        }
+
+        /**
+         * @return {@code true} if event is too old to be handed out.
+         */
+        boolean isExpired() {
+            return System.currentTimeMillis()
+                    - this.publishTime > PENDING_EVENT_TTL_MSEC;
+        }
+    }
+
+    /**
+     * A single-shot subscription.
+     */
+    public final class Subscription {
+
+        /** */
+        private final String readerIpAddress;
+
+        /**
+         * Database key of the user, or {@code null} for any user.
+         */
+        private final Long idUser;
+
+        /** */
+        private final Listener listener;
+
+        /** */
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        /** */
+        private volatile ScheduledFuture<?> timeout;
+
+        /**
+         * @param ipAddress
+         *            IP address of the reader.
+         * @param userKey
+         *            Database key of the user, or {@code null} for any user.
+         * @param eventListener
+         *            The listener.
+         */
+        private Subscription(final String ipAddress, final Long userKey,
+                final Listener eventListener) {
+            this.readerIpAddress = ipAddress;
+            this.idUser = userKey;
+            this.listener = eventListener;
+        }
+
+        /**
+         * @param userKey
+         *            Database key of the user of the card, or {@code null}
+         *            when unknown.
+         * @return {@code true} if subscription matches the user.
+         */
+        private boolean matches(final Long userKey) {
+            return this.idUser == null || this.idUser.equals(userKey);
+        }
+
+        /**
+         * Ends the subscription without notifying the listener.
+         *
+         * @return {@code false} if subscription already ended.
+         */
+        public boolean cancel() {
+            if (!this.done.compareAndSet(false, true)) {
+                return false;
+            }
+            this.cancelTimeout();
+            remove(this);
+            return true;
+        }
+
+        /** */
+        private void cancelTimeout() {
+            final ScheduledFuture<?> future = this.timeout;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        /**
+         * Ends the subscription and notifies the listener.
+         *
+         * @param event
+         *            The event, or {@code null} when timed out.
+         */
+        private void complete(final RfidEvent event) {
+
+            if (!this.done.compareAndSet(false, true)) {
+                return;
+            }
+            this.cancelTimeout();
+
+            if (event == null) {
+                remove(this);
+            }
+
+            try {
+                notifyExecutor.execute(() -> this.notifyListener(event));
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Reader [{}]: notification rejected.",
+                        this.readerIpAddress);
+            }
+        }
+
+        /**
+         * @param event
+         *            The event, or {@code null} when timed out.
+         */
+        private void notifyListener(final RfidEvent event) {
+            try {
+                this.listener.onEvent(event);
+            } catch (Exception e) {
+                LOGGER.error("Reader [{}]: {}", this.readerIpAddress,
+                        e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Subscriptions by reader IP address. A set is only changed inside a
+     * {@link ConcurrentHashMap} compute of its key.
+     */
+    private final Map<String, Set<Subscription>> subscriptions =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Last unmatched event by reader IP address. An entry is only changed
+     * inside a compute of its key in {@link #subscriptions}.
+     */
+    private final Map<String, PendingEvent> pendingEvents =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Times out subscriptions.
+     */
+    private final ScheduledExecutorService timeoutExecutor;
+
+    /**
+     * Notifies listeners.
+     */
+    private final ExecutorService notifyExecutor;
+
+    /** */
+    private RfidEventBus() {
+
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        final ThreadFactory threadFactory = r -> {
+            final Thread thread = new Thread(r,
+                    String.format("%s-%d", RfidEventBus.class.getSimpleName(),
+                            threadCount.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        this.timeoutExecutor =
+                Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.notifyExecutor =
+                Executors.newFixedThreadPool(NOTIFY_THREADS, threadFactory);
+    }
+
+    /**
+     * The SingletonHolder is loaded on the first execution of
+     * {@link RfidEventBus#instance()} or the first access to
+     * {@link SingletonHolder#INSTANCE}, not before.
+     */
+    private static class SingletonHolder {
+        public static final RfidEventBus INSTANCE = new RfidEventBus();
+    }
+
+    /**
+     * Gets the singleton instance.
+     *
+     * @return The instance.
+     */
+    public static RfidEventBus instance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Subscribes to the next event of a card reader. When an unmatched event
+     * of the reader is pending, the listener is notified of it at once.
+     *
+     * @param readerIpAddress
+     *            IP address of the reader.
+     * @param idUser
+     *            Database key of the user whose card events are subscribed
+     *            to, or {@code null} for any card.
+     * @param timeoutMsec
+     *            Max milliseconds to wait for an event.
+     * @param listener
+     *            The listener.
+     * @return The subscription.
+     */
+    public Subscription subscribe(final String readerIpAddress,
+            final Long idUser, final long timeoutMsec,
+            final Listener listener) {
+
+        final Subscription subscription =
+                new Subscription(readerIpAddress, idUser, listener);
+
+        final RfidEvent[] pendingEvent = new RfidEvent[1];
+
+        this.subscriptions.compute(readerIpAddress, (k, set) -> {
+
+            final PendingEvent pending = this.pendingEvents.get(k);
+
+            if (pending != null) {
+                if (pending.isExpired()) {
+                    this.pendingEvents.remove(k);
+                } else if (subscription.matches(pending.idUser)) {
+                    this.pendingEvents.remove(k);
+                    pendingEvent[0] = pending.event;
+                    return set;
+                }
+            }
+
+            final Set<Subscription> target;
+            if (set == null) {
+                target = new HashSet<>();
+            } else {
+                target = set;
+            }
+            target.add(subscription);
+            return target;
+        });
+
+        if (pendingEvent[0] != null) {
+            subscription.complete(pendingEvent[0]);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Reader [{}]: pending event [{}] notified.",
+                        readerIpAddress, pendingEvent[0].getEvent());
+            }
+            return subscription;
+        }
+
+        try {
+            subscription.timeout = this.timeoutExecutor.schedule(
+                    () -> subscription.complete(null), timeoutMsec,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            subscription.cancel();
+            throw e;
+        }
+
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("Reader [{}]: subscribed for [{}] msec.",
+                    readerIpAddress, timeoutMsec);
+        }
+        return subscription;
+    }
+
+    /**
+     * Publishes a card reader event to matching subscriptions. When no
+     * subscription matches, the event is kept for the next subscription.
+     *
+     * @param readerIpAddress
+     *            IP address of the reader.
+     * @param idUser
+     *            Database key of the user of the card, or {@code null} when
+     *            unknown.
+     * @param event
+     *            The event.
+     * @return The number of notified subscriptions.
+     */
+    public int publish(final String readerIpAddress, final Long idUser,
+            final RfidEvent event) {
+
+        final List<Subscription> matched = new ArrayList<>();
+
+        this.subscriptions.compute(readerIpAddress, (k, set) -> {
+            if (set != null) {
+                for (final Subscription subscription : set) {
+                    if (subscription.matches(idUser)) {
+                        matched.add(subscription);
+                    }
+                }
+                set.removeAll(matched);
+            }
+            if (matched.isEmpty()) {
+                this.pendingEvents.put(k, new PendingEvent(event, idUser));
+            } else {
+                this.pendingEvents.remove(k);
+            }
+            if (set == null || set.isEmpty()) {
+                return null;
+            }
+            return set;
+        });
+
+        for (final Subscription subscription : matched) {
+            subscription.complete(event);
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Reader [{}]: event [{}] notified to [{}] listeners.",
+                    readerIpAddress, event.getEvent(), matched.size());
+        }
+        return matched.size();
+    }
+
+    /**
+     * Removes a subscription.
+     *
+     * @param subscription
+     *            The subscription.
+     */
+    private void remove(final Subscription subscription) {
+        this.subscriptions.computeIfPresent(subscription.readerIpAddress,
+                (k, set) -> {
+                    set.remove(subscription);
+                    if (set.isEmpty()) {
+                        return null;
+                    }
+                    return set;
+                });
+    }
+
+    /**
+     * Stops timeouts and notifications. Pending listeners are not notified.
+     */
+    public void shutdown() {
+        this.timeoutExecutor.shutdownNow();
+        this.notifyExecutor.shutdownNow();
+        this.subscriptions.clear();
+        this.pendingEvents.clear();
+    }
+}
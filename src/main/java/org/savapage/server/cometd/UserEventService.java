@@ -31,28 +31,27 @@ import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.WatchEvent;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.cometd.bayeux.Promise;
 import org.cometd.bayeux.server.BayeuxServer;
 import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.bayeux.server.ServerSession;
 import org.savapage.core.PerformanceLogger;
-import org.savapage.core.ShutdownException;
 import org.savapage.core.SpException;
 import org.savapage.core.UserNotFoundException;
 import org.savapage.core.cometd.AdminPublisher;
@@ -81,6 +80,7 @@ import org.savapage.core.services.helpers.InboxContextCommon;
 import org.savapage.core.users.AbstractUserSource;
 import org.savapage.core.util.AppLogHelper;
 import org.savapage.core.util.DateUtil;
+import org.savapage.server.api.JsonApiMapper;
 import org.savapage.server.api.request.ApiRequestHelper;
 import org.savapage.server.auth.ClientAppUserAuthManager;
 import org.savapage.server.auth.UserAuthToken;
@@ -157,9 +157,17 @@ public final class UserEventService extends AbstractEventService {
     private static final String KEY_URL_TEMPLATE = "url_template";
 
     /**
-     *
+     * Number of threads that process file events and monitor timeouts of all
+     * pending user polls.
+     */
+    private static final int MONITOR_THREADS = 4;
+
+    /**
+     * Executor for file event processing and monitor timeouts. Pending user
+     * polls do not hold a thread while waiting.
      */
-    private static final long MSECS_WAIT_BETWEEN_POLLS = 3000;
+    private static final ScheduledThreadPoolExecutor MONITOR_EXECUTOR =
+            createMonitorExecutor();
 
     /**
      *
@@ -195,6 +203,26 @@ public final class UserEventService extends AbstractEventService {
         }
     }
 
+    /**
+     * @return The executor for file event processing and monitor timeouts.
+     */
+    private static ScheduledThreadPoolExecutor createMonitorExecutor() {
+
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        final ScheduledThreadPoolExecutor executor =
+                new ScheduledThreadPoolExecutor(MONITOR_THREADS, r -> {
+                    final Thread thread = new Thread(r,
+                            UserEventService.class.getSimpleName() + "-"
+                                    + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
     /**
      * @return Number of active User Client sessions.
      */
@@ -411,6 +439,12 @@ public final class UserEventService extends AbstractEventService {
      * although a long poll will return immediately on the client side, it will
      * start on the server when its turn has come.
      * </p>
+     * <p>
+     * When no event is found right away, the user home directory is watched
+     * by the shared {@link UserHomeWatcher} and this method returns: no thread
+     * is held while waiting. The event is delivered later on by a
+     * {@link UserMonitor}.
+     * </p>
      *
      * @param remote
      *            The {@link ServerSession}.
@@ -464,6 +498,12 @@ public final class UserEventService extends AbstractEventService {
             incrementClientAppCount();
         }
 
+        final Date dateStart = new Date();
+
+        final UserMonitor monitor = new UserMonitor(remote, clientIpAddress,
+                dateStart, userInbox, userDocLog, locale, pageOffset,
+                uniqueUrlValue, BooleanUtils.isTrue(base64), isWebAppClient);
+
         /*
          * Mantis #328
          */
@@ -472,6 +512,8 @@ public final class UserEventService extends AbstractEventService {
             public void removed(final ServerSession session,
                     final ServerMessage message, final boolean timeout) {
 
+                monitor.cancel();
+
                 if (!isWebAppClient) {
                     ClientAppUserAuthManager
                             .removeUserAuthToken(clientIpAddress);
@@ -513,8 +555,6 @@ public final class UserEventService extends AbstractEventService {
             msgPrevMonitorTime = new Date(msgPrevTime);
         }
 
-        final Date dateStart = new Date();
-
         if (LOGGER.isTraceEnabled()) {
 
             LOGGER.trace("START job monitoring for user [" + userInbox
@@ -544,7 +584,7 @@ public final class UserEventService extends AbstractEventService {
         try {
             /*
              * Note: this picks up jobs that are new/deleted after the last call
-             * to this method and before the WatchService is established.
+             * to this method and before the directory is watched.
              *
              * Also, when user deletes a 'page' from a multi-page job and the
              * job was not deleted in the prune, this change will be notified
@@ -574,77 +614,127 @@ public final class UserEventService extends AbstractEventService {
                         msgPrevMonitorTime, userInbox, userDocLog, locale);
             }
 
-            /*
-             *
-             */
             if (eventData == null) {
-
-                eventData = watchUserFileEvents(clientIpAddress, dateStart,
-                        userInbox, userDocLog, locale, pageOffset,
-                        uniqueUrlValue, base64, isWebAppClient);
+                /*
+                 * Wait for file events in the user home directory, without
+                 * holding this thread: the monitor delivers the event.
+                 */
+                monitor.start();
+                return;
             }
 
-            if (eventData == null) {
-                eventData = checkPrintInJobExpiry(userInbox, dateStart, locale);
-            }
+            eventData = this.finishEvent(monitor, eventData);
 
-            if (eventData == null) {
-                eventData = createNullMsg(userInbox, isWebAppClient, locale,
-                        dateStart.getTime());
-            }
+        } catch (Exception e) {
+            eventData = this.createExceptionEvent(monitor, e);
+        }
+
+        if (monitor.stop()) {
+            this.deliverEvent(monitor, eventData);
+        }
+    }
 
-            if (ADMIN_PUB_USER_EVENT) {
+    /**
+     * Completes the event data of a monitor, and publishes the event to the
+     * Admin Web App.
+     *
+     * @param monitor
+     *            The monitor.
+     * @param data
+     *            The event data, or {@code null} when no file event was
+     *            found within the max monitor time.
+     * @return The event data.
+     * @throws IOException
+     *             If IO error.
+     */
+    private Map<String, Object> finishEvent(final UserMonitor monitor,
+            final Map<String, Object> data) throws IOException {
 
-                final UserEventEnum userEvent = UserEventEnum
-                        .valueOf(eventData.get(KEY_EVENT).toString());
+        Map<String, Object> eventData = data;
 
-                if (userEvent != UserEventEnum.NULL) {
-                    publishAdminEvent(userInbox, clientIpAddress,
-                            isWebAppClient, userEvent);
-                }
-            }
+        if (eventData == null) {
+            eventData = checkPrintInJobExpiry(monitor.userInbox,
+                    monitor.dateStart, monitor.locale);
+        }
 
-        } catch (Exception e) {
+        if (eventData == null) {
+            eventData = createNullMsg(monitor.userInbox,
+                    monitor.isWebAppClient, monitor.locale,
+                    monitor.dateStart.getTime());
+        }
 
-            eventData = new HashMap<String, Object>();
+        if (ADMIN_PUB_USER_EVENT) {
 
-            if (ConfigManager.isShutdownInProgress()) {
+            final UserEventEnum userEvent = UserEventEnum
+                    .valueOf(eventData.get(KEY_EVENT).toString());
 
-                eventData.put(KEY_EVENT, UserEventEnum.SERVER_SHUTDOWN);
+            if (userEvent != UserEventEnum.NULL) {
+                publishAdminEvent(monitor.userInbox, monitor.clientIpAddress,
+                        monitor.isWebAppClient, userEvent);
+            }
+        }
+        return eventData;
+    }
 
-            } else {
+    /**
+     * Creates the event data for an exception while monitoring.
+     *
+     * @param monitor
+     *            The monitor.
+     * @param e
+     *            The exception.
+     * @return The event data.
+     */
+    private Map<String, Object> createExceptionEvent(final UserMonitor monitor,
+            final Exception e) {
+
+        final Map<String, Object> eventData = new HashMap<String, Object>();
 
-                eventData.put(KEY_EVENT, UserEventEnum.ERROR);
-                eventData.put(KEY_ERROR, e.getMessage());
+        if (ConfigManager.isShutdownInProgress()) {
 
-                if (e instanceof UserNotFoundException) {
-                    LOGGER.warn(e.getMessage());
-                } else {
-                    LOGGER.error(e.getMessage(), e);
-                }
+            eventData.put(KEY_EVENT, UserEventEnum.SERVER_SHUTDOWN);
+
+        } else {
 
-                publishAdminException(userInbox, clientIpAddress, e,
-                        isWebAppClient);
+            eventData.put(KEY_EVENT, UserEventEnum.ERROR);
+            eventData.put(KEY_ERROR, e.getMessage());
+
+            if (e instanceof UserNotFoundException) {
+                LOGGER.warn(e.getMessage());
+            } else {
+                LOGGER.error(e.getMessage(), e);
             }
 
+            publishAdminException(monitor.userInbox, monitor.clientIpAddress,
+                    e, monitor.isWebAppClient);
         }
+        return eventData;
+    }
+
+    /**
+     * Delivers the event to the client, and ends the monitoring.
+     *
+     * @param monitor
+     *            The monitor.
+     * @param eventData
+     *            The event data.
+     */
+    private void deliverEvent(final UserMonitor monitor,
+            final Map<String, Object> eventData) {
 
-        /*
-         *
-         */
         try {
-            String jsonEvent = new ObjectMapper().writeValueAsString(eventData);
+            String jsonEvent = JsonApiMapper.writeValueAsString(eventData);
 
             /*
              * The JavaScript client subscribes to CHANNEL_PUBLISH like this:
              * $.cometd.subscribe('/user/event', function(message) {
              */
-            remote.deliver(getServerSession(), CHANNEL_PUBLISH, jsonEvent,
-                    Promise.noop());
+            monitor.remote.deliver(getServerSession(), CHANNEL_PUBLISH,
+                    jsonEvent, Promise.noop());
 
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Delivered event [" + jsonEvent + "] for user ["
-                        + userInbox + "]");
+                        + monitor.userInbox + "]");
             }
 
         } catch (Exception e) {
@@ -655,17 +745,13 @@ public final class UserEventService extends AbstractEventService {
 
             throw new SpException(e);
         } finally {
-            if (isWebAppClient) {
-                decrementUserWebAppCount();
-            } else {
-                decrementClientAppCount();
-            }
+            monitor.onEnd();
         }
 
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace(
                     String.format("STOP job monitoring for user [%s] at [%s]",
-                            userInbox, clientIpAddress));
+                            monitor.userInbox, monitor.clientIpAddress));
         }
     }
 
@@ -684,368 +770,464 @@ public final class UserEventService extends AbstractEventService {
     }
 
     /**
-     * Waits for a any change in jobs (created, deleted) or user message.
+     * A pending monitor of a user poll, waiting for file events in the user
+     * home directory. The monitor ends when an event is delivered, when the
+     * max monitor time has elapsed, or when the session is removed.
+     */
+    private final class UserMonitor implements UserHomeWatcher.Listener {
+
+        /** */
+        private final ServerSession remote;
+        /** */
+        private final String clientIpAddress;
+        /** */
+        private final Date dateStart;
+        /** */
+        private final String userInbox;
+        /** */
+        private final String userDocLog;
+        /** */
+        private final Locale locale;
+        /** */
+        private final Long pageOffset;
+        /** */
+        private final String uniqueUrlValue;
+        /** */
+        private final boolean base64;
+        /** */
+        private final boolean isWebAppClient;
+
+        /**
+         * The watched user home directory.
+         */
+        private final Path homeDir;
+
+        /**
+         * {@code true} when monitor has ended.
+         */
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        /** */
+        private volatile ScheduledFuture<?> timeout;
+
+        /**
+         * @param remote
+         *            The {@link ServerSession}.
+         * @param clientIpAddress
+         *            Client IP address.
+         * @param dateStart
+         *            Start of the monitoring.
+         * @param userInbox
+         *            The user (identified with unique user name) to find jobs
+         *            for.
+         * @param userDocLog
+         *            The user (identified with unique user name) of
+         *            {@link DocLog} instances.
+         * @param locale
+         *            Locale.
+         * @param pageOffset
+         *            The page offset as trigger for the event. Is {@code null}
+         *            for Java Web Client.
+         * @param uniqueUrlValue
+         *            Value to make the output page URL's unique.
+         * @param base64
+         *            {@code true}: create image URL for inline BASE64
+         *            embedding.
+         * @param isWebAppClient
+         *            {@code true} is client is User Web App, {@code false} if
+         *            Java Client.
+         */
+        UserMonitor(final ServerSession remote, final String clientIpAddress,
+                final Date dateStart, final String userInbox,
+                final String userDocLog, final Locale locale,
+                final Long pageOffset, final String uniqueUrlValue,
+                final boolean base64, final boolean isWebAppClient) {
+
+            this.remote = remote;
+            this.clientIpAddress = clientIpAddress;
+            this.dateStart = dateStart;
+            this.userInbox = userInbox;
+            this.userDocLog = userDocLog;
+            this.locale = locale;
+            this.pageOffset = pageOffset;
+            this.uniqueUrlValue = uniqueUrlValue;
+            this.base64 = base64;
+            this.isWebAppClient = isWebAppClient;
+            this.homeDir = Paths.get(ConfigManager.getUserHomeDir(userInbox));
+        }
+
+        /**
+         * Starts watching the user home directory.
+         *
+         * @throws IOException
+         *             When directory could not be watched.
+         */
+        void start() throws IOException {
+
+            UserHomeWatcher.instance().register(this.homeDir, this);
+
+            final long msecWait = Math.max(0L, theMaxMonitorMsec
+                    - (System.currentTimeMillis() - this.dateStart.getTime()));
+
+            this.timeout = MONITOR_EXECUTOR.schedule(() -> this.complete(null),
+                    msecWait, TimeUnit.MILLISECONDS);
+
+            if (this.ended.get()) {
+                // Session removed in the meantime.
+                UserHomeWatcher.instance().unregister(this.homeDir, this);
+                this.timeout.cancel(false);
+            }
+        }
+
+        /**
+         * Stops watching.
+         *
+         * @return {@code true} when stopped by this call, {@code false} when
+         *         already stopped.
+         */
+        boolean stop() {
+
+            if (!this.ended.compareAndSet(false, true)) {
+                return false;
+            }
+
+            UserHomeWatcher.instance().unregister(this.homeDir, this);
+
+            final ScheduledFuture<?> future = this.timeout;
+            if (future != null) {
+                future.cancel(false);
+            }
+            return true;
+        }
+
+        /**
+         * Cancels the monitor without delivering an event, because the
+         * session is removed.
+         */
+        void cancel() {
+            if (this.stop()) {
+                this.onEnd();
+            }
+        }
+
+        /**
+         * Ends the monitor and delivers the event.
+         *
+         * @param data
+         *            The event data, or {@code null} when the max monitor time
+         *            has elapsed.
+         */
+        private void complete(final Map<String, Object> data) {
+
+            if (!this.stop()) {
+                return;
+            }
+
+            Map<String, Object> eventData;
+            try {
+                eventData = finishEvent(this, data);
+            } catch (Exception e) {
+                eventData = createExceptionEvent(this, e);
+            }
+            deliverEvent(this, eventData);
+        }
+
+        /**
+         * Administers the end of the monitor.
+         */
+        void onEnd() {
+            if (this.isWebAppClient) {
+                decrementUserWebAppCount();
+            } else {
+                decrementClientAppCount();
+            }
+        }
+
+        @Override
+        public void onEvents(final Path dir, final List<WatchEvent<?>> events) {
+
+            if (this.ended.get()) {
+                return;
+            }
+
+            MONITOR_EXECUTOR.execute(() -> {
+
+                if (this.ended.get()) {
+                    return;
+                }
+
+                try {
+                    final Map<String, Object> eventData =
+                            processFileEvents(this, dir, events);
+
+                    if (eventData != null) {
+                        this.complete(eventData);
+                    }
+                } catch (Exception e) {
+                    if (this.stop()) {
+                        deliverEvent(this, createExceptionEvent(this, e));
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onInaccessible(final Path dir) {
+
+            /*
+             * STOP if user home directory is inaccessible.
+             */
+            LOGGER.warn(String.format("[%s] is inaccessible.", dir));
+
+            MONITOR_EXECUTOR.execute(() -> this.complete(createErrorMsg(
+                    localize(this.locale, "user-inbox-inaccessible"))));
+        }
+
+        @Override
+        public void onShutdown() {
+
+            if (this.stop()) {
+
+                final Map<String, Object> eventData =
+                        new HashMap<String, Object>();
+
+                eventData.put(KEY_EVENT, UserEventEnum.SERVER_SHUTDOWN);
+
+                deliverEvent(this, eventData);
+            }
+        }
+    }
+
+    /**
+     * Processes file events in the user home directory of a monitor.
      *
-     * @param clientIpAddress
-     * @param dateStart
-     * @param userInbox
-     *            The user (identified with unique user name) to find jobs for.
-     * @param userDocLog
-     *            The user (identified with unique user name) of {@link DocLog}
-     *            instances.
-     * @param locale
-     *            Locale.
-     * @param pageOffset
-     *            The page offset as trigger for the event. Is {@code null} for
-     *            Java Web Client.
-     * @param uniqueUrlValue
-     *            Value to make the output page URL's unique, so the browser
-     *            will not use its cache, but will retrieve the image from the
-     *            server again.
-     * @param base64
-     *            {@code true}: create image URL for inline BASE64 embedding.
-     * @param isWebAppClient
-     *            {@code true} is client is User Web App, {@code false} if Java
-     *            Client.
-     * @return <code>null</code>when the max wait time has elapsed, or a object
-     *         map with information about the change.
+     * @param monitor
+     *            The monitor.
+     * @param dir
+     *            The user home directory.
+     * @param events
+     *            The file events.
+     * @return {@code null} when events are not relevant, or a object map with
+     *         information about the change.
      * @throws IOException
      * @throws UserNotFoundException
-     * @throws ShutdownException
      */
-    private Map<String, Object> watchUserFileEvents(
-            final String clientIpAddress, final Date dateStart,
-            final String userInbox, final String userDocLog,
-            final Locale locale, final Long pageOffset,
-            final String uniqueUrlValue, final boolean base64,
-            final boolean isWebAppClient)
-            throws IOException, UserNotFoundException, ShutdownException {
+    private Map<String, Object> processFileEvents(final UserMonitor monitor,
+            final Path dir, final List<WatchEvent<?>> events)
+            throws IOException, UserNotFoundException {
 
-        final WatchService watchService =
-                FileSystems.getDefault().newWatchService();
+        final String userInbox = monitor.userInbox;
+        final String clientIpAddress = monitor.clientIpAddress;
+        final Locale locale = monitor.locale;
+        final boolean isWebAppClient = monitor.isWebAppClient;
 
-        final String userHomeDir = ConfigManager.getUserHomeDir(userInbox);
+        Map<String, Object> returnData = null;
 
-        final Path path2WatchJob = Paths.get(userHomeDir);
+        boolean bJobsCreated = false;
+        boolean bJobsDeleted = false;
 
-        final WatchKey watchKeyJob = path2WatchJob.register(watchService,
-                ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        boolean bMsgDeleted = false;
+        boolean bMsgCreated = false;
 
-        final Map<WatchKey, Path> watchKeys = new HashMap<WatchKey, Path>();
+        long fileLastModifiedRecent = 0;
 
-        watchKeys.put(watchKeyJob, path2WatchJob);
+        for (WatchEvent<?> event : events) {
+            @SuppressWarnings("rawtypes")
+            final WatchEvent.Kind kind = event.kind();
 
-        Map<String, Object> returnData = null;
+            /*
+             * A special event to indicate that events may have been lost or
+             * discarded.
+             */
+            if (kind == OVERFLOW) {
+                if (LOGGER.isWarnEnabled()) {
+                    LOGGER.warn(String.format(
+                            "%s : events may have been lost " + "or discarded",
+                            event.kind().name()));
+                }
+                continue;
+            }
+            /*
+             * Context for directory entry event is the file name of entry.
+             */
+            final WatchEvent<Path> ev = cast(event);
+            final Path name = ev.context();
+            final Path child = dir.resolve(name);
+            final File file = child.toFile();
 
-        try {
+            final long fileLastModifiedWlk = file.lastModified();
+
+            if (fileLastModifiedRecent < fileLastModifiedWlk) {
+                fileLastModifiedRecent = fileLastModifiedWlk;
+            }
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(String.format("EVENT [%s] for file [%s]",
+                        event.kind().name(), file.getAbsolutePath()));
+            }
 
-            final long msecStart = dateStart.getTime();
-            int i = 0;
+            final boolean isJobEvent = INBOX_SERVICE.isSupportedJobType(file);
 
-            while (true) {
+            boolean isMsgEvent = false;
 
-                if (ConfigManager.isShutdownInProgress()) {
-                    throw new ShutdownException();
+            if (!isJobEvent) {
+                isMsgEvent =
+                        UserMsgIndicator.isMsgIndicatorFile(userInbox, file);
+            }
+
+            /*
+             * Event
+             */
+            if (isMsgEvent) {
+
+                if (kind == ENTRY_CREATE) {
+                    bMsgCreated = true;
+                } else if (kind == ENTRY_MODIFY) {
+                    bMsgCreated = true;
+                } else if (kind == ENTRY_DELETE) {
+                    bMsgDeleted = true;
                 }
 
-                i++;
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug(String.format("MSG: %s - [%s]",
+                            event.kind().name(), child));
+                }
 
+            } else if (isJobEvent) {
+
+                if (kind == ENTRY_CREATE) {
+                    bJobsCreated = true;
+                } else if (kind == ENTRY_DELETE) {
+                    bJobsDeleted = true;
+                }
                 if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("watch [" + i + "] for user [" + userInbox
-                            + "] [" + clientIpAddress + "]");
+                    LOGGER.debug(String.format("JOB: %s - [%s]",
+                            event.kind().name(), child));
                 }
-                /*
-                 * WAIT for key to be signaled ...
-                 */
-                WatchKey key = watchService.poll(MSECS_WAIT_BETWEEN_POLLS,
-                        TimeUnit.MILLISECONDS);
+            } else {
 
-                boolean bUserHomeInaccessible = false;
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug(String.format("Ignored: %s - [%s]",
+                            event.kind().name(), child));
+                }
+            }
 
-                boolean bJobsCreated = false;
-                boolean bJobsDeleted = false;
+        } // end-for (events)
 
-                boolean bMsgDeleted = false;
-                boolean bMsgCreated = false;
+        /*
+         * Find out about changes.
+         */
+        if (bMsgCreated) {
 
-                long fileLastModifiedRecent = 0;
+            final UserMsgIndicator msgIndicator =
+                    UserMsgIndicator.read(userInbox);
 
-                if (key != null) {
+            final Date messageDate = msgIndicator.getMessageDate();
+            final String senderId = msgIndicator.getSenderId();
 
-                    Path dir = watchKeys.get(key);
-                    if (dir == null) {
-                        throw new SpException("WatchKey not recognized!!");
-                    }
+            final UserMsgIndicator.Msg msg = msgIndicator.getMessage();
 
-                    for (WatchEvent<?> event : key.pollEvents()) {
-                        @SuppressWarnings("rawtypes")
-                        final WatchEvent.Kind kind = event.kind();
-
-                        /*
-                         * A special event to indicate that events may have been
-                         * lost or discarded.
-                         */
-                        if (kind == OVERFLOW) {
-                            if (LOGGER.isWarnEnabled()) {
-                                LOGGER.warn(String.format(
-                                        "%s : events may have been lost "
-                                                + "or discarded",
-                                        event.kind().name()));
-                            }
-                            continue;
-                        }
-                        /*
-                         * Context for directory entry event is the file name of
-                         * entry.
-                         */
-                        final WatchEvent<Path> ev = cast(event);
-                        final Path name = ev.context();
-                        final Path child = dir.resolve(name);
-                        final File file = child.toFile();
-
-                        final long fileLastModifiedWlk = file.lastModified();
-
-                        if (fileLastModifiedRecent < fileLastModifiedWlk) {
-                            fileLastModifiedRecent = fileLastModifiedWlk;
-                        }
-
-                        if (LOGGER.isDebugEnabled()) {
-                            LOGGER.debug(
-                                    String.format("EVENT [%s] for file [%s]",
-                                            event.kind().name(),
-                                            file.getAbsolutePath()));
-                        }
-
-                        final boolean isJobEvent =
-                                INBOX_SERVICE.isSupportedJobType(file);
-
-                        boolean isMsgEvent = false;
-
-                        if (!isJobEvent) {
-                            isMsgEvent = UserMsgIndicator
-                                    .isMsgIndicatorFile(userInbox, file);
-                        }
-
-                        /*
-                         * Event
-                         */
-                        if (isMsgEvent) {
-
-                            if (kind == ENTRY_CREATE) {
-                                bMsgCreated = true;
-                            } else if (kind == ENTRY_MODIFY) {
-                                bMsgCreated = true;
-                            } else if (kind == ENTRY_DELETE) {
-                                bMsgDeleted = true;
-                            }
-
-                            if (LOGGER.isDebugEnabled()) {
-                                LOGGER.debug(String.format("MSG: %s - [%s]",
-                                        event.kind().name(), child));
-                            }
-
-                        } else if (isJobEvent) {
-
-                            if (kind == ENTRY_CREATE) {
-                                bJobsCreated = true;
-                            } else if (kind == ENTRY_DELETE) {
-                                bJobsDeleted = true;
-                            }
-                            if (LOGGER.isDebugEnabled()) {
-                                LOGGER.debug(String.format("JOB: %s - [%s]",
-                                        event.kind().name(), child));
-                            }
-                        } else {
-
-                            if (LOGGER.isDebugEnabled()) {
-                                LOGGER.debug(String.format("Ignored: %s - [%s]",
-                                        event.kind().name(), child));
-                            }
-                        }
-
-                    } // end-for (events)
+            if (msg != null) {
 
-                    /*
-                     * Reset key for next iteration.
-                     */
-                    if (!key.reset()) {
-                        /*
-                         * Reset failed, because watch key is no longer valid!
-                         */
+                switch (msg) {
 
-                        // Remove watch key from from the set.
-                        watchKeys.remove(key);
+                case ACCOUNT_INFO:
+                    returnData = createAccountMsg(userInbox, locale);
+                    break;
 
-                        // Just one location to watch, so check if set is empty.
-                        bUserHomeInaccessible = watchKeys.isEmpty();
-                    }
-                } // end-if
+                case JOBTICKET_CHANGED:
+                case JOBTICKET_DENIED:
+                case JOBTICKET_SETTLED_COPY:
+                case JOBTICKET_SETTLED_PRINT:
+                    returnData = createJobTicketMsg(userInbox, msg, locale);
+                    break;
 
-                /*
-                 * Find out about changes.
-                 */
-                if (bUserHomeInaccessible) {
-                    /*
-                     * STOP if user home directory is inaccessible.
-                     */
-                    LOGGER.warn(String.format("[%s] is inaccessible.",
-                            userHomeDir));
-                    returnData = createErrorMsg(
-                            this.localize(locale, "user-inbox-inaccessible"));
+                case PRINT_IN_DENIED:
+                    // no break intended
+                case PRINT_OUT_COMPLETED:
+                    returnData = createPrintMsg(userInbox, monitor.userDocLog,
+                            locale, messageDate, messageDate);
                     break;
 
-                } else if (bMsgCreated) {
-
-                    final UserMsgIndicator msgIndicator =
-                            UserMsgIndicator.read(userInbox);
-
-                    final Date messageDate = msgIndicator.getMessageDate();
-                    final String senderId = msgIndicator.getSenderId();
-
-                    final UserMsgIndicator.Msg msg = msgIndicator.getMessage();
-
-                    if (msg != null) {
-
-                        switch (msg) {
-
-                        case ACCOUNT_INFO:
-                            returnData = createAccountMsg(userInbox, locale);
-                            break;
-
-                        case JOBTICKET_CHANGED:
-                        case JOBTICKET_DENIED:
-                        case JOBTICKET_SETTLED_COPY:
-                        case JOBTICKET_SETTLED_PRINT:
-                            returnData =
-                                    createJobTicketMsg(userInbox, msg, locale);
-                            break;
-
-                        case PRINT_IN_DENIED:
-                            // no break intended
-                        case PRINT_OUT_COMPLETED:
-                            returnData = createPrintMsg(userInbox, userDocLog,
-                                    locale, messageDate, messageDate);
-                            break;
-
-                        case PRINT_OUT_EXT_COMPLETED:
-                            returnData = createPrintMsgExt(senderId, userInbox,
-                                    locale, messageDate, true);
-                            break;
-
-                        case PRINT_OUT_EXT_FAILED:
-                            returnData = createPrintMsgExt(senderId, userInbox,
-                                    locale, messageDate, false);
-                            break;
-
-                        case PRINT_IN_EXPIRED:
-                            returnData =
-                                    createPrintInExpiredMsg(userInbox, locale);
-                            break;
-
-                        case PRINT_OUT_HOLD:
-                            returnData =
-                                    createNullMsg(userInbox, isWebAppClient,
-                                            locale, fileLastModifiedRecent);
-                            break;
-
-                        case STOP_POLL_REQ:
-                            /*
-                             * This messages is meant for WebApp clients only.
-                             * See Mantis #515.
-                             */
-                            if (!isWebAppClient) {
-                                break;
-                            }
-
-                            if (clientIpAddress == null || (senderId != null
-                                    && senderId.equals(clientIpAddress))) {
-
-                                returnData =
-                                        createNullMsg(userInbox, isWebAppClient,
-                                                locale, fileLastModifiedRecent);
-                                break;
-                            }
-
-                            if (LOGGER.isTraceEnabled()) {
-                                LOGGER.trace("Ignored message ["
-                                        + msgIndicator.getMessage() + "] from ["
-                                        + msgIndicator.getSenderId()
-                                        + "] since we are [" + clientIpAddress
-                                        + "]");
-                            }
-                            break;
-
-                        default:
-                            break;
-                        }
-                    }
+                case PRINT_OUT_EXT_COMPLETED:
+                    returnData = createPrintMsgExt(senderId, userInbox, locale,
+                            messageDate, true);
+                    break;
 
-                } else if (bMsgDeleted) {
-                    // No code intended
+                case PRINT_OUT_EXT_FAILED:
+                    returnData = createPrintMsgExt(senderId, userInbox, locale,
+                            messageDate, false);
+                    break;
+
+                case PRINT_IN_EXPIRED:
+                    returnData = createPrintInExpiredMsg(userInbox, locale);
+                    break;
+
+                case PRINT_OUT_HOLD:
+                    returnData = createNullMsg(userInbox, isWebAppClient,
+                            locale, fileLastModifiedRecent);
+                    break;
 
-                } else if (bJobsDeleted && !isWebAppClient) {
+                case STOP_POLL_REQ:
                     /*
-                     * Jobs get deleted at a Fast or Hold Print action. During
-                     * Fast/Hold print a User is locked. So at this point a User
-                     * will be locked. If we would handle a jobs deleted event
-                     * the User will be locked again: we see that this can lead
-                     * to a lock exception (A lock could not be obtained within
-                     * the time requested).
-                     *
-                     * Therefore, do NOT notify this event when this is Client
-                     * Java App.
+                     * This messages is meant for WebApp clients only. See
+                     * Mantis #515.
                      */
+                    if (!isWebAppClient) {
+                        break;
+                    }
 
-                    // No code intended
-
-                } else if (bJobsCreated || bJobsDeleted) {
+                    if (clientIpAddress == null || (senderId != null
+                            && senderId.equals(clientIpAddress))) {
 
-                    if (isWebAppClient) {
-                        returnData = getChangedJobsEvent(userInbox, userDocLog,
-                                pageOffset, uniqueUrlValue, base64,
-                                isWebAppClient, locale, fileLastModifiedRecent);
-                    } else if (bJobsCreated) {
-                        returnData = createPrintInEvent(fileLastModifiedRecent);
+                        returnData = createNullMsg(userInbox, isWebAppClient,
+                                locale, fileLastModifiedRecent);
+                        break;
                     }
-                }
 
-                /*
-                 * If changes found, STOP to notify immediately.
-                 */
-                if (returnData != null) {
                     if (LOGGER.isTraceEnabled()) {
-                        LOGGER.trace("File Watch: changes found.");
+                        LOGGER.trace("Ignored message ["
+                                + msgIndicator.getMessage() + "] from ["
+                                + msgIndicator.getSenderId()
+                                + "] since we are [" + clientIpAddress + "]");
                     }
                     break;
-                }
-
-                final long msecNow = System.currentTimeMillis();
-                final long timeElapsed =
-                        msecNow + MSECS_WAIT_BETWEEN_POLLS - msecStart;
 
-                /*
-                 * STOP if the max monitor time has elapsed.
-                 */
-                if (timeElapsed >= theMaxMonitorMsec) {
-                    if (LOGGER.isTraceEnabled()) {
-                        LOGGER.trace("File Watch: time elapsed.");
-                    }
+                default:
                     break;
                 }
+            }
 
-            } // end-for
+        } else if (bMsgDeleted) {
+            // No code intended
 
-        } catch (InterruptedException e) {
+        } else if (bJobsDeleted && !isWebAppClient) {
+            /*
+             * Jobs get deleted at a Fast or Hold Print action. During Fast/Hold
+             * print a User is locked. So at this point a User will be locked.
+             * If we would handle a jobs deleted event the User will be locked
+             * again: we see that this can lead to a lock exception (A lock
+             * could not be obtained within the time requested).
+             *
+             * Therefore, do NOT notify this event when this is Client Java App.
+             */
 
-            if (LOGGER.isTraceEnabled()) {
-                LOGGER.trace("File Watch: InterruptedException ["
-                        + e.getMessage() + "]");
+            // No code intended
+
+        } else if (bJobsCreated || bJobsDeleted) {
+
+            if (isWebAppClient) {
+                returnData = getChangedJobsEvent(userInbox, monitor.userDocLog,
+                        monitor.pageOffset, monitor.uniqueUrlValue,
+                        monitor.base64, isWebAppClient, locale,
+                        fileLastModifiedRecent);
+            } else if (bJobsCreated) {
+                returnData = createPrintInEvent(fileLastModifiedRecent);
             }
-            throw new ShutdownException();
+        }
 
-        } finally {
-            // Closing is CRUCIAL to prevent the "Too Many Open Files" Error
-            watchService.close();
+        if (returnData != null && LOGGER.isTraceEnabled()) {
+            LOGGER.trace("File Watch: changes found.");
         }
 
         return returnData;
@@ -0,0 +1,317 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.cometd;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single {@link WatchService} (inotify instance on Linux) for all user home
+ * directories being monitored, with one dispatcher thread that routes file
+ * events to the listeners of a directory.
+ * <p>
+ * A directory is watched as long as it has listeners. Listeners are notified
+ * on the dispatcher thread, so they must hand off any lengthy work.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class UserHomeWatcher {
+
+    /**
+     * Listener of file events in a directory.
+     */
+    public interface Listener {
+
+        /**
+         * Notifies file events.
+         *
+         * @param dir
+         *            The watched directory.
+         * @param events
+         *            The events.
+         */
+        void onEvents(Path dir, List<WatchEvent<?>> events);
+
+        /**
+         * Notifies that the directory is no longer accessible. The listener is
+         * removed.
+         *
+         * @param dir
+         *            The watched directory.
+         */
+        void onInaccessible(Path dir);
+
+        /**
+         * Notifies that the watcher is shut down. The listener is removed.
+         */
+        void onShutdown();
+    }
+
+    /** */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(UserHomeWatcher.class);
+
+    /**
+     * A watched directory.
+     */
+    private static final class Registration {
+
+        /** */
+        private final WatchKey key;
+
+        /** */
+        private final Set<Listener> listeners = new CopyOnWriteArraySet<>();
+
+        /**
+         * @param watchKey
+         *            The watch key.
+         */
+        Registration(final WatchKey watchKey) {
+            this.key = watchKey;
+        }
+    }
+
+    /** */
+    private final Map<Path, Registration> registrations = new HashMap<>();
+
+    /** */
+    private final Map<WatchKey, Path> watchKeys = new HashMap<>();
+
+    /**
+     * Lazy created watch service.
+     */
+    private WatchService watchService;
+
+    /** */
+    private boolean shutdown;
+
+    /** */
+    private UserHomeWatcher() {
+    }
+
+    /**
+     * The SingletonHolder is loaded on the first execution of
+     * {@link UserHomeWatcher#instance()} or the first access to
+     * {@link SingletonHolder#INSTANCE}, not before.
+     */
+    private static class SingletonHolder {
+        public static final UserHomeWatcher INSTANCE = new UserHomeWatcher();
+    }
+
+    /**
+     * Gets the singleton instance.
+     *
+     * @return The instance.
+     */
+    public static UserHomeWatcher instance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Adds a listener to a directory. The directory is watched when it is the
+     * first listener.
+     *
+     * @param dir
+     *            The directory.
+     * @param listener
+     *            The listener.
+     * @throws IOException
+     *             When directory could not be watched.
+     */
+    public synchronized void register(final Path dir, final Listener listener)
+            throws IOException {
+
+        if (this.shutdown) {
+            throw new ClosedWatchServiceException();
+        }
+
+        if (this.watchService == null) {
+            this.watchService = FileSystems.getDefault().newWatchService();
+            final Thread dispatcher = new Thread(this::dispatch,
+                    UserHomeWatcher.class.getSimpleName());
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+
+        Registration reg = this.registrations.get(dir);
+
+        if (reg == null) {
+            final WatchKey key = dir.register(this.watchService, ENTRY_CREATE,
+                    ENTRY_DELETE, ENTRY_MODIFY);
+            reg = new Registration(key);
+            this.registrations.put(dir, reg);
+            this.watchKeys.put(key, dir);
+        }
+
+        reg.listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener from a directory. The directory is no longer watched
+     * when it was the last listener.
+     *
+     * @param dir
+     *            The directory.
+     * @param listener
+     *            The listener.
+     */
+    public synchronized void unregister(final Path dir,
+            final Listener listener) {
+
+        final Registration reg = this.registrations.get(dir);
+
+        if (reg == null) {
+            return;
+        }
+
+        reg.listeners.remove(listener);
+
+        if (reg.listeners.isEmpty()) {
+            reg.key.cancel();
+            this.registrations.remove(dir);
+            this.watchKeys.remove(reg.key);
+        }
+    }
+
+    /**
+     * @return Number of watched directories.
+     */
+    public synchronized int getWatchedDirCount() {
+        return this.registrations.size();
+    }
+
+    /**
+     * Closes the watch service and notifies all listeners.
+     */
+    public void shutdown() {
+
+        final List<Listener> listeners = new ArrayList<>();
+
+        synchronized (this) {
+
+            if (this.shutdown) {
+                return;
+            }
+            this.shutdown = true;
+
+            for (final Registration reg : this.registrations.values()) {
+                listeners.addAll(reg.listeners);
+            }
+            this.registrations.clear();
+            this.watchKeys.clear();
+
+            if (this.watchService != null) {
+                try {
+                    this.watchService.close();
+                } catch (IOException e) {
+                    LOGGER.warn(e.getMessage());
+                }
+            }
+        }
+
+        for (final Listener listener : listeners) {
+            listener.onShutdown();
+        }
+    }
+
+    /**
+     * The dispatcher loop.
+     */
+    private void dispatch() {
+
+        while (true) {
+
+            final WatchKey key;
+
+            try {
+                key = this.watchService.take();
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                break;
+            }
+
+            final List<WatchEvent<?>> events = key.pollEvents();
+            final boolean valid = key.reset();
+
+            final Path dir;
+            final List<Listener> listeners;
+
+            synchronized (this) {
+
+                dir = this.watchKeys.get(key);
+
+                if (dir == null) {
+                    // Cancelled in the meantime.
+                    continue;
+                }
+
+                listeners = new ArrayList<>(
+                        this.registrations.get(dir).listeners);
+
+                if (!valid) {
+                    this.registrations.remove(dir);
+                    this.watchKeys.remove(key);
+                }
+            }
+
+            for (final Listener listener : listeners) {
+                try {
+                    if (!events.isEmpty()) {
+                        listener.onEvents(dir, events);
+                    }
+                    if (!valid) {
+                        listener.onInaccessible(dir);
+                    }
+                } catch (Exception e) {
+                    LOGGER.error("Listener of [{}] failed: {}", dir,
+                            e.getMessage(), e);
+                }
+            }
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("{} stopped.", UserHomeWatcher.class.getSimpleName());
+        }
+    }
+}
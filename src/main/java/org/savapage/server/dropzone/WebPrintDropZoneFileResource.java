@@ -24,21 +24,30 @@
  */
 package org.savapage.server.dropzone;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.lang3.EnumUtils;
-import org.apache.wicket.markup.html.form.upload.FileUpload;
-import org.apache.wicket.protocol.http.servlet.MultipartServletWebRequest;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.wicket.protocol.http.servlet.ServletWebRequest;
+import org.apache.wicket.request.Url;
 import org.apache.wicket.request.http.flow.AbortWithHttpErrorCodeException;
 import org.apache.wicket.request.resource.AbstractResource;
 import org.savapage.core.SpException;
@@ -60,8 +69,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * The resource that handles DropZone file uploads. It reads the file items from
- * the request parameters and prints them to the user's inbox.
+ * The resource that handles DropZone file uploads. It streams the file items
+ * from the request and prints them to the user's inbox.
+ * <p>
+ * Files are converted in parallel by {@link WebPrintUploadManager}, while
+ * next files are still being received.
+ * </p>
+ * <p>
+ * When the {@link #UPLOAD_PARAM_NAME_UPLOAD} parameter is present, the request
+ * holds a chunk of a resumable upload at byte offset
+ * {@link #UPLOAD_PARAM_NAME_OFFSET} of a file with
+ * {@link #UPLOAD_PARAM_NAME_TOTAL} bytes. Without offset, the request queries
+ * the upload status. The response holds the number of bytes received and the
+ * upload state, which the client uses to resume an interrupted upload and to
+ * follow conversion progress.
+ * </p>
  * <p>
  * Additionally it writes the response's content type and body.
  * </p>
@@ -85,6 +107,21 @@ public final class WebPrintDropZoneFileResource extends AbstractResource {
      */
     public static final String UPLOAD_PARAM_NAME_FONT = "font";
 
+    /**
+     * Client generated ID of a resumable upload: {@code ?upload=...} .
+     */
+    public static final String UPLOAD_PARAM_NAME_UPLOAD = "upload";
+
+    /**
+     * Byte offset of a chunk: {@code ?offset=...} .
+     */
+    public static final String UPLOAD_PARAM_NAME_OFFSET = "offset";
+
+    /**
+     * Number of bytes of the complete file: {@code ?total=...} .
+     */
+    public static final String UPLOAD_PARAM_NAME_TOTAL = "total";
+
     /**
      * .
      */
@@ -134,12 +171,17 @@ public final class WebPrintDropZoneFileResource extends AbstractResource {
         final String originatorIp =
                 WebAppHelper.getClientIP(attributes.getRequest());
 
+        final Url url = webRequest.getUrl();
+
+        final String uploadId = url
+                .getQueryParameterValue(UPLOAD_PARAM_NAME_UPLOAD)
+                .toOptionalString();
+
         ApiResultCodeEnum resultCode = ApiResultCodeEnum.OK;
         String resultText = "";
 
         final Map<String, Boolean> filesStatus = new HashMap<>();
-
-        final Map<String, FileItem> fileItemsToHandle = new HashMap<>();
+        final Map<String, Object> uploadStatus = new HashMap<>();
 
         ServiceContext.open();
 
@@ -150,72 +192,22 @@ public final class WebPrintDropZoneFileResource extends AbstractResource {
                         "Service is not available.");
             }
 
-            final MultipartServletWebRequest multiPartRequest =
-                    webRequest.newMultipartWebRequest(
-                            WebPrintHelper.getMaxUploadSize(), "ignored");
-
-            final InternalFontFamilyEnum selectedFont = EnumUtils.getEnum(
-                    InternalFontFamilyEnum.class,
-                    multiPartRequest.getUrl()
-                            .getQueryParameterValue(UPLOAD_PARAM_NAME_FONT)
-                            .toString(defaultFont.toString()));
-
-            /*
-             * CRUCIAL: parse the file parts first, before getting the files :-)
-             */
-            multiPartRequest.parseFileParts();
-
-            final Map<String, List<FileItem>> files =
-                    multiPartRequest.getFiles();
-
-            final List<FileItem> fileItemsAll = new ArrayList<>();
-
-            for (final List<FileItem> list : files.values()) {
-                for (final FileItem fileItem : list) {
-                    fileItemsToHandle.put(fileItem.getName(), fileItem);
-                    fileItemsAll.add(fileItem);
-                }
-            }
-
-            if (files.get(UPLOAD_PARAM_NAME_FILE) == null) {
-                LOGGER.debug("WebPrint [{}]: no files for key [{}]", userId,
-                        UPLOAD_PARAM_NAME_FILE);
-            }
-
-            final int totFiles = fileItemsAll.size();
-
-            if (totFiles == 0) {
-                throw new DocContentPrintException("No files uploaded.");
-            }
-
-            int nFileWlk = 0;
-
-            for (final FileItem fileItem : fileItemsAll) {
+            final InternalFontFamilyEnum selectedFont =
+                    EnumUtils.getEnum(InternalFontFamilyEnum.class,
+                            url.getQueryParameterValue(UPLOAD_PARAM_NAME_FONT)
+                                    .toString(defaultFont.toString()));
 
-                final String fileKey = fileItem.getName();
-                filesStatus.put(fileKey, Boolean.FALSE);
+            final HttpServletRequest httpRequest =
+                    webRequest.getContainerRequest();
 
-                nFileWlk++;
-
-                final long start = System.currentTimeMillis();
-
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("WebPrint [{}] {}/{} [{}] uploading... [{}]",
-                            userId, nFileWlk, totFiles, fileItem.getName(),
-                            NumberUtil.humanReadableByteCountSI(
-                                    Locale.getDefault(), fileItem.getSize()));
-                }
-                WebPrintHelper.handleFileUpload(originatorIp, userId,
-                        new FileUpload(fileItem), selectedFont);
+            final Locale locale = session.getLocale();
 
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("WebPrint [{}] {}/{} [{}] ....uploaded [{}].",
-                            userId, nFileWlk, totFiles, fileItem.getName(),
-                            DateUtil.formatDuration(
-                                    System.currentTimeMillis() - start));
-                }
-                filesStatus.put(fileKey, Boolean.TRUE);
-                fileItemsToHandle.remove(fileKey);
+            if (uploadId == null) {
+                onUploadFiles(httpRequest, userId, originatorIp, selectedFont,
+                        locale, filesStatus);
+            } else {
+                onUploadChunk(httpRequest, url, uploadId, userId,
+                        originatorIp, selectedFont, locale, uploadStatus);
             }
 
         } catch (UnavailableException | DocContentPrintException e) {
@@ -257,18 +249,215 @@ public final class WebPrintDropZoneFileResource extends AbstractResource {
                     e.getClass().getSimpleName(), e.getMessage()), e);
 
         } finally {
+            ServiceContext.close();
+        }
+
+        if (uploadId == null) {
+            writeResponse(resourceResponse, resultCode, resultText,
+                    "filesStatus", filesStatus);
+        } else {
+            writeResponse(resourceResponse, resultCode, resultText, "upload",
+                    uploadStatus);
+        }
+
+        return resourceResponse;
+    }
+
+    /**
+     * Streams the files of a multipart request, and queues each received
+     * file for conversion. Waits for all conversions to finish.
+     *
+     * @param httpRequest
+     *            The multipart request.
+     * @param userId
+     *            User ID.
+     * @param originatorIp
+     *            The client IP address.
+     * @param font
+     *            The default PDF font for text files.
+     * @param locale
+     *            The locale of the user.
+     * @param filesStatus
+     *            The status of each file uploaded.
+     * @throws Exception
+     *             When upload or conversion of a file failed.
+     */
+    private static void onUploadFiles(final HttpServletRequest httpRequest,
+            final String userId, final String originatorIp,
+            final InternalFontFamilyEnum font, final Locale locale,
+            final Map<String, Boolean> filesStatus) throws Exception {
+
+        final WebPrintUploadManager manager = WebPrintUploadManager.instance();
+
+        final ServletFileUpload fileUpload = new ServletFileUpload();
+        fileUpload.setSizeMax(WebPrintHelper.getMaxUploadSize().bytes());
+
+        final FileItemIterator iter = fileUpload.getItemIterator(httpRequest);
 
-            // Clean up any file items not handled.
-            for (final FileItem fileItem : fileItemsToHandle.values()) {
-                fileItem.delete();
+        final List<String> fileNames = new ArrayList<>();
+        final List<Future<WebPrintUploadManager.Upload>> conversions =
+                new ArrayList<>();
+
+        Exception failure = null;
+
+        try {
+            while (iter.hasNext()) {
+
+                final FileItemStream item = iter.next();
+
+                if (item.isFormField()
+                        || StringUtils.isBlank(item.getName())) {
+                    continue;
+                }
+
+                final String fileName = item.getName();
+                filesStatus.put(fileName, Boolean.FALSE);
+
+                final long start = System.currentTimeMillis();
+                final File file = WebPrintUploadManager.createUploadFile();
+
+                try (InputStream istr = item.openStream()) {
+                    Files.copy(istr, file.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    file.delete();
+                    throw e;
+                }
+
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("WebPrint [{}] {} [{}] uploaded [{}] [{}].",
+                            userId, fileNames.size() + 1, fileName,
+                            NumberUtil.humanReadableByteCountSI(
+                                    Locale.getDefault(), file.length()),
+                            DateUtil.formatDuration(
+                                    System.currentTimeMillis() - start));
+                }
+
+                conversions.add(manager.convert(userId, originatorIp,
+                        fileName, item.getContentType(), font, locale, file));
+                fileNames.add(fileName);
             }
+        } catch (Exception e) {
+            failure = e;
+        }
 
-            ServiceContext.close();
+        if (failure == null && conversions.isEmpty()) {
+            throw new DocContentPrintException("No files uploaded.");
+        }
+
+        /*
+         * Files received before a failure are still converted: report the
+         * first failure after all conversions are done.
+         */
+        for (int i = 0; i < conversions.size(); i++) {
+            try {
+                conversions.get(i).get();
+                filesStatus.put(fileNames.get(i), Boolean.TRUE);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    if (e.getCause() instanceof Exception) {
+                        failure = (Exception) e.getCause();
+                    } else {
+                        failure = new SpException(e.getCause().getMessage());
+                    }
+                }
+            }
         }
 
-        writeResponse(resourceResponse, resultCode, resultText, filesStatus);
+        if (failure != null) {
+            throw failure;
+        }
+    }
 
-        return resourceResponse;
+    /**
+     * Handles a chunk or status query of a resumable upload.
+     *
+     * @param httpRequest
+     *            The multipart request.
+     * @param url
+     *            The request URL.
+     * @param uploadId
+     *            The client generated upload ID.
+     * @param userId
+     *            User ID.
+     * @param originatorIp
+     *            The client IP address.
+     * @param font
+     *            The default PDF font for text files.
+     * @param locale
+     *            The locale of the user.
+     * @param uploadStatus
+     *            The status of the upload.
+     * @throws Exception
+     *             When upload failed.
+     */
+    private static void onUploadChunk(final HttpServletRequest httpRequest,
+            final Url url, final String uploadId, final String userId,
+            final String originatorIp, final InternalFontFamilyEnum font,
+            final Locale locale, final Map<String, Object> uploadStatus)
+            throws Exception {
+
+        if (!WebPrintUploadManager.isValidUploadId(uploadId)) {
+            throw new DocContentPrintException("Invalid upload.");
+        }
+
+        final WebPrintUploadManager manager = WebPrintUploadManager.instance();
+
+        final long offset =
+                url.getQueryParameterValue(UPLOAD_PARAM_NAME_OFFSET).toLong(-1);
+
+        WebPrintUploadManager.Upload upload = null;
+
+        if (offset < 0) {
+
+            upload = manager.getUpload(userId, uploadId);
+
+        } else {
+
+            final long totalBytes =
+                    url.getQueryParameterValue(UPLOAD_PARAM_NAME_TOTAL)
+                            .toLong(-1);
+
+            if (totalBytes <= 0 || offset >= totalBytes) {
+                throw new DocContentPrintException("Invalid upload.");
+            }
+
+            if (totalBytes > WebPrintHelper.getMaxUploadSize().bytes()) {
+                throw new DocContentPrintException(
+                        "Upload exceeds maximum size.");
+            }
+
+            final FileItemIterator iter =
+                    new ServletFileUpload().getItemIterator(httpRequest);
+
+            while (iter.hasNext()) {
+
+                final FileItemStream item = iter.next();
+
+                if (item.isFormField()
+                        || StringUtils.isBlank(item.getName())) {
+                    continue;
+                }
+
+                // One chunk per request.
+                try (InputStream istr = item.openStream()) {
+                    upload = manager.appendChunk(userId, uploadId,
+                            originatorIp, item.getName(),
+                            item.getContentType(), font, locale, totalBytes,
+                            offset, istr);
+                }
+                break;
+            }
+        }
+
+        if (upload == null) {
+            // Not found: client restarts from offset zero.
+            uploadStatus.put("received", 0L);
+        } else {
+            uploadStatus.put("received", upload.getReceivedBytes());
+            uploadStatus.put("state", upload.getState());
+            uploadStatus.put("txt", upload.getText());
+        }
     }
 
     /**
@@ -280,12 +469,15 @@ public final class WebPrintDropZoneFileResource extends AbstractResource {
      *            The result code.
      * @param text
      *            The result text.
-     * @param fileStatus
-     *            The status of each file uploaded.
+     * @param dataKey
+     *            The key of the additional response data.
+     * @param data
+     *            The additional response data: the status of each file
+     *            uploaded, or the status of a resumable upload.
      */
     private void writeResponse(final ResourceResponse response,
             final ApiResultCodeEnum code, final String text,
-            final Map<String, Boolean> fileStatus) {
+            final String dataKey, final Map<String, ?> data) {
 
         response.setContentType("application/json");
 
@@ -295,7 +487,7 @@ public final class WebPrintDropZoneFileResource extends AbstractResource {
             final Map<String, Object> result =
                     ApiRequestMixin.createApiResultText(code, text);
 
-            result.put("filesStatus", fileStatus);
+            result.put(dataKey, data);
             responseContent = JsonHelper.objectMapAsString(result);
 
         } catch (IOException e) {
@@ -25,6 +25,7 @@
 package org.savapage.server.dropzone;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -218,49 +219,76 @@ public final class WebPrintHelper {
             throws DocContentPrintException, IOException, UnavailableException {
 
         try {
-            final String fileName = uploadedFile.getClientFileName();
+            handleFileUpload(originatorIp, userId,
+                    uploadedFile.getClientFileName(),
+                    uploadedFile.getContentType(),
+                    uploadedFile.getInputStream(), preferredFont);
+        } finally {
+            // Close quietly.
+            uploadedFile.closeStreams();
+            // Don't wait for garbage collect: delete now.
+            uploadedFile.delete();
+        }
+    }
 
-            if (LOGGER.isTraceEnabled()) {
-                LOGGER.trace(String.format("User [%s] uploaded file [%s] [%s]",
-                        userId, uploadedFile.getContentType(),
-                        uploadedFile.getClientFileName()));
-            }
+    /**
+     * @param originatorIp
+     *            The client IP address.
+     * @param userId
+     *            The unique ID of user who uploaded the file.
+     * @param fileName
+     *            The client file name.
+     * @param mimeType
+     *            The content type as sent by the client (can be
+     *            {@code null}).
+     * @param istr
+     *            The file content.
+     * @param preferredFont
+     *            The default PDF font for text files.
+     * @throws DocContentPrintException
+     *             When conversion to PDF failed.
+     * @throws IOException
+     *             When IO error.
+     * @throws UnavailableException
+     *             When service is unavailable.
+     */
+    public static void handleFileUpload(final String originatorIp,
+            final String userId, final String fileName,
+            final String mimeType, final InputStream istr,
+            final InternalFontFamilyEnum preferredFont)
+            throws DocContentPrintException, IOException, UnavailableException {
 
-            DocContentTypeEnum contentType = DocContent
-                    .getContentTypeFromMime(uploadedFile.getContentType());
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace(String.format("User [%s] uploaded file [%s] [%s]",
+                    userId, mimeType, fileName));
+        }
 
-            if (contentType == null) {
-                contentType = DocContent.getContentTypeFromFile(
-                        uploadedFile.getClientFileName());
-
-                if (LOGGER.isWarnEnabled()) {
-                    LOGGER.warn(String.format(
-                            "No content type found for [%s], "
-                                    + "using [%s] based on file extension.",
-                            uploadedFile.getContentType(), contentType));
-                }
-            }
+        DocContentTypeEnum contentType =
+                DocContent.getContentTypeFromMime(mimeType);
 
-            final DocContentPrintReq docContentPrintReq =
-                    new DocContentPrintReq();
+        if (contentType == null) {
+            contentType = DocContent.getContentTypeFromFile(fileName);
 
-            docContentPrintReq.setContentType(contentType);
-            docContentPrintReq.setFileName(fileName);
-            docContentPrintReq.setOriginatorEmail(null);
-            docContentPrintReq.setOriginatorIp(originatorIp);
-            docContentPrintReq.setPreferredOutputFont(preferredFont);
-            docContentPrintReq.setProtocol(DocLogProtocolEnum.HTTP);
-            docContentPrintReq.setTitle(fileName);
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn(String.format(
+                        "No content type found for [%s], "
+                                + "using [%s] based on file extension.",
+                        mimeType, contentType));
+            }
+        }
 
-            QUEUE_SERVICE.printDocContent(ReservedIppQueueEnum.WEBPRINT, userId,
-                    docContentPrintReq, uploadedFile.getInputStream());
+        final DocContentPrintReq docContentPrintReq = new DocContentPrintReq();
 
-        } finally {
-            // Close quietly.
-            uploadedFile.closeStreams();
-            // Don't wait for garbage collect: delete now.
-            uploadedFile.delete();
-        }
+        docContentPrintReq.setContentType(contentType);
+        docContentPrintReq.setFileName(fileName);
+        docContentPrintReq.setOriginatorEmail(null);
+        docContentPrintReq.setOriginatorIp(originatorIp);
+        docContentPrintReq.setPreferredOutputFont(preferredFont);
+        docContentPrintReq.setProtocol(DocLogProtocolEnum.HTTP);
+        docContentPrintReq.setTitle(fileName);
+
+        QUEUE_SERVICE.printDocContent(ReservedIppQueueEnum.WEBPRINT, userId,
+                docContentPrintReq, istr);
     }
 
 }
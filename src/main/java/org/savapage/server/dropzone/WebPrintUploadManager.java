@@ -0,0 +1,813 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.dropzone;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.savapage.core.UnavailableException;
+import org.savapage.core.UnavailableException.State;
+import org.savapage.core.config.ConfigManager;
+import org.savapage.core.fonts.InternalFontFamilyEnum;
+import org.savapage.core.services.ServiceContext;
+import org.savapage.core.util.DateUtil;
+import org.savapage.server.WebServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receives Web Print files in chunks and converts received files of different
+ * users in parallel.
+ * <p>
+ * A resumable upload is identified by the user and a client generated upload
+ * ID. A chunk is appended only when its byte offset equals the number of bytes
+ * received so far, so a client can resume an interrupted upload from the
+ * received offset. A complete file is handed to a bounded pool of conversion
+ * threads. The files of a user are converted one after another, so they
+ * arrive in the inbox in upload order. The number of uploads in progress per
+ * user is capped. Idle uploads are pruned by a background task.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class WebPrintUploadManager {
+
+    /** */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(WebPrintUploadManager.class);
+
+    /** 1 minute. */
+    private static final long PRUNE_PERIOD_MSEC = DateUtil.DURATION_MSEC_MINUTE;
+
+    /**
+     * Max length of a client generated upload ID.
+     */
+    private static final int UPLOAD_ID_MAX_LENGTH = 64;
+
+    /** */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * State of an upload.
+     */
+    public enum UploadState {
+        /** Receiving chunks. */
+        RECEIVING,
+        /** Received, waiting for conversion. */
+        QUEUED,
+        /** Converting to PDF. */
+        CONVERTING,
+        /** Printed to the user's inbox. */
+        DONE,
+        /** Upload or conversion failed. */
+        FAILED
+    }
+
+    /**
+     * An uploaded file.
+     */
+    public static final class Upload {
+
+        /** */
+        private final String userId;
+
+        /** */
+        private final String originatorIp;
+
+        /** */
+        private final String fileName;
+
+        /**
+         * Content type as sent by the client.
+         */
+        private final String contentType;
+
+        /** */
+        private final InternalFontFamilyEnum font;
+
+        /** */
+        private final Locale locale;
+
+        /**
+         * Number of bytes of the complete file.
+         */
+        private final long totalBytes;
+
+        /**
+         * The received content.
+         */
+        private final File file;
+
+        /**
+         * Number of bytes received. Guarded by {@code this}.
+         */
+        private long receivedBytes;
+
+        /** */
+        private volatile UploadState state;
+
+        /**
+         * Failure message, or {@code null}.
+         */
+        private volatile String text;
+
+        /** */
+        private volatile long lastAccessTime;
+
+        /**
+         * {@code true} when no longer counted as in progress for the user.
+         */
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * Completed when conversion is done.
+         */
+        private final CompletableFuture<Upload> converted =
+                new CompletableFuture<>();
+
+        /**
+         * @param user
+         *            User ID.
+         * @param ip
+         *            The client IP address.
+         * @param name
+         *            The client file name.
+         * @param mimeType
+         *            The content type as sent by the client.
+         * @param fontFamily
+         *            The default PDF font for text files.
+         * @param loc
+         *            The locale of the user.
+         * @param total
+         *            Number of bytes of the complete file.
+         * @param content
+         *            The file with the received content.
+         */
+        private Upload(final String user, final String ip, final String name,
+                final String mimeType, final InternalFontFamilyEnum fontFamily,
+                final Locale loc, final long total, final File content) {
+            this.userId = user;
+            this.originatorIp = ip;
+            this.fileName = name;
+            this.contentType = mimeType;
+            this.font = fontFamily;
+            this.locale = loc;
+            this.totalBytes = total;
+            this.file = content;
+            this.state = UploadState.RECEIVING;
+            this.lastAccessTime = System.currentTimeMillis();
+        }
+
+        /**
+         * @return The client file name.
+         */
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * @return Number of bytes received.
+         */
+        public synchronized long getReceivedBytes() {
+            return receivedBytes;
+        }
+
+        /**
+         * @return The state.
+         */
+        public UploadState getState() {
+            return state;
+        }
+
+        /**
+         * @return Failure message, or {@code null}.
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return {@code true} when conversion is pending.
+         */
+        private boolean isConverting() {
+            return state == UploadState.QUEUED
+                    || state == UploadState.CONVERTING;
+        }
+    }
+
+    /**
+     * Uploads in progress of a user. Guarded by {@code this}.
+     */
+    private static final class UserUploads {
+
+        /**
+         * Number of uploads received or converted.
+         */
+        private int inProgress;
+
+        /**
+         * {@code true} when a conversion of the user is running.
+         */
+        private boolean isConverting;
+
+        /**
+         * Received uploads waiting for the running conversion, in upload
+         * order.
+         */
+        private final Queue<Upload> pending = new ArrayDeque<>();
+
+        /**
+         * {@code true} when removed from {@link #userUploads}.
+         */
+        private boolean isRemoved;
+    }
+
+    /**
+     * Resumable uploads by user and upload ID.
+     */
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+
+    /**
+     * Uploads in progress by user ID.
+     */
+    private final Map<String, UserUploads> userUploads =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Converts received files.
+     */
+    private final ThreadPoolExecutor convertExecutor;
+
+    /**
+     * Background pruning.
+     */
+    private final ScheduledExecutorService pruneExecutor;
+
+    /** */
+    private WebPrintUploadManager() {
+
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        final ThreadFactory threadFactory = r -> {
+            final Thread thread = new Thread(r,
+                    String.format("%s-%d",
+                            WebPrintUploadManager.class.getSimpleName(),
+                            threadCount.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        final int threads = Math.max(1, WebServer.getWebPrintConvertThreads());
+
+        this.convertExecutor = new ThreadPoolExecutor(threads, threads, 0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(
+                        Math.max(1, WebServer.getWebPrintConvertQueue())),
+                threadFactory);
+
+        this.pruneExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread =
+                    new Thread(r, WebPrintUploadManager.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.pruneExecutor.scheduleWithFixedDelay(this::onPrune,
+                PRUNE_PERIOD_MSEC, PRUNE_PERIOD_MSEC, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The SingletonHolder is loaded on the first execution of
+     * {@link WebPrintUploadManager#instance()} or the first access to
+     * {@link SingletonHolder#INSTANCE}, not before.
+     */
+    private static class SingletonHolder {
+        public static final WebPrintUploadManager INSTANCE =
+                new WebPrintUploadManager();
+    }
+
+    /**
+     * Gets the singleton instance.
+     *
+     * @return The instance.
+     */
+    public static WebPrintUploadManager instance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Stops conversion and background pruning.
+     */
+    public void shutdown() {
+        this.pruneExecutor.shutdownNow();
+        this.convertExecutor.shutdownNow();
+    }
+
+    /**
+     * @param uploadId
+     *            The client generated upload ID.
+     * @return {@code true} when ID is valid.
+     */
+    public static boolean isValidUploadId(final String uploadId) {
+        return uploadId != null && !uploadId.isEmpty()
+                && uploadId.length() <= UPLOAD_ID_MAX_LENGTH
+                && uploadId.chars().allMatch(Character::isLetterOrDigit);
+    }
+
+    /**
+     * @param userId
+     *            User ID.
+     * @param uploadId
+     *            The client generated upload ID.
+     * @return The key of the upload.
+     */
+    private static String getKey(final String userId, final String uploadId) {
+        return String.format("%s|%s", userId, uploadId);
+    }
+
+    /**
+     * @return A new file for received content.
+     */
+    public static File createUploadFile() {
+        return new File(ConfigManager.getAppTmpDir(),
+                String.format("webprint-%s.upload", UUID.randomUUID()));
+    }
+
+    /**
+     * Gets a resumable upload.
+     *
+     * @param userId
+     *            User ID.
+     * @param uploadId
+     *            The client generated upload ID.
+     * @return The upload, or {@code null} when not found.
+     */
+    public Upload getUpload(final String userId, final String uploadId) {
+        final Upload upload = this.uploads.get(getKey(userId, uploadId));
+        if (upload != null) {
+            upload.lastAccessTime = System.currentTimeMillis();
+        }
+        return upload;
+    }
+
+    /**
+     * Appends a chunk to a resumable upload. The upload is created when the
+     * chunk offset is zero. A chunk with an offset other than the number of
+     * bytes received is ignored: the client resumes from
+     * {@link Upload#getReceivedBytes()}. When all bytes are received, the
+     * file is queued for conversion.
+     *
+     * @param userId
+     *            User ID.
+     * @param uploadId
+     *            The client generated upload ID.
+     * @param originatorIp
+     *            The client IP address.
+     * @param fileName
+     *            The client file name.
+     * @param contentType
+     *            The content type as sent by the client.
+     * @param font
+     *            The default PDF font for text files.
+     * @param locale
+     *            The locale of the user.
+     * @param totalBytes
+     *            Number of bytes of the complete file.
+     * @param offset
+     *            Byte offset of the chunk.
+     * @param istr
+     *            The chunk content.
+     * @return The upload, or {@code null} when not found.
+     * @throws IOException
+     *             When IO error, or when chunk exceeds the file size.
+     * @throws UnavailableException
+     *             When user has too many uploads in progress.
+     */
+    public Upload appendChunk(final String userId, final String uploadId,
+            final String originatorIp, final String fileName,
+            final String contentType, final InternalFontFamilyEnum font,
+            final Locale locale, final long totalBytes, final long offset,
+            final InputStream istr) throws IOException, UnavailableException {
+
+        final String key = getKey(userId, uploadId);
+
+        Upload upload = this.uploads.get(key);
+
+        if (upload == null && offset == 0) {
+
+            final Upload created = new Upload(userId, originatorIp, fileName,
+                    contentType, font, locale, totalBytes,
+                    createUploadFile());
+
+            this.reserve(userId);
+
+            upload = this.uploads.putIfAbsent(key, created);
+
+            if (upload == null) {
+                upload = created;
+            } else {
+                this.release(created);
+            }
+        }
+
+        if (upload == null) {
+            return null;
+        }
+
+        upload.lastAccessTime = System.currentTimeMillis();
+
+        synchronized (upload) {
+
+            if (upload.state != UploadState.RECEIVING
+                    || offset != upload.receivedBytes) {
+                return upload;
+            }
+
+            final long maxBytes = upload.totalBytes - upload.receivedBytes;
+            final long nBytes;
+
+            try (OutputStream ostr =
+                    new FileOutputStream(upload.file, offset > 0)) {
+                nBytes = copy(istr, ostr, maxBytes);
+            } catch (IOException e) {
+                // Discard the partial chunk: client resends it.
+                truncate(upload);
+                throw e;
+            }
+
+            if (nBytes > maxBytes) {
+                this.uploads.remove(key);
+                upload.state = UploadState.FAILED;
+                upload.file.delete();
+                this.release(upload);
+                throw new IOException(String.format(
+                        "Upload [%s] exceeds [%d] bytes.", fileName,
+                        upload.totalBytes));
+            }
+
+            upload.receivedBytes += nBytes;
+
+            if (upload.receivedBytes == upload.totalBytes) {
+                try {
+                    this.submit(upload);
+                } catch (UnavailableException e) {
+                    upload.text = e.getMessage();
+                }
+            }
+        }
+        return upload;
+    }
+
+    /**
+     * Queues a received file for conversion.
+     *
+     * @param userId
+     *            User ID.
+     * @param originatorIp
+     *            The client IP address.
+     * @param fileName
+     *            The client file name.
+     * @param contentType
+     *            The content type as sent by the client.
+     * @param font
+     *            The default PDF font for text files.
+     * @param locale
+     *            The locale of the user.
+     * @param file
+     *            The received file: deleted after conversion.
+     * @return The {@link Future} of the conversion.
+     * @throws UnavailableException
+     *             When conversion queue is full, or user has too many
+     *             uploads in progress.
+     */
+    public Future<Upload> convert(final String userId,
+            final String originatorIp, final String fileName,
+            final String contentType, final InternalFontFamilyEnum font,
+            final Locale locale, final File file) throws UnavailableException {
+
+        final Upload upload = new Upload(userId, originatorIp, fileName,
+                contentType, font, locale, file.length(), file);
+
+        upload.receivedBytes = upload.totalBytes;
+
+        try {
+            this.reserve(userId);
+        } catch (UnavailableException e) {
+            file.delete();
+            throw e;
+        }
+
+        return this.submit(upload);
+    }
+
+    /**
+     * Counts a new upload as in progress for a user.
+     *
+     * @param userId
+     *            User ID.
+     * @throws UnavailableException
+     *             When user has too many uploads in progress.
+     */
+    private void reserve(final String userId) throws UnavailableException {
+
+        while (true) {
+
+            final UserUploads user =
+                    this.userUploads.computeIfAbsent(userId,
+                            k -> new UserUploads());
+
+            synchronized (user) {
+
+                if (user.isRemoved) {
+                    continue;
+                }
+
+                if (user.inProgress >= Math.max(1,
+                        WebServer.getWebPrintUploadMaxPerUser())) {
+                    throw new UnavailableException(State.TEMPORARY,
+                            "Too many uploads: try again later.");
+                }
+                user.inProgress++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops counting an upload as in progress for its user. Calling this
+     * more than once for an upload has no effect.
+     *
+     * @param upload
+     *            The upload.
+     */
+    private void release(final Upload upload) {
+
+        if (!upload.released.compareAndSet(false, true)) {
+            return;
+        }
+
+        final UserUploads user = this.userUploads.get(upload.userId);
+
+        if (user == null) {
+            return;
+        }
+
+        synchronized (user) {
+            user.inProgress--;
+            if (user.inProgress <= 0 && !user.isConverting
+                    && user.pending.isEmpty()) {
+                user.isRemoved = true;
+                this.userUploads.remove(upload.userId, user);
+            }
+        }
+    }
+
+    /**
+     * Submits an upload for conversion. When a conversion of the same user
+     * is running, the upload waits for it, so the files of a user are
+     * converted in upload order.
+     *
+     * @param upload
+     *            The upload, counted as in progress for its user.
+     * @return The {@link Future} of the conversion.
+     * @throws UnavailableException
+     *             When conversion queue is full.
+     */
+    private Future<Upload> submit(final Upload upload)
+            throws UnavailableException {
+
+        final UserUploads user = this.userUploads.get(upload.userId);
+
+        upload.state = UploadState.QUEUED;
+
+        synchronized (user) {
+            if (user.isConverting) {
+                user.pending.add(upload);
+                return upload.converted;
+            }
+            user.isConverting = true;
+        }
+
+        try {
+            this.convertExecutor.execute(() -> this.onConvert(user, upload));
+        } catch (RejectedExecutionException e) {
+            synchronized (user) {
+                user.isConverting = false;
+            }
+            upload.state = UploadState.FAILED;
+            upload.file.delete();
+            this.release(upload);
+            throw new UnavailableException(State.TEMPORARY,
+                    "Too many uploads: try again later.");
+        }
+        return upload.converted;
+    }
+
+    /**
+     * Converts an upload, and then the uploads of the same user that are
+     * waiting for it.
+     *
+     * @param user
+     *            The uploads of the user.
+     * @param first
+     *            The first upload to convert.
+     */
+    private void onConvert(final UserUploads user, final Upload first) {
+
+        Upload upload = first;
+
+        while (upload != null) {
+
+            try {
+                upload.converted.complete(onConvert(upload));
+            } catch (Exception e) {
+                upload.converted.completeExceptionally(e);
+            } finally {
+                this.release(upload);
+            }
+
+            synchronized (user) {
+                upload = user.pending.poll();
+                if (upload == null) {
+                    user.isConverting = false;
+                    if (user.inProgress <= 0) {
+                        user.isRemoved = true;
+                        this.userUploads.remove(first.userId, user);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints a received file to the user's inbox.
+     *
+     * @param upload
+     *            The upload.
+     * @return The upload.
+     * @throws Exception
+     *             When conversion failed.
+     */
+    private static Upload onConvert(final Upload upload) throws Exception {
+
+        upload.state = UploadState.CONVERTING;
+
+        final long start = System.currentTimeMillis();
+
+        ServiceContext.setLocale(upload.locale);
+        ServiceContext.open();
+
+        try (InputStream istr = new FileInputStream(upload.file)) {
+
+            WebPrintHelper.handleFileUpload(upload.originatorIp,
+                    upload.userId, upload.fileName, upload.contentType, istr,
+                    upload.font);
+
+            upload.state = UploadState.DONE;
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("WebPrint [{}] [{}] converted [{}].",
+                        upload.userId, upload.fileName, DateUtil
+                                .formatDuration(
+                                        System.currentTimeMillis() - start));
+            }
+
+        } catch (Exception e) {
+            upload.text = e.getMessage();
+            upload.state = UploadState.FAILED;
+            throw e;
+        } finally {
+            ServiceContext.close();
+            upload.file.delete();
+            upload.lastAccessTime = System.currentTimeMillis();
+        }
+        return upload;
+    }
+
+    /**
+     * Copies at most one byte more than a maximum.
+     *
+     * @param istr
+     *            Input.
+     * @param ostr
+     *            Output.
+     * @param maxBytes
+     *            Max number of bytes expected.
+     * @return Number of bytes copied: more than maxBytes if input exceeds the
+     *         maximum.
+     * @throws IOException
+     *             When IO error.
+     */
+    private static long copy(final InputStream istr, final OutputStream ostr,
+            final long maxBytes) throws IOException {
+
+        final byte[] buffer = new byte[BUFFER_SIZE];
+
+        long nTotal = 0;
+        int nBytes;
+
+        while ((nBytes = istr.read(buffer)) > 0) {
+            final long nWrite = Math.min(nBytes, maxBytes - nTotal + 1);
+            ostr.write(buffer, 0, (int) nWrite);
+            nTotal += nWrite;
+            if (nTotal > maxBytes) {
+                break;
+            }
+        }
+        return nTotal;
+    }
+
+    /**
+     * Truncates the upload file to the number of bytes received.
+     *
+     * @param upload
+     *            The upload.
+     */
+    private static void truncate(final Upload upload) {
+        try (RandomAccessFile raf =
+                new RandomAccessFile(upload.file, "rw")) {
+            raf.setLength(upload.receivedBytes);
+        } catch (IOException e) {
+            LOGGER.warn("WebPrint [{}] [{}]: {}", upload.userId,
+                    upload.fileName, e.getMessage());
+        }
+    }
+
+    /**
+     * Removes idle uploads that are not being converted. An upload is
+     * checked and removed while holding its lock, so a chunk is never
+     * appended to a pruned upload.
+     */
+    private void onPrune() {
+
+        final long expiry = System.currentTimeMillis()
+                - WebServer.getWebPrintUploadExpiryMins()
+                        * DateUtil.DURATION_MSEC_MINUTE;
+
+        for (final Map.Entry<String, Upload> entry : this.uploads
+                .entrySet()) {
+
+            final Upload upload = entry.getValue();
+
+            synchronized (upload) {
+
+                if (upload.lastAccessTime >= expiry || upload.isConverting()
+                        || !this.uploads.remove(entry.getKey(), upload)) {
+                    continue;
+                }
+
+                if (upload.state == UploadState.RECEIVING) {
+                    upload.state = UploadState.FAILED;
+                    upload.text = "Upload expired.";
+                    upload.file.delete();
+                    this.release(upload);
+                }
+            }
+        }
+    }
+}
@@ -33,6 +33,7 @@ import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
 
+import org.glassfish.jersey.client.ClientProperties;
 import org.savapage.core.services.ServiceContext;
 import org.savapage.ext.rest.RestClient;
 import org.savapage.server.restful.dto.AbstractRestDto;
@@ -77,16 +78,51 @@ public final class RestClientImpl implements RestClient {
         }
     }
 
+    /**
+     * Creates the web target, with connect and read timeout.
+     *
+     * @param client
+     *            The REST client.
+     * @param uri
+     *            Target URI.
+     * @param timeoutMsec
+     *            Connect and read timeout (msec). If zero, no timeout is set.
+     * @return The web target.
+     */
+    private static WebTarget createTarget(final Client client, final URI uri,
+            final long timeoutMsec) {
+
+        final WebTarget webTarget = client.target(uri);
+
+        if (timeoutMsec > 0) {
+            final Integer timeout = Integer
+                    .valueOf((int) Math.min(timeoutMsec, Integer.MAX_VALUE));
+            webTarget.property(ClientProperties.CONNECT_TIMEOUT, timeout);
+            webTarget.property(ClientProperties.READ_TIMEOUT, timeout);
+        }
+        return webTarget;
+    }
+
     /**
      * @param uri
      *            Target URI.
      * @return A new {@link RestClient}.
      */
     public static RestClient create(final URI uri) {
+        return create(uri, 0);
+    }
+
+    /**
+     * @param uri
+     *            Target URI.
+     * @param timeoutMsec
+     *            Connect and read timeout (msec). If zero, no timeout is set.
+     * @return A new {@link RestClient}.
+     */
+    public static RestClient create(final URI uri, final long timeoutMsec) {
         final Client client = ServiceContext.getServiceFactory()
                 .getRestClientService().createClient();
-        final WebTarget webTarget = client.target(uri);
-        return new RestClientImpl(webTarget);
+        return new RestClientImpl(createTarget(client, uri, timeoutMsec));
     }
 
     /**
@@ -100,10 +136,25 @@ public final class RestClientImpl implements RestClient {
      */
     public static RestClient create(final URI uri, final String username,
             final String password) {
+        return create(uri, username, password, 0);
+    }
+
+    /**
+     * @param uri
+     *            Target URI.
+     * @param username
+     *            Basic Auth user.
+     * @param password
+     *            Basic Auth password.
+     * @param timeoutMsec
+     *            Connect and read timeout (msec). If zero, no timeout is set.
+     * @return A new {@link RestClient}.
+     */
+    public static RestClient create(final URI uri, final String username,
+            final String password, final long timeoutMsec) {
         final Client client = ServiceContext.getServiceFactory()
                 .getRestClientService().createClientAuth(username, password);
-        final WebTarget webTarget = client.target(uri);
-        return new RestClientImpl(webTarget);
+        return new RestClientImpl(createTarget(client, uri, timeoutMsec));
     }
 
     @Override
@@ -104,6 +104,7 @@ import org.savapage.ext.payment.bitcoin.BitcoinGatewayListener;
 import org.savapage.ext.payment.bitcoin.BitcoinGatewayTrx;
 import org.savapage.ext.payment.bitcoin.BitcoinWalletInfo;
 import org.savapage.ext.print.IppRoutingPlugin;
+import org.savapage.ext.print.RoutingRestInvoker;
 import org.savapage.ext.rest.RestClient;
 import org.savapage.server.CustomWebServlet;
 import org.savapage.server.WebApp;
@@ -121,7 +122,8 @@ import org.slf4j.LoggerFactory;
  */
 public final class ServerPluginManager
         implements PaymentGatewayListener, BitcoinGatewayListener,
-        NotificationListener, IppRoutingListener, ServerPluginContext {
+        NotificationListener, IppRoutingListener, ServerPluginContext,
+        IppRoutingPlugin.RestClientFactory {
 
     /**
      * The logger.
@@ -1450,6 +1452,12 @@ public final class ServerPluginManager
                 builder.append("\n| ").append(String.format("[%s]",
                         entry.getValue().getClass().getName()));
                 builder.append("\n| ").append(entry.getValue().getName());
+
+                final RoutingRestInvoker invoker =
+                        entry.getValue().getRoutingRestInvoker();
+                if (invoker != null) {
+                    builder.append("\n| ").append(invoker.asLoggingInfo());
+                }
                 builder.append('\n').append(delim);
             }
             pluginsWlk++;
@@ -1630,4 +1638,16 @@ public final class ServerPluginManager
         return RestClientImpl.create(uri, username, password);
     }
 
+    @Override
+    public RestClient createRestClient(final URI uri,
+            final long timeoutMsec) {
+        return RestClientImpl.create(uri, timeoutMsec);
+    }
+
+    @Override
+    public RestClient createRestClient(final URI uri, final String username,
+            final String password, final long timeoutMsec) {
+        return RestClientImpl.create(uri, username, password, timeoutMsec);
+    }
+
 }
@@ -25,10 +25,11 @@
 package org.savapage.server.img;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.apache.wicket.request.IRequestCycle;
-import org.apache.wicket.request.handler.resource.ResourceStreamRequestHandler;
-import org.apache.wicket.util.resource.FileResourceStream;
+import org.apache.wicket.request.IRequestHandler;
+import org.savapage.core.SpException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,7 +39,7 @@ import org.slf4j.LoggerFactory;
  * @author Rijk Ravestein
  *
  */
-public final class ImageReqHandler extends ResourceStreamRequestHandler {
+public final class ImageReqHandler implements IRequestHandler {
 
     /** */
     private static final Logger LOGGER =
@@ -54,8 +55,6 @@ public final class ImageReqHandler extends ResourceStreamRequestHandler {
      */
     public ImageReqHandler(final File image) {
 
-        super(new FileResourceStream(image));
-
         this.file = image;
 
         if (LOGGER.isTraceEnabled()) {
@@ -86,6 +85,17 @@ public final class ImageReqHandler extends ResourceStreamRequestHandler {
         }
     }
 
+    @Override
+    public void respond(final IRequestCycle requestCycle) {
+        try {
+            ImageResponseHelper.writeBinary(
+                    ImageResponseHelper.getServletResponse(requestCycle),
+                    this.file.toPath());
+        } catch (IOException e) {
+            throw new SpException(e.getMessage(), e);
+        }
+    }
+
     @Override
     public void detach(final IRequestCycle requestCycle) {
         if (this.file != null) {
@@ -93,7 +103,6 @@ public final class ImageReqHandler extends ResourceStreamRequestHandler {
         } else {
             LOGGER.warn("No image file to delete");
         }
-        super.detach(requestCycle);
     }
 
 }
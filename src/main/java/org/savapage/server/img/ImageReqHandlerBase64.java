@@ -27,25 +27,21 @@ package org.savapage.server.img;
 import java.io.File;
 import java.io.IOException;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.wicket.request.IRequestCycle;
-import org.apache.wicket.request.handler.TextRequestHandler;
+import org.apache.wicket.request.IRequestHandler;
 import org.savapage.core.SpException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import net.iharder.Base64;
-
 /**
  * Our own handler to service the request for a generated image file as BASE64
- * encoded output.
+ * encoded output. The file is encoded while it is streamed, so the image is not
+ * held in memory.
  *
  * @author Rijk Ravestein
  *
  */
-public class ImageReqHandlerBase64 extends TextRequestHandler {
-
-    private static final String CONTENT_TYPE_BASE64 = "text/plain";
+public class ImageReqHandlerBase64 implements IRequestHandler {
 
     private static final Logger LOGGER =
             LoggerFactory.getLogger(ImageReqHandlerBase64.class);
@@ -58,8 +54,6 @@ public class ImageReqHandlerBase64 extends TextRequestHandler {
      */
     public ImageReqHandlerBase64(File file) {
 
-        super(CONTENT_TYPE_BASE64, "UTF-8", getBase64(file));
-
         this.file = file;
 
         if (LOGGER.isTraceEnabled()) {
@@ -67,23 +61,6 @@ public class ImageReqHandlerBase64 extends TextRequestHandler {
         }
     }
 
-    /**
-     *
-     * @param file
-     * @return
-     */
-    private static String getBase64(File file) {
-
-        byte[] iconBytes;
-        try {
-            iconBytes = FileUtils.readFileToByteArray(file);
-        } catch (IOException e) {
-            throw new SpException(e);
-        }
-
-        return Base64.encodeBytes(iconBytes);
-    }
-
     /**
      * The actual release of the file.
      *
@@ -108,6 +85,17 @@ public class ImageReqHandlerBase64 extends TextRequestHandler {
         }
     }
 
+    @Override
+    public void respond(final IRequestCycle requestCycle) {
+        try {
+            ImageResponseHelper.writeBase64(
+                    ImageResponseHelper.getServletResponse(requestCycle),
+                    this.file.toPath());
+        } catch (IOException e) {
+            throw new SpException(e.getMessage(), e);
+        }
+    }
+
     @Override
     public void detach(IRequestCycle requestCycle) {
         if (file != null) {
@@ -117,7 +105,6 @@ public class ImageReqHandlerBase64 extends TextRequestHandler {
                 LOGGER.warn("no image file to delete");
             }
         }
-        super.detach(requestCycle);
     }
 
 }
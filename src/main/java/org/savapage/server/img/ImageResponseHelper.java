@@ -0,0 +1,243 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.img;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.wicket.protocol.http.WebApplication;
+import org.apache.wicket.request.IRequestCycle;
+
+/**
+ * Writes image content to the HTTP response without holding the image (or
+ * its BASE64 encoding) on the heap.
+ *
+ * @author Rijk Ravestein
+ *
+ */
+final class ImageResponseHelper {
+
+    /** */
+    private static final String CONTENT_TYPE_BASE64 =
+            "text/plain; charset=UTF-8";
+
+    /** */
+    private ImageResponseHelper() {
+    }
+
+    /**
+     * @param requestCycle
+     *            The request cycle.
+     * @return The servlet response.
+     */
+    public static HttpServletResponse
+            getServletResponse(final IRequestCycle requestCycle) {
+        return (HttpServletResponse) requestCycle.getResponse()
+                .getContainerResponse();
+    }
+
+    /**
+     * @param fileName
+     *            The image file name.
+     * @return The content type.
+     */
+    public static String getContentType(final String fileName) {
+        return WebApplication.get().getMimeType(fileName);
+    }
+
+    /**
+     * @param nBytes
+     *            Number of bytes to encode.
+     * @return Number of BASE64 characters.
+     */
+    private static long getBase64Length(final long nBytes) {
+        return 4 * ((nBytes + 2) / 3);
+    }
+
+    /**
+     * Copies a file channel to an output stream.
+     *
+     * @param channel
+     *            The file channel.
+     * @param ostr
+     *            The output stream.
+     * @throws IOException
+     *             When IO errors.
+     */
+    private static void copy(final FileChannel channel,
+            final OutputStream ostr) throws IOException {
+
+        final WritableByteChannel target = Channels.newChannel(ostr);
+        final long size = channel.size();
+
+        long position = 0;
+
+        while (position < size) {
+            final long count =
+                    channel.transferTo(position, size - position, target);
+            if (count <= 0) {
+                break;
+            }
+            position += count;
+        }
+    }
+
+    /**
+     * Writes an image file as binary content.
+     *
+     * @param response
+     *            The servlet response.
+     * @param image
+     *            The image file.
+     * @throws IOException
+     *             When IO errors.
+     */
+    public static void writeBinary(final HttpServletResponse response,
+            final Path image) throws IOException {
+
+        try (FileChannel channel =
+                FileChannel.open(image, StandardOpenOption.READ)) {
+            writeBinary(response, image.getFileName().toString(), channel);
+        }
+    }
+
+    /**
+     * Writes an open image file as binary content.
+     *
+     * @param response
+     *            The servlet response.
+     * @param fileName
+     *            The image file name, to derive the content type from.
+     * @param channel
+     *            The image file channel.
+     * @throws IOException
+     *             When IO errors.
+     */
+    public static void writeBinary(final HttpServletResponse response,
+            final String fileName, final FileChannel channel)
+            throws IOException {
+
+        response.setContentType(getContentType(fileName));
+        response.setContentLengthLong(channel.size());
+
+        copy(channel, response.getOutputStream());
+    }
+
+    /**
+     * Writes image bytes as binary content.
+     *
+     * @param response
+     *            The servlet response.
+     * @param fileName
+     *            The image file name, to derive the content type from.
+     * @param bytes
+     *            The image bytes.
+     * @throws IOException
+     *             When IO errors.
+     */
+    public static void writeBinary(final HttpServletResponse response,
+            final String fileName, final byte[] bytes) throws IOException {
+
+        response.setContentType(getContentType(fileName));
+        response.setContentLength(bytes.length);
+        response.getOutputStream().write(bytes);
+    }
+
+    /**
+     * Writes an image file as BASE64 encoded text, encoding while reading.
+     *
+     * @param response
+     *            The servlet response.
+     * @param image
+     *            The image file.
+     * @throws IOException
+     *             When IO errors.
+     */
+    public static void writeBase64(final HttpServletResponse response,
+            final Path image) throws IOException {
+
+        try (FileChannel channel =
+                FileChannel.open(image, StandardOpenOption.READ)) {
+            writeBase64(response, channel);
+        }
+    }
+
+    /**
+     * Writes an open image file as BASE64 encoded text, encoding while
+     * reading.
+     *
+     * @param response
+     *            The servlet response.
+     * @param channel
+     *            The image file channel.
+     * @throws IOException
+     *             When IO errors.
+     */
+    public static void writeBase64(final HttpServletResponse response,
+            final FileChannel channel) throws IOException {
+
+        response.setContentType(CONTENT_TYPE_BASE64);
+        response.setContentLengthLong(getBase64Length(channel.size()));
+
+        // Closing the encoder writes the padding, not closing the response.
+        try (OutputStream ostr = Base64.getEncoder().wrap(
+                new CloseShieldOutputStream(response.getOutputStream()))) {
+            copy(channel, ostr);
+        }
+        response.getOutputStream().flush();
+    }
+
+    /**
+     * Writes image bytes as BASE64 encoded text.
+     *
+     * @param response
+     *            The servlet response.
+     * @param bytes
+     *            The image bytes.
+     * @throws IOException
+     *             When IO errors.
+     */
+    public static void writeBase64(final HttpServletResponse response,
+            final byte[] bytes) throws IOException {
+
+        response.setContentType(CONTENT_TYPE_BASE64);
+        response.setContentLengthLong(getBase64Length(bytes.length));
+
+        try (OutputStream ostr = Base64.getEncoder().wrap(
+                new CloseShieldOutputStream(response.getOutputStream()))) {
+            ostr.write(bytes);
+        }
+        response.getOutputStream().flush();
+    }
+}
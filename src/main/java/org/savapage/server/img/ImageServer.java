@@ -25,8 +25,10 @@
 package org.savapage.server.img;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.wicket.markup.html.WebPage;
@@ -84,8 +86,6 @@ public final class ImageServer extends WebPage implements ServiceEntryPoint {
             LOGGER.trace(url.composeImageUrl());
         }
 
-        File file = null;
-
         ServiceContext.open();
 
         IRequestHandler handler;
@@ -95,13 +95,7 @@ public final class ImageServer extends WebPage implements ServiceEntryPoint {
             if (session.isAuthenticated() && url.getUser() != null
                     && session.getUserId().equals(url.getUser())) {
 
-                file = getImageFile(url);
-
-                if (url.isBase64()) {
-                    handler = new ImageReqHandlerBase64(file);
-                } else {
-                    handler = new ImageReqHandler(file);
-                }
+                handler = getImageHandler(url);
 
             } else {
                 handler = new ErrorCodeRequestHandler(
@@ -112,6 +106,10 @@ public final class ImageServer extends WebPage implements ServiceEntryPoint {
             handler = new ErrorCodeRequestHandler(
                     HttpServletResponse.SC_NOT_FOUND);
             LOGGER.warn(e.getMessage());
+        } catch (IOException e) {
+            handler = new ErrorCodeRequestHandler(
+                    HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            LOGGER.error(e.getMessage());
         } finally {
             ServiceContext.close();
         }
@@ -136,6 +134,54 @@ public final class ImageServer extends WebPage implements ServiceEntryPoint {
         return url;
     }
 
+    /**
+     * Gets the handler of an image from the {@link PageImageCache}. When not
+     * cached, the image is rendered and added to the cache.
+     *
+     * @param url
+     *            The {@link ImageUrl}.
+     * @return The request handler.
+     * @throws InboxPageNotFoundException
+     *             When inbox page is not found.
+     * @throws IOException
+     *             When rendered image could not be read.
+     */
+    private IRequestHandler getImageHandler(final ImageUrl url)
+            throws InboxPageNotFoundException, IOException {
+
+        final PageImageCache cache = PageImageCache.instance();
+
+        final String key = cache.createKey(url);
+        final String etag = PageImageCache.createETag(key);
+
+        final HttpServletRequest request = (HttpServletRequest) getRequest()
+                .getContainerRequest();
+
+        if (PageImageReqHandler.isMatch(
+                request.getHeader("If-None-Match"), etag)) {
+            return PageImageReqHandler.notModified(etag);
+        }
+
+        PageImageCache.Image image = cache.get(key);
+
+        if (image == null) {
+
+            final File file = getImageFile(url);
+
+            image = cache.put(key, url.getUser(), file);
+
+            if (image == null) {
+                // Not cached: serve and delete the file.
+                if (url.isBase64()) {
+                    return new ImageReqHandlerBase64(file);
+                }
+                return new ImageReqHandler(file);
+            }
+        }
+
+        return new PageImageReqHandler(image, etag, url.isBase64());
+    }
+
     /**
      *
      * @param url
@@ -0,0 +1,770 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.img;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.savapage.core.config.ConfigManager;
+import org.savapage.core.imaging.ImageUrl;
+import org.savapage.server.cometd.UserHomeWatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Singleton cache of rendered inbox page images, so browsing the SafePages of
+ * a user does not rasterize the same pages over and over again.
+ * <p>
+ * Images are stored on disk in a dedicated directory of the application
+ * temp directory, small images (like thumbnails) are also kept in memory.
+ * Entries are evicted in least recently used order, bounded by a total size
+ * and a size per user.
+ * </p>
+ * <p>
+ * The cache key holds the {@link ImageUrl} parameters (including the BASE64
+ * form), the state of the user home directory, and a generation of the user.
+ * The home directory state is a fingerprint of its files, taken once when the
+ * directory is registered at the {@link UserHomeWatcher}, and a version that
+ * is incremented on each file event. Since any inbox edit changes the state,
+ * previous keys of the user become obsolete and are evicted in due time. The
+ * generation is incremented by {@link #invalidateUser(String)} for changes
+ * outside the home directory, like letterheads. The ETag of an image is
+ * derived from its key.
+ * </p>
+ * <p>
+ * An image on disk is retrieved with an open {@link FileChannel}, acquired
+ * while holding the cache lock, so it can be read after eviction.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class PageImageCache {
+
+    /** */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(PageImageCache.class);
+
+    /**
+     * Name of the cache directory in the application temp directory.
+     */
+    private static final String CACHE_DIR_NAME = "page-image-cache";
+
+    /**
+     * Max total bytes of cached images on disk.
+     */
+    private static final long MAX_DISK_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * Max bytes of cached images on disk per user.
+     */
+    private static final long MAX_USER_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * Max total bytes of cached images in memory.
+     */
+    private static final long MAX_MEMORY_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * Max bytes of a single image to be kept in memory.
+     */
+    private static final int MAX_MEMORY_ENTRY_BYTES = 128 * 1024;
+
+    /**
+     * Max number of user home directories watched for changes.
+     */
+    private static final int MAX_WATCHED_HOMES = 1000;
+
+    /**
+     * Image retrieved from the cache.
+     */
+    public static final class Image {
+
+        /** */
+        private final byte[] bytes;
+
+        /** */
+        private final File file;
+
+        /** */
+        private final FileChannel channel;
+
+        /**
+         * @param content
+         *            The image bytes, or {@code null} when image is on disk
+         *            only.
+         * @param image
+         *            The image file.
+         * @param fileChannel
+         *            The open image file, or {@code null} when image bytes are
+         *            present.
+         */
+        private Image(final byte[] content, final File image,
+                final FileChannel fileChannel) {
+            this.bytes = content;
+            this.file = image;
+            this.channel = fileChannel;
+        }
+
+        /**
+         * @return The image bytes, or {@code null} when image is on disk only.
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return The cached image file.
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return The open image file, or {@code null} when image bytes are
+         *         present. The caller must close it.
+         */
+        public FileChannel getChannel() {
+            return channel;
+        }
+    }
+
+    /**
+     * Change signal of a user home directory, registered at the
+     * {@link UserHomeWatcher}.
+     */
+    private final class HomeState implements UserHomeWatcher.Listener {
+
+        /** */
+        private final String user;
+
+        /** */
+        private final Path dir;
+
+        /**
+         * Fingerprint of the files, taken after registration.
+         */
+        private volatile String fingerprint;
+
+        /**
+         * Incremented on each file event.
+         */
+        private final AtomicLong version = new AtomicLong();
+
+        /**
+         * @param userId
+         *            The user ID.
+         * @param homeDir
+         *            The user home directory.
+         */
+        HomeState(final String userId, final Path homeDir) {
+            this.user = userId;
+            this.dir = homeDir;
+        }
+
+        /**
+         * @return The state.
+         */
+        String getState() {
+            return this.fingerprint + "-" + this.version.get();
+        }
+
+        @Override
+        public void onEvents(final Path watchedDir,
+                final List<WatchEvent<?>> events) {
+            this.version.incrementAndGet();
+        }
+
+        @Override
+        public void onInaccessible(final Path watchedDir) {
+            removeHomeState(this);
+        }
+
+        @Override
+        public void onShutdown() {
+            removeHomeState(this);
+        }
+    }
+
+    /**
+     * Cached image.
+     */
+    private static final class Entry {
+
+        /** */
+        private final String user;
+
+        /** */
+        private final File file;
+
+        /** */
+        private final long size;
+
+        /**
+         * Image bytes, or {@code null} when only on disk.
+         */
+        private byte[] bytes;
+
+        /**
+         * @param user
+         *            User ID.
+         * @param file
+         *            Cached image file.
+         * @param size
+         *            Image size.
+         * @param bytes
+         *            Image bytes, or {@code null} when only on disk.
+         */
+        Entry(final String user, final File file, final long size,
+                final byte[] bytes) {
+            this.user = user;
+            this.file = file;
+            this.size = size;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Entries by cache key, in access order.
+     */
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * Bytes on disk by user.
+     */
+    private final Map<String, Long> userBytes = new HashMap<>();
+
+    /**
+     * Watched home directories by user, in access order. Guarded by itself.
+     */
+    private final LinkedHashMap<String, HomeState> homeStates =
+            new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * Inbox generation by user.
+     */
+    private final Map<String, AtomicLong> userGeneration =
+            new ConcurrentHashMap<>();
+
+    /** */
+    private long diskBytes;
+
+    /** */
+    private long memoryBytes;
+
+    /** */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** */
+    private final AtomicLong misses = new AtomicLong();
+
+    /** */
+    private final Path cacheDir;
+
+    /** */
+    private PageImageCache() {
+
+        this.cacheDir = Paths.get(ConfigManager.getAppTmpDir(), CACHE_DIR_NAME);
+
+        try {
+            // Images of a previous run are obsolete.
+            FileUtils.deleteDirectory(this.cacheDir.toFile());
+            Files.createDirectories(this.cacheDir);
+        } catch (IOException e) {
+            LOGGER.warn("Page image cache directory [{}]: {}", this.cacheDir,
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * The SingletonHolder is loaded on the first execution of
+     * {@link PageImageCache#instance()} or the first access to
+     * {@link SingletonHolder#INSTANCE}, not before.
+     */
+    private static class SingletonHolder {
+        public static final PageImageCache INSTANCE = new PageImageCache();
+    }
+
+    /**
+     * Gets the singleton instance.
+     *
+     * @return The instance.
+     */
+    public static PageImageCache instance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Creates the cache key of an image URL.
+     *
+     * @param url
+     *            The image URL.
+     * @return The cache key.
+     */
+    public String createKey(final ImageUrl url) {
+
+        final String user = url.getUser();
+
+        return new StringBuilder().append(user).append('|')
+                .append(url.getJob()).append('|').append(url.getPage())
+                .append('|').append(url.isThumbnail()).append('|')
+                .append(url.isLetterhead()).append('|')
+                .append(url.isLetterheadPublic()).append('|')
+                .append(url.isBase64()).append('|')
+                .append(this.getInboxState(user)).append('|')
+                .append(this.getGeneration(user)).toString();
+    }
+
+    /**
+     * Gets the state of the user home directory. Any change of the inbox (new,
+     * deleted or edited jobs and pages) changes the state, also when changed
+     * by the core services. The directory is only read when it is not watched
+     * yet.
+     *
+     * @param user
+     *            The user ID.
+     * @return The state.
+     */
+    private String getInboxState(final String user) {
+
+        synchronized (this.homeStates) {
+            final HomeState state = this.homeStates.get(user);
+            if (state != null) {
+                return state.getState();
+            }
+        }
+
+        final Path homeDir = Paths.get(ConfigManager.getUserHomeDir(user));
+        final HomeState state = new HomeState(user, homeDir);
+
+        try {
+            UserHomeWatcher.instance().register(homeDir, state);
+        } catch (IOException | ClosedWatchServiceException e) {
+            // Home directory not (yet) present, or shutting down.
+            return getInboxFingerprint(homeDir);
+        }
+
+        // After registration, so no change is missed.
+        state.fingerprint = getInboxFingerprint(homeDir);
+
+        HomeState prevState;
+        HomeState eldestState = null;
+
+        synchronized (this.homeStates) {
+
+            prevState = this.homeStates.put(user, state);
+
+            if (this.homeStates.size() > MAX_WATCHED_HOMES) {
+                final Iterator<HomeState> iter =
+                        this.homeStates.values().iterator();
+                eldestState = iter.next();
+                iter.remove();
+            }
+        }
+
+        if (prevState != null) {
+            // Registered concurrently.
+            UserHomeWatcher.instance().unregister(prevState.dir, prevState);
+        }
+        if (eldestState != null) {
+            UserHomeWatcher.instance().unregister(eldestState.dir,
+                    eldestState);
+        }
+        return state.getState();
+    }
+
+    /**
+     * Removes a home directory state, that is no longer watched.
+     *
+     * @param state
+     *            The state.
+     */
+    private void removeHomeState(final HomeState state) {
+        synchronized (this.homeStates) {
+            this.homeStates.remove(state.user, state);
+        }
+    }
+
+    /**
+     * Gets a fingerprint of the files in a user home directory.
+     *
+     * @param homeDir
+     *            The user home directory.
+     * @return The fingerprint.
+     */
+    private static String getInboxFingerprint(final Path homeDir) {
+
+        int nFiles = 0;
+        long totSize = 0;
+        long maxModified = 0;
+
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(homeDir)) {
+
+            for (final Path path : stream) {
+
+                final BasicFileAttributes attrs = Files.readAttributes(path,
+                        BasicFileAttributes.class);
+
+                nFiles++;
+                totSize += attrs.size();
+                maxModified = Math.max(maxModified,
+                        attrs.lastModifiedTime().to(TimeUnit.MICROSECONDS));
+            }
+
+        } catch (IOException e) {
+            // Home directory not (yet) present, or changed while reading.
+            return UUID.randomUUID().toString();
+        }
+
+        return new StringBuilder().append(nFiles).append('-').append(totSize)
+                .append('-').append(maxModified).toString();
+    }
+
+    /**
+     * Creates the (quoted) ETag of a cache key.
+     *
+     * @param key
+     *            The cache key.
+     * @return The ETag.
+     */
+    public static String createETag(final String key) {
+        return "\"" + UUID
+                .nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8))
+                .toString() + "\"";
+    }
+
+    /**
+     * Gets a cached image.
+     *
+     * @param key
+     *            The cache key.
+     * @return The image, or {@code null} when not cached. Large images are
+     *         on disk only, and are returned with an open file channel.
+     */
+    public Image get(final String key) {
+
+        final Entry entry;
+
+        synchronized (this) {
+            entry = this.entries.get(key);
+            if (entry != null) {
+                try {
+                    final Image image = this.createImage(entry);
+                    this.hits.incrementAndGet();
+                    return image;
+                } catch (IOException e) {
+                    LOGGER.warn("Cached page image [{}]: {}",
+                            entry.file.getAbsolutePath(), e.getMessage());
+                    this.remove(key);
+                }
+            }
+        }
+
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Puts a rendered image into the cache. The image file is moved into the
+     * cache directory.
+     *
+     * @param key
+     *            The cache key.
+     * @param user
+     *            The user ID.
+     * @param image
+     *            The rendered image file.
+     * @return The image, or {@code null} when the image could not be cached:
+     *         in that case the caller remains owner of the image file.
+     * @throws IOException
+     *             When image file could not be read.
+     */
+    public Image put(final String key, final String user, final File image)
+            throws IOException {
+
+        final long size = image.length();
+
+        if (size > MAX_USER_BYTES) {
+            return null;
+        }
+
+        final byte[] bytes;
+
+        if (size > MAX_MEMORY_ENTRY_BYTES) {
+            bytes = null;
+        } else {
+            bytes = FileUtils.readFileToByteArray(image);
+        }
+
+        final File target = this.cacheDir
+                .resolve(UUID.randomUUID().toString() + "."
+                        + FilenameUtils.getExtension(image.getName()))
+                .toFile();
+        try {
+            Files.move(image.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.warn("Page image [{}] not cached: {}",
+                    image.getAbsolutePath(), e.getMessage());
+            return null;
+        }
+
+        final Entry entry = new Entry(user, target, size, bytes);
+
+        synchronized (this) {
+
+            if (this.entries.containsKey(key)) {
+                // Rendered concurrently.
+                this.remove(key);
+            }
+
+            this.entries.put(key, entry);
+            this.diskBytes += entry.size;
+            this.userBytes.merge(user, entry.size, Long::sum);
+
+            if (entry.bytes != null) {
+                this.memoryBytes += entry.size;
+            }
+
+            // The most recent entry is never evicted.
+            this.evict(user);
+
+            return this.createImage(entry);
+        }
+    }
+
+    /**
+     * Creates the image of an entry, opening its file when not in memory.
+     * Must be called while holding the lock.
+     *
+     * @param entry
+     *            The entry.
+     * @return The image.
+     * @throws IOException
+     *             When file could not be opened.
+     */
+    private Image createImage(final Entry entry) throws IOException {
+        if (entry.bytes != null) {
+            return new Image(entry.bytes, entry.file, null);
+        }
+        return new Image(null, entry.file, FileChannel
+                .open(entry.file.toPath(), StandardOpenOption.READ));
+    }
+
+    /**
+     * Invalidates all cached images of a user. Must be called when the inbox
+     * of the user is edited.
+     *
+     * @param user
+     *            The user ID.
+     */
+    public void invalidateUser(final String user) {
+
+        this.userGeneration.computeIfAbsent(user, k -> new AtomicLong())
+                .incrementAndGet();
+
+        synchronized (this) {
+            final Iterator<Map.Entry<String, Entry>> iter =
+                    this.entries.entrySet().iterator();
+            while (iter.hasNext()) {
+                final Entry entry = iter.next().getValue();
+                if (entry.user.equals(user)) {
+                    iter.remove();
+                    this.onRemoved(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidates all cached images, for instance when a public letterhead is
+     * changed.
+     */
+    public void invalidateAll() {
+
+        for (final AtomicLong generation : this.userGeneration.values()) {
+            generation.incrementAndGet();
+        }
+
+        synchronized (this) {
+            for (final Entry entry : this.entries.values()) {
+                this.onRemoved(entry);
+            }
+            this.entries.clear();
+        }
+    }
+
+    /**
+     * @return Number of cached images.
+     */
+    public synchronized int getSize() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return Total bytes of cached images on disk.
+     */
+    public synchronized long getDiskBytes() {
+        return this.diskBytes;
+    }
+
+    /**
+     * @return Number of cache hits.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return Number of cache misses.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @param user
+     *            The user ID.
+     * @return The inbox generation of the user.
+     */
+    private long getGeneration(final String user) {
+        final AtomicLong generation = this.userGeneration.get(user);
+        if (generation == null) {
+            return 0L;
+        }
+        return generation.get();
+    }
+
+    /**
+     * Evicts least recently used entries till the bounds are met. Must be
+     * called while holding the lock.
+     *
+     * @param user
+     *            The user ID of the last added entry.
+     */
+    private void evict(final String user) {
+
+        Iterator<Map.Entry<String, Entry>> iter =
+                this.entries.entrySet().iterator();
+
+        while (this.userBytes.getOrDefault(user, 0L) > MAX_USER_BYTES
+                && iter.hasNext()) {
+            final Entry entry = iter.next().getValue();
+            if (entry.user.equals(user)) {
+                iter.remove();
+                this.onRemoved(entry);
+            }
+        }
+
+        iter = this.entries.entrySet().iterator();
+
+        while (this.diskBytes > MAX_DISK_BYTES && iter.hasNext()) {
+            final Entry entry = iter.next().getValue();
+            iter.remove();
+            this.onRemoved(entry);
+        }
+
+        if (this.memoryBytes > MAX_MEMORY_BYTES) {
+            // Keep least recently used entries on disk only.
+            for (final Entry entry : this.entries.values()) {
+                if (this.memoryBytes <= MAX_MEMORY_BYTES) {
+                    break;
+                }
+                if (entry.bytes != null) {
+                    entry.bytes = null;
+                    this.memoryBytes -= entry.size;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an entry. Must be called while holding the lock.
+     *
+     * @param key
+     *            The cache key.
+     */
+    private void remove(final String key) {
+        final Entry entry = this.entries.remove(key);
+        if (entry != null) {
+            this.onRemoved(entry);
+        }
+    }
+
+    /**
+     * Administers the removal of an entry and deletes its file. Must be called
+     * while holding the lock.
+     *
+     * @param entry
+     *            The removed entry.
+     */
+    private void onRemoved(final Entry entry) {
+
+        this.diskBytes -= entry.size;
+
+        final long bytesLeft = this.userBytes.getOrDefault(entry.user, 0L)
+                - entry.size;
+
+        if (bytesLeft > 0) {
+            this.userBytes.put(entry.user, bytesLeft);
+        } else {
+            this.userBytes.remove(entry.user);
+        }
+
+        if (entry.bytes != null) {
+            this.memoryBytes -= entry.size;
+            entry.bytes = null;
+        }
+
+        if (!entry.file.delete() && entry.file.exists()) {
+            LOGGER.warn("Delete of cached page image [{}] FAILED.",
+                    entry.file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.img;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.wicket.request.IRequestCycle;
+import org.apache.wicket.request.IRequestHandler;
+import org.savapage.core.SpException;
+
+/**
+ * Handler to service the request for a cached page image, with ETag
+ * validation. An image on disk is read from the file channel opened by the
+ * {@link PageImageCache}, which is closed when done.
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class PageImageReqHandler implements IRequestHandler {
+
+    /**
+     * The image, or {@code null} when not modified.
+     */
+    private final PageImageCache.Image image;
+
+    /** */
+    private final String etag;
+
+    /** */
+    private final boolean base64;
+
+    /**
+     * @param img
+     *            The image, or {@code null} when image is not modified since
+     *            the client cached it.
+     * @param eTag
+     *            The (quoted) ETag of the image.
+     * @param isBase64
+     *            If {@code true}, image is delivered as BASE64 encoded text.
+     */
+    public PageImageReqHandler(final PageImageCache.Image img,
+            final String eTag, final boolean isBase64) {
+        this.image = img;
+        this.etag = eTag;
+        this.base64 = isBase64;
+    }
+
+    /**
+     * Creates a handler for an image not modified since the client cached it.
+     *
+     * @param eTag
+     *            The (quoted) ETag of the image.
+     * @return The handler.
+     */
+    public static PageImageReqHandler notModified(final String eTag) {
+        return new PageImageReqHandler(null, eTag, false);
+    }
+
+    /**
+     * Checks if an If-None-Match header value matches an ETag.
+     *
+     * @param ifNoneMatch
+     *            The If-None-Match header value (can be {@code null}).
+     * @param eTag
+     *            The (quoted) ETag.
+     * @return {@code true} when matched.
+     */
+    public static boolean isMatch(final String ifNoneMatch,
+            final String eTag) {
+        return ifNoneMatch != null && (ifNoneMatch.contains(eTag)
+                || ifNoneMatch.trim().equals("*"));
+    }
+
+    @Override
+    public void respond(final IRequestCycle requestCycle) {
+
+        final HttpServletResponse response =
+                ImageResponseHelper.getServletResponse(requestCycle);
+
+        response.setHeader("ETag", this.etag);
+        // Revalidate each time: the ETag changes when the inbox is edited.
+        response.setHeader("Cache-Control", "private, no-cache");
+
+        if (this.image == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        final byte[] bytes = this.image.getBytes();
+        final FileChannel channel = this.image.getChannel();
+
+        try {
+            if (bytes == null) {
+                if (this.base64) {
+                    ImageResponseHelper.writeBase64(response, channel);
+                } else {
+                    ImageResponseHelper.writeBinary(response,
+                            this.image.getFile().getName(), channel);
+                }
+            } else if (this.base64) {
+                ImageResponseHelper.writeBase64(response, bytes);
+            } else {
+                ImageResponseHelper.writeBinary(response,
+                        this.image.getFile().getName(), bytes);
+            }
+        } catch (IOException e) {
+            throw new SpException(e.getMessage(), e);
+        } finally {
+            this.closeChannel();
+        }
+    }
+
+    /**
+     * Closes the image file channel, if present.
+     */
+    private void closeChannel() {
+        if (this.image != null && this.image.getChannel() != null) {
+            try {
+                this.image.getChannel().close();
+            } catch (IOException e) {
+                // no code intended
+            }
+        }
+    }
+
+    @Override
+    public void detach(final IRequestCycle requestCycle) {
+        // When not responded.
+        this.closeChannel();
+    }
+
+}
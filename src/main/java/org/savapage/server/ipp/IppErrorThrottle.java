@@ -0,0 +1,281 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.ipp;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.savapage.core.util.DateUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Singleton throttle of IPP error responses per client IP address.
+ * <p>
+ * To prevent continuous messaging when an IPP client keeps retrying with the
+ * same (error) result, the error response is delayed. Instead of parking a
+ * Jetty worker thread, the request is put in asynchronous mode, and the
+ * response is completed by a scheduler after the delay.
+ * </p>
+ * <p>
+ * Each client IP address with a recent error gets a penalty: the delay grows
+ * with the number of consecutive errors. Penalties expire when a client does
+ * not produce errors for {@link #PENALTY_EXPIRY_MSEC}. The number of tracked
+ * clients is bounded by {@link #MAX_CLIENTS}.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class IppErrorThrottle {
+
+    /** */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(IppErrorThrottle.class);
+
+    /**
+     * Milliseconds delay per recent error.
+     */
+    private static final long MSEC_DELAY_PER_ERROR = 5000;
+
+    /**
+     * Max number of recent errors that add to the delay.
+     */
+    private static final int MAX_PENALTY_ERRORS = 4;
+
+    /**
+     * Milliseconds without error after which a penalty expires.
+     */
+    private static final long PENALTY_EXPIRY_MSEC =
+            DateUtil.DURATION_MSEC_MINUTE;
+
+    /**
+     * Extra time (milliseconds) on top of the delay before an asynchronous
+     * request times out.
+     */
+    private static final long ASYNC_TIMEOUT_MARGIN_MSEC = 10000;
+
+    /**
+     * Max number of client IP addresses in the penalty table.
+     */
+    private static final int MAX_CLIENTS = 10000;
+
+    /**
+     * Penalty of a client IP address.
+     */
+    private static final class Penalty {
+
+        /** */
+        private final AtomicInteger errors = new AtomicInteger();
+
+        /** */
+        private volatile long lastErrorTime;
+    }
+
+    /**
+     * Penalties by client IP address.
+     */
+    private final Map<String, Penalty> penalties = new ConcurrentHashMap<>();
+
+    /**
+     * Number of responses waiting to be sent.
+     */
+    private final AtomicInteger pendingResponses = new AtomicInteger();
+
+    /**
+     * Total number of delayed responses.
+     */
+    private final AtomicLong totalDelayedResponses = new AtomicLong();
+
+    /**
+     * The scheduler completing the delayed responses.
+     */
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    /** */
+    private IppErrorThrottle() {
+        this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "IppErrorThrottle");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * The SingletonHolder is loaded on the first execution of
+     * {@link IppErrorThrottle#instance()} or the first access to
+     * {@link SingletonHolder#INSTANCE}, not before.
+     */
+    private static class SingletonHolder {
+        public static final IppErrorThrottle INSTANCE = new IppErrorThrottle();
+    }
+
+    /**
+     * Gets the singleton instance.
+     *
+     * @return The instance.
+     */
+    public static IppErrorThrottle instance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Registers an error for a client, and gets the delay for its response.
+     *
+     * @param clientIp
+     *            The client IP address.
+     * @return The delay in milliseconds.
+     */
+    private long onError(final String clientIp) {
+
+        final long now = System.currentTimeMillis();
+
+        Penalty penalty = this.penalties.get(clientIp);
+
+        if (penalty == null) {
+
+            if (this.penalties.size() >= MAX_CLIENTS) {
+                this.prune(now);
+            }
+
+            if (this.penalties.size() >= MAX_CLIENTS) {
+                // Table full: delay, but do not track.
+                return MSEC_DELAY_PER_ERROR;
+            }
+
+            final Penalty penaltyNew = new Penalty();
+            penalty = this.penalties.putIfAbsent(clientIp, penaltyNew);
+            if (penalty == null) {
+                penalty = penaltyNew;
+            }
+
+        } else if (now - penalty.lastErrorTime > PENALTY_EXPIRY_MSEC) {
+            penalty.errors.set(0);
+        }
+
+        penalty.lastErrorTime = now;
+
+        final int errors =
+                Math.min(penalty.errors.incrementAndGet(), MAX_PENALTY_ERRORS);
+
+        return errors * MSEC_DELAY_PER_ERROR;
+    }
+
+    /**
+     * Removes expired penalties.
+     *
+     * @param now
+     *            Current time.
+     * @return Number of penalties removed.
+     */
+    private int prune(final long now) {
+
+        int removed = 0;
+
+        final Iterator<Penalty> iter = this.penalties.values().iterator();
+
+        while (iter.hasNext()) {
+            if (now - iter.next().lastErrorTime > PENALTY_EXPIRY_MSEC) {
+                iter.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Sends an error response after a delay, without blocking the current
+     * thread.
+     *
+     * @param request
+     *            The HTTP request.
+     * @param response
+     *            The HTTP response, with status already set.
+     * @param clientIp
+     *            The client IP address.
+     * @param body
+     *            The response body.
+     */
+    public void sendDelayed(final HttpServletRequest request,
+            final HttpServletResponse response, final String clientIp,
+            final byte[] body) {
+
+        final long delay = this.onError(clientIp);
+
+        final AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(delay + ASYNC_TIMEOUT_MARGIN_MSEC);
+
+        this.pendingResponses.incrementAndGet();
+        this.totalDelayedResponses.incrementAndGet();
+
+        this.scheduler.schedule(() -> {
+            try {
+                response.getOutputStream().write(body);
+            } catch (IOException | IllegalStateException e) {
+                LOGGER.debug("Delayed IPP response to [{}] failed: {}",
+                        clientIp, e.getMessage());
+            } finally {
+                this.pendingResponses.decrementAndGet();
+                asyncContext.complete();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the number of client IP addresses currently being throttled. Expired
+     * penalties are removed as a side effect.
+     *
+     * @return Number of throttled client IP addresses.
+     */
+    public int getThrottledClients() {
+        this.prune(System.currentTimeMillis());
+        return this.penalties.size();
+    }
+
+    /**
+     * @return Number of delayed responses waiting to be sent.
+     */
+    public int getPendingResponses() {
+        return this.pendingResponses.get();
+    }
+
+    /**
+     * @return Total number of delayed responses.
+     */
+    public long getTotalDelayedResponses() {
+        return this.totalDelayedResponses.get();
+    }
+}
@@ -25,7 +25,6 @@
 package org.savapage.server.ipp;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -39,6 +38,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.wicket.markup.html.WebPage;
 import org.apache.wicket.request.Url;
 import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.handler.EmptyRequestHandler;
 import org.apache.wicket.request.handler.resource.ResourceStreamRequestHandler;
 import org.apache.wicket.request.mapper.parameter.INamedParameters.NamedPair;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
@@ -63,11 +63,9 @@ import org.savapage.core.ipp.operation.IppOperationContext;
 import org.savapage.core.ipp.operation.IppOperationId;
 import org.savapage.core.jpa.IppQueue;
 import org.savapage.core.jpa.User;
-import org.savapage.core.services.QueueService;
 import org.savapage.core.services.ServiceContext;
 import org.savapage.core.services.ServiceEntryPoint;
 import org.savapage.core.services.UserService;
-import org.savapage.core.util.InetUtils;
 import org.savapage.server.WebApp;
 import org.savapage.server.webapp.WebAppHelper;
 import org.savapage.server.webapp.WebAppUser;
@@ -97,18 +95,15 @@ public class IppPrintServer extends WebPage implements ServiceEntryPoint {
     private static final Logger LOGGER =
             LoggerFactory.getLogger(IppPrintServer.class);
 
-    /** */
-    private static final QueueService QUEUE_SERVICE =
-            ServiceContext.getServiceFactory().getQueueService();
-
     /** */
     private static final UserService USER_SERVICE =
             ServiceContext.getServiceFactory().getUserService();
 
     /**
-     * Milliseconds sleep after an exception.
+     * Max number of IPP response bytes to buffer. Larger responses are
+     * streamed to the servlet output stream.
      */
-    private static final long MSEC_SLEEP_AFTER_EXCEPTION = 5000;
+    private static final int IPP_RESPONSE_BUFFER_THRESHOLD = 64 * 1024;
 
     /** */
     public static void init() {
@@ -218,6 +213,8 @@ public class IppPrintServer extends WebPage implements ServiceEntryPoint {
          */
         ServiceContext.open();
 
+        IppResponseOutputStream ippOutput = null;
+
         try {
             final String remoteAddr = WebAppHelper.getClientIP(request);
 
@@ -231,19 +228,17 @@ public class IppPrintServer extends WebPage implements ServiceEntryPoint {
             final String requestedQueueUrlPath = serverPageParms.getPrinter();
 
             /*
-             * Reserved queue?
+             * Resolved queue (cached).
              */
-            final ReservedIppQueueEnum reservedQueueEnum =
-                    QUEUE_SERVICE.getReservedQueue(requestedQueueUrlPath);
+            final IppQueueCache.QueueDescriptor queueDesc = IppQueueCache
+                    .instance().getDescriptor(requestedQueueUrlPath);
 
-            /*
-             * Find queue object.
-             */
-            final IppQueue queue = ServiceContext.getDaoContext()
-                    .getIppQueueDao().findByUrlPath(requestedQueueUrlPath);
+            final ReservedIppQueueEnum reservedQueueEnum =
+                    queueDesc.getReservedQueue();
 
             /*
-             * Access allowed?
+             * Access allowed? Denials are decided from the cached descriptor,
+             * without a database round trip.
              */
             if (reservedQueueEnum != null
                     && !reservedQueueEnum.isDriverPrint()) {
@@ -252,29 +247,51 @@ public class IppPrintServer extends WebPage implements ServiceEntryPoint {
                         String.format("Queue [%s] is not for driver print.",
                                 reservedQueueEnum.getUiText()));
 
-            } else if (queue == null || queue.getDeleted()) {
+            } else if (!queueDesc.exists()) {
 
                 throw new IppProcessingException(StateEnum.UNAVAILABLE,
                         "Queue does not exist.");
 
             } else if (reservedQueueEnum != ReservedIppQueueEnum.IPP_PRINT_INTERNET
-                    && StringUtils.isBlank(queue.getIpAllowed())
-                    && InetUtils.isPublicAddress(remoteAddr)) {
+                    && queueDesc.isIpAllowedBlank()
+                    && queueDesc.isPublicAddress(remoteAddr)) {
 
                 throw new IppProcessingException(StateEnum.UNAVAILABLE,
                         String.format(
                                 "Queue [%s] is not accessible"
                                         + " from the Internet.",
-                                IppQueueHelper.uiPath(queue)));
-            } else {
+                                queueDesc.getUiPath()));
 
-                if (!QUEUE_SERVICE.hasClientIpAccessToQueue(queue,
-                        serverPageParms.getPrinter(), remoteAddr)) {
-                    throw new IppProcessingException(StateEnum.UNAVAILABLE,
-                            String.format(
-                                    "Queue [%s] is not allowed for IP address.",
-                                    IppQueueHelper.uiPath(queue)));
-                }
+            } else if (Boolean.FALSE
+                    .equals(queueDesc.getClientIpAccess(remoteAddr))) {
+
+                throw new IppProcessingException(StateEnum.UNAVAILABLE,
+                        String.format(
+                                "Queue [%s] is not allowed for IP address.",
+                                queueDesc.getUiPath()));
+            }
+
+            /*
+             * Find queue object by primary key: an attached object is needed
+             * for the IPP operation.
+             */
+            final IppQueue queue = ServiceContext.getDaoContext()
+                    .getIppQueueDao().findById(queueDesc.getQueueId());
+
+            if (queue == null || queue.getDeleted()) {
+
+                IppQueueCache.instance().invalidate(requestedQueueUrlPath);
+
+                throw new IppProcessingException(StateEnum.UNAVAILABLE,
+                        "Queue does not exist.");
+
+            } else if (!queueDesc.hasClientIpAccess(queue,
+                    serverPageParms.getPrinter(), remoteAddr)) {
+
+                throw new IppProcessingException(StateEnum.UNAVAILABLE,
+                        String.format(
+                                "Queue [%s] is not allowed for IP address.",
+                                IppQueueHelper.uiPath(queue)));
             }
 
             /*
@@ -316,7 +333,14 @@ public class IppPrintServer extends WebPage implements ServiceEntryPoint {
             /*
              * Handle the request.
              */
-            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            if (LOGGER.isTraceEnabled()) {
+                // Buffer all, so output can be traced.
+                ippOutput = new IppResponseOutputStream(response,
+                        Integer.MAX_VALUE);
+            } else {
+                ippOutput = new IppResponseOutputStream(response,
+                        IPP_RESPONSE_BUFFER_THRESHOLD);
+            }
 
             final IppOperationContext ippOperationContext =
                     new IppOperationContext();
@@ -326,18 +350,17 @@ public class IppPrintServer extends WebPage implements ServiceEntryPoint {
             ippOperationContext
                     .setIppRoutingListener(WebApp.get().getPluginManager());
 
-            final InputStream istr;
-            if ("chunked".equals(request.getHeader("Transfer-Encoding"))) {
-                // TODO use IppChunkedInputStream like this?
-                // istr = new IppChunkedInputStream(request.getInputStream());
-                istr = request.getInputStream();
-            } else {
-                istr = request.getInputStream();
-            }
+            /*
+             * Note: a "Transfer-Encoding: chunked" request body is decoded by
+             * the servlet container, so the input stream holds the plain IPP
+             * request, regardless of the transfer encoding.
+             */
+            final InputStream istr = request.getInputStream();
 
             final IppOperationId ippOperationId =
-                    AbstractIppOperation.handle(queue, istr, bos, authUser,
-                            isAuthUserIppRequester, ippOperationContext);
+                    AbstractIppOperation.handle(queue, istr, ippOutput,
+                            authUser, isAuthUserIppRequester,
+                            ippOperationContext);
 
             if (ippOperationId != null
                     && ippOperationId == IppOperationId.VALIDATE_JOB) {
@@ -382,32 +405,37 @@ public class IppPrintServer extends WebPage implements ServiceEntryPoint {
 
             }
 
-            if (LOGGER.isTraceEnabled()) {
-                logIppOutputTrace(bos);
-            }
-
             // Finishing up.
-            scheduleRequestHandlerAfterCurrent(requestCycle, bos.toByteArray());
+            if (ippOutput.isStreaming()) {
+                ippOutput.flush();
+                // Response is written: nothing left to do for Wicket.
+                requestCycle.scheduleRequestHandlerAfterCurrent(
+                        new EmptyRequestHandler());
+            } else {
+                final byte[] ippBytes = ippOutput.toByteArray();
+                if (LOGGER.isTraceEnabled()) {
+                    logIppOutputTrace(ippBytes);
+                }
+                scheduleRequestHandlerAfterCurrent(requestCycle, ippBytes);
+            }
 
         } catch (IOException | IppProcessingException e) {
 
             AdminPublisher.instance().publish(PubTopicEnum.IPP,
                     PubLevelEnum.ERROR, e.getMessage());
 
-            try {
+            if (ippOutput != null && ippOutput.isStreaming()) {
                 /*
-                 * Prevent continuous messaging when IPP client keeps retrying
-                 * with same result.
+                 * Part of the response is already sent: status can't be
+                 * changed anymore.
                  */
-                Thread.sleep(MSEC_SLEEP_AFTER_EXCEPTION);
-
-            } catch (InterruptedException e1) {
-                // noop
+                LOGGER.error("IPP response to {} aborted: {}",
+                        request.getRemoteAddr(), e.getMessage());
+                requestCycle.scheduleRequestHandlerAfterCurrent(
+                        new EmptyRequestHandler());
+                return;
             }
 
-            // Dummy byte for unavailable service.
-            scheduleRequestHandlerAfterCurrent(requestCycle, new byte[1]);
-
             final int httpStatus;
 
             if (e instanceof IOException) {
@@ -440,6 +468,17 @@ public class IppPrintServer extends WebPage implements ServiceEntryPoint {
             }
             response.setStatus(httpStatus);
 
+            /*
+             * Prevent continuous messaging when IPP client keeps retrying with
+             * same result: send a dummy byte for unavailable service after a
+             * delay, without holding this thread.
+             */
+            IppErrorThrottle.instance().sendDelayed(request, response,
+                    WebAppHelper.getClientIP(request), new byte[1]);
+
+            requestCycle.scheduleRequestHandlerAfterCurrent(
+                    new EmptyRequestHandler());
+
         } finally {
 
             ServiceContext.close();
@@ -540,20 +579,19 @@ public class IppPrintServer extends WebPage implements ServiceEntryPoint {
     }
 
     /**
-     * Writes a pretty printed byte trace of the raw output stream to the log
-     * file.
+     * Writes a pretty printed byte trace of the raw output to the log file.
      *
-     * @param bos
-     *            The output stream.
+     * @param bytes
+     *            The output bytes.
      */
-    private static void logIppOutputTrace(final ByteArrayOutputStream bos) {
+    private static void logIppOutputTrace(final byte[] bytes) {
 
         final int width = 10;
 
         final StringBuilder msg = new StringBuilder(1024);
 
         int i = 0;
-        for (byte b : bos.toByteArray()) {
+        for (byte b : bytes) {
 
             if (i % width == 0) {
                 msg.append("\n");
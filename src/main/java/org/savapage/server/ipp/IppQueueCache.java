@@ -0,0 +1,349 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.ipp;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.savapage.core.dao.enums.ReservedIppQueueEnum;
+import org.savapage.core.dao.helpers.IppQueueHelper;
+import org.savapage.core.jpa.IppQueue;
+import org.savapage.core.services.QueueService;
+import org.savapage.core.services.ServiceContext;
+import org.savapage.core.util.DateUtil;
+import org.savapage.core.util.InetUtils;
+
+/**
+ * Singleton in-memory cache of resolved IPP queue descriptors, keyed by URL
+ * path.
+ * <p>
+ * A descriptor holds the outcome of the queue lookup and the access checks,
+ * so repeated requests (like Get-Printer-Attributes polling) for the same
+ * queue and client do not hit the database and do not parse CIDR ranges over
+ * and over again. Descriptors are invalidated when a queue is changed, and
+ * expire after {@link #DESCRIPTOR_EXPIRY_MSEC} as a safety net for changes
+ * made outside the Admin Web App.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class IppQueueCache {
+
+    /** */
+    private static final QueueService QUEUE_SERVICE =
+            ServiceContext.getServiceFactory().getQueueService();
+
+    /**
+     * Milliseconds after which a descriptor expires.
+     */
+    private static final long DESCRIPTOR_EXPIRY_MSEC =
+            DateUtil.DURATION_MSEC_MINUTE;
+
+    /**
+     * Max number of descriptors. Since requests for unknown URL paths are
+     * cached as well, the number must be bounded.
+     */
+    private static final int MAX_DESCRIPTORS = 1000;
+
+    /**
+     * Max number of client IP addresses per descriptor.
+     */
+    private static final int MAX_CLIENTS_PER_DESCRIPTOR = 2000;
+
+    /**
+     * Resolved IPP queue.
+     */
+    public static final class QueueDescriptor {
+
+        /** */
+        private final ReservedIppQueueEnum reservedQueue;
+
+        /**
+         * Primary key of the queue, or {@code null} when queue does not exist
+         * or is logically deleted.
+         */
+        private final Long queueId;
+
+        /**
+         * UI path of the queue.
+         */
+        private final String uiPath;
+
+        /**
+         * {@code true} when no IP addresses are configured for the queue.
+         */
+        private final boolean ipAllowedBlank;
+
+        /** */
+        private final long createdTime;
+
+        /**
+         * Client IP address (key) access to the queue (value).
+         */
+        private final Map<String, Boolean> clientIpAccess =
+                new ConcurrentHashMap<>();
+
+        /**
+         * Client IP address (key) being a public address (value).
+         */
+        private final Map<String, Boolean> clientIpPublic =
+                new ConcurrentHashMap<>();
+
+        /**
+         * @param reserved
+         *            Reserved queue, or {@code null}.
+         * @param queue
+         *            The queue, or {@code null}.
+         */
+        private QueueDescriptor(final ReservedIppQueueEnum reserved,
+                final IppQueue queue) {
+
+            this.reservedQueue = reserved;
+            this.createdTime = System.currentTimeMillis();
+
+            if (queue == null || queue.getDeleted()) {
+                this.queueId = null;
+                this.uiPath = null;
+                this.ipAllowedBlank = true;
+            } else {
+                this.queueId = queue.getId();
+                this.uiPath = IppQueueHelper.uiPath(queue);
+                this.ipAllowedBlank = StringUtils.isBlank(queue.getIpAllowed());
+            }
+        }
+
+        /**
+         * @return The reserved queue, or {@code null} when not reserved.
+         */
+        public ReservedIppQueueEnum getReservedQueue() {
+            return reservedQueue;
+        }
+
+        /**
+         * @return {@code true} when queue exists and is not logically deleted.
+         */
+        public boolean exists() {
+            return this.queueId != null;
+        }
+
+        /**
+         * @return Primary key of the queue, or {@code null} when queue does not
+         *         exist.
+         */
+        public Long getQueueId() {
+            return queueId;
+        }
+
+        /**
+         * @return UI path of the queue.
+         */
+        public String getUiPath() {
+            return uiPath;
+        }
+
+        /**
+         * @return {@code true} when no IP addresses are configured for the
+         *         queue.
+         */
+        public boolean isIpAllowedBlank() {
+            return ipAllowedBlank;
+        }
+
+        /**
+         * @param clientIp
+         *            Client IP address.
+         * @return {@code true} when client IP address is public.
+         */
+        public boolean isPublicAddress(final String clientIp) {
+
+            Boolean isPublic = this.clientIpPublic.get(clientIp);
+
+            if (isPublic == null) {
+                isPublic = Boolean.valueOf(InetUtils.isPublicAddress(clientIp));
+                putBounded(this.clientIpPublic, clientIp, isPublic);
+            }
+            return isPublic.booleanValue();
+        }
+
+        /**
+         * Checks if client IP address has access to the queue. The outcome is
+         * cached, so the queue object is only consulted the first time.
+         *
+         * @param queue
+         *            The queue object of this descriptor.
+         * @param printerName
+         *            Printer name for logging.
+         * @param clientIp
+         *            Client IP address.
+         * @return {@code true} when access is allowed.
+         */
+        public boolean hasClientIpAccess(final IppQueue queue,
+                final String printerName, final String clientIp) {
+
+            Boolean access = this.clientIpAccess.get(clientIp);
+
+            if (access == null) {
+                access = Boolean.valueOf(QUEUE_SERVICE
+                        .hasClientIpAccessToQueue(queue, printerName, clientIp));
+                putBounded(this.clientIpAccess, clientIp, access);
+            }
+            return access.booleanValue();
+        }
+
+        /**
+         * @param clientIp
+         *            Client IP address.
+         * @return {@link Boolean#FALSE} when client is known to be denied,
+         *         {@link Boolean#TRUE} when client is known to be allowed,
+         *         {@code null} when unknown.
+         */
+        public Boolean getClientIpAccess(final String clientIp) {
+            return this.clientIpAccess.get(clientIp);
+        }
+
+        /**
+         * @param now
+         *            Current time.
+         * @return {@code true} when expired.
+         */
+        private boolean isExpired(final long now) {
+            return now - this.createdTime > DESCRIPTOR_EXPIRY_MSEC;
+        }
+
+        /**
+         * Puts a client entry, clearing the map when it is full.
+         *
+         * @param map
+         *            The map.
+         * @param clientIp
+         *            Client IP address.
+         * @param value
+         *            The value.
+         */
+        private static void putBounded(final Map<String, Boolean> map,
+                final String clientIp, final Boolean value) {
+            if (map.size() >= MAX_CLIENTS_PER_DESCRIPTOR) {
+                map.clear();
+            }
+            map.put(clientIp, value);
+        }
+    }
+
+    /**
+     * Descriptors by URL path.
+     */
+    private final Map<String, QueueDescriptor> descriptors =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each invalidation, so a descriptor looked up before an
+     * invalidation is not cached after it.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** */
+    private IppQueueCache() {
+    }
+
+    /**
+     * The SingletonHolder is loaded on the first execution of
+     * {@link IppQueueCache#instance()} or the first access to
+     * {@link SingletonHolder#INSTANCE}, not before.
+     */
+    private static class SingletonHolder {
+        public static final IppQueueCache INSTANCE = new IppQueueCache();
+    }
+
+    /**
+     * Gets the singleton instance.
+     *
+     * @return The instance.
+     */
+    public static IppQueueCache instance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Gets the descriptor of a queue URL path. When not cached (or expired),
+     * the queue is looked up in the database.
+     * <p>
+     * Note: an open {@link ServiceContext} is required.
+     * </p>
+     *
+     * @param urlPath
+     *            The URL path of the queue.
+     * @return The descriptor.
+     */
+    public QueueDescriptor getDescriptor(final String urlPath) {
+
+        QueueDescriptor descriptor = this.descriptors.get(urlPath);
+
+        if (descriptor == null
+                || descriptor.isExpired(System.currentTimeMillis())) {
+
+            final long lookupGeneration = this.generation.get();
+
+            descriptor = new QueueDescriptor(
+                    QUEUE_SERVICE.getReservedQueue(urlPath),
+                    ServiceContext.getDaoContext().getIppQueueDao()
+                            .findByUrlPath(urlPath));
+
+            if (this.descriptors.size() >= MAX_DESCRIPTORS) {
+                this.descriptors.clear();
+            }
+            this.descriptors.put(urlPath, descriptor);
+
+            if (this.generation.get() != lookupGeneration) {
+                // Invalidated during lookup: descriptor may be stale.
+                this.descriptors.remove(urlPath, descriptor);
+            }
+        }
+        return descriptor;
+    }
+
+    /**
+     * Invalidates the descriptor of a queue.
+     *
+     * @param urlPath
+     *            The URL path of the queue.
+     */
+    public void invalidate(final String urlPath) {
+        if (urlPath != null) {
+            this.generation.incrementAndGet();
+            this.descriptors.remove(urlPath);
+        }
+    }
+
+    /**
+     * Invalidates all descriptors.
+     */
+    public void invalidateAll() {
+        this.generation.incrementAndGet();
+        this.descriptors.clear();
+    }
+}
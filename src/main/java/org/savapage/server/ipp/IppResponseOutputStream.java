@@ -0,0 +1,154 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.ipp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * IPP response output stream that buffers up to a threshold, and then
+ * switches to writing straight to the servlet output stream.
+ * <p>
+ * As long as the response is buffered, the HTTP status can still be changed
+ * when IPP processing fails. Large responses (like Get-Jobs and
+ * Get-Printer-Attributes of busy queues) are streamed without holding a full
+ * copy in memory.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+final class IppResponseOutputStream extends OutputStream {
+
+    /**
+     * The HTTP response.
+     */
+    private final HttpServletResponse response;
+
+    /**
+     * Max number of bytes to buffer.
+     */
+    private final int threshold;
+
+    /**
+     * The buffer, {@code null} when streaming.
+     */
+    private ByteArrayOutputStream buffer;
+
+    /**
+     * The servlet output stream, {@code null} when buffering.
+     */
+    private OutputStream direct;
+
+    /**
+     * @param rsp
+     *            The HTTP response.
+     * @param maxBuffer
+     *            Max number of bytes to buffer, before switching to streaming.
+     */
+    IppResponseOutputStream(final HttpServletResponse rsp,
+            final int maxBuffer) {
+        this.response = rsp;
+        this.threshold = maxBuffer;
+        this.buffer = new ByteArrayOutputStream();
+    }
+
+    /**
+     * @return {@code true} when output is streamed to the servlet output
+     *         stream.
+     */
+    boolean isStreaming() {
+        return this.direct != null;
+    }
+
+    /**
+     * @return The buffered bytes.
+     * @throws IllegalStateException
+     *             When streaming.
+     */
+    byte[] toByteArray() {
+        if (this.isStreaming()) {
+            throw new IllegalStateException("IPP response is streamed.");
+        }
+        return this.buffer.toByteArray();
+    }
+
+    /**
+     * Writes the buffered bytes to the servlet output stream, and switches to
+     * streaming.
+     *
+     * @throws IOException
+     *             When write error.
+     */
+    private void startStreaming() throws IOException {
+        this.direct = this.response.getOutputStream();
+        this.buffer.writeTo(this.direct);
+        this.buffer = null;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (this.direct == null && this.buffer.size() >= this.threshold) {
+            this.startStreaming();
+        }
+        if (this.direct == null) {
+            this.buffer.write(b);
+        } else {
+            this.direct.write(b);
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (this.direct == null && this.buffer.size() + len > this.threshold) {
+            this.startStreaming();
+        }
+        if (this.direct == null) {
+            this.buffer.write(b, off, len);
+        } else {
+            this.direct.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.direct != null) {
+            this.direct.flush();
+        }
+    }
+
+    /**
+     * Flushes the stream. The servlet output stream is <i>not</i> closed: this
+     * is left to the container.
+     */
+    @Override
+    public void close() throws IOException {
+        this.flush();
+    }
+}
@@ -25,10 +25,13 @@
 package org.savapage.server.jsonrpc;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Currency;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
@@ -42,6 +45,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jackson.JsonNode;
 import org.savapage.core.SpException;
 import org.savapage.core.SpInfo;
 import org.savapage.core.cometd.AdminPublisher;
@@ -93,6 +97,8 @@ import org.savapage.core.users.IExternalUserAuthenticator;
 import org.savapage.core.util.AppLogHelper;
 import org.savapage.core.util.DateUtil;
 import org.savapage.core.util.InetUtils;
+import org.savapage.server.WebServer;
+import org.savapage.server.api.JsonApiMapper;
 import org.savapage.server.webapp.WebAppHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -115,6 +121,15 @@ public final class JsonRpcServlet extends HttpServlet
     /** */
     private static final String HEADER_X_AUTH_KEY = "X-Auth-Key";
 
+    /** */
+    private static final String JSON_ARRAY_START = "[";
+
+    /** */
+    private static final String JSON_ARRAY_END = "]";
+
+    /** */
+    private static final String JSON_ARRAY_SEPARATOR = ",";
+
     /**
      *
      */
@@ -166,6 +181,15 @@ public final class JsonRpcServlet extends HttpServlet
             EnumSet.of(JsonRpcMethodName.AUTH_USER_SOURCE,
                     JsonRpcMethodName.SYSTEM_STATUS);
 
+    /**
+     * JSON-RPC methods not accepted in a batch: they need the exclusive
+     * database lock, or their changes are not (only) transactional.
+     */
+    private static final EnumSet<JsonRpcMethodName> BATCH_EXCLUDED_METHODS =
+            EnumSet.of(JsonRpcMethodName.CHANGE_BASE_CURRENCY,
+                    JsonRpcMethodName.SET_CONFIG_PROPERTY,
+                    JsonRpcMethodName.SYNC_USERS_AND_GROUPS);
+
     /** */
     private static final AtomicLong ACCESS_VIOLATION_COUNTER_PRIVATE =
             new AtomicLong(0L);
@@ -299,13 +323,46 @@ public final class JsonRpcServlet extends HttpServlet
             final HttpServletResponse httpResponse)
             throws IOException, ServletException {
 
-        final AbstractJsonRpcMessage rpcResponse = handleRequest(httpRequest);
-        final String jsonOut = rpcResponse.stringifyPrettyPrinted();
+        AbstractJsonRpcMessage rpcResponse = null;
+        List<AbstractJsonRpcMessage> rpcBatchResponse = null;
+
+        try {
+            final String jsonInput = IOUtils.toString(
+                    httpRequest.getInputStream(), Charset.defaultCharset());
+
+            if (StringUtils.stripStart(jsonInput, null)
+                    .startsWith(JSON_ARRAY_START)) {
+                rpcBatchResponse = new ArrayList<>();
+                rpcResponse = handleBatchRequest(httpRequest, jsonInput,
+                        rpcBatchResponse);
+            } else {
+                rpcResponse = handleRequest(httpRequest, jsonInput);
+            }
+        } catch (IOException e) {
+            rpcResponse = createMethodException(e, false);
+        }
 
         httpResponse.setContentType(JsonRpcConfig.INTERNET_MEDIA_TYPE);
         httpResponse.setCharacterEncoding(JsonRpcConfig.CHAR_ENCODING);
 
-        httpResponse.getOutputStream().print(jsonOut);
+        /*
+         * Compact JSON, streamed to the client.
+         */
+        final Writer writer = httpResponse.getWriter();
+
+        if (rpcResponse != null) {
+            writer.write(rpcResponse.stringify());
+        } else {
+            writer.write(JSON_ARRAY_START);
+            for (int i = 0; i < rpcBatchResponse.size(); i++) {
+                if (i > 0) {
+                    writer.write(JSON_ARRAY_SEPARATOR);
+                }
+                writer.write(rpcBatchResponse.get(i).stringify());
+            }
+            writer.write(JSON_ARRAY_END);
+        }
+        writer.flush();
     }
 
     /**
@@ -480,19 +537,12 @@ public final class JsonRpcServlet extends HttpServlet
      *
      * @param httpRequest
      *            The HTTP request.
+     * @param jsonInput
+     *            The JSON request.
      * @return The response message.
      */
-    private AbstractJsonRpcMessage
-            handleRequest(final HttpServletRequest httpRequest) {
-
-        final String jsonInput;
-
-        try {
-            jsonInput = IOUtils.toString(httpRequest.getInputStream(),
-                    Charset.defaultCharset());
-        } catch (IOException e) {
-            return createMethodException(e, false);
-        }
+    private AbstractJsonRpcMessage handleRequest(
+            final HttpServletRequest httpRequest, final String jsonInput) {
 
         // IMPORTANT: do NOT log since it exposes the API Key.
 
@@ -538,259 +588,541 @@ public final class JsonRpcServlet extends HttpServlet
 
             daoContext.beginTransaction();
 
-            switch (methodName) {
-
-            case ADD_INTERNAL_USER:
-                rpcResponse = USER_SERVICE.addInternalUser(methodParser
-                        .getParams(ParamsAddInternalUser.class).getUser());
-                break;
+            if (needsBatchCommitter(methodName)) {
+                batchCommitter = openBatchCommitter();
+            }
 
-            case ADD_USER_GROUP:
+            rpcResponse = dispatch(methodName, methodParser, batchCommitter);
 
-                batchCommitter = openBatchCommitter();
+            if (batchCommitter == null) {
+                daoContext.commit();
+            } else {
+                batchCommitter.commit();
+            }
 
-                rpcResponse = USER_GROUP_SERVICE.addUserGroup(batchCommitter,
-                        methodParser.getParams(ParamsUniqueName.class)
-                                .getUniqueName());
-                break;
+        } catch (Throwable e) {
 
-            case AUTH_USER_SOURCE:
+            rpcResponse = createErrorResponse(e);
 
-                final IExternalUserAuthenticator userAuth =
-                        ConfigManager.instance().getUserAuthenticator();
+        } finally {
 
-                if (userAuth == null) {
-                    rpcResponse = JsonRpcMethodError.createBasicError(
-                            JsonRpcError.Code.INTERNAL_ERROR,
-                            "External user source not configured.");
-                } else {
-                    final ParamsAuthUserSource authParms =
-                            methodParser.getParams(ParamsAuthUserSource.class);
-                    try {
-                        rpcResponse = JsonRpcMethodResult.createBooleanResult(
-                                userAuth.authenticate(authParms.getUserName(),
-                                        authParms.getPassword()) != null);
-                    } catch (Throwable e) {
-                        rpcResponse = createMethodException(e, false);
-                    }
-                }
-                break;
+            /*
+             * First statement.
+             */
+            setDatabaseLock(methodName, false);
 
-            case CHANGE_BASE_CURRENCY:
+            if (batchCommitter == null) {
+                daoContext.rollback();
+            } else {
+                batchCommitter.rollback();
+                batchCommitter.close();
+            }
 
-                final ParamsChangeBaseCurrency parmsChangeBaseCurrency =
-                        methodParser.getParams(ParamsChangeBaseCurrency.class);
+            ServiceContext.close();
+        }
 
-                batchCommitter = openBatchCommitter();
-                batchCommitter.setTest(parmsChangeBaseCurrency.isTest());
+        rpcResponse.setId(methodParser.getId());
+        logResponse(methodName, rpcResponse, httpRequest);
+        return rpcResponse;
+    }
 
-                rpcResponse = ACCOUNTING_SERVICE.changeBaseCurrency(
-                        batchCommitter,
-                        Currency.getInstance(
-                                parmsChangeBaseCurrency.getCurrencyCodeFrom()),
-                        Currency.getInstance(
-                                parmsChangeBaseCurrency.getCurrencyCodeTo()),
-                        parmsChangeBaseCurrency.getExchangeRate());
+    /**
+     * Handles a JSON-RPC 2.0 batch: an array of method requests.
+     * <p>
+     * All valid requests are executed under one database read lock. Changes
+     * are committed after each commit interval of requests, see
+     * {@link WebServer#getJsonRpcBatchCommitInterval()}. A request that
+     * commits by itself, with its own {@link DaoBatchCommitter}, is preceded
+     * and followed by a commit. When a request throws an exception, the
+     * remaining requests are not executed, and the changes of the requests
+     * since the last commit are rolled back. Each response tells which of
+     * these applies.
+     * </p>
+     *
+     * @param httpRequest
+     *            The HTTP request.
+     * @param jsonInput
+     *            The JSON array.
+     * @param batchResponse
+     *            The list to add the response messages to.
+     * @return {@code null} when response messages are added to the batch
+     *         response, or a single error message when the batch as a whole
+     *         is invalid.
+     */
+    private AbstractJsonRpcMessage handleBatchRequest(
+            final HttpServletRequest httpRequest, final String jsonInput,
+            final List<AbstractJsonRpcMessage> batchResponse) {
 
-                break;
+        // IMPORTANT: do NOT log since it exposes the API Key.
 
-            case DELETE_USER:
-                rpcResponse = USER_SERVICE.deleteUserAutoCorrect(methodParser
-                        .getParams(ParamsUniqueName.class).getUniqueName());
-                break;
+        final JsonNode batchNode;
 
-            case DELETE_USER_GROUP:
-                rpcResponse = USER_GROUP_SERVICE.deleteUserGroup(methodParser
-                        .getParams(ParamsUniqueName.class).getUniqueName());
-                break;
+        try {
+            batchNode = JsonApiMapper.readTree(jsonInput);
+        } catch (IOException e) {
+            return JsonRpcMethodError.createBasicError(
+                    JsonRpcError.Code.PARSE_ERROR, "JSON parsing error.",
+                    "JSON syntax is not valid.");
+        }
 
-            case DELETE_USER_GROUP_ACCOUNT:
-                rpcResponse = ACCOUNTING_SERVICE.deleteUserGroupAccount(
-                        methodParser.getParams(ParamsUniqueName.class)
-                                .getUniqueName());
-                break;
+        final int batchSize = batchNode.size();
 
-            case ERASE_USER:
-                rpcResponse = USER_SERVICE.eraseUser(methodParser
-                        .getParams(ParamsUniqueName.class).getUniqueName());
-                break;
+        if (batchSize == 0) {
+            return JsonRpcMethodError.createBasicError(
+                    JsonRpcError.Code.INVALID_REQUEST, "Invalid request.",
+                    "Batch is empty.");
+        }
 
-            case GET_CONFIG_PROPERTY:
-                rpcResponse = CONFIG_PROPERTY_SERVICE.getPropertyValue(
-                        methodParser.getParams(ParamsUniqueName.class)
-                                .getUniqueName());
-                break;
+        final int batchSizeMax = WebServer.getJsonRpcBatchMaxSize();
 
-            case SET_CONFIG_PROPERTY:
-                rpcResponse = CONFIG_PROPERTY_SERVICE.setPropertyValue(
-                        methodParser.getParams(ParamsNameValue.class));
-                break;
+        if (batchSize > batchSizeMax) {
+            return JsonRpcMethodError.createBasicError(
+                    JsonRpcError.Code.INVALID_REQUEST, "Invalid request.",
+                    String.format("Batch size %d exceeds maximum %d.",
+                            batchSize, batchSizeMax));
+        }
 
-            case LIST_USERS:
+        final AbstractJsonRpcMessage[] responses =
+                new AbstractJsonRpcMessage[batchSize];
+        final JsonRpcMethodParser[] parsers =
+                new JsonRpcMethodParser[batchSize];
+        final JsonRpcMethodName[] methodNames =
+                new JsonRpcMethodName[batchSize];
 
-                final ParamsPaging parmsListUsers =
-                        methodParser.getParams(ParamsPaging.class);
+        /*
+         * Parse and check all requests.
+         */
+        for (int i = 0; i < batchSize; i++) {
 
-                rpcResponse =
-                        USER_SERVICE.listUsers(parmsListUsers.getStartIndex(),
-                                parmsListUsers.getItemsPerPage());
-                break;
+            final JsonRpcMethodParser parser;
 
-            case LIST_USER_GROUPS:
+            try {
+                parser = new JsonRpcMethodParser(batchNode.get(i).toString());
+            } catch (IOException e) {
+                responses[i] = JsonRpcMethodError.createBasicError(
+                        JsonRpcError.Code.PARSE_ERROR, "JSON parsing error.",
+                        "JSON syntax is not valid.");
+                continue;
+            }
 
-                final ParamsPaging parmsListUserGroups =
-                        methodParser.getParams(ParamsPaging.class);
+            final JsonRpcMethodName methodName =
+                    JsonRpcMethodName.asEnum(parser.getMethod());
 
-                rpcResponse = USER_GROUP_SERVICE.listUserGroups(
-                        parmsListUserGroups.getStartIndex(),
-                        parmsListUserGroups.getItemsPerPage());
-                break;
+            JsonRpcMethodError rpcMethodError =
+                    checkInvariants(httpRequest, parser, methodName);
 
-            case LIST_USER_GROUP_MEMBERS:
+            if (rpcMethodError == null
+                    && BATCH_EXCLUDED_METHODS.contains(methodName)) {
+                rpcMethodError = JsonRpcMethodError.createBasicError(
+                        JsonRpcError.Code.INVALID_REQUEST, "Invalid request.",
+                        "Method [" + parser.getMethod()
+                                + "] is not supported in a batch.");
+            }
 
-                final ParamsSingleFilterList parmsGroupMembers =
-                        methodParser.getParams(ParamsSingleFilterList.class);
+            if (rpcMethodError != null) {
+                rpcMethodError.setId(parser.getId());
+                logResponse(methodName, rpcMethodError, httpRequest);
+                responses[i] = rpcMethodError;
+                continue;
+            }
 
-                rpcResponse = USER_GROUP_SERVICE.listUserGroupMembers(
-                        parmsGroupMembers.getFilter(),
-                        parmsGroupMembers.getStartIndex(),
-                        parmsGroupMembers.getItemsPerPage());
-                break;
+            parsers[i] = parser;
+            methodNames[i] = methodName;
+        }
 
-            case LIST_USER_GROUP_MEMBERSHIPS:
+        /*
+         * Process requests.
+         */
+        ServiceContext.open();
 
-                final ParamsSingleFilterList parmsMemberships =
-                        methodParser.getParams(ParamsSingleFilterList.class);
+        ServiceContext.setActor(Entity.ACTOR_SYSTEM_API);
+        ServiceContext.setLocale(Locale.getDefault());
 
-                rpcResponse = USER_GROUP_SERVICE.listUserGroupMemberships(
-                        parmsMemberships.getFilter(),
-                        parmsMemberships.getStartIndex(),
-                        parmsMemberships.getItemsPerPage());
-                break;
+        final DaoContext daoContext = ServiceContext.getDaoContext();
 
-            case LIST_USER_SOURCE_GROUP_MEMBERS:
+        ReadWriteLockEnum.DATABASE_READONLY.setReadLock(true);
 
-                final ParamsSourceGroupMembers parmsSourceGroupMembers =
-                        methodParser.getParams(ParamsSourceGroupMembers.class);
+        final int commitInterval = WebServer.getJsonRpcBatchCommitInterval();
 
-                rpcResponse = USER_GROUP_SERVICE.listUserSourceGroupMembers(
-                        parmsSourceGroupMembers.getGroupName(),
-                        parmsSourceGroupMembers.getNested());
+        Throwable failure = null;
+        int iFailure = -1;
+        int iCommitted = -1;
 
-                break;
+        try {
 
-            case LIST_USER_SOURCE_GROUPS:
+            int nUncommitted = 0;
 
-                rpcResponse = USER_GROUP_SERVICE.listUserSourceGroups();
+            for (int i = 0; i < batchSize; i++) {
 
-                break;
+                if (parsers[i] == null) {
+                    continue;
+                }
 
-            case LIST_USER_SOURCE_GROUP_NESTING:
+                if (!daoContext.isTransactionActive()) {
+                    daoContext.beginTransaction();
+                }
 
-                rpcResponse = USER_GROUP_SERVICE.listUserSourceGroupNesting(
-                        methodParser.getParams(ParamsUniqueName.class)
-                                .getUniqueName());
-                break;
+                if (needsBatchCommitter(methodNames[i])) {
 
-            case PRINTER_ACCESS_CONTROL:
+                    if (nUncommitted > 0) {
+                        daoContext.commit();
+                        iCommitted = i - 1;
+                        nUncommitted = 0;
+                        daoContext.beginTransaction();
+                    }
 
-                rpcResponse = handlePrinterAccessControl(methodParser
-                        .getParams(ParamsPrinterAccessControl.class));
-                break;
+                    /*
+                     * The method commits by itself: a failure may leave part
+                     * of its own changes committed, as with a single call.
+                     */
+                    final DaoBatchCommitter batchCommitter =
+                            openBatchCommitter();
+                    try {
+                        responses[i] = dispatch(methodNames[i], parsers[i],
+                                batchCommitter);
+                        batchCommitter.commit();
+                        iCommitted = i;
+                    } catch (Throwable e) {
+                        failure = e;
+                        iFailure = i;
+                        break;
+                    } finally {
+                        batchCommitter.rollback();
+                        batchCommitter.close();
+                    }
+                    continue;
+                }
 
-            case PRINTER_SNMP:
+                try {
+                    responses[i] = dispatch(methodNames[i], parsers[i], null);
+                } catch (Throwable e) {
+                    failure = e;
+                    iFailure = i;
+                    break;
+                }
 
-                rpcResponse = PROXY_PRINT_SERVICE.readSnmp(
-                        methodParser.getParams(ParamsPrinterSnmp.class));
-                break;
+                if (++nUncommitted == commitInterval) {
+                    daoContext.commit();
+                    iCommitted = i;
+                    nUncommitted = 0;
+                }
+            }
 
-            case SET_USER_PROPERTIES:
+            if (failure == null && nUncommitted > 0) {
+                daoContext.commit();
+                iCommitted = batchSize - 1;
+            }
 
-                rpcResponse = USER_SERVICE.setUserProperties(
-                        methodParser.getParams(ParamsSetUserProperties.class)
-                                .getUserProperties());
-                break;
+        } catch (Throwable e) {
 
-            case SET_USER_GROUP_PROPERTIES:
+            failure = e;
 
-                rpcResponse =
-                        USER_GROUP_SERVICE.setUserGroupProperties(methodParser
-                                .getParams(ParamsSetUserGroupProperties.class)
-                                .getUserGroupProperties());
-                break;
+        } finally {
 
-            case SYNC_USER_GROUP:
+            /*
+             * First statement.
+             */
+            ReadWriteLockEnum.DATABASE_READONLY.setReadLock(false);
 
-                batchCommitter = openBatchCommitter();
+            daoContext.rollback();
 
-                rpcResponse = USER_GROUP_SERVICE.syncUserGroup(batchCommitter,
-                        methodParser.getParams(ParamsUniqueName.class)
-                                .getUniqueName());
-                break;
+            ServiceContext.close();
+        }
 
-            case SYNC_USERS_AND_GROUPS:
+        for (int i = 0; i < batchSize; i++) {
 
-                SpJobScheduler.instance().scheduleOneShotUserSync(false,
-                        BooleanUtils.isTrue(
-                                methodParser.getParams(ParamsSyncUsers.class)
-                                        .getDeleteUsers()));
-                rpcResponse = JsonRpcMethodResult.createOkResult();
-                break;
+            if (parsers[i] != null) {
 
-            case SYSTEM_STATUS:
-                rpcResponse = JsonRpcMethodResult.createEnumResult(
-                        ConfigManager.instance().getSystemStatus());
-                break;
+                if (i == iFailure) {
+                    responses[i] = createErrorResponse(failure);
+                } else if (failure != null && i > iFailure && iFailure >= 0) {
+                    responses[i] = JsonRpcMethodError.createBasicError(
+                            JsonRpcError.Code.INTERNAL_ERROR,
+                            "Batch aborted.", "Request is not executed.");
+                } else if (failure != null && i > iCommitted) {
+                    responses[i] = JsonRpcMethodError.createBasicError(
+                            JsonRpcError.Code.INTERNAL_ERROR,
+                            "Batch aborted.", "Changes are rolled back.");
+                }
 
-            default:
-                rpcResponse = JsonRpcMethodError.createBasicError(
-                        JsonRpcError.Code.INVALID_REQUEST, "Invalid request.",
-                        "Method [" + methodParser.getMethod()
-                                + "] is not implemented.");
-                break;
+                responses[i].setId(parsers[i].getId());
+                logResponse(methodNames[i], responses[i], httpRequest);
             }
 
-            if (batchCommitter == null) {
-                daoContext.commit();
-            } else {
-                batchCommitter.commit();
-            }
+            batchResponse.add(responses[i]);
+        }
 
-        } catch (JsonProcessingException | JsonRpcParserException e) {
+        if (failure != null && iFailure < 0) {
+            LOGGER.error(failure.getMessage(), failure);
+        }
 
-            rpcResponse = JsonRpcMethodError.createBasicError(
+        return null;
+    }
+
+    /**
+     * @param methodName
+     *            The {@link JsonRpcMethodName}.
+     * @return {@code true} if the method needs a {@link DaoBatchCommitter}.
+     */
+    private static boolean
+            needsBatchCommitter(final JsonRpcMethodName methodName) {
+        return methodName == JsonRpcMethodName.ADD_USER_GROUP
+                || methodName == JsonRpcMethodName.CHANGE_BASE_CURRENCY
+                || methodName == JsonRpcMethodName.SYNC_USER_GROUP;
+    }
+
+    /**
+     * Creates the error response of an exception thrown by a method.
+     *
+     * @param e
+     *            The exception.
+     * @return The {@link JsonRpcMethodError}.
+     */
+    private JsonRpcMethodError createErrorResponse(final Throwable e) {
+
+        if (e instanceof JsonProcessingException
+                || e instanceof JsonRpcParserException) {
+            return JsonRpcMethodError.createBasicError(
                     JsonRpcError.Code.PARSE_ERROR, "JSON parsing error.",
                     "JSON method parameters are not valid.");
+        }
 
-        } catch (SnmpConnectException e) {
-
-            rpcResponse = JsonRpcMethodError.createBasicError(
+        if (e instanceof SnmpConnectException) {
+            return JsonRpcMethodError.createBasicError(
                     JsonRpcError.Code.INTERNAL_ERROR, "SNMP connect error.",
                     e.getMessage());
+        }
 
-        } catch (Throwable e) {
+        return createMethodException(e, true);
+    }
 
-            rpcResponse = createMethodException(e, true);
+    /**
+     * Executes a method.
+     *
+     * @param methodName
+     *            The {@link JsonRpcMethodName}.
+     * @param parser
+     *            The method parser.
+     * @param batchCommitter
+     *            The {@link DaoBatchCommitter}: not {@code null} when
+     *            {@link #needsBatchCommitter(JsonRpcMethodName)}.
+     * @return The response message.
+     * @throws Exception
+     *             When method failed.
+     */
+    private AbstractJsonRpcMessage dispatch(final JsonRpcMethodName methodName,
+            final JsonRpcMethodParser parser,
+            final DaoBatchCommitter batchCommitter) throws Exception {
 
-        } finally {
+        AbstractJsonRpcMessage rpcResponse;
 
-            /*
-             * First statement.
-             */
-            setDatabaseLock(methodName, false);
+        switch (methodName) {
 
-            if (batchCommitter == null) {
-                daoContext.rollback();
+        case ADD_INTERNAL_USER:
+            rpcResponse = USER_SERVICE.addInternalUser(parser
+                    .getParams(ParamsAddInternalUser.class).getUser());
+            break;
+
+        case ADD_USER_GROUP:
+
+            rpcResponse = USER_GROUP_SERVICE.addUserGroup(batchCommitter,
+                    parser.getParams(ParamsUniqueName.class)
+                            .getUniqueName());
+            break;
+
+        case AUTH_USER_SOURCE:
+
+            final IExternalUserAuthenticator userAuth =
+                    ConfigManager.instance().getUserAuthenticator();
+
+            if (userAuth == null) {
+                rpcResponse = JsonRpcMethodError.createBasicError(
+                        JsonRpcError.Code.INTERNAL_ERROR,
+                        "External user source not configured.");
             } else {
-                batchCommitter.rollback();
-                batchCommitter.close();
+                final ParamsAuthUserSource authParms =
+                        parser.getParams(ParamsAuthUserSource.class);
+                try {
+                    rpcResponse = JsonRpcMethodResult.createBooleanResult(
+                            userAuth.authenticate(authParms.getUserName(),
+                                    authParms.getPassword()) != null);
+                } catch (Throwable e) {
+                    rpcResponse = createMethodException(e, false);
+                }
             }
+            break;
 
-            ServiceContext.close();
+        case CHANGE_BASE_CURRENCY:
+
+            final ParamsChangeBaseCurrency parmsChangeBaseCurrency =
+                    parser.getParams(ParamsChangeBaseCurrency.class);
+
+            batchCommitter.setTest(parmsChangeBaseCurrency.isTest());
+
+            rpcResponse = ACCOUNTING_SERVICE.changeBaseCurrency(
+                    batchCommitter,
+                    Currency.getInstance(
+                            parmsChangeBaseCurrency.getCurrencyCodeFrom()),
+                    Currency.getInstance(
+                            parmsChangeBaseCurrency.getCurrencyCodeTo()),
+                    parmsChangeBaseCurrency.getExchangeRate());
+
+            break;
+
+        case DELETE_USER:
+            rpcResponse = USER_SERVICE.deleteUserAutoCorrect(parser
+                    .getParams(ParamsUniqueName.class).getUniqueName());
+            break;
+
+        case DELETE_USER_GROUP:
+            rpcResponse = USER_GROUP_SERVICE.deleteUserGroup(parser
+                    .getParams(ParamsUniqueName.class).getUniqueName());
+            break;
+
+        case DELETE_USER_GROUP_ACCOUNT:
+            rpcResponse = ACCOUNTING_SERVICE.deleteUserGroupAccount(
+                    parser.getParams(ParamsUniqueName.class)
+                            .getUniqueName());
+            break;
+
+        case ERASE_USER:
+            rpcResponse = USER_SERVICE.eraseUser(parser
+                    .getParams(ParamsUniqueName.class).getUniqueName());
+            break;
+
+        case GET_CONFIG_PROPERTY:
+            rpcResponse = CONFIG_PROPERTY_SERVICE.getPropertyValue(
+                    parser.getParams(ParamsUniqueName.class)
+                            .getUniqueName());
+            break;
+
+        case SET_CONFIG_PROPERTY:
+            rpcResponse = CONFIG_PROPERTY_SERVICE.setPropertyValue(
+                    parser.getParams(ParamsNameValue.class));
+            break;
+
+        case LIST_USERS:
+
+            final ParamsPaging parmsListUsers =
+                    parser.getParams(ParamsPaging.class);
+
+            rpcResponse =
+                    USER_SERVICE.listUsers(parmsListUsers.getStartIndex(),
+                            parmsListUsers.getItemsPerPage());
+            break;
+
+        case LIST_USER_GROUPS:
+
+            final ParamsPaging parmsListUserGroups =
+                    parser.getParams(ParamsPaging.class);
+
+            rpcResponse = USER_GROUP_SERVICE.listUserGroups(
+                    parmsListUserGroups.getStartIndex(),
+                    parmsListUserGroups.getItemsPerPage());
+            break;
+
+        case LIST_USER_GROUP_MEMBERS:
+
+            final ParamsSingleFilterList parmsGroupMembers =
+                    parser.getParams(ParamsSingleFilterList.class);
+
+            rpcResponse = USER_GROUP_SERVICE.listUserGroupMembers(
+                    parmsGroupMembers.getFilter(),
+                    parmsGroupMembers.getStartIndex(),
+                    parmsGroupMembers.getItemsPerPage());
+            break;
+
+        case LIST_USER_GROUP_MEMBERSHIPS:
+
+            final ParamsSingleFilterList parmsMemberships =
+                    parser.getParams(ParamsSingleFilterList.class);
+
+            rpcResponse = USER_GROUP_SERVICE.listUserGroupMemberships(
+                    parmsMemberships.getFilter(),
+                    parmsMemberships.getStartIndex(),
+                    parmsMemberships.getItemsPerPage());
+            break;
+
+        case LIST_USER_SOURCE_GROUP_MEMBERS:
+
+            final ParamsSourceGroupMembers parmsSourceGroupMembers =
+                    parser.getParams(ParamsSourceGroupMembers.class);
+
+            rpcResponse = USER_GROUP_SERVICE.listUserSourceGroupMembers(
+                    parmsSourceGroupMembers.getGroupName(),
+                    parmsSourceGroupMembers.getNested());
+
+            break;
+
+        case LIST_USER_SOURCE_GROUPS:
+
+            rpcResponse = USER_GROUP_SERVICE.listUserSourceGroups();
+
+            break;
+
+        case LIST_USER_SOURCE_GROUP_NESTING:
+
+            rpcResponse = USER_GROUP_SERVICE.listUserSourceGroupNesting(
+                    parser.getParams(ParamsUniqueName.class)
+                            .getUniqueName());
+            break;
+
+        case PRINTER_ACCESS_CONTROL:
+
+            rpcResponse = handlePrinterAccessControl(parser
+                    .getParams(ParamsPrinterAccessControl.class));
+            break;
+
+        case PRINTER_SNMP:
+
+            rpcResponse = PROXY_PRINT_SERVICE.readSnmp(
+                    parser.getParams(ParamsPrinterSnmp.class));
+            break;
+
+        case SET_USER_PROPERTIES:
+
+            rpcResponse = USER_SERVICE.setUserProperties(
+                    parser.getParams(ParamsSetUserProperties.class)
+                            .getUserProperties());
+            break;
+
+        case SET_USER_GROUP_PROPERTIES:
+
+            rpcResponse =
+                    USER_GROUP_SERVICE.setUserGroupProperties(parser
+                            .getParams(ParamsSetUserGroupProperties.class)
+                            .getUserGroupProperties());
+            break;
+
+        case SYNC_USER_GROUP:
+
+            rpcResponse = USER_GROUP_SERVICE.syncUserGroup(batchCommitter,
+                    parser.getParams(ParamsUniqueName.class)
+                            .getUniqueName());
+            break;
+
+        case SYNC_USERS_AND_GROUPS:
+
+            SpJobScheduler.instance().scheduleOneShotUserSync(false,
+                    BooleanUtils.isTrue(
+                            parser.getParams(ParamsSyncUsers.class)
+                                    .getDeleteUsers()));
+            rpcResponse = JsonRpcMethodResult.createOkResult();
+            break;
+
+        case SYSTEM_STATUS:
+            rpcResponse = JsonRpcMethodResult.createEnumResult(
+                    ConfigManager.instance().getSystemStatus());
+            break;
+
+        default:
+            rpcResponse = JsonRpcMethodError.createBasicError(
+                    JsonRpcError.Code.INVALID_REQUEST, "Invalid request.",
+                    "Method [" + parser.getMethod()
+                            + "] is not implemented.");
+            break;
         }
 
-        rpcResponse.setId(methodParser.getId());
-        logResponse(methodName, rpcResponse, httpRequest);
         return rpcResponse;
     }
 
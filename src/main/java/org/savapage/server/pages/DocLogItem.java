@@ -28,17 +28,23 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
 
+import javax.persistence.EntityGraph;
 import javax.persistence.EntityManager;
+import javax.persistence.Parameter;
 import javax.persistence.Query;
+import javax.persistence.Subgraph;
 
 import org.apache.commons.collections4.map.HashedMap;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.wicket.Session;
 import org.savapage.core.SpException;
 import org.savapage.core.config.ConfigManager;
 import org.savapage.core.crypto.CryptoUser;
@@ -74,6 +80,8 @@ import org.savapage.core.util.DateUtil;
 import org.savapage.core.util.JsonHelper;
 import org.savapage.core.util.NumberUtil;
 import org.savapage.server.WebApp;
+import org.savapage.server.session.DocLogPagerSession;
+import org.savapage.server.session.SpSession;
 
 /**
  *
@@ -355,6 +363,68 @@ public final class DocLogItem {
 
         protected static final String QPARM_EXTERNAL_ID_TEXT = "externalIdText";
 
+        private static final String QPARM_SEEK_DATE = "seekDate";
+        private static final String QPARM_SEEK_ID = "seekId";
+        private static final String QPARM_DOCLOG_IDS = "docLogIds";
+
+        /**
+         * JPA hint for a fetch graph that adds to the default fetch plan.
+         */
+        private static final String HINT_LOAD_GRAPH =
+                "javax.persistence.loadgraph";
+
+        /**
+         * Checks if a seek key still points to its page boundary: the
+         * boundary row must exist with the same create date. Rows inserted
+         * before the boundary only shift the page numbers, which is
+         * acceptable for a "next page" seek.
+         *
+         * @param em
+         *            The entity manager.
+         * @param seekKey
+         *            The seek key.
+         * @return {@code true} if valid.
+         */
+        private static boolean isValid(final EntityManager em,
+                final DocLogPagerSession.SeekKey seekKey) {
+            final DocLog boundary = em.find(DocLog.class, seekKey.getId());
+            return boundary != null && seekKey.getCreatedDate()
+                    .equals(boundary.getCreatedDate());
+        }
+
+        /**
+         * Gets the id range of the {@link DocLog} table. Both ends are read
+         * from the primary key index.
+         *
+         * @param em
+         *            The entity manager.
+         * @return {@code [MIN(id), MAX(id)]}, or {@code null} if the table is
+         *         empty.
+         */
+        private static long[] getIdRange(final EntityManager em) {
+
+            final Object[] range = (Object[]) em
+                    .createQuery("SELECT MIN(D.id), MAX(D.id) FROM DocLog D")
+                    .getSingleResult();
+
+            if (range[0] == null) {
+                return null;
+            }
+            return new long[] { ((Number) range[0]).longValue(),
+                    ((Number) range[1]).longValue() };
+        }
+
+        /**
+         * @return The page boundaries of the current session, or {@code null}
+         *         if there is no session.
+         */
+        private static DocLogPagerSession getPagerSession() {
+            if (!Session.exists()) {
+                return null;
+            }
+            return SpSession.get().getDocLogPagerSession();
+        }
+
         protected abstract String getExtraWhereAnd(DocLogPagerReq req);
 
         protected abstract String getExtraJoin();
@@ -372,6 +442,22 @@ public final class DocLogItem {
          */
         private String getSelectString(final EntityManager em,
                 final boolean count, final Long userId, DocLogPagerReq req) {
+            return getSelectString(em, count, userId, req, null);
+        }
+
+        /**
+         *
+         * @param em
+         * @param count
+         * @param userId
+         * @param req
+         * @param seekWhere
+         *            Keyset predicate, or {@code null} when not applicable.
+         * @return
+         */
+        private String getSelectString(final EntityManager em,
+                final boolean count, final Long userId, DocLogPagerReq req,
+                final String seekWhere) {
 
             final StringBuilder jpql = new StringBuilder();
 
@@ -403,6 +489,17 @@ public final class DocLogItem {
                 nWhere++;
             }
 
+            //
+            if (seekWhere != null) {
+                if (nWhere == 0) {
+                    jpql.append(" WHERE ");
+                } else {
+                    jpql.append(" AND ");
+                }
+                jpql.append(seekWhere);
+                nWhere++;
+            }
+
             return jpql.toString();
         }
 
@@ -415,6 +512,39 @@ public final class DocLogItem {
          */
         public long filteredCount(final EntityManager em, final Long userId,
                 DocLogPagerReq req) {
+            return filteredCount(em, userId, req, false);
+        }
+
+        /**
+         * Counts the selected rows. When an estimate is requested and no
+         * selection applies, the count is estimated from the id range, so a
+         * huge table is not scanned.
+         * <p>
+         * Note: the estimate {@code MAX(id) - MIN(id) + 1} is an upper bound
+         * only, since ids of rolled back and deleted rows leave gaps.
+         * </p>
+         *
+         * @param em
+         * @param userId
+         * @param req
+         * @param estimate
+         *            {@code true} if an estimated count is acceptable.
+         * @return
+         */
+        public long filteredCount(final EntityManager em, final Long userId,
+                final DocLogPagerReq req, final boolean estimate) {
+
+            if (estimate && userId == null && getExtraJoin() == null
+                    && getWhereCommon(userId, req) == null
+                    && getExtraWhereAnd(req) == null) {
+
+                final long[] range = getIdRange(em);
+
+                if (range == null) {
+                    return 0;
+                }
+                return range[1] - range[0] + 1;
+            }
 
             final String jpql = getSelectString(em, true, userId, req);
 
@@ -481,41 +611,96 @@ public final class DocLogItem {
                 break;
             }
 
+            final StringBuilder orderBySql = new StringBuilder();
+
             if (orderField != null) {
 
-                jpql.append(" ORDER BY ").append(orderField);
+                orderBySql.append(" ORDER BY ").append(orderField);
 
                 if (!sortAscending) {
-                    jpql.append(" DESC");
+                    orderBySql.append(" DESC");
                 }
 
-                jpql.append(", D.id DESC");
+                orderBySql.append(", D.id DESC");
             }
 
-            final Query query = em.createQuery(jpql.toString());
+            final String jpqlList = jpql.toString() + orderBySql;
 
-            final Date dayFrom = req.getSelect().dateFrom();
-            final Date dayTo = req.getSelect().dateTo();
-            final String titleText = req.getSelect().getDocName();
-            final String ticketNumberMail =
-                    req.getSelect().getTicketNumberMail();
+            Query query = this.createListQuery(em, jpqlList, userId, req);
 
-            final Long accountId = req.getSelect().getAccountId();
+            final Integer startPosition = req.calcStartPosition();
+            final Integer maxResults = req.getMaxResults();
 
-            setParmsCommon(query, userId, accountId, dayFrom, dayTo, titleText,
-                    ticketNumberMail);
-            setExtraParms(query, req);
+            /*
+             * Keyset pagination applies to the (createdDate, id) order only,
+             * and is scoped to the session.
+             */
+            final DocLogPagerSession pagerSession = getPagerSession();
+
+            final boolean isSeekable =
+                    orderBy == DocLogDao.FieldEnum.CREATE_DATE
+                            && startPosition != null && maxResults != null
+                            && pagerSession != null;
 
-            Integer startPosition = req.calcStartPosition();
-            Integer maxResults = req.getMaxResults();
+            final String signature;
+            DocLogPagerSession.SeekKey seekKey = null;
 
-            if (startPosition != null) {
-                query.setFirstResult(startPosition);
+            if (isSeekable) {
+                signature = getQuerySignature(jpqlList, query, maxResults);
+                if (startPosition.intValue() > 0) {
+                    seekKey = pagerSession.get(signature, startPosition);
+                    if (seekKey != null && !isValid(em, seekKey)) {
+                        pagerSession.remove(signature, startPosition);
+                        seekKey = null;
+                    }
+                }
+            } else {
+                signature = null;
+            }
+
+            if (seekKey == null) {
+                if (startPosition != null) {
+                    query.setFirstResult(startPosition);
+                }
+            } else {
+                final String seekWhere;
+                if (sortAscending) {
+                    seekWhere = "(D.createdDate > :" + QPARM_SEEK_DATE
+                            + " OR (D.createdDate = :" + QPARM_SEEK_DATE
+                            + " AND D.id < :" + QPARM_SEEK_ID + "))";
+                } else {
+                    seekWhere = "(D.createdDate < :" + QPARM_SEEK_DATE
+                            + " OR (D.createdDate = :" + QPARM_SEEK_DATE
+                            + " AND D.id < :" + QPARM_SEEK_ID + "))";
+                }
+                query = this.createListQuery(em,
+                        getSelectString(em, false, userId, req, seekWhere)
+                                + orderBySql,
+                        userId, req);
+                query.setParameter(QPARM_SEEK_DATE, seekKey.getCreatedDate());
+                query.setParameter(QPARM_SEEK_ID, seekKey.getId());
             }
+
             if (maxResults != null) {
                 query.setMaxResults(maxResults);
             }
 
+            if (req.getSelect().getAccountId() == null) {
+                query.setHint(HINT_LOAD_GRAPH, createLoadGraph(em));
+            }
+
+            final List<DocLog> docLogList = query.getResultList();
+
+            if (isSeekable && docLogList.size() == maxResults.intValue()) {
+                final DocLog last = docLogList.get(docLogList.size() - 1);
+                pagerSession.put(signature, startPosition + maxResults,
+                        new DocLogPagerSession.SeekKey(last.getCreatedDate(),
+                                last.getId()));
+            }
+
+            final Map<Long, List<AccountTrx>> transactions =
+                    getTransactions(em, docLogList);
+
             final QueueService queueService =
                     ServiceContext.getServiceFactory().getQueueService();
 
@@ -539,7 +724,7 @@ public final class DocLogItem {
             final boolean isPrintInJournalEnabled = docStoreService.isEnabled(
                     DocStoreTypeEnum.JOURNAL, DocStoreBranchEnum.IN_PRINT);
 
-            for (final DocLog docLog : ((List<DocLog>) query.getResultList())) {
+            for (final DocLog docLog : docLogList) {
 
                 DocLogItem log = new DocLogItem();
 
@@ -568,10 +753,13 @@ public final class DocLogItem {
                     log.setTotalPages(docLog.getNumberOfPages());
                 }
 
-                if (docLog.getTransactions() == null) {
+                final List<AccountTrx> trxList =
+                        transactions.get(docLog.getId());
+
+                if (trxList == null) {
                     log.setTransactions(new ArrayList<AccountTrx>());
                 } else {
-                    log.setTransactions(docLog.getTransactions());
+                    log.setTransactions(trxList);
                 }
 
                 if (log.getTransactions().isEmpty()) {
@@ -776,6 +964,116 @@ public final class DocLogItem {
             return list;
         }
 
+        /**
+         * Creates the list query and sets its selection parameters.
+         *
+         * @param em
+         * @param jpql
+         * @param userId
+         * @param req
+         * @return The query.
+         */
+        private Query createListQuery(final EntityManager em,
+                final String jpql, final Long userId,
+                final DocLogPagerReq req) {
+
+            final Query query = em.createQuery(jpql);
+
+            setParmsCommon(query, userId, req.getSelect().getAccountId(),
+                    req.getSelect().dateFrom(), req.getSelect().dateTo(),
+                    req.getSelect().getDocName(),
+                    req.getSelect().getTicketNumberMail());
+            setExtraParms(query, req);
+
+            return query;
+        }
+
+        /**
+         * Gets the signature of a list query: the JPQL, the parameter values
+         * and the page size.
+         *
+         * @param jpql
+         *            The JPQL.
+         * @param query
+         *            Query with parameters set.
+         * @param maxResults
+         *            Page size.
+         * @return The signature.
+         */
+        private static String getQuerySignature(final String jpql,
+                final Query query, final Integer maxResults) {
+
+            final Map<String, Object> parms = new TreeMap<>();
+
+            for (final Parameter<?> parm : query.getParameters()) {
+                parms.put(parm.getName(), query.getParameterValue(parm));
+            }
+
+            return String.format("%s|%s|%d",
+                    jpql, parms, maxResults);
+        }
+
+        /**
+         * Creates a graph that fetches the single-valued associations that
+         * are read for each row, so they are loaded with the {@link DocLog}
+         * rows instead of one query per row.
+         *
+         * @param em
+         * @return The graph.
+         */
+        private static EntityGraph<DocLog>
+                createLoadGraph(final EntityManager em) {
+
+            final EntityGraph<DocLog> graph =
+                    em.createEntityGraph(DocLog.class);
+
+            graph.addAttributeNodes("user");
+
+            final Subgraph<DocIn> docIn = graph.addSubgraph("docIn");
+            docIn.addSubgraph("printIn").addAttributeNodes("queue");
+
+            final Subgraph<DocOut> docOut = graph.addSubgraph("docOut");
+            docOut.addSubgraph("printOut").addAttributeNodes("printer");
+            docOut.addAttributeNodes("pdfOut");
+
+            return graph;
+        }
+
+        /**
+         * Gets the {@link AccountTrx} rows of {@link DocLog} rows in one
+         * query.
+         *
+         * @param em
+         * @param docLogList
+         * @return The transactions by {@link DocLog} id.
+         */
+        @SuppressWarnings("unchecked")
+        private static Map<Long, List<AccountTrx>> getTransactions(
+                final EntityManager em, final List<DocLog> docLogList) {
+
+            final Map<Long, List<AccountTrx>> map = new HashMap<>();
+
+            if (docLogList.isEmpty()) {
+                return map;
+            }
+
+            final List<Long> ids = new ArrayList<>(docLogList.size());
+            for (final DocLog docLog : docLogList) {
+                ids.add(docLog.getId());
+            }
+
+            final Query query = em.createQuery("SELECT T.docLog.id, T"
+                    + " FROM AccountTrx T WHERE T.docLog.id IN :"
+                    + QPARM_DOCLOG_IDS + " ORDER BY T.id");
+            query.setParameter(QPARM_DOCLOG_IDS, ids);
+
+            for (final Object[] row : (List<Object[]>) query.getResultList()) {
+                map.computeIfAbsent((Long) row[0], k -> new ArrayList<>())
+                        .add((AccountTrx) row[1]);
+            }
+            return map;
+        }
+
         /**
          * {@link MailPrintData} by Ticket (key) related to {@link PrintOut}.
          *
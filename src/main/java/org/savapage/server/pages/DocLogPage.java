@@ -43,6 +43,7 @@ import org.savapage.core.dto.UserIdDto;
 import org.savapage.core.i18n.PhraseEnum;
 import org.savapage.core.services.AccessControlService;
 import org.savapage.core.services.ServiceContext;
+import org.savapage.server.WebServer;
 import org.savapage.server.session.SpSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -146,7 +147,8 @@ public final class DocLogPage extends AbstractListPage {
 
         final EntityManager em = DaoContextImpl.peekEntityManager();
         final DocLogItem.AbstractQuery query = DocLogItem.createQuery(docType);
-        final long logCount = query.filteredCount(em, userId, req);
+        final long logCount = query.filteredCount(em, userId, req,
+                WebServer.isWebAppDocLogCountEstimate());
 
         /*
          * Display the requested page.
@@ -63,6 +63,7 @@ import org.savapage.core.config.IConfigProp.Key;
 import org.savapage.core.config.SetupNeededEnum;
 import org.savapage.core.config.SslCertInfo;
 import org.savapage.core.config.SystemStatusEnum;
+import org.savapage.core.config.WebAppTypeEnum;
 import org.savapage.core.dao.enums.AppLogLevelEnum;
 import org.savapage.core.dao.enums.ReservedIppQueueEnum;
 import org.savapage.core.dao.impl.DaoContextImpl;
@@ -89,9 +90,14 @@ import org.savapage.ext.payment.PaymentGateway;
 import org.savapage.ext.payment.PaymentGatewayException;
 import org.savapage.ext.payment.bitcoin.BitcoinGateway;
 import org.savapage.lib.pgp.PGPPublicKeyInfo;
+import org.savapage.server.TrafficClassHandler;
+import org.savapage.server.TrafficClassHandler.TrafficClassEnum;
 import org.savapage.server.WebApp;
+import org.savapage.server.WebServer;
+import org.savapage.server.auth.WebAppUserAuthManager;
 import org.savapage.server.cometd.UserEventService;
 import org.savapage.server.ext.ServerPluginManager;
+import org.savapage.server.ipp.IppErrorThrottle;
 import org.savapage.server.pages.JobTicketQueueInfoPanel;
 import org.savapage.server.pages.MarkupHelper;
 import org.savapage.server.pages.MessageContent;
@@ -767,6 +773,34 @@ public final class SystemStatusPanel extends Panel {
         }
         helper.encloseLabel("open-files", openFiles, showTechInfo);
 
+        //
+        String ippThrottle = "-";
+        if (showTechInfo) {
+            helper.addLabel("ipp-throttle-prompt", "IPP Throttle");
+            final IppErrorThrottle throttle = IppErrorThrottle.instance();
+            ippThrottle = String.format("%s (%s) • clients (responses)",
+                    helper.localizedNumber(throttle.getThrottledClients()),
+                    helper.localizedNumber(throttle.getPendingResponses()));
+        }
+        helper.encloseLabel("ipp-throttle", ippThrottle, showTechInfo);
+
+        //
+        String authTokens = "-";
+        if (showTechInfo) {
+            helper.addLabel("auth-tokens-prompt", "Auth Tokens");
+            final WebAppUserAuthManager authManager =
+                    WebAppUserAuthManager.instance();
+            long nTokens = 0;
+            for (final WebAppTypeEnum webAppType : WebAppTypeEnum.values()) {
+                nTokens += authManager.getTokenCount(webAppType);
+            }
+            authTokens = String.format("%s (%s) • live (expired)",
+                    helper.localizedNumber(nTokens),
+                    helper.localizedNumber(
+                            authManager.getExpiredTokenCount()));
+        }
+        helper.encloseLabel("auth-tokens", authTokens, showTechInfo);
+
         /*
          *
          */
@@ -804,6 +838,55 @@ public final class SystemStatusPanel extends Panel {
         helper.encloseLabel("threads-info-deadlocks", deadlockedThreads,
                 !deadlockedThreads.isEmpty());
 
+        /*
+         * Jetty thread pool and traffic class saturation.
+         */
+        String threadPool = "-";
+        String trafficClasses = "-";
+
+        if (showTechInfo) {
+
+            helper.addLabel("thread-pool-prompt", "Thread Pool");
+            threadPool = String.format("%s / %s (%s) • busy / max (queued)",
+                    helper.localizedNumber(
+                            WebServer.ThreadPoolInfo.getBusyThreads()),
+                    helper.localizedNumber(
+                            WebServer.ThreadPoolInfo.getMaxThreads()),
+                    helper.localizedNumber(
+                            WebServer.ThreadPoolInfo.getQueueSize()));
+
+            helper.addLabel("traffic-classes-prompt", "Traffic");
+
+            final StringBuilder traffic = new StringBuilder();
+
+            for (final TrafficClassEnum tc : TrafficClassEnum.values()) {
+
+                final TrafficClassHandler.Stats stats =
+                        TrafficClassHandler.getStats(tc);
+
+                if (stats == null) {
+                    continue;
+                }
+
+                final String limit;
+                if (stats.getLimit() > 0) {
+                    limit = helper.localizedNumber(stats.getLimit());
+                } else {
+                    limit = "-";
+                }
+                traffic.append(String.format("%s %s / %s / %s (%s) • ",
+                        tc.getId(), helper.localizedNumber(stats.getActive()),
+                        helper.localizedNumber(stats.getPeak()), limit,
+                        helper.localizedNumber(stats.getRejected())));
+            }
+            if (traffic.length() > 0) {
+                trafficClasses = traffic
+                        .append("active / peak / max (rejected)").toString();
+            }
+        }
+        helper.encloseLabel("thread-pool", threadPool, showTechInfo);
+        helper.encloseLabel("traffic-classes", trafficClasses, showTechInfo);
+
         /*
          * Connections info: correct Dao/Service count for this connection.
          */
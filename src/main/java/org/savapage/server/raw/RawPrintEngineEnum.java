@@ -0,0 +1,67 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.raw;
+
+/**
+ * Connection engine used by {@link RawPrintServer} to handle accepted client
+ * sockets.
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public enum RawPrintEngineEnum {
+
+    /**
+     * A new (platform) thread for each accepted connection. This is the legacy
+     * behavior, now bounded by the maximum number of concurrent connections.
+     */
+    THREAD,
+
+    /**
+     * A bounded pool of reusable worker threads.
+     */
+    POOL;
+
+    /**
+     * Gets the enum value from a (case insensitive) string.
+     *
+     * @param value
+     *            The string value.
+     * @param dfault
+     *            The default when value is {@code null} or not found.
+     * @return The enum value.
+     */
+    public static RawPrintEngineEnum valueOf(final String value,
+            final RawPrintEngineEnum dfault) {
+        if (value != null) {
+            for (final RawPrintEngineEnum engine : values()) {
+                if (engine.toString().equalsIgnoreCase(value.trim())) {
+                    return engine;
+                }
+            }
+        }
+        return dfault;
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.raw;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental, byte-level scanner of the PJL/PostScript header of an IP Print
+ * job.
+ * <p>
+ * All bytes read from the input stream are kept in a single growing buffer,
+ * which is handed over as read-ahead bytes to the print processor when the
+ * header is scanned. Header lines are matched in place: a {@link String} is
+ * only created for the few lines that carry a value of interest.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+final class RawPrintHeaderParser {
+
+    /**
+     * Initial buffer size.
+     */
+    private static final int BUFFER_SIZE_INITIAL = 8192;
+
+    /**
+     * Minimal number of free bytes in the buffer before reading.
+     */
+    private static final int READ_CHUNK_SIZE = 4096;
+
+    /**
+     * The byte marking the end of the print job.
+     */
+    private static final int BYTE_END_OF_PRINTJOB = 4;
+
+    /**
+     * CR (carriage return) byte.
+     */
+    private static final int BYTE_CR = 13;
+
+    /**
+     * LF (NL line feed, new line) byte.
+     */
+    private static final int BYTE_LF = 10;
+
+    /**
+     * The input stream.
+     */
+    private final InputStream istr;
+
+    /**
+     * All bytes read so far.
+     */
+    private byte[] buf;
+
+    /**
+     * Number of valid bytes in {@link #buf}.
+     */
+    private int count;
+
+    /**
+     * Scan position: start of the next line.
+     */
+    private int pos;
+
+    /**
+     * Start offset of the current line.
+     */
+    private int lineStart;
+
+    /**
+     * End offset (exclusive, delimiter not included) of the current line.
+     */
+    private int lineEnd;
+
+    /**
+     * {@code true} when end of stream is reached.
+     */
+    private boolean eof;
+
+    /**
+     * @param input
+     *            The input stream to scan.
+     */
+    RawPrintHeaderParser(final InputStream input) {
+        this.istr = input;
+        this.buf = new byte[BUFFER_SIZE_INITIAL];
+    }
+
+    /**
+     * Converts an ASCII header token to bytes.
+     *
+     * @param token
+     *            The token.
+     * @return The bytes.
+     */
+    static byte[] toBytes(final String token) {
+        return token.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Reads more bytes into the buffer.
+     *
+     * @return {@code false} when end of stream.
+     * @throws IOException
+     *             When read error.
+     */
+    private boolean fill() throws IOException {
+
+        if (this.eof) {
+            return false;
+        }
+
+        if (this.buf.length - this.count < READ_CHUNK_SIZE) {
+            this.buf = Arrays.copyOf(this.buf,
+                    Math.max(2 * this.buf.length, this.count + READ_CHUNK_SIZE));
+        }
+
+        final int n = this.istr.read(this.buf, this.count,
+                this.buf.length - this.count);
+
+        if (n < 0) {
+            this.eof = true;
+            return false;
+        }
+        this.count += n;
+        return true;
+    }
+
+    /**
+     * Advances to the next line, delimited with CR, LF or
+     * {@link #BYTE_END_OF_PRINTJOB}.
+     *
+     * @return {@code false} when nothing to read.
+     * @throws IOException
+     *             When read error.
+     */
+    boolean nextLine() throws IOException {
+
+        if (this.pos >= this.count && !this.fill()) {
+            return false;
+        }
+
+        this.lineStart = this.pos;
+
+        while (true) {
+
+            while (this.pos < this.count) {
+
+                final int iByte = this.buf[this.pos++] & 0xFF;
+
+                if (iByte == BYTE_LF || iByte == BYTE_CR
+                        || iByte == BYTE_END_OF_PRINTJOB) {
+                    this.lineEnd = this.pos - 1;
+                    return true;
+                }
+            }
+
+            if (!this.fill()) {
+                this.lineEnd = this.pos;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} when current line is empty.
+     */
+    boolean isLineEmpty() {
+        return this.lineEnd == this.lineStart;
+    }
+
+    /**
+     * @param prefix
+     *            The prefix bytes.
+     * @return {@code true} when current line starts with prefix.
+     */
+    boolean lineStartsWith(final byte[] prefix) {
+
+        if (this.lineEnd - this.lineStart < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (this.buf[this.lineStart + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the current line starts with whitespace separated words that
+     * are equal (ignoring ASCII case) to the tokens. Leading whitespace is
+     * ignored.
+     *
+     * @param tokens
+     *            The token bytes.
+     * @return {@code true} when line starts with the tokens.
+     */
+    boolean lineStartsWithTokens(final byte[]... tokens) {
+
+        int i = this.lineStart;
+
+        for (final byte[] token : tokens) {
+
+            while (i < this.lineEnd && isWhitespace(this.buf[i])) {
+                i++;
+            }
+            if (this.lineEnd - i < token.length) {
+                return false;
+            }
+            for (int j = 0; j < token.length; j++, i++) {
+                if (toUpperAscii(this.buf[i]) != toUpperAscii(token[j])) {
+                    return false;
+                }
+            }
+            if (i < this.lineEnd && !isWhitespace(this.buf[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param b
+     *            The byte.
+     * @return {@code true} when whitespace.
+     */
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t' || b == '\f' || b == 0x0B;
+    }
+
+    /**
+     * @param b
+     *            The byte.
+     * @return The upper case ASCII byte.
+     */
+    private static int toUpperAscii(final byte b) {
+        if (b >= 'a' && b <= 'z') {
+            return b - ('a' - 'A');
+        }
+        return b;
+    }
+
+    /**
+     * @return The current line as string.
+     */
+    String getLine() {
+        return this.getLine(0);
+    }
+
+    /**
+     * @param offset
+     *            Offset in the current line.
+     * @return The remainder of the current line as string, starting at offset.
+     */
+    String getLine(final int offset) {
+        final int start = Math.min(this.lineStart + offset, this.lineEnd);
+        return new String(this.buf, start, this.lineEnd - start,
+                StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return The text of all lines scanned so far.
+     */
+    String getScannedText() {
+        return new String(this.buf, 0, this.pos, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Gets all bytes read from the input stream so far, i.e. the bytes that
+     * must be processed before the rest of the input stream. The buffer is
+     * returned as is when it is exactly filled, otherwise a trimmed copy is
+     * returned.
+     *
+     * @return The read-ahead bytes.
+     */
+    byte[] getReadAheadBytes() {
+        if (this.count == this.buf.length) {
+            return this.buf;
+        }
+        return Arrays.copyOf(this.buf, this.count);
+    }
+
+}
@@ -24,17 +24,19 @@
  */
 package org.savapage.server.raw;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -99,12 +101,29 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
      */
     private static final int POLL_FOR_ACTIVE_REQUESTS_MSEC = 1000;
 
+    /**
+     * The default maximum queue length for incoming connection indications (a
+     * request to connect). This is the {@link ServerSocket} default.
+     */
+    public static final int DEFAULT_BACKLOG = 50;
+
+    /**
+     * The default maximum number of connections handled concurrently.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 200;
+
+    /**
+     * Idle time in seconds after which a {@link RawPrintEngineEnum#POOL} worker
+     * thread is terminated.
+     */
+    private static final long POOL_KEEP_ALIVE_SECS = 60L;
+
     /** */
     private static final QueueService QUEUE_SERVICE =
             ServiceContext.getServiceFactory().getQueueService();
 
     /** */
-    private boolean keepAcceptingRequests = true;
+    private volatile boolean keepAcceptingRequests = true;
 
     /**
      * The total number of print job requests.
@@ -116,25 +135,68 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
      */
     private final AtomicInteger activeRequests = new AtomicInteger(0);
 
+    /**
+     * Time (milliseconds) since the acceptor is blocked waiting for a free
+     * connection slot, or zero when not blocked. While blocked, new clients
+     * wait in the socket backlog.
+     */
+    private volatile long acceptBlockedSince;
+
+    /**
+     * The number of times the acceptor had to wait for a free connection slot
+     * before accepting the next connection.
+     */
+    private final AtomicInteger throttledAccepts = new AtomicInteger(0);
+
+    /**
+     * The accumulated time (milliseconds) the acceptor waited for a free
+     * connection slot.
+     */
+    private final AtomicLong acceptWaitMsecTotal = new AtomicLong(0);
+
+    /**
+     * The longest time (milliseconds) the acceptor waited for a free
+     * connection slot.
+     */
+    private final AtomicLong acceptWaitMsecMax = new AtomicLong(0);
+
+    /**
+     * The accumulated time (milliseconds) between accepting a connection and
+     * the start of its handling.
+     */
+    private final AtomicLong handoffMsecTotal = new AtomicLong(0);
+
     /**
      * The port initialized with default value.
      */
     private int port = DEFAULT_PORT;
 
     /**
-     * The byte in the {@link InputStream} marking the end of the print job.
+     * The connection engine.
+     */
+    private final RawPrintEngineEnum engine;
+
+    /**
+     * The maximum queue length for incoming connection indications.
      */
-    private static final int BYTE_END_OF_PRINTJOB = 4;
+    private final int backlog;
 
     /**
-     * CR (carriage return) byte.
+     * The maximum number of connections handled concurrently.
      */
-    private static final int BYTE_CR = 13;
+    private final int maxConnections;
 
     /**
-     * LF (NL line feed, new line) byte.
+     * Connection slots: a permit is acquired <i>before</i> a connection is
+     * accepted and released when handling is finished. When no permit is
+     * available, new connections remain in the socket backlog (backpressure).
      */
-    private static final int BYTE_LF = 10;
+    private final Semaphore connectionSlots;
+
+    /**
+     * The worker pool for {@link RawPrintEngineEnum#POOL}, or {@code null}.
+     */
+    private ExecutorService workerPool;
 
     /**
      * The PJL command prefix (@PJL)
@@ -146,15 +208,51 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
     private static final String PJL_TOKEN_JOB = "JOB";
     private static final String PJL_TOKEN_NAME = "NAME";
 
+    /** */
+    private static final String PS_PFX_TITLE = "%%Title: ";
+    /** */
+    private static final String PS_PFX_USERID = "%%For: ";
+
+    /** */
+    private static final byte[] BYTES_HEADER_PJL =
+            RawPrintHeaderParser.toBytes(DocContent.HEADER_PJL);
+    /** */
+    private static final byte[] BYTES_HEADER_PS =
+            RawPrintHeaderParser.toBytes(DocContent.HEADER_PS);
+    /** */
+    private static final byte[] BYTES_PJL_COMMAND_PFX =
+            RawPrintHeaderParser.toBytes(PJL_COMMAND_PFX);
+    /** */
+    private static final byte[] BYTES_PJL_TOKEN_SET =
+            RawPrintHeaderParser.toBytes(PJL_TOKEN_SET);
+    /** */
+    private static final byte[] BYTES_PJL_TOKEN_USERNAME =
+            RawPrintHeaderParser.toBytes(PJL_TOKEN_USERNAME);
+    /** */
+    private static final byte[] BYTES_PJL_TOKEN_JOB =
+            RawPrintHeaderParser.toBytes(PJL_TOKEN_JOB);
+    /** */
+    private static final byte[] BYTES_PJL_TOKEN_NAME =
+            RawPrintHeaderParser.toBytes(PJL_TOKEN_NAME);
+    /** */
+    private static final byte[] BYTES_PS_PFX_TITLE =
+            RawPrintHeaderParser.toBytes(PS_PFX_TITLE);
+    /** */
+    private static final byte[] BYTES_PS_PFX_USERID =
+            RawPrintHeaderParser.toBytes(PS_PFX_USERID);
+    /** */
+    private static final byte[] BYTES_PS_PFX_BEGIN_PROLOG =
+            RawPrintHeaderParser.toBytes("%%BeginProlog");
+
     /**
-     * The initial {@link StringBuilder} capacity for reading a line.
+     * Max number of header lines to trace log.
      */
-    private static final int STRINGBUILDER_LINE_CAPACITY = 128;
+    private static final int TRACE_MAX_HEADER_LINES = 30;
 
     /**
-     *
+     * Handler of an accepted client socket.
      */
-    class SocketServerThread extends Thread {
+    class SocketServerThread implements Runnable {
 
         /**
          * Waiting max. 5 seconds while reading the socket for meaningful data.
@@ -171,6 +269,11 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
          */
         private final RawPrintServer myServer;
 
+        /**
+         * Time (milliseconds) the socket was accepted.
+         */
+        private final long acceptTime;
+
         /**
          *
          * @param socket
@@ -181,16 +284,26 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
         public SocketServerThread(final Socket socket,
                 final RawPrintServer server) {
 
-            super("SocketServerThread");
-
             mySocket = socket;
             myServer = server;
+            acceptTime = System.currentTimeMillis();
         }
 
         @Override
         public void run() {
 
-            myServer.onRequestStart(mySocket);
+            try {
+                myServer.onRequestStart(mySocket, this.acceptTime);
+                this.handle();
+            } finally {
+                myServer.onRequestFinish();
+            }
+        }
+
+        /**
+         * Handles the socket.
+         */
+        private void handle() {
 
             try {
 
@@ -237,87 +350,65 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
                 // All data exchanged: close socket
                 IOHelper.closeQuietly(mySocket);
             }
-
-            myServer.onRequestFinish();
         }
     }
 
     /**
+     * Creates a server with {@link RawPrintEngineEnum#THREAD} engine, and
+     * default backlog and connection limit.
      *
      * @param iPort
      *            The port to listen to.
      */
     public RawPrintServer(final int iPort) {
-        this.port = iPort;
+        this(iPort, RawPrintEngineEnum.THREAD, DEFAULT_BACKLOG,
+                DEFAULT_MAX_CONNECTIONS);
     }
 
     /**
-     * Reads a line (delimited with CR, LF or {@link #BYTE_END_OF_PRINTJOB}.
      *
-     * @param istr
-     *            {@link InputStream} to read the line from.
-     * @param ostr
-     *            {@link OutputStream} to write the resulting line to.
-     * @return {@code null} when nothing to read.
-     * @throws IOException
-     *             When read or write error.
+     * @param iPort
+     *            The port to listen to.
+     * @param connectionEngine
+     *            The connection engine.
+     * @param socketBacklog
+     *            The maximum queue length for incoming connection indications.
+     *            If value LT or EQ zero, {@link #DEFAULT_BACKLOG} is used.
+     * @param connectionLimit
+     *            The maximum number of connections handled concurrently. If
+     *            value LT or EQ zero, {@link #DEFAULT_MAX_CONNECTIONS} is used.
      */
-    private static String readLine(final InputStream istr,
-            final OutputStream ostr) throws IOException {
-
-        StringBuilder line = null;
-
-        int iByte = istr.read();
-
-        while ((-1 < iByte)) {
-
-            ostr.write(iByte);
+    public RawPrintServer(final int iPort,
+            final RawPrintEngineEnum connectionEngine, final int socketBacklog,
+            final int connectionLimit) {
 
-            if (line == null) {
-                line = new StringBuilder(STRINGBUILDER_LINE_CAPACITY);
-            }
-
-            if ((iByte == BYTE_LF) || (iByte == BYTE_CR)
-                    || (BYTE_END_OF_PRINTJOB == iByte)) {
-                break;
-            }
+        super("RawPrintServer");
 
-            line.append((char) iByte);
+        this.port = iPort;
+        this.engine = connectionEngine;
 
-            iByte = istr.read();
+        if (socketBacklog > 0) {
+            this.backlog = socketBacklog;
+        } else {
+            this.backlog = DEFAULT_BACKLOG;
         }
-
-        if (line == null) {
-            return null;
+        if (connectionLimit > 0) {
+            this.maxConnections = connectionLimit;
+        } else {
+            this.maxConnections = DEFAULT_MAX_CONNECTIONS;
         }
-        return line.toString();
+        this.connectionSlots = new Semaphore(this.maxConnections);
     }
 
     /**
-     * Skips any PJL command lines.
+     * Splits header text into non-blank lines.
      *
-     * @param istr
-     *            {@link InputStream} to read the line from.
-     * @param ostr
-     *            {@link OutputStream} to write the resulting line to.
-     * @param headerLines
-     *            List to append the header lines on.
-     * @return The first non-PJL command header line, or {@code null} when
-     *         nothing to read.
-     * @throws IOException
-     *             When read or write error.
+     * @param headerText
+     *            The header text.
+     * @return The header lines.
      */
-    private static String skipPJLCommandLines(final InputStream istr,
-            final OutputStream ostr, final List<String> headerLines)
-            throws IOException {
-
-        String line = readLine(istr, ostr);
-        while (line != null
-                && (line.isEmpty() || line.startsWith(PJL_COMMAND_PFX))) {
-            headerLines.add(line);
-            line = readLine(istr, ostr);
-        }
-        return line;
+    private static String[] splitHeaderLines(final String headerText) {
+        return StringUtils.split(headerText, "\r\n\u0004");
     }
 
     /**
@@ -325,17 +416,16 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
      *
      * @param comment
      *            The comment as first lien warning.
-     * @param headerLines
-     *            List of header lines.
+     * @param headerText
+     *            The header text.
      */
     private static void warnHeaderLines(final String comment,
-            final List<String> headerLines) {
+            final String headerText) {
         final StringBuilder msg = new StringBuilder(comment);
         final String lf = SystemPropertyEnum.LINE_SEPARATOR.getValue();
-        for (final String line : headerLines) {
-            final String stripped = StringUtils.strip(line, "\r\n");
-            if (StringUtils.isNotBlank(stripped)) {
-                msg.append(lf).append(stripped);
+        for (final String line : splitHeaderLines(headerText)) {
+            if (StringUtils.isNotBlank(line)) {
+                msg.append(lf).append(line);
             }
         }
         LOGGER.warn(msg.toString());
@@ -423,21 +513,17 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
         String title = null;
         String userid = null;
 
-        final String PFX_TITLE = "%%Title: ";
-        final String PFX_USERID = "%%For: ";
-        final String PFX_BEGIN_PROLOG = "%%BeginProlog";
-
         final String originatorIp = socket.getInetAddress().getHostAddress();
 
+        final RawPrintHeaderParser header = new RawPrintHeaderParser(istr);
+
         /*
          * First line
          */
-        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
-
-        String strline = null;
+        boolean hasLine;
 
         try {
-            strline = readLine(istr, bos);
+            hasLine = header.nextLine();
         } catch (SocketTimeoutException e) {
             throw new RawPrintException(String.format(
                     "No IP Print data received from "
@@ -448,49 +534,55 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
         /*
          * Just a ping... when does this happen? See Mantis #529
          */
-        if (strline == null) {
+        if (!hasLine) {
             if (LOGGER.isTraceEnabled()) {
                 LOGGER.trace("no data from " + originatorIp);
             }
             return;
         }
 
-        //
-        final List<String> headerLines = new ArrayList<>();
-
         /*
          * Mantis #779: Accept JetDirect PostScript stream with UEL header.
+         *
+         * Skip PJL Command lines, and search them for job and user name.
          */
-        if (strline.startsWith(DocContent.HEADER_PJL)) {
-            strline = skipPJLCommandLines(istr, bos, headerLines);
-        }
+        if (header.lineStartsWith(BYTES_HEADER_PJL)) {
 
-        /*
-         * Search PJL Commands for job and user name.
-         */
-        for (final String pjlLine : headerLines) {
+            hasLine = header.nextLine();
 
-            if (title != null && userid != null) {
-                break;
-            }
-            if (title == null) {
-                title = getPJLJobName(pjlLine);
-            }
-            if (userid == null) {
-                userid = getPJLUserName(pjlLine);
+            while (hasLine && (header.isLineEmpty()
+                    || header.lineStartsWith(BYTES_PJL_COMMAND_PFX))) {
+
+                if (title == null
+                        && header.lineStartsWithTokens(BYTES_PJL_COMMAND_PFX,
+                                BYTES_PJL_TOKEN_JOB, BYTES_PJL_TOKEN_NAME)) {
+                    title = getPJLJobName(header.getLine());
+                }
+                if (userid == null && header.lineStartsWithTokens(
+                        BYTES_PJL_COMMAND_PFX, BYTES_PJL_TOKEN_SET,
+                        BYTES_PJL_TOKEN_USERNAME)) {
+                    userid = getPJLUserName(header.getLine());
+                }
+                hasLine = header.nextLine();
             }
         }
 
         /*
          * Check for PostScript signature.
          */
-        if (!strline.startsWith(DocContent.HEADER_PS)) {
+        if (!hasLine || !header.lineStartsWith(BYTES_HEADER_PS)) {
+
+            final String firstLine;
+            if (hasLine) {
+                firstLine = StringUtils.substring(header.getLine(), 0, 10);
+            } else {
+                firstLine = "";
+            }
 
             consumeWithoutProcessing(istr);
 
             throw new RawPrintException("IP Print data from [" + originatorIp
-                    + "] is not PostScript. Header ["
-                    + StringUtils.substring(strline, 0, 10) + "]");
+                    + "] is not PostScript. Header [" + firstLine + "]");
         }
 
         /*
@@ -498,38 +590,38 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
          */
         if (title == null || userid == null) {
 
-            while (strline != null) {
-
-                headerLines.add(strline);
+            while (hasLine) {
 
-                if (strline.startsWith(PFX_BEGIN_PROLOG)) {
+                if (header.lineStartsWith(BYTES_PS_PFX_BEGIN_PROLOG)) {
                     break;
                 }
 
-                if (title == null && strline.startsWith(PFX_TITLE)) {
+                if (title == null
+                        && header.lineStartsWith(BYTES_PS_PFX_TITLE)) {
                     title = stripParentheses(
-                            StringUtils.removeStart(strline, PFX_TITLE));
+                            header.getLine(BYTES_PS_PFX_TITLE.length));
                 }
 
-                if (userid == null && strline.startsWith(PFX_USERID)) {
+                if (userid == null
+                        && header.lineStartsWith(BYTES_PS_PFX_USERID)) {
                     userid = stripParentheses(
-                            StringUtils.removeStart(strline, PFX_USERID));
+                            header.getLine(BYTES_PS_PFX_USERID.length));
                 }
 
-                strline = readLine(istr, bos);
+                hasLine = header.nextLine();
             }
         }
 
         if (title == null || userid == null) {
 
             warnHeaderLines("IP Print failed: title and/or user missing",
-                    headerLines);
+                    header.getScannedText());
 
             consumeWithoutProcessing(istr);
 
-            throw new IOException(
-                    "IP Print job from [" + originatorIp + "] has no ["
-                            + PFX_TITLE + "] and/or [" + PFX_USERID + "]");
+            throw new IOException("IP Print job from [" + originatorIp
+                    + "] has no [" + PS_PFX_TITLE + "] and/or ["
+                    + PS_PFX_USERID + "]");
         }
 
         // Mantis #503
@@ -538,14 +630,19 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
 
         if (LOGGER.isTraceEnabled()) {
 
-            final int MAX_LINES = 30;
+            final String[] headerLines =
+                    splitHeaderLines(header.getScannedText());
+
             int i;
-            for (i = 0; i < headerLines.size() && i < MAX_LINES; i++) {
-                LOGGER.trace(headerLines.get(i));
+            for (i = 0; i < headerLines.length
+                    && i < TRACE_MAX_HEADER_LINES; i++) {
+                LOGGER.trace(headerLines[i]);
             }
-            if (i > MAX_LINES) {
-                LOGGER.trace(
-                        "... " + Integer.valueOf(i - MAX_LINES) + "more lines");
+            if (headerLines.length > TRACE_MAX_HEADER_LINES) {
+                LOGGER.trace("... "
+                        + Integer.valueOf(
+                                headerLines.length - TRACE_MAX_HEADER_LINES)
+                        + " more lines");
             }
         }
 
@@ -617,7 +714,8 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
                         processor = new DocContentPrintProcessor(queue,
                                 originatorIp, title, assignedUser);
 
-                        processor.setReadAheadInputBytes(bos.toByteArray());
+                        processor.setReadAheadInputBytes(
+                                header.getReadAheadBytes());
 
                         processor.processAssignedUser(assignedUser, userid);
 
@@ -727,11 +825,11 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
         try {
             /*
              * From Javadoc: "The maximum queue length for incoming connection
-             * indications (a request to connect) is set to <code>50</code>. If
-             * a connection indication arrives when the queue is full, the
-             * connection is refused."
+             * indications (a request to connect) is set to the backlog
+             * parameter. If a connection indication arrives when the queue is
+             * full, the connection is refused."
              */
-            serverSocket = new ServerSocket(this.port);
+            serverSocket = new ServerSocket(this.port, this.backlog);
 
             /**
              * A call to accept() for this ServerSocket will block for only
@@ -745,30 +843,115 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
             throw new SpException(ex);
         }
 
-        SpInfo.instance().log(String
-                .format("IP Print Server started on port %d.", this.port));
+        if (this.engine == RawPrintEngineEnum.POOL) {
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    this.maxConnections, this.maxConnections,
+                    POOL_KEEP_ALIVE_SECS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), runnable -> {
+                        final Thread thread =
+                                new Thread(runnable, "SocketServerThread");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            this.workerPool = pool;
+        }
+
+        SpInfo.instance().log(String.format(
+                "IP Print Server started on port %d "
+                        + "(engine %s, backlog %d, max connections %d).",
+                this.port, this.engine, this.backlog, this.maxConnections));
 
         while (this.keepAcceptingRequests) {
 
+            try {
+                if (!this.acquireConnectionSlot()) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                LOGGER.warn("IP Print Server is interrupted.");
+                break;
+            }
+
+            boolean handedOver = false;
+
             try {
 
                 final Socket socket = serverSocket.accept();
-                final SocketServerThread st =
+
+                final SocketServerThread handler =
                         new SocketServerThread(socket, this);
 
-                st.start();
+                if (this.workerPool == null) {
+                    new Thread(handler, "SocketServerThread").start();
+                } else {
+                    this.workerPool.execute(handler);
+                }
+                handedOver = true;
 
             } catch (SocketTimeoutException ex) {
                 continue;
             } catch (IOException e) {
                 LOGGER.error(e.getMessage(), e);
                 break;
+            } finally {
+                if (!handedOver) {
+                    this.connectionSlots.release();
+                }
             }
         }
 
         IOHelper.closeQuietly(serverSocket);
     }
 
+    /**
+     * Acquires a connection slot, waiting at most
+     * {@link #SERVER_SOCKET_SO_TIMEOUT_MSEC} so the accept loop can check if
+     * it must stop. The time the acceptor is blocked is measured over all
+     * attempts, from the first failed attempt till a slot is acquired.
+     *
+     * @return {@code true} when acquired.
+     * @throws InterruptedException
+     *             When thread is interrupted.
+     */
+    private boolean acquireConnectionSlot() throws InterruptedException {
+
+        boolean acquired = this.connectionSlots.tryAcquire();
+
+        if (!acquired) {
+
+            if (this.acceptBlockedSince == 0) {
+                this.acceptBlockedSince = System.currentTimeMillis();
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("all [{}] connection slots in use.",
+                            this.maxConnections);
+                }
+            }
+
+            acquired = this.connectionSlots.tryAcquire(
+                    SERVER_SOCKET_SO_TIMEOUT_MSEC, TimeUnit.MILLISECONDS);
+        }
+
+        final long blockedSince = this.acceptBlockedSince;
+
+        if (acquired && blockedSince != 0) {
+
+            this.acceptBlockedSince = 0;
+
+            final long waitMsec = System.currentTimeMillis() - blockedSince;
+
+            this.throttledAccepts.incrementAndGet();
+            this.acceptWaitMsecTotal.addAndGet(waitMsec);
+
+            long max = this.acceptWaitMsecMax.get();
+            while (waitMsec > max
+                    && !this.acceptWaitMsecMax.compareAndSet(max, waitMsec)) {
+                max = this.acceptWaitMsecMax.get();
+            }
+        }
+        return acquired;
+    }
+
     /**
      *
      * @return The port number.
@@ -777,13 +960,102 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
         return port;
     }
 
+    /**
+     * @return The connection engine.
+     */
+    public RawPrintEngineEnum getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return The maximum queue length for incoming connection indications.
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * @return The maximum number of connections handled concurrently.
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return The total number of print job requests.
+     */
+    public int getTotalRequests() {
+        return this.totalRequests.get();
+    }
+
+    /**
+     * @return The number of active print job requests.
+     */
+    public int getActiveRequests() {
+        return this.activeRequests.get();
+    }
+
+    /**
+     * @return The time (milliseconds) the acceptor is blocked so far, waiting
+     *         for a free connection slot, or zero when not blocked. While
+     *         blocked, new clients queue up in the socket backlog.
+     */
+    public long getAcceptBlockedMsec() {
+        final long blockedSince = this.acceptBlockedSince;
+        if (blockedSince == 0) {
+            return 0;
+        }
+        return System.currentTimeMillis() - blockedSince;
+    }
+
+    /**
+     * @return The number of times accepting a connection was delayed, because
+     *         the connection limit was reached.
+     */
+    public int getThrottledAccepts() {
+        return this.throttledAccepts.get();
+    }
+
+    /**
+     * @return The accumulated time (milliseconds) accepting connections was
+     *         delayed, because the connection limit was reached.
+     */
+    public long getAcceptWaitMsecTotal() {
+        return this.acceptWaitMsecTotal.get();
+    }
+
+    /**
+     * @return The longest time (milliseconds) accepting a connection was
+     *         delayed, because the connection limit was reached.
+     */
+    public long getAcceptWaitMsecMax() {
+        return this.acceptWaitMsecMax.get();
+    }
+
+    /**
+     * @return The average time (milliseconds) between accepting a connection
+     *         and the start of its handling.
+     */
+    public long getHandoffMsecAverage() {
+        final int total = this.totalRequests.get();
+        if (total == 0) {
+            return 0;
+        }
+        return this.handoffMsecTotal.get() / total;
+    }
+
     /**
      * Increments the number of (active) print job requests.
      *
      * @param client
      *            The client socket.
+     * @param acceptTime
+     *            Time (milliseconds) the client socket was accepted.
      */
-    protected void onRequestStart(final Socket client) {
+    protected void onRequestStart(final Socket client, final long acceptTime) {
+
+        this.handoffMsecTotal
+                .addAndGet(System.currentTimeMillis() - acceptTime);
 
         this.totalRequests.incrementAndGet();
         this.activeRequests.incrementAndGet();
@@ -800,6 +1072,7 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
      */
     protected void onRequestFinish() {
         this.activeRequests.decrementAndGet();
+        this.connectionSlots.release();
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("request #" + this.totalRequests.get() + " ended");
@@ -825,6 +1098,16 @@ public final class RawPrintServer extends Thread implements ServiceEntryPoint {
                 break;
             }
         }
+
+        if (this.workerPool != null) {
+            this.workerPool.shutdown();
+        }
+
+        SpInfo.instance().log(String.format(
+                "IP Print Server: requests [%d], throttled accepts [%d], "
+                        + "max accept wait [%d] msec.",
+                this.getTotalRequests(), this.getThrottledAccepts(),
+                this.getAcceptWaitMsecMax()));
     }
 
 }
@@ -0,0 +1,727 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.session;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.savapage.core.SpInfo;
+import org.savapage.core.config.WebAppTypeEnum;
+import org.savapage.core.util.DateUtil;
+import org.savapage.server.cluster.ClusterRegionEnum;
+import org.savapage.server.cluster.ClusterStateManager;
+import org.savapage.server.cluster.ClusterStateStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Concurrent registry of authenticated Web App sessions, their IP addresses
+ * and users.
+ * <p>
+ * Lookups (like {@link #getAuthUserByIpAddr(String)} for each IPP and IP
+ * Print job) are lock-free. Updates of an IP address are atomic per IP
+ * address, so login storms do not contend on a global lock. Orphaned IP
+ * addresses are pruned by a background task.
+ * </p>
+ * <p>
+ * When clustered, the most recent user of an IP address is written through to
+ * the {@link ClusterStateStore}, so IPP and IP Print jobs are resolved to the
+ * user on any server node. The entry holds a lease for each node with an
+ * authenticated session of the IP address, and is removed when the last node
+ * releases it. A node renews its leases every
+ * {@link #LEASE_RENEW_PERIOD_MSEC}, and a lease expires after
+ * {@link #LEASE_TTL_MSEC}.
+ * </p>
+ * <p>
+ * Failure mode: when a node crashes or is restarted, it does not release its
+ * leases. An IP address it owned keeps resolving to the most recent user
+ * until the lease expires, so IPP and IP Print jobs from that address can be
+ * charged to that user for at most {@link #LEASE_TTL_MSEC}.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class AuthSessionRegistry {
+
+    /** */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(AuthSessionRegistry.class);
+
+    /** 30 minutes. */
+    private static final long PRUNE_PERIOD_MSEC =
+            30 * DateUtil.DURATION_MSEC_MINUTE;
+
+    /** 10 minutes. */
+    private static final long LEASE_RENEW_PERIOD_MSEC =
+            10 * DateUtil.DURATION_MSEC_MINUTE;
+
+    /**
+     * Lease time of a node on a clustered IP address: three renew periods.
+     */
+    private static final long LEASE_TTL_MSEC = 3 * LEASE_RENEW_PERIOD_MSEC;
+
+    /**
+     * An authenticated session.
+     */
+    private static final class AuthSession {
+
+        /** */
+        private final String ipAddr;
+
+        /** */
+        private final WebAppTypeEnum webAppType;
+
+        /**
+         * User of a User Web App (variant), or {@code null}.
+         */
+        private final String webAppUser;
+
+        /**
+         * @param ip
+         *            IP address.
+         * @param type
+         *            Web App type.
+         * @param user
+         *            User of a User Web App (variant), or {@code null}.
+         */
+        AuthSession(final String ip, final WebAppTypeEnum type,
+                final String user) {
+            this.ipAddr = ip;
+            this.webAppType = type;
+            this.webAppUser = user;
+        }
+    }
+
+    /**
+     * Value of a {@link ClusterRegionEnum#IP_USER} entry: the most recent user
+     * of an IP address and the leases of the server nodes that own the entry.
+     * Encoded as {@code node=expiry,node=expiry/user}.
+     */
+    private static final class ClusterIpUser {
+
+        /**
+         * Separator of the (alphanumeric) node leases and the user.
+         */
+        private static final char USER_SEPARATOR = '/';
+
+        /** */
+        private static final String LEASE_SEPARATOR = ",";
+
+        /** */
+        private static final char EXPIRY_SEPARATOR = '=';
+
+        /**
+         * Lease expiry time (value) by node id (key).
+         */
+        private final Map<String, Long> leases = new TreeMap<>();
+
+        /** */
+        private String user;
+
+        /**
+         * @param encoded
+         *            The encoded value, or {@code null}.
+         * @return The decoded value.
+         */
+        static ClusterIpUser decode(final String encoded) {
+
+            final ClusterIpUser ipUser = new ClusterIpUser();
+
+            if (encoded == null) {
+                return ipUser;
+            }
+
+            final int iSeparator = encoded.indexOf(USER_SEPARATOR);
+
+            if (iSeparator > 0) {
+                for (final String lease : encoded.substring(0, iSeparator)
+                        .split(LEASE_SEPARATOR)) {
+                    final int iExpiry = lease.indexOf(EXPIRY_SEPARATOR);
+                    if (iExpiry > 0) {
+                        ipUser.leases.put(lease.substring(0, iExpiry),
+                                Long.valueOf(NumberUtils.toLong(
+                                        lease.substring(iExpiry + 1))));
+                    }
+                }
+            }
+            ipUser.user = encoded.substring(iSeparator + 1);
+            return ipUser;
+        }
+
+        /**
+         * Removes expired leases.
+         *
+         * @param now
+         *            Current time.
+         * @return {@code true} if a lease is left.
+         */
+        boolean removeExpired(final long now) {
+            this.leases.values().removeIf(expiry -> expiry.longValue() < now);
+            return !this.leases.isEmpty();
+        }
+
+        /**
+         * @return The encoded value.
+         */
+        String encode() {
+            final StringBuilder builder = new StringBuilder();
+            this.leases.forEach((node, expiry) -> {
+                if (builder.length() > 0) {
+                    builder.append(LEASE_SEPARATOR);
+                }
+                builder.append(node).append(EXPIRY_SEPARATOR).append(expiry);
+            });
+            return builder.append(USER_SEPARATOR).append(this.user)
+                    .toString();
+        }
+    }
+
+    /**
+     * Result of an unbound session.
+     */
+    public static final class UnboundSession {
+
+        /** */
+        private final WebAppTypeEnum webAppType;
+
+        /** */
+        private final String ipAddr;
+
+        /** */
+        private final String recentUser;
+
+        /**
+         * @param type
+         *            Web App type.
+         * @param ip
+         *            IP address.
+         * @param user
+         *            Most recent user of the IP address.
+         */
+        private UnboundSession(final WebAppTypeEnum type, final String ip,
+                final String user) {
+            this.webAppType = type;
+            this.ipAddr = ip;
+            this.recentUser = user;
+        }
+
+        /**
+         * @return The Web App type.
+         */
+        public WebAppTypeEnum getWebAppType() {
+            return webAppType;
+        }
+
+        /**
+         * @return The IP address.
+         */
+        public String getIpAddr() {
+            return ipAddr;
+        }
+
+        /**
+         * @return The most recent user of the IP address, removed from the
+         *         registry.
+         */
+        public String getRecentUser() {
+            return recentUser;
+        }
+    }
+
+    /**
+     * IP-address (key) with the most recent User (value) of an active
+     * authenticated WebApp Session.
+     */
+    private final Map<String, String> ipAddr2RecentUser =
+            new ConcurrentHashMap<>();
+
+    /**
+     * IP-address (key) and active authenticated WebApp Sessions (value).
+     * Updates of an entry are done in {@link ConcurrentHashMap#compute}, which
+     * also guards the entry in {@link #ipAddr2RecentUser}.
+     */
+    private final ConcurrentHashMap<String, Set<String>> ipAddr2Sessions =
+            new ConcurrentHashMap<>();
+
+    /**
+     * SessionId (key) of active authenticated WebApp Session.
+     */
+    private final Map<String, AuthSession> sessions =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Active authenticated User (key) Web App session count (value).
+     */
+    private final Map<String, Integer> users2WebAppUserCount =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Active authenticated User (key) Mail Tickets Web App session count
+     * (value).
+     */
+    private final Map<String, Integer> users2WebAppMailTicketsCount =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Active authenticated User (key) Payment Web App session count (value).
+     */
+    private final Map<String, Integer> users2WebAppPaymentCount =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Background pruning.
+     */
+    private final ScheduledExecutorService pruneExecutor;
+
+    /**
+     * The cluster store, or {@code null} when not clustered.
+     */
+    private final ClusterStateStore clusterStore;
+
+    /**
+     * The id of this server node, or {@code null} when not clustered.
+     */
+    private final String clusterNodeId;
+
+    /** */
+    private AuthSessionRegistry() {
+
+        this.clusterStore = ClusterStateManager.getStore();
+        this.clusterNodeId = ClusterStateManager.getNodeId();
+
+        this.pruneExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread =
+                    new Thread(r, AuthSessionRegistry.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.pruneExecutor.scheduleWithFixedDelay(this::onPrune,
+                PRUNE_PERIOD_MSEC, PRUNE_PERIOD_MSEC, TimeUnit.MILLISECONDS);
+
+        if (this.clusterStore != null) {
+            this.pruneExecutor.scheduleWithFixedDelay(this::onRenewLeases,
+                    LEASE_RENEW_PERIOD_MSEC, LEASE_RENEW_PERIOD_MSEC,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * The SingletonHolder is loaded on the first execution of
+     * {@link AuthSessionRegistry#instance()} or the first access to
+     * {@link SingletonHolder#INSTANCE}, not before.
+     */
+    private static class SingletonHolder {
+        public static final AuthSessionRegistry INSTANCE =
+                new AuthSessionRegistry();
+    }
+
+    /**
+     * Gets the singleton instance.
+     *
+     * @return The instance.
+     */
+    public static AuthSessionRegistry instance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Stops background pruning.
+     */
+    public void shutdown() {
+        this.pruneExecutor.shutdownNow();
+    }
+
+    /**
+     * @param webAppType
+     *            The {@link WebAppTypeEnum}.
+     * @return The map with user session counts.
+     */
+    private Map<String, Integer>
+            getUserCountMap(final WebAppTypeEnum webAppType) {
+        if (webAppType == WebAppTypeEnum.MAILTICKETS) {
+            return this.users2WebAppMailTicketsCount;
+        } else if (webAppType == WebAppTypeEnum.PAYMENT) {
+            return this.users2WebAppPaymentCount;
+        }
+        return this.users2WebAppUserCount;
+    }
+
+    /**
+     * Decrements a user session count, removing the user when zero.
+     *
+     * @param session
+     *            The session.
+     */
+    private void decrementUserCount(final AuthSession session) {
+        if (session.webAppUser != null) {
+            this.getUserCountMap(session.webAppType).computeIfPresent(
+                    session.webAppUser,
+                    (user, count) -> count.intValue() <= 1 ? null
+                            : Integer.valueOf(count.intValue() - 1));
+        }
+    }
+
+    /**
+     * Sets the most recent user of an IP address in the cluster store, and
+     * the lease of this server node.
+     *
+     * @param ipAddr
+     *            The IP address.
+     * @param user
+     *            The user.
+     */
+    private void claimClusterIpAddr(final String ipAddr, final String user) {
+        this.clusterStore.compute(ClusterRegionEnum.IP_USER, ipAddr,
+                encoded -> {
+                    final long now = System.currentTimeMillis();
+                    final ClusterIpUser ipUser = ClusterIpUser.decode(encoded);
+                    ipUser.removeExpired(now);
+                    ipUser.user = user;
+                    ipUser.leases.put(this.clusterNodeId,
+                            Long.valueOf(now + LEASE_TTL_MSEC));
+                    return ipUser.encode();
+                });
+    }
+
+    /**
+     * Renews the lease of this server node on an IP address in the cluster
+     * store. A missing entry is restored when the user is known.
+     *
+     * @param ipAddr
+     *            The IP address.
+     * @param user
+     *            The most recent user known to this node, or {@code null}.
+     */
+    private void renewClusterIpAddr(final String ipAddr, final String user) {
+        this.clusterStore.compute(ClusterRegionEnum.IP_USER, ipAddr,
+                encoded -> {
+                    if (encoded == null && user == null) {
+                        return null;
+                    }
+                    final long now = System.currentTimeMillis();
+                    final ClusterIpUser ipUser = ClusterIpUser.decode(encoded);
+                    if (!ipUser.removeExpired(now) && user != null) {
+                        ipUser.user = user;
+                    }
+                    ipUser.leases.put(this.clusterNodeId,
+                            Long.valueOf(now + LEASE_TTL_MSEC));
+                    return ipUser.encode();
+                });
+    }
+
+    /**
+     * Releases the lease of this server node on an IP address in the cluster
+     * store. The entry is removed when no node holds a lease.
+     *
+     * @param ipAddr
+     *            The IP address.
+     */
+    private void releaseClusterIpAddr(final String ipAddr) {
+        this.clusterStore.compute(ClusterRegionEnum.IP_USER, ipAddr,
+                encoded -> {
+                    if (encoded == null) {
+                        return null;
+                    }
+                    final ClusterIpUser ipUser = ClusterIpUser.decode(encoded);
+                    ipUser.leases.remove(this.clusterNodeId);
+                    if (!ipUser.removeExpired(System.currentTimeMillis())) {
+                        return null;
+                    }
+                    return ipUser.encode();
+                });
+    }
+
+    /**
+     * Gets the authenticated user on remote host using IP address of remote
+     * host.
+     *
+     * @param ipAddr
+     *            The IP address of the remote host.
+     * @return {@code null} when user is NOT found.
+     */
+    public String getAuthUserByIpAddr(final String ipAddr) {
+        if (this.clusterStore != null) {
+            final String encoded =
+                    this.clusterStore.get(ClusterRegionEnum.IP_USER, ipAddr);
+            if (encoded == null) {
+                return null;
+            }
+            final ClusterIpUser ipUser = ClusterIpUser.decode(encoded);
+            if (!ipUser.removeExpired(System.currentTimeMillis())) {
+                // Stale entry of crashed or restarted nodes.
+                return null;
+            }
+            return ipUser.user;
+        }
+        return this.ipAddr2RecentUser.get(ipAddr);
+    }
+
+    /**
+     * @return The number of authenticated sessions.
+     */
+    public int getAuthSessionCount() {
+        return this.sessions.size();
+    }
+
+    /**
+     * @return The number of IP addresses with authenticated sessions.
+     */
+    public int getAuthIpAddrCount() {
+        return this.ipAddr2Sessions.size();
+    }
+
+    /**
+     * @return The number of IP addresses with a recent user.
+     */
+    public int getRecentUserCount() {
+        return this.ipAddr2RecentUser.size();
+    }
+
+    /**
+     * @param userid
+     *            Unique user id.
+     * @return Number of authenticated User Web App sessions.
+     */
+    public int getWebAppUserSessions(final String userid) {
+        return this.users2WebAppUserCount.getOrDefault(userid, 0).intValue();
+    }
+
+    /**
+     * @param userid
+     *            Unique user id.
+     * @return Number of authenticated Mail Tickets Web App sessions.
+     */
+    public int getWebAppMailTicketsSessions(final String userid) {
+        return this.users2WebAppMailTicketsCount.getOrDefault(userid, 0)
+                .intValue();
+    }
+
+    /**
+     * Registers an authenticated session. When a user is already present on
+     * the IP address it is replaced by the user offered here.
+     *
+     * @param webAppType
+     *            The {@link WebAppTypeEnum}.
+     * @param sessionId
+     *            The session ID.
+     * @param ipAddr
+     *            The IP address of the remote host.
+     * @param user
+     *            The authenticated user.
+     */
+    public void onAuthenticatedUser(final WebAppTypeEnum webAppType,
+            final String sessionId, final String ipAddr, final String user) {
+
+        final String webAppUser;
+
+        if (webAppType.isUserTypeOrVariant()) {
+            webAppUser = user;
+        } else {
+            webAppUser = null;
+        }
+
+        final AuthSession prevSession = this.sessions.put(sessionId,
+                new AuthSession(ipAddr, webAppType, webAppUser));
+
+        if (prevSession != null) {
+            // Re-authenticated session: count once.
+            this.decrementUserCount(prevSession);
+        }
+
+        if (webAppUser != null) {
+            this.getUserCountMap(webAppType).merge(webAppUser,
+                    Integer.valueOf(1), Integer::sum);
+        }
+
+        this.ipAddr2Sessions.compute(ipAddr, (ip, ipSessions) -> {
+
+            final Set<String> set;
+
+            if (ipSessions == null) {
+                set = ConcurrentHashMap.newKeySet();
+            } else {
+                set = ipSessions;
+            }
+            set.add(sessionId);
+
+            final boolean newIP = this.ipAddr2RecentUser.put(ip, user) == null;
+
+            if (newIP && LOGGER.isDebugEnabled()) {
+                LOGGER.debug("IP Recent User [{}] [{}] [{}] added. Total [{}]",
+                        ip, user, sessionId, this.ipAddr2RecentUser.size());
+            }
+            return set;
+        });
+
+        if (this.clusterStore != null) {
+            this.claimClusterIpAddr(ipAddr, user);
+        }
+    }
+
+    /**
+     * Unregisters a session.
+     *
+     * @param sessionId
+     *            The session ID.
+     * @return {@code null} when session was not authenticated.
+     */
+    public UnboundSession onSessionUnbound(final String sessionId) {
+
+        final AuthSession session = this.sessions.remove(sessionId);
+
+        if (session == null) {
+            return null;
+        }
+
+        this.decrementUserCount(session);
+
+        final String ipAddr = session.ipAddr;
+        final String[] recentUser = new String[1];
+        final boolean[] lastIpSession = new boolean[1];
+
+        this.ipAddr2Sessions.compute(ipAddr, (ip, set) -> {
+
+            if (set == null) {
+                LOGGER.error("Inconsistent IP sessions cache: "
+                        + "no sessions found for [{}]", ip);
+            } else if (!set.remove(sessionId)) {
+                LOGGER.warn("{}: Inconsistent IP sessions cache [{}]->[{}]",
+                        "sessionUnbound", sessionId, ip);
+            }
+
+            recentUser[0] = this.ipAddr2RecentUser.remove(ip);
+
+            if (set == null || set.isEmpty()) {
+                lastIpSession[0] = true;
+                return null;
+            }
+            return set;
+        });
+
+        if (lastIpSession[0] && this.clusterStore != null) {
+            this.releaseClusterIpAddr(ipAddr);
+        }
+
+        if (recentUser[0] == null) {
+            LOGGER.error("Inconsistent IP User Session cache: "
+                    + "no user found for [{}]", ipAddr);
+        } else if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(
+                    "IP User Session [{}] [{}] [{}] removed. Sessions [{}]",
+                    ipAddr, recentUser[0], sessionId,
+                    this.ipAddr2RecentUser.size());
+        }
+
+        return new UnboundSession(session.webAppType, ipAddr, recentUser[0]);
+    }
+
+    /**
+     * Removes IP addresses that have no authenticated session.
+     * <p>
+     * When DHCP lease expires <i>before</i> the HTTP session expires, the
+     * registry may contain IP addresses with orphaned Session ID, as
+     * exemplified in the following use-case:
+     * <ul>
+     * <li>User does not explicitly logout of the Web App</li>
+     * <li>After device reboot or wake-up from hibernation, a different IP
+     * address is acquired from the renewed DHCP lease.</li>
+     * <li>User open Web App again, and the client side auth token give him an
+     * automatic login, with the newly acquired IP address.</li>
+     * <li>As a result, the session and user related to the old IP address are
+     * orphaned.</li>
+     * </ul>
+     * </p>
+     *
+     * @return Number of IP addresses removed.
+     */
+    public int pruneOrphanedAuthIpAddr() {
+
+        final AtomicInteger removed = new AtomicInteger();
+        final Set<String> removedIpAddrs = ConcurrentHashMap.newKeySet();
+
+        for (final String ipAddr : this.ipAddr2Sessions.keySet()) {
+
+            this.ipAddr2Sessions.computeIfPresent(ipAddr, (ip, set) -> {
+
+                set.removeIf(sessionId -> {
+                    final AuthSession session = this.sessions.get(sessionId);
+                    return session == null || !session.ipAddr.equals(ip);
+                });
+
+                if (set.isEmpty()) {
+                    this.ipAddr2RecentUser.remove(ip);
+                    removedIpAddrs.add(ip);
+                    removed.incrementAndGet();
+                    return null;
+                }
+                return set;
+            });
+        }
+
+        if (this.clusterStore != null) {
+            removedIpAddrs.forEach(this::releaseClusterIpAddr);
+        }
+        return removed.get();
+    }
+
+    /**
+     * Background task that renews the leases of this server node on the IP
+     * addresses with an authenticated session.
+     */
+    private void onRenewLeases() {
+        try {
+            for (final String ipAddr : this.ipAddr2Sessions.keySet()) {
+                this.renewClusterIpAddr(ipAddr,
+                        this.ipAddr2RecentUser.get(ipAddr));
+            }
+        } catch (Exception e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Background pruning task.
+     */
+    private void onPrune() {
+        try {
+            final int pruned = this.pruneOrphanedAuthIpAddr();
+            if (pruned > 0) {
+                SpInfo.instance().log(String.format(
+                        "Removed [%s] orphaned HTTP sessions.", pruned));
+            }
+        } catch (Exception e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.session;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Page boundaries of DocLog lists, kept in the {@link SpSession}.
+ * <p>
+ * The last row of a selected page is the seek key of the next page, so that
+ * page can be selected with a keyset predicate on {@code (createdDate, id)},
+ * instead of an offset that makes the database skip all preceding rows.
+ * </p>
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class DocLogPagerSession implements Serializable {
+
+    /** */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Max number of seek keys: the least recently used key is removed.
+     */
+    private static final int MAX_SEEK_KEYS = 64;
+
+    /**
+     * The {@code (createdDate, id)} of the last row of a page.
+     */
+    public static final class SeekKey implements Serializable {
+
+        /** */
+        private static final long serialVersionUID = 1L;
+
+        /** */
+        private final Date createdDate;
+
+        /** */
+        private final Long id;
+
+        /**
+         * @param date
+         *            Create date of the row.
+         * @param docLogId
+         *            Primary key of the row.
+         */
+        public SeekKey(final Date date, final Long docLogId) {
+            this.createdDate = date;
+            this.id = docLogId;
+        }
+
+        /**
+         * @return Create date of the row.
+         */
+        public Date getCreatedDate() {
+            return createdDate;
+        }
+
+        /**
+         * @return Primary key of the row.
+         */
+        public Long getId() {
+            return id;
+        }
+    }
+
+    /**
+     * Seek keys by query signature and start position.
+     */
+    private final Map<String, SeekKey> seekKeys =
+            new LinkedHashMap<String, SeekKey>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean
+                        removeEldestEntry(final Map.Entry<String, SeekKey> e) {
+                    return size() > MAX_SEEK_KEYS;
+                }
+            };
+
+    /**
+     * @param signature
+     *            Query signature.
+     * @param startPosition
+     *            Start position of the page.
+     * @return The key.
+     */
+    private static String getKey(final String signature,
+            final int startPosition) {
+        return signature + "#" + startPosition;
+    }
+
+    /**
+     * @param signature
+     *            Query signature.
+     * @param startPosition
+     *            Start position of the page.
+     * @return The seek key, or {@code null} when not found.
+     */
+    public synchronized SeekKey get(final String signature,
+            final int startPosition) {
+        return this.seekKeys.get(getKey(signature, startPosition));
+    }
+
+    /**
+     * @param signature
+     *            Query signature.
+     * @param startPosition
+     *            Start position of the page.
+     * @param seekKey
+     *            The seek key.
+     */
+    public synchronized void put(final String signature,
+            final int startPosition, final SeekKey seekKey) {
+        this.seekKeys.put(getKey(signature, startPosition), seekKey);
+    }
+
+    /**
+     * @param signature
+     *            Query signature.
+     * @param startPosition
+     *            Start position of the page.
+     */
+    public synchronized void remove(final String signature,
+            final int startPosition) {
+        this.seekKeys.remove(getKey(signature, startPosition));
+    }
+}
@@ -24,6 +24,8 @@
  */
 package org.savapage.server.session;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
@@ -65,8 +67,12 @@ public final class SpSession extends WebSession {
      */
     private static final String SESSION_ATTR_WEBAPP_TYPE = "sp-webapp-type";
 
-    /** */
-    private final Object mutex = new Object();
+    /**
+     * Lock for session fields. Transient, since a plain {@link Object} is not
+     * serializable: it is restored in {@link #readObject(ObjectInputStream)}
+     * when the session is loaded from a persistent session store.
+     */
+    private transient Object mutex = new Object();
 
     /** */
     private UserIdDto userIdDto;
@@ -104,6 +110,10 @@ public final class SpSession extends WebSession {
      */
     private JobTicketSession jobTicketSession;
 
+    /** */
+    private final DocLogPagerSession docLogPagerSession =
+            new DocLogPagerSession();
+
     /**
      * {@code true} when a session attribute changed by human interaction in
      * WebApp.
@@ -121,6 +131,22 @@ public final class SpSession extends WebSession {
         this.lastValidateTime = creationTime;
     }
 
+    /**
+     * Restores the transient {@link #mutex} after deserialization.
+     *
+     * @param in
+     *            The object input stream.
+     * @throws IOException
+     *             When I/O error.
+     * @throws ClassNotFoundException
+     *             When class of a serialized object cannot be found.
+     */
+    private void readObject(final ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.mutex = new Object();
+    }
+
     /**
      * Gets the current session.
      *
@@ -439,6 +465,13 @@ public final class SpSession extends WebSession {
         this.jobTicketSession = jobTicketSession;
     }
 
+    /**
+     * @return Page boundaries of DocLog lists.
+     */
+    public DocLogPagerSession getDocLogPagerSession() {
+        return this.docLogPagerSession;
+    }
+
     public boolean isHumanDetected() {
         return humanDetected;
     }
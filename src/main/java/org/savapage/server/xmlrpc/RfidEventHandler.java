@@ -60,6 +60,7 @@ import org.savapage.core.services.UserService;
 import org.savapage.core.services.helpers.InboxSelectScopeEnum;
 import org.savapage.core.services.helpers.ProxyPrintOutboxResult;
 import org.savapage.core.util.Messages;
+import org.savapage.server.cometd.RfidEventBus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -329,11 +330,10 @@ public class RfidEventHandler implements ServiceEntryPoint {
      *            The client IP address.
      * @param cardNumber
      *            The card number.
-     * @throws InterruptedException
+     * @return The return code for the XML-RPC request.
      */
     private Integer onCardSwipeAuth(final Map<String, Object> map,
-            final String clientIpAddress, final String cardNumber)
-            throws InterruptedException {
+            final String clientIpAddress, final String cardNumber) {
 
         String key = "rfid-card-swipe";
 
@@ -348,17 +348,23 @@ public class RfidEventHandler implements ServiceEntryPoint {
 
         final User user = USER_SERVICE.findUserByCardNumber(cardNumber);
 
-        RfidReaderManager.reportEvent(clientIpAddress,
-                new RfidEvent(RfidEvent.EventEnum.CARD_SWIPE, cardNumber));
-
         final String userId;
+        final Long idUser;
 
         if (user == null) {
             userId = "?";
+            idUser = null;
         } else {
             userId = user.getUserId();
+            idUser = user.getId();
         }
 
+        /*
+         * Terminals wait for card swipes on the event bus only.
+         */
+        RfidEventBus.instance().publish(clientIpAddress, idUser,
+                new RfidEvent(RfidEvent.EventEnum.CARD_SWIPE, cardNumber));
+
         final StringBuilder msg = new StringBuilder(96);
         msg.append("User [");
         msg.append(userId).append("] authenticated.");
@@ -467,10 +473,15 @@ public class RfidEventHandler implements ServiceEntryPoint {
             }
 
             /*
-             * WebApp Proxy Print.
+             * WebApp Proxy Print: report to the ProxyPrintAuthManager before
+             * waking up the pending request on the event bus.
              */
-            RfidReaderManager.reportEvent(clientIpAddress,
-                    new RfidEvent(RfidEvent.EventEnum.CARD_SWIPE, cardNumber));
+            final RfidEvent event =
+                    new RfidEvent(RfidEvent.EventEnum.CARD_SWIPE, cardNumber);
+
+            RfidReaderManager.reportEvent(clientIpAddress, event);
+            RfidEventBus.instance().publish(clientIpAddress, user.getId(),
+                    event);
 
             final StringBuilder builder = new StringBuilder(96);
             builder.append("User [").append(user.getUserId())
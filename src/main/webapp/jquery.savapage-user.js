@@ -2428,7 +2428,7 @@
                         _onUploadMsgWarn(warn, infoArray, filesStatus);
                     }, function(files) {
                         _onUploadMsgInfo(files);
-                    }, true);
+                    }, true, _model.webPrintUploadChunkBytes);
             }
 
             $('#sp-webprint-upload-form').submit(function(e) {
@@ -2452,7 +2452,7 @@
                         _onUploadMsgWarn(warn);
                     }, function(files) {
                         _onUploadMsgInfo(files);
-                    });
+                    }, _model.webPrintUploadChunkBytes);
 
                 return false;
             });
@@ -3369,7 +3369,7 @@
                         _ns.userEvent.resume();
                     }, function(warn, files, filesStatus) {
                         _view.msgDialogBox(_ns.DropZone.getHtmlWarning(_i18n, warn, files, filesStatus), 'sp-msg-popup-warn');
-                    }, null, true);
+                    }, null, true, _model.webPrintUploadChunkBytes);
             }
 
             $('#page-main-thumbnail-viewport').css({
@@ -5011,6 +5011,7 @@
         this.webPrintUploadUrl = null;
         this.webPrintUploadFileParm = null;
         this.webPrintUploadFontParm = null;
+        this.webPrintUploadChunkBytes = 0;
 
         this.setMailTicketsLocalStorageParms = function() {
             _LOC_AUTH_NAME = 'sp.auth.mailtickets.name';
@@ -6034,6 +6035,7 @@
             _model.webPrintUploadUrl = res.webPrintUploadUrl;
             _model.webPrintUploadFileParm = res.webPrintUploadFileParm;
             _model.webPrintUploadFontParm = res.webPrintUploadFontParm;
+            _model.webPrintUploadChunkBytes = res.webPrintUploadChunkBytes;
 
             // Configures CometD without starting it.
             _cometdMaxNetworkDelay = res.cometdMaxNetworkDelay;
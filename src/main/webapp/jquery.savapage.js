@@ -3510,7 +3510,7 @@
         /**
          *
          */
-        sendFiles: function(files, url, fileField, fontField, fontEnum, maxBytes, fileExt, i18n, fooBefore, fooAfter, fooWarn, fooInfo) {
+        sendFiles: function(files, url, fileField, fontField, fontEnum, maxBytes, fileExt, i18n, fooBefore, fooAfter, fooWarn, fooInfo, chunkBytes) {
             var i,
                 formData = new FormData(),
                 totBytes = 0,
@@ -3565,6 +3565,11 @@
 
             $.mobile.loading("show");
 
+            if (chunkBytes) {
+                this.sendFilesChunked(files, url, fileField, fontField, fontEnum, chunkBytes, infoArray, fooAfter, fooWarn, fooInfo);
+                return;
+            }
+
             $.ajax({
                 url: (fontField && fontEnum) ? url + '?' + fontField + '=' + fontEnum : url,
                 type: 'POST',
@@ -3575,7 +3580,7 @@
                 processData: false,
                 dataType: 'json'
             }).done(function(res) {
-                if (res.result.code !== '0') {
+                if (res.result.code !== _ns.ApiResultCodeEnum.OK) {
                     fooWarn(res.result.txt, infoArray, res.filesStatus);
                 } else if (fooInfo) {
                     fooInfo(infoArray, res.result.txt);
@@ -3590,6 +3595,193 @@
             });
         },
 
+        /**
+         * Sends files one after another in chunks. A file is resumed from the
+         * number of bytes received by the server when a chunk fails. The
+         * server converts received files while next files are sent: when
+         * all files are sent, their conversion state is polled.
+         */
+        sendFilesChunked: function(files, url, fileField, fontField, fontEnum, chunkBytes, infoArray, fooAfter, fooWarn, fooInfo) {
+            var MAX_RETRIES = 5,
+                RETRY_MSEC = 2000,
+                POLL_MSEC = 1000,
+                uploads = [],
+                filesStatus = {},
+                failText,
+                urlBase = url + '?' + ((fontField && fontEnum) ? fontField + '=' + fontEnum + '&' : '') + 'upload=',
+                _isFinal,
+                _onState,
+                _onFail,
+                _finish,
+                _poll,
+                _sendFile,
+                _sendChunk,
+                _resume;
+
+            // A missing state is treated as FAILED.
+            _isFinal = function(upl) {
+                return !upl.state || upl.state === 'DONE' || upl.state === 'FAILED';
+            };
+
+            _onState = function(upl, res) {
+                if (res.result.code !== _ns.ApiResultCodeEnum.OK) {
+                    upl.state = 'FAILED';
+                    failText = failText || res.result.txt;
+                } else {
+                    upl.state = (res.upload && res.upload.state) || 'FAILED';
+                    if (upl.state === 'FAILED') {
+                        failText = failText || (res.upload && res.upload.txt) || res.result.txt || upl.file.name;
+                    }
+                }
+                if (_isFinal(upl)) {
+                    filesStatus[upl.file.name] = upl.state === 'DONE';
+                }
+            };
+
+            _finish = function() {
+                $.mobile.loading("hide");
+                if (failText) {
+                    fooWarn(failText, infoArray, filesStatus);
+                } else if (fooInfo) {
+                    fooInfo(infoArray);
+                }
+                if (fooAfter) {
+                    fooAfter();
+                }
+            };
+
+            _onFail = function() {
+                _ns.PanelCommon.onDisconnected();
+                $.mobile.loading("hide");
+                if (fooAfter) {
+                    fooAfter();
+                }
+            };
+
+            _poll = function() {
+                var pending = $.grep(uploads, function(upl) {
+                    return !_isFinal(upl);
+                }),
+                    nWait = pending.length,
+                    isDisconnected = false;
+
+                if (nWait === 0) {
+                    _finish();
+                    return;
+                }
+                $.each(pending, function(i, upl) {
+                    $.ajax({
+                        url: urlBase + upl.id,
+                        type: 'POST',
+                        cache: false,
+                        dataType: 'json'
+                    }).done(function(res) {
+                        upl.retries = 0;
+                        _onState(upl, res);
+                    }).fail(function() {
+                        if (++upl.retries > MAX_RETRIES) {
+                            isDisconnected = true;
+                        }
+                    }).always(function() {
+                        if (--nWait === 0) {
+                            if (isDisconnected) {
+                                _onFail();
+                            } else {
+                                window.setTimeout(_poll, POLL_MSEC);
+                            }
+                        }
+                    });
+                });
+            };
+
+            _sendChunk = function(upl, iFile) {
+                var formData = new FormData(),
+                    end = Math.min(upl.offset + chunkBytes, upl.file.size);
+
+                formData.append(fileField, upl.file.slice(upl.offset, end), upl.file.name);
+
+                $.mobile.loading("show", {
+                    text: upl.file.name + ' ' + Math.floor(100 * upl.offset / upl.file.size) + '%',
+                    textVisible: true
+                });
+
+                $.ajax({
+                    url: urlBase + upl.id + '&offset=' + upl.offset + '&total=' + upl.file.size,
+                    type: 'POST',
+                    data: formData,
+                    cache: false,
+                    contentType: false,
+                    processData: false,
+                    dataType: 'json'
+                }).done(function(res) {
+                    upl.retries = 0;
+                    if (res.result.code !== _ns.ApiResultCodeEnum.OK || !res.upload) {
+                        _onState(upl, res);
+                        _sendFile(iFile + 1);
+                        return;
+                    }
+                    upl.offset = res.upload.received;
+                    if (upl.offset < upl.file.size) {
+                        _sendChunk(upl, iFile);
+                    } else {
+                        _onState(upl, res);
+                        _sendFile(iFile + 1);
+                    }
+                }).fail(function() {
+                    if (++upl.retries > MAX_RETRIES) {
+                        _onFail();
+                    } else {
+                        window.setTimeout(function() {
+                            _resume(upl, iFile);
+                        }, RETRY_MSEC);
+                    }
+                });
+            };
+
+            _resume = function(upl, iFile) {
+                $.ajax({
+                    url: urlBase + upl.id,
+                    type: 'POST',
+                    cache: false,
+                    dataType: 'json'
+                }).done(function(res) {
+                    upl.offset = res.upload ? res.upload.received : 0;
+                    _sendChunk(upl, iFile);
+                }).fail(function() {
+                    if (++upl.retries > MAX_RETRIES) {
+                        _onFail();
+                    } else {
+                        window.setTimeout(function() {
+                            _resume(upl, iFile);
+                        }, RETRY_MSEC);
+                    }
+                });
+            };
+
+            _sendFile = function(iFile) {
+                var upl;
+                if (iFile >= files.length) {
+                    $.mobile.loading("show");
+                    _poll();
+                    return;
+                }
+                if (files[iFile].size === 0) {
+                    _sendFile(iFile + 1);
+                    return;
+                }
+                upl = {
+                    id: Date.now().toString(36) + Math.random().toString(36).substring(2),
+                    file: files[iFile],
+                    offset: 0,
+                    retries: 0
+                };
+                uploads.push(upl);
+                _sendChunk(upl, iFile);
+            };
+
+            _sendFile(0);
+        },
+
         /**
          *
          */
@@ -3659,7 +3851,7 @@
          *
          * @param {Object} dropzone (JQuery selector).
          */
-        setCallbacks: function(dropzone, cssClassDragover, url, fileField, fontField, fooFontEnum, maxBytes, fileExt, i18n, fooBeforeSend, fooAfterSend, fooWarn, fooInfo, forPrint) {
+        setCallbacks: function(dropzone, cssClassDragover, url, fileField, fontField, fooFontEnum, maxBytes, fileExt, i18n, fooBeforeSend, fooAfterSend, fooWarn, fooInfo, forPrint, chunkBytes) {
             var _obj = this;
 
             dropzone.bind('dragover', function(e) {
@@ -3680,7 +3872,7 @@
                 $(this).removeClass(cssClassDragover);
 
                 if (files.length > 0) {
-                    _obj.sendFiles(files, url, fileField, fontField, fontEnum, maxBytes, fileExt, i18n, fooBeforeSend, fooAfterSend, fooWarn, fooInfo);
+                    _obj.sendFiles(files, url, fileField, fontField, fontEnum, maxBytes, fileExt, i18n, fooBeforeSend, fooAfterSend, fooWarn, fooInfo, chunkBytes);
                 } else if (forPrint) {
                     _obj.printURL(dataTransfer, url, fontEnum, fileExt, i18n, fooBeforeSend, fooAfterSend, fooWarn, fooInfo);
                 } else {
@@ -0,0 +1,85 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.auth;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class LoginCredentialCacheTest {
+
+    /** */
+    private static final String USER = "john";
+
+    /** */
+    private static final String PASSWORD = "secret";
+
+    @Test
+    public void testDisabled() {
+        final LoginCredentialCache cache = new LoginCredentialCache(0, 10);
+        cache.onVerified(USER, PASSWORD);
+        Assert.assertFalse(cache.isEnabled());
+        Assert.assertFalse(cache.isVerified(USER, PASSWORD));
+    }
+
+    @Test
+    public void testVerified() {
+
+        final LoginCredentialCache cache = new LoginCredentialCache(60, 10);
+
+        Assert.assertFalse(cache.isVerified(USER, PASSWORD));
+
+        cache.onVerified(USER, PASSWORD);
+
+        Assert.assertTrue(cache.isVerified(USER, PASSWORD));
+        Assert.assertFalse(cache.isVerified(USER, PASSWORD + "x"));
+        Assert.assertFalse(cache.isVerified("jane", PASSWORD));
+
+        // Other password replaces the old one.
+        cache.onVerified(USER, "changed");
+        Assert.assertFalse(cache.isVerified(USER, PASSWORD));
+        Assert.assertTrue(cache.isVerified(USER, "changed"));
+
+        cache.invalidate(USER);
+        Assert.assertFalse(cache.isVerified(USER, "changed"));
+    }
+
+    @Test
+    public void testMaxSize() {
+
+        final LoginCredentialCache cache = new LoginCredentialCache(60, 2);
+
+        cache.onVerified("a", PASSWORD);
+        cache.onVerified("b", PASSWORD);
+        cache.onVerified("c", PASSWORD);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertFalse(cache.isVerified("c", PASSWORD));
+    }
+}
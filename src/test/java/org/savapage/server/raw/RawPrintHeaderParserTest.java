@@ -0,0 +1,133 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.raw;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class RawPrintHeaderParserTest {
+
+    /** */
+    private static final String PS_HEADER = "%!PS-Adobe-3.0\r\n"
+            + "%%Title: (Document 1)\r\n" + "%%For: (john)\r\n"
+            + "%%BeginProlog\r\n" + "/a 1 def\n";
+
+    /**
+     * @param content
+     *            The content.
+     * @return The parser.
+     */
+    private static RawPrintHeaderParser createParser(final String content) {
+        return new RawPrintHeaderParser(new ByteArrayInputStream(
+                content.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        final RawPrintHeaderParser parser = createParser("");
+        Assert.assertFalse(parser.nextLine());
+        Assert.assertEquals(0, parser.getReadAheadBytes().length);
+    }
+
+    @Test
+    public void testLines() throws IOException {
+
+        final RawPrintHeaderParser parser = createParser(PS_HEADER);
+
+        Assert.assertTrue(parser.nextLine());
+        Assert.assertTrue(parser.lineStartsWith(
+                RawPrintHeaderParser.toBytes("%!PS-Adobe")));
+
+        // Empty line between CR and LF.
+        Assert.assertTrue(parser.nextLine());
+        Assert.assertTrue(parser.isLineEmpty());
+
+        Assert.assertTrue(parser.nextLine());
+        final byte[] pfxTitle = RawPrintHeaderParser.toBytes("%%Title: ");
+        Assert.assertTrue(parser.lineStartsWith(pfxTitle));
+        Assert.assertEquals("(Document 1)", parser.getLine(pfxTitle.length));
+
+        int lines = 3;
+        while (parser.nextLine()) {
+            lines++;
+        }
+        Assert.assertEquals(9, lines);
+
+        Assert.assertArrayEquals(
+                PS_HEADER.getBytes(StandardCharsets.ISO_8859_1),
+                parser.getReadAheadBytes());
+        Assert.assertEquals(PS_HEADER, parser.getScannedText());
+    }
+
+    @Test
+    public void testTokens() throws IOException {
+
+        final RawPrintHeaderParser parser = createParser(
+                "  @pjl Job   NAME = \"Doc\"\n@PJL JOBNAME = \"x\"");
+
+        final byte[] pjl = RawPrintHeaderParser.toBytes("@PJL");
+        final byte[] job = RawPrintHeaderParser.toBytes("JOB");
+        final byte[] name = RawPrintHeaderParser.toBytes("NAME");
+
+        Assert.assertTrue(parser.nextLine());
+        Assert.assertTrue(parser.lineStartsWithTokens(pjl, job, name));
+
+        Assert.assertTrue(parser.nextLine());
+        Assert.assertFalse(parser.lineStartsWithTokens(pjl, job, name));
+        Assert.assertEquals("@PJL JOBNAME = \"x\"", parser.getLine());
+
+        Assert.assertFalse(parser.nextLine());
+    }
+
+    @Test
+    public void testLargeHeader() throws IOException {
+
+        final StringBuilder content = new StringBuilder();
+        final int nLines = 5000;
+
+        for (int i = 0; i < nLines; i++) {
+            content.append("@PJL COMMENT line ").append(i).append('\n');
+        }
+
+        final RawPrintHeaderParser parser = createParser(content.toString());
+
+        int lines = 0;
+        while (parser.nextLine()) {
+            lines++;
+        }
+        Assert.assertEquals(nLines, lines);
+        Assert.assertEquals(content.length(),
+                parser.getReadAheadBytes().length);
+    }
+}
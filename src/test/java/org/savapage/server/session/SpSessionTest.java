@@ -0,0 +1,114 @@
+/*
+ * This file is part of the SavaPage project <https://www.savapage.org>.
+ * Copyright (c) 2020 Datraverse B.V.
+ * Author: Rijk Ravestein.
+ *
+ * SPDX-FileCopyrightText: © 2020 Datraverse B.V. <info@datraverse.com>
+ * SPDX-License-Identifier: AGPL-3.0-or-later
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * For more information, please contact Datraverse B.V. at this
+ * address: info@datraverse.com
+ */
+package org.savapage.server.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.request.Url;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Round-trips {@link SpSession} as a persistent session store does.
+ *
+ * @author Rijk Ravestein
+ *
+ */
+public final class SpSessionTest {
+
+    /** */
+    private static final Long PRINTER_ID = Long.valueOf(7);
+
+    /**
+     * @param session
+     *            The session.
+     * @return The deserialized copy.
+     * @throws IOException
+     *             When I/O error.
+     * @throws ClassNotFoundException
+     *             When class not found.
+     */
+    private static SpSession roundTrip(final SpSession session)
+            throws IOException, ClassNotFoundException {
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(session);
+        }
+
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(bos.toByteArray()))) {
+            return (SpSession) ois.readObject();
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException, ClassNotFoundException {
+
+        final SpSession session =
+                new SpSession(new MockWebRequest(Url.parse("/")));
+
+        session.incrementAuthWebAppCount();
+
+        final JobTicketSession jobTicket = new JobTicketSession();
+        jobTicket.setLastRedirectPrinterId(PRINTER_ID);
+        jobTicket.setJogOffsetOption("jog");
+
+        final Map<JobTicketSession.PrinterOpt, String> opts = new HashMap<>();
+        opts.put(JobTicketSession.PrinterOpt.OUTPUT_BIN, "top");
+
+        final Map<Long, Map<JobTicketSession.PrinterOpt, String>> printerOpts =
+                new HashMap<>();
+        printerOpts.put(PRINTER_ID, opts);
+        jobTicket.setRedirectPrinterOptions(printerOpts);
+
+        session.setJobTicketSession(jobTicket);
+
+        final SpSession copy = roundTrip(session);
+
+        Assert.assertEquals(1, copy.getAuthWebAppCount());
+
+        // The restored mutex must be usable.
+        copy.incrementAuthWebAppCount();
+        Assert.assertEquals(2, copy.getAuthWebAppCount());
+
+        final JobTicketSession jobTicketCopy = copy.getJobTicketSession();
+        Assert.assertNotNull(jobTicketCopy);
+        Assert.assertEquals(PRINTER_ID,
+                jobTicketCopy.getLastRedirectPrinterId());
+        Assert.assertEquals("jog", jobTicketCopy.getJogOffsetOption());
+        Assert.assertEquals("top",
+                jobTicketCopy.getRedirectPrinterOptions().get(PRINTER_ID)
+                        .get(JobTicketSession.PrinterOpt.OUTPUT_BIN));
+    }
+}